@@ -40,12 +40,9 @@ import java.util.TimeZone;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import org.json.JSONArray;
 import org.json.JSONException;
-import org.json.JSONObject;
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
-import org.xmlpull.v1.XmlPullParserFactory;
 
 import de.schildbach.pte.NetworkProvider.Option;
 import de.schildbach.pte.dto.Connection;
@@ -67,7 +64,11 @@ import de.schildbach.pte.dto.Stop;
 import de.schildbach.pte.exception.ParserException;
 import de.schildbach.pte.exception.ProtocolException;
 import de.schildbach.pte.exception.SessionExpiredException;
+import de.schildbach.pte.util.JsonReader;
+import de.schildbach.pte.util.LineCache;
 import de.schildbach.pte.util.ParserUtils;
+import de.schildbach.pte.util.SessionCookie;
+import de.schildbach.pte.util.XmlPullParserPool;
 import de.schildbach.pte.util.XmlPullUtil;
 
 /**
@@ -85,15 +86,16 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider
 	private final boolean canAcceptPoiID;
 	private final boolean needsSpEncId;
 	private boolean suppressPositions = false;
-	private final XmlPullParserFactory parserFactory;
 
 	private static class Context implements QueryConnectionsContext
 	{
 		private final String context;
+		private final SessionCookie sessionCookie;
 
-		private Context(final String context)
+		private Context(final String context, final SessionCookie sessionCookie)
 		{
 			this.context = context;
+			this.sessionCookie = sessionCookie;
 		}
 
 		public boolean canQueryLater()
@@ -109,7 +111,7 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider
 		@Override
 		public String toString()
 		{
-			return getClass().getName() + "[" + context + "]";
+			return getClass().getName() + "[" + context + "," + sessionCookie + "]";
 		}
 	}
 
@@ -131,15 +133,6 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider
 	public AbstractEfaProvider(final String apiBase, final String departureMonitorEndpoint, final String tripEndpoint,
 			final String stopFinderEndpoint, final String additionalQueryParameter, final boolean canAcceptPoiID, final boolean needsSpEncId)
 	{
-		try
-		{
-			parserFactory = XmlPullParserFactory.newInstance(System.getProperty(XmlPullParserFactory.PROPERTY_NAME), null);
-		}
-		catch (final XmlPullParserException x)
-		{
-			throw new RuntimeException(x);
-		}
-
 		this.apiBase = apiBase;
 		this.departureMonitorEndpoint = departureMonitorEndpoint != null ? departureMonitorEndpoint : "XSLT_DM_REQUEST";
 		this.tripEndpoint = tripEndpoint != null ? tripEndpoint : "XSLT_TRIP_REQUEST2";
@@ -181,62 +174,137 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider
 
 		// System.out.println(uri.toString());
 
-		final CharSequence page = ParserUtils.scrape(uri.toString(), null, UTF_8, null);
+		JsonReader reader = null;
 
 		try
 		{
-			final JSONObject head = new JSONObject(page.toString());
-			final JSONArray stops = head.getJSONArray("stopFinder");
+			reader = new JsonReader(ParserUtils.scrapeReader(httpTransport(), uri.toString(), UTF_8));
 
-			final int nStops = stops.length();
-			final List<Location> results = new ArrayList<Location>();
+			List<Location> results = null;
 
-			for (int i = 0; i < nStops; i++)
+			reader.beginObject();
+			while (reader.hasNext())
 			{
-				final JSONObject stop = stops.optJSONObject(i);
-				String type = stop.getString("type");
-				if ("any".equals(type))
-					type = stop.getString("anyType");
-				final String name = normalizeLocationName(stop.getString("object"));
-				final JSONObject ref = stop.getJSONObject("ref");
-				String place = ref.getString("place");
-				if (place != null && place.length() == 0)
-					place = null;
-				final String coords = ref.optString("coords", null);
-				final int lat;
-				final int lon;
-				if (coords != null)
+				if ("stopFinder".equals(reader.nextName()))
 				{
-					final String[] coordParts = coords.split(",");
-					lat = Math.round(Float.parseFloat(coordParts[1]));
-					lon = Math.round(Float.parseFloat(coordParts[0]));
+					results = new ArrayList<Location>();
+					reader.beginArray();
+					while (reader.hasNext())
+						results.add(jsonStopfinderLocation(reader, uri));
+					reader.endArray();
 				}
 				else
 				{
-					lat = 0;
-					lon = 0;
+					reader.skipValue();
 				}
-
-				if ("stop".equals(type))
-					results.add(new Location(LocationType.STATION, stop.getInt("stateless"), lat, lon, place, name));
-				else if ("poi".equals(type))
-					results.add(new Location(LocationType.POI, 0, lat, lon, place, name));
-				else if ("crossing".equals(type))
-					results.add(new Location(LocationType.ADDRESS, 0, lat, lon, place, name));
-				else if ("street".equals(type) || "address".equals(type) || "singlehouse".equals(type))
-					results.add(new Location(LocationType.ADDRESS, 0, lat, lon, place, normalizeLocationName(stop.getString("name"))));
-				else
-					throw new IllegalArgumentException("unknown type: " + type + " on " + uri);
 			}
+			reader.endObject();
+
+			if (results == null)
+				throw new JSONException("no stopFinder");
 
 			return results;
 		}
 		catch (final JSONException x)
 		{
-			throw new RuntimeException("cannot parse: '" + page + "' on " + uri, x);
+			throw new RuntimeException("cannot parse: " + uri, x);
+		}
+		finally
+		{
+			if (reader != null)
+				reader.close();
 		}
 	}
 
+	private Location jsonStopfinderLocation(final JsonReader reader, final CharSequence uri) throws IOException, JSONException
+	{
+		String type = null;
+		String anyType = null;
+		String object = null;
+		String name = null;
+		String stateless = null;
+		String place = null;
+		String coords = null;
+
+		reader.beginObject();
+		while (reader.hasNext())
+		{
+			final String key = reader.nextName();
+			if ("type".equals(key))
+			{
+				type = reader.nextString();
+			}
+			else if ("anyType".equals(key))
+			{
+				anyType = reader.nextString();
+			}
+			else if ("object".equals(key))
+			{
+				object = reader.nextString();
+			}
+			else if ("name".equals(key))
+			{
+				name = reader.nextString();
+			}
+			else if ("stateless".equals(key))
+			{
+				stateless = reader.nextString();
+			}
+			else if ("ref".equals(key))
+			{
+				reader.beginObject();
+				while (reader.hasNext())
+				{
+					final String refKey = reader.nextName();
+					if ("place".equals(refKey))
+						place = reader.nextString();
+					else if ("coords".equals(refKey))
+						coords = reader.nextString();
+					else
+						reader.skipValue();
+				}
+				reader.endObject();
+			}
+			else
+			{
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+
+		if ("any".equals(type))
+			type = anyType;
+		if (type == null || object == null)
+			throw new JSONException("incomplete location on " + uri);
+		if (place != null && place.length() == 0)
+			place = null;
+
+		final int lat;
+		final int lon;
+		if (coords != null)
+		{
+			final String[] coordParts = coords.split(",");
+			lat = Math.round(Float.parseFloat(coordParts[1]));
+			lon = Math.round(Float.parseFloat(coordParts[0]));
+		}
+		else
+		{
+			lat = 0;
+			lon = 0;
+		}
+
+		if ("stop".equals(type))
+			return new Location(LocationType.STATION, Integer.parseInt(stateless), lat, lon, place, normalizeLocationName(object));
+		else if ("poi".equals(type))
+			return new Location(LocationType.POI, 0, lat, lon, place, normalizeLocationName(object));
+		else if ("crossing".equals(type))
+			return new Location(LocationType.ADDRESS, 0, lat, lon, place, normalizeLocationName(object));
+		else if ("street".equals(type) || "address".equals(type) || "singlehouse".equals(type))
+			return new Location(LocationType.ADDRESS, 0, lat, lon, place, normalizeLocationName(name));
+		else
+			throw new IllegalArgumentException("unknown type: " + type + " on " + uri);
+	}
+
 	protected List<Location> xmlStopfinderRequest(final Location constraint) throws IOException
 	{
 		final StringBuilder uri = new StringBuilder(apiBase);
@@ -257,12 +325,12 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider
 		// System.out.println(uri.toString());
 
 		InputStream is = null;
+		XmlPullParser pp = null;
 		try
 		{
-			is = ParserUtils.scrapeInputStream(uri.toString());
+			is = ParserUtils.scrapeInputStream(httpTransport(), uri.toString());
 
-			final XmlPullParser pp = parserFactory.newPullParser();
-			pp.setInput(is, null);
+			pp = XmlPullParserPool.DEFAULT.obtain(is, null);
 			enterItdRequest(pp);
 
 			final List<Location> results = new ArrayList<Location>();
@@ -312,6 +380,7 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider
 		}
 		finally
 		{
+			XmlPullParserPool.DEFAULT.release(pp);
 			if (is != null)
 				is.close();
 		}
@@ -331,12 +400,12 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider
 		// System.out.println(uri);
 
 		InputStream is = null;
+		XmlPullParser pp = null;
 		try
 		{
-			is = ParserUtils.scrapeInputStream(uri.toString());
+			is = ParserUtils.scrapeInputStream(httpTransport(), uri.toString());
 
-			final XmlPullParser pp = parserFactory.newPullParser();
-			pp.setInput(is, null);
+			pp = XmlPullParserPool.DEFAULT.obtain(is, null);
 			final ResultHeader header = enterItdRequest(pp);
 
 			XmlPullUtil.enter(pp, "itdCoordInfoRequest");
@@ -382,6 +451,7 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider
 		}
 		finally
 		{
+			XmlPullParserPool.DEFAULT.release(pp);
 			if (is != null)
 				is.close();
 		}
@@ -537,12 +607,12 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider
 		// System.out.println(uri);
 
 		InputStream is = null;
+		XmlPullParser pp = null;
 		try
 		{
-			is = ParserUtils.scrapeInputStream(uri.toString());
+			is = ParserUtils.scrapeInputStream(httpTransport(), uri.toString());
 
-			final XmlPullParser pp = parserFactory.newPullParser();
-			pp.setInput(is, null);
+			pp = XmlPullParserPool.DEFAULT.obtain(is, null);
 			final ResultHeader header = enterItdRequest(pp);
 
 			if (!XmlPullUtil.jumpToStartTag(pp, null, "itdOdv") || !"dm".equals(pp.getAttributeValue(null, "usage")))
@@ -641,6 +711,7 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider
 		}
 		finally
 		{
+			XmlPullParserPool.DEFAULT.release(pp);
 			if (is != null)
 				is.close();
 		}
@@ -1288,12 +1359,12 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider
 		// System.out.println(uri);
 
 		InputStream is = null;
+		XmlPullParser pp = null;
 		try
 		{
-			is = ParserUtils.scrapeInputStream(uri.toString());
+			is = ParserUtils.scrapeInputStream(httpTransport(), uri.toString());
 
-			final XmlPullParser pp = parserFactory.newPullParser();
-			pp.setInput(is, null);
+			pp = XmlPullParserPool.DEFAULT.obtain(is, null);
 			final ResultHeader header = enterItdRequest(pp);
 
 			XmlPullUtil.enter(pp, "itdDepartureMonitorRequest");
@@ -1466,6 +1537,7 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider
 		}
 		finally
 		{
+			XmlPullParserPool.DEFAULT.release(pp);
 			if (is != null)
 				is.close();
 		}
@@ -1560,8 +1632,15 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider
 			noTrainName = pp.getAttributeValue(null, "name");
 		XmlPullUtil.exit(pp, "itdServingLine");
 
-		final String label = parseLine(motType, number, number, noTrainName);
-		return new Line(id, label, lineStyle(label));
+		final LineCache.Key key = LineCache.key(id, motType, number, noTrainName);
+		Line line = getLineCache().get(key);
+		if (line == null)
+		{
+			final String label = parseLine(motType, number, number, noTrainName);
+			line = new Line(id, label, lineStyle(label));
+			getLineCache().put(key, line);
+		}
+		return line;
 	}
 
 	private static final Pattern P_STATION_NAME_WHITESPACE = Pattern.compile("\\s+");
@@ -1686,17 +1765,22 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider
 		uri.append("&calcNumberOfTrips=4");
 	}
 
+	private static final String SESSION_COOKIE_NAME = "NSC_";
+
 	public QueryConnectionsResult queryConnections(final Location from, final Location via, final Location to, final Date date, final boolean dep,
 			final int numConnections, final String products, final WalkSpeed walkSpeed, final Accessibility accessibility, final Set<Option> options)
 			throws IOException
 	{
 		final String uri = xsltTripRequest2Uri(from, via, to, date, dep, numConnections, products, walkSpeed, accessibility, options);
+		final SessionCookie sessionCookie = new SessionCookie(SESSION_COOKIE_NAME);
 
 		InputStream is = null;
+		XmlPullParser pp = null;
 		try
 		{
-			is = ParserUtils.scrapeInputStream(uri, null, null, "NSC_", 3);
-			return queryConnections(uri, is);
+			is = ParserUtils.scrapeInputStream(httpTransport(), uri, null, null, sessionCookie, 3);
+			pp = XmlPullParserPool.DEFAULT.obtain(is, null);
+			return queryConnections(uri, pp, sessionCookie);
 		}
 		catch (final XmlPullParserException x)
 		{
@@ -1708,6 +1792,7 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider
 		}
 		finally
 		{
+			XmlPullParserPool.DEFAULT.release(pp);
 			if (is != null)
 				is.close();
 		}
@@ -1724,12 +1809,14 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider
 		uri.append("&command=").append(later ? "tripNext" : "tripPrev");
 
 		InputStream is = null;
+		XmlPullParser pp = null;
 		try
 		{
-			is = new BufferedInputStream(ParserUtils.scrapeInputStream(uri.toString(), null, null, "NSC_", 3));
+			is = new BufferedInputStream(ParserUtils.scrapeInputStream(httpTransport(), uri.toString(), null, null, context.sessionCookie, 3));
 			is.mark(512);
 
-			return queryConnections(uri.toString(), is);
+			pp = XmlPullParserPool.DEFAULT.obtain(is, null);
+			return queryConnections(uri.toString(), pp, context.sessionCookie);
 		}
 		catch (final XmlPullParserException x)
 		{
@@ -1753,17 +1840,17 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider
 		}
 		finally
 		{
+			XmlPullParserPool.DEFAULT.release(pp);
 			if (is != null)
 				is.close();
 		}
 	}
 
-	private QueryConnectionsResult queryConnections(final String uri, final InputStream is) throws XmlPullParserException, IOException
+	private QueryConnectionsResult queryConnections(final String uri, final XmlPullParser pp, final SessionCookie sessionCookie)
+			throws XmlPullParserException, IOException
 	{
 		// System.out.println(uri);
 
-		final XmlPullParser pp = parserFactory.newPullParser();
-		pp.setInput(is, null);
 		final ResultHeader header = enterItdRequest(pp);
 		final Object context = header.context;
 
@@ -1999,12 +2086,10 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider
 								: 0;
 						final Location destination = new Location(destinationId > 0 ? LocationType.STATION : LocationType.ANY,
 								destinationId > 0 ? destinationId : 0, null, destinationName);
-						final String lineLabel;
-						if ("AST".equals(pp.getAttributeValue(null, "symbol")))
-							lineLabel = "BAST";
-						else
-							lineLabel = parseLine(pp.getAttributeValue(null, "motType"), pp.getAttributeValue(null, "shortname"),
-									pp.getAttributeValue(null, "name"), null);
+						final String lineSymbol = pp.getAttributeValue(null, "symbol");
+						final String lineMotType = pp.getAttributeValue(null, "motType");
+						final String lineShortName = pp.getAttributeValue(null, "shortname");
+						final String lineName = pp.getAttributeValue(null, "name");
 						XmlPullUtil.enter(pp, "itdMeansOfTransport");
 						XmlPullUtil.require(pp, "motDivaParams");
 						final String lineId = XmlPullUtil.attr(pp, "network") + ':' + XmlPullUtil.attr(pp, "line") + ':'
@@ -2087,7 +2172,18 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider
 							XmlPullUtil.exit(pp, "genAttrList");
 						}
 
-						final Line line = new Line(lineId, lineLabel, lineStyle(lineLabel), lineAttrs);
+						final LineCache.Key lineKey = LineCache.key(lineId, lineSymbol, lineMotType, lineShortName, lineName, lineAttrs);
+						Line line = getLineCache().get(lineKey);
+						if (line == null)
+						{
+							final String lineLabel;
+							if ("AST".equals(lineSymbol))
+								lineLabel = "BAST";
+							else
+								lineLabel = parseLine(lineMotType, lineShortName, lineName, null);
+							line = new Line(lineId, lineLabel, lineStyle(lineLabel), lineAttrs);
+							getLineCache().put(lineKey, line);
+						}
 
 						parts.add(new Connection.Trip(line, destination, departureTargetTime != null ? departureTargetTime : departureTime,
 								departureTargetTime, departurePosition, departure, arrivalTargetTime != null ? arrivalTargetTime : arrivalTime,
@@ -2148,7 +2244,8 @@ public abstract class AbstractEfaProvider extends AbstractNetworkProvider
 
 			XmlPullUtil.exit(pp, "itdRouteList");
 
-			return new QueryConnectionsResult(header, uri, from, via, to, new Context(commandLink((String) context, requestId)), connections);
+			final Context nextContext = new Context(commandLink((String) context, requestId), sessionCookie);
+			return new QueryConnectionsResult(header, uri, from, via, to, nextContext, connections);
 		}
 		else
 		{
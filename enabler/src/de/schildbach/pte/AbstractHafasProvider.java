@@ -20,6 +20,7 @@ package de.schildbach.pte;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Calendar;
@@ -37,12 +38,9 @@ import java.util.TimeZone;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import org.json.JSONArray;
 import org.json.JSONException;
-import org.json.JSONObject;
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
-import org.xmlpull.v1.XmlPullParserFactory;
 
 import de.schildbach.pte.dto.Connection;
 import de.schildbach.pte.dto.Connection.Part;
@@ -59,8 +57,13 @@ import de.schildbach.pte.dto.ResultHeader;
 import de.schildbach.pte.dto.StationDepartures;
 import de.schildbach.pte.dto.Stop;
 import de.schildbach.pte.util.HafasBinaryFile;
+import de.schildbach.pte.util.HtmlTokenizer;
+import de.schildbach.pte.util.JsonReader;
+import de.schildbach.pte.util.LineCache;
+import de.schildbach.pte.util.MultiReplaceReader;
 import de.schildbach.pte.util.ParserUtils;
 import de.schildbach.pte.util.StringReplaceReader;
+import de.schildbach.pte.util.XmlPullParserPool;
 import de.schildbach.pte.util.XmlPullUtil;
 
 /**
@@ -270,16 +273,15 @@ public abstract class AbstractHafasProvider extends AbstractNetworkProvider
 		// System.out.println(ParserUtils.scrape(apiUri, true, wrap(request), null, false));
 
 		Reader reader = null;
+		XmlPullParser pp = null;
 
 		try
 		{
-			reader = new InputStreamReader(ParserUtils.scrapeInputStream(apiUri, wrap(request, null), null, null, 3), ISO_8859_1);
+			reader = new InputStreamReader(ParserUtils.scrapeInputStream(httpTransport(), apiUri, wrap(request, null), null, null, 3), ISO_8859_1);
 
 			final List<Location> results = new ArrayList<Location>();
 
-			final XmlPullParserFactory factory = XmlPullParserFactory.newInstance(System.getProperty(XmlPullParserFactory.PROPERTY_NAME), null);
-			final XmlPullParser pp = factory.newPullParser();
-			pp.setInput(reader);
+			pp = XmlPullParserPool.DEFAULT.obtain(reader);
 
 			assertResC(pp);
 			XmlPullUtil.enter(pp);
@@ -315,101 +317,155 @@ public abstract class AbstractHafasProvider extends AbstractNetworkProvider
 		}
 		finally
 		{
+			XmlPullParserPool.DEFAULT.release(pp);
 			if (reader != null)
 				reader.close();
 		}
 	}
 
-	private static final Pattern P_AJAX_GET_STOPS_JSON = Pattern.compile("SLs\\.sls\\s*=\\s*(.*?);\\s*SLs\\.showSuggestion\\(\\);", Pattern.DOTALL);
 	private static final Pattern P_AJAX_GET_STOPS_ID = Pattern.compile(".*?@L=(\\d+)@.*?");
 
 	protected final List<Location> jsonGetStops(final String uri) throws IOException
 	{
-		final CharSequence page = ParserUtils.scrape(uri, null, jsonEncoding, null);
+		JsonReader reader = null;
 
-		final Matcher mJson = P_AJAX_GET_STOPS_JSON.matcher(page);
-		if (mJson.matches())
+		try
 		{
-			final String json = mJson.group(1);
+			reader = new JsonReader(ParserUtils.scrapeReader(httpTransport(), uri, jsonEncoding));
+
 			final List<Location> results = new ArrayList<Location>();
+			boolean hasSuggestions = false;
 
-			try
+			// unwrap SLs.sls={...};SLs.showSuggestion();
+			reader.skipPast('=');
+			reader.beginObject();
+			while (reader.hasNext())
 			{
-				final JSONObject head = new JSONObject(json);
-				final JSONArray aSuggestions = head.getJSONArray("suggestions");
-
-				for (int i = 0; i < aSuggestions.length(); i++)
+				if ("suggestions".equals(reader.nextName()))
 				{
-					final JSONObject suggestion = aSuggestions.optJSONObject(i);
-					if (suggestion != null)
+					hasSuggestions = true;
+					reader.beginArray();
+					while (reader.hasNext())
 					{
-						final int type = suggestion.getInt("type");
-						final String value = suggestion.getString("value");
-						final int lat = suggestion.optInt("ycoord");
-						final int lon = suggestion.optInt("xcoord");
-						int localId = 0;
-						final Matcher m = P_AJAX_GET_STOPS_ID.matcher(suggestion.getString("id"));
-						if (m.matches())
-							localId = Integer.parseInt(m.group(1));
-
-						if (type == 1) // station
-						{
-							final String[] placeAndName = splitPlaceAndName(value);
-							results.add(new Location(LocationType.STATION, localId, lat, lon, placeAndName[0], placeAndName[1]));
-						}
-						else if (type == 2) // address
-						{
-							final String[] placeAndName = splitPlaceAndName(value);
-							results.add(new Location(LocationType.ADDRESS, 0, lat, lon, placeAndName[0], placeAndName[1]));
-						}
-						else if (type == 4) // poi
+						if (reader.peek() == JsonReader.Token.BEGIN_OBJECT)
 						{
-							results.add(new Location(LocationType.POI, localId, lat, lon, null, value));
-						}
-						else if (type == 71) // strange (VBN)
-						{
-							// TODO don't know what to do
-						}
-						else if (type == 87) // strange (ZTM)
-						{
-							// TODO don't know what to do
-						}
-						else if (type == 128) // strange (SEPTA)
-						{
-							// TODO don't know what to do
+							final Location location = jsonGetStop(reader, uri);
+							if (location != null)
+								results.add(location);
 						}
 						else
 						{
-							throw new IllegalStateException("unknown type " + type + " on " + uri);
+							reader.skipValue();
 						}
 					}
+					reader.endArray();
+				}
+				else
+				{
+					reader.skipValue();
 				}
-
-				return results;
-			}
-			catch (final JSONException x)
-			{
-				x.printStackTrace();
-				throw new RuntimeException("cannot parse: '" + json + "' on " + uri, x);
 			}
+			reader.endObject();
+
+			if (!hasSuggestions)
+				throw new JSONException("no suggestions");
+
+			return results;
+		}
+		catch (final JSONException x)
+		{
+			x.printStackTrace();
+			throw new RuntimeException("cannot parse: " + uri, x);
+		}
+		finally
+		{
+			if (reader != null)
+				reader.close();
+		}
+	}
+
+	private Location jsonGetStop(final JsonReader reader, final String uri) throws IOException, JSONException
+	{
+		String type = null;
+		String value = null;
+		String id = null;
+		int lat = 0;
+		int lon = 0;
+
+		reader.beginObject();
+		while (reader.hasNext())
+		{
+			final String name = reader.nextName();
+			if ("type".equals(name))
+				type = reader.nextString();
+			else if ("value".equals(name))
+				value = reader.nextString();
+			else if ("id".equals(name))
+				id = reader.nextString();
+			else if ("ycoord".equals(name))
+				lat = reader.nextInt(0);
+			else if ("xcoord".equals(name))
+				lon = reader.nextInt(0);
+			else
+				reader.skipValue();
+		}
+		reader.endObject();
+
+		if (type == null || value == null || id == null)
+			throw new JSONException("incomplete suggestion on " + uri);
+
+		int localId = 0;
+		final Matcher m = P_AJAX_GET_STOPS_ID.matcher(id);
+		if (m.matches())
+			localId = Integer.parseInt(m.group(1));
+
+		final int iType = Integer.parseInt(type);
+
+		if (iType == 1) // station
+		{
+			final String[] placeAndName = splitPlaceAndName(value);
+			return new Location(LocationType.STATION, localId, lat, lon, placeAndName[0], placeAndName[1]);
+		}
+		else if (iType == 2) // address
+		{
+			final String[] placeAndName = splitPlaceAndName(value);
+			return new Location(LocationType.ADDRESS, 0, lat, lon, placeAndName[0], placeAndName[1]);
+		}
+		else if (iType == 4) // poi
+		{
+			return new Location(LocationType.POI, localId, lat, lon, null, value);
+		}
+		else if (iType == 71) // strange (VBN)
+		{
+			// TODO don't know what to do
+			return null;
+		}
+		else if (iType == 87) // strange (ZTM)
+		{
+			// TODO don't know what to do
+			return null;
+		}
+		else if (iType == 128) // strange (SEPTA)
+		{
+			// TODO don't know what to do
+			return null;
 		}
 		else
 		{
-			throw new RuntimeException("cannot parse: '" + page + "' on " + uri);
+			throw new IllegalStateException("unknown type " + type + " on " + uri);
 		}
 	}
 
 	protected final List<Location> xmlLocationList(final String uri) throws IOException
 	{
 		Reader reader = null;
+		XmlPullParser pp = null;
 
 		try
 		{
-			reader = new InputStreamReader(ParserUtils.scrapeInputStream(uri), UTF_8);
+			reader = new InputStreamReader(ParserUtils.scrapeInputStream(httpTransport(), uri), UTF_8);
 
-			final XmlPullParserFactory factory = XmlPullParserFactory.newInstance(System.getProperty(XmlPullParserFactory.PROPERTY_NAME), null);
-			final XmlPullParser pp = factory.newPullParser();
-			pp.setInput(reader);
+			pp = XmlPullParserPool.DEFAULT.obtain(reader);
 
 			final List<Location> results = new ArrayList<Location>();
 
@@ -467,6 +523,7 @@ public abstract class AbstractHafasProvider extends AbstractNetworkProvider
 		}
 		finally
 		{
+			XmlPullParserPool.DEFAULT.release(pp);
 			if (reader != null)
 				reader.close();
 		}
@@ -483,14 +540,14 @@ public abstract class AbstractHafasProvider extends AbstractNetworkProvider
 		// ParserUtils.printXml(ParserUtils.scrape(apiUri, true, wrappedRequest, xmlMlcResEncoding, null));
 
 		Reader reader = null;
+		XmlPullParser pp = null;
 
 		try
 		{
-			reader = new InputStreamReader(ParserUtils.scrapeInputStream(apiUri, wrappedRequest, xmlMlcResEncoding, null, 3), xmlMlcResEncoding);
+			reader = new InputStreamReader(ParserUtils.scrapeInputStream(httpTransport(), apiUri, wrappedRequest, xmlMlcResEncoding, null, 3),
+					xmlMlcResEncoding);
 
-			final XmlPullParserFactory factory = XmlPullParserFactory.newInstance(System.getProperty(XmlPullParserFactory.PROPERTY_NAME), null);
-			final XmlPullParser pp = factory.newPullParser();
-			pp.setInput(reader);
+			pp = XmlPullParserPool.DEFAULT.obtain(reader);
 
 			final List<Location> results = new ArrayList<Location>();
 
@@ -551,6 +608,7 @@ public abstract class AbstractHafasProvider extends AbstractNetworkProvider
 		}
 		finally
 		{
+			XmlPullParserPool.DEFAULT.release(pp);
 			if (reader != null)
 				reader.close();
 		}
@@ -560,22 +618,22 @@ public abstract class AbstractHafasProvider extends AbstractNetworkProvider
 
 	protected QueryDeparturesResult xmlQueryDepartures(final String uri, final int stationId) throws IOException
 	{
-		StringReplaceReader reader = null;
+		Reader reader = null;
+		XmlPullParser pp = null;
 
 		try
 		{
 			// work around unparsable XML
-			reader = new StringReplaceReader(new InputStreamReader(ParserUtils.scrapeInputStream(uri), ISO_8859_1), " & ", " &amp; ");
-			reader.replace("Ringbahn ->", "Ringbahn -&gt;"); // Berlin
-			reader.replace("Ringbahn <-", "Ringbahn &lt;-"); // Berlin
-			addCustomReplaces(reader);
+			final MultiReplaceReader replaceReader = new MultiReplaceReader(new InputStreamReader(ParserUtils.scrapeInputStream(httpTransport(), uri),
+					ISO_8859_1), " & ", " &amp; ");
+			replaceReader.replace("Ringbahn ->", "Ringbahn -&gt;"); // Berlin
+			replaceReader.replace("Ringbahn <-", "Ringbahn &lt;-"); // Berlin
+			reader = addCustomReplaces(replaceReader);
 
 			// System.out.println(uri);
 			// ParserUtils.printFromReader(reader);
 
-			final XmlPullParserFactory factory = XmlPullParserFactory.newInstance(System.getProperty(XmlPullParserFactory.PROPERTY_NAME), null);
-			final XmlPullParser pp = factory.newPullParser();
-			pp.setInput(reader);
+			pp = XmlPullParserPool.DEFAULT.obtain(reader);
 
 			pp.nextTag();
 
@@ -684,7 +742,7 @@ public abstract class AbstractHafasProvider extends AbstractNetworkProvider
 					final Location destination = new Location(destinationId > 0 ? LocationType.STATION : LocationType.ANY, destinationId, null,
 							destinationName);
 
-					final Line prodLine = parseLineAndType(prod);
+					final Line prodLine = parseLineAndTypeCached(prod);
 					final Line line;
 					if (classStr != null)
 					{
@@ -750,13 +808,21 @@ public abstract class AbstractHafasProvider extends AbstractNetworkProvider
 		}
 		finally
 		{
+			XmlPullParserPool.DEFAULT.release(pp);
 			if (reader != null)
 				reader.close();
 		}
 	}
 
-	protected void addCustomReplaces(final StringReplaceReader reader)
+	/**
+	 * Hook for provider specific workarounds of unparsable departures XML. Replacements that depend on each other's
+	 * order should be chained using {@link StringReplaceReader}.
+	 *
+	 * @return the given reader, or a reader filtering it
+	 */
+	protected Reader addCustomReplaces(final Reader reader)
 	{
+		return reader;
 	}
 
 	protected void appendConnectionsQueryUri(final StringBuilder uri, final Location from, final Location via, final Location to, final Date date,
@@ -933,14 +999,13 @@ public abstract class AbstractHafasProvider extends AbstractNetworkProvider
 		// ParserUtils.printXml(ParserUtils.scrape(apiUri, true, wrap(request), null, null));
 
 		Reader reader = null;
+		XmlPullParser pp = null;
 
 		try
 		{
-			reader = new InputStreamReader(ParserUtils.scrapeInputStream(apiUri, wrap(request, null), null, null, 3), ISO_8859_1);
+			reader = new InputStreamReader(ParserUtils.scrapeInputStream(httpTransport(), apiUri, wrap(request, null), null, null, 3), ISO_8859_1);
 
-			final XmlPullParserFactory factory = XmlPullParserFactory.newInstance(System.getProperty(XmlPullParserFactory.PROPERTY_NAME), null);
-			final XmlPullParser pp = factory.newPullParser();
-			pp.setInput(reader);
+			pp = XmlPullParserPool.DEFAULT.obtain(reader);
 
 			assertResC(pp);
 			final String product = XmlPullUtil.attr(pp, "prod").split(" ")[0];
@@ -1178,7 +1243,7 @@ public abstract class AbstractHafasProvider extends AbstractNetworkProvider
 						if (category == null)
 							category = shortCategory;
 
-						line = parseLine(category, name, wheelchairAccess);
+						line = parseLineCached(category, name, wheelchairAccess);
 					}
 					else if (tag.equals("Walk") || tag.equals("Transfer") || tag.equals("GisRoute"))
 					{
@@ -1277,6 +1342,7 @@ public abstract class AbstractHafasProvider extends AbstractNetworkProvider
 		}
 		finally
 		{
+			XmlPullParserPool.DEFAULT.release(pp);
 			if (reader != null)
 				reader.close();
 		}
@@ -1318,43 +1384,56 @@ public abstract class AbstractHafasProvider extends AbstractNetworkProvider
 		return attributeVariants;
 	}
 
-	private static final Pattern P_DATE = Pattern.compile("(\\d{4})(\\d{2})(\\d{2})");
-
 	private static final void parseDate(final Calendar calendar, final CharSequence str)
 	{
-		final Matcher m = P_DATE.matcher(str);
-		if (!m.matches())
+		// yyyymmdd
+		if (str.length() != 8)
 			throw new RuntimeException("cannot parse: '" + str + "'");
 
-		calendar.set(Calendar.YEAR, Integer.parseInt(m.group(1)));
-		calendar.set(Calendar.MONTH, Integer.parseInt(m.group(2)) - 1);
-		calendar.set(Calendar.DAY_OF_MONTH, Integer.parseInt(m.group(3)));
-	}
+		final int year = ParserUtils.digits(str, 0, 4);
+		final int month = ParserUtils.digits(str, 4, 6);
+		final int day = ParserUtils.digits(str, 6, 8);
+		if (year == -1 || month == -1 || day == -1)
+			throw new RuntimeException("cannot parse: '" + str + "'");
 
-	private static final Pattern P_TIME = Pattern.compile("(\\d+)d(\\d+):(\\d{2}):(\\d{2})");
+		calendar.set(Calendar.YEAR, year);
+		calendar.set(Calendar.MONTH, month - 1);
+		calendar.set(Calendar.DAY_OF_MONTH, day);
+	}
 
 	private static void parseTime(final Calendar calendar, final CharSequence str)
 	{
-		final Matcher m = P_TIME.matcher(str);
-		if (!m.matches())
+		// ddDhh:mm:ss, the day being an offset
+		final int length = str.length();
+		if (length < 9)
+			throw new IllegalArgumentException("cannot parse: '" + str + "'");
+
+		final int dayEnd = ParserUtils.indexOf(str, 'd', 0);
+		final int hourEnd = length - 6;
+		final int days = ParserUtils.digits(str, 0, dayEnd);
+		final int hour = dayEnd >= 0 ? ParserUtils.digits(str, dayEnd + 1, hourEnd) : -1;
+		final int minute = hourEnd > 0 && str.charAt(hourEnd) == ':' ? ParserUtils.digits(str, hourEnd + 1, hourEnd + 3) : -1;
+		final int second = str.charAt(length - 3) == ':' ? ParserUtils.digits(str, length - 2, length) : -1;
+		if (days == -1 || hour == -1 || minute == -1 || second == -1)
 			throw new IllegalArgumentException("cannot parse: '" + str + "'");
 
-		calendar.set(Calendar.HOUR_OF_DAY, Integer.parseInt(m.group(2)));
-		calendar.set(Calendar.MINUTE, Integer.parseInt(m.group(3)));
-		calendar.set(Calendar.SECOND, Integer.parseInt(m.group(4)));
+		calendar.set(Calendar.HOUR_OF_DAY, hour);
+		calendar.set(Calendar.MINUTE, minute);
+		calendar.set(Calendar.SECOND, second);
 		calendar.set(Calendar.MILLISECOND, 0);
-		calendar.add(Calendar.DAY_OF_MONTH, Integer.parseInt(m.group(1)));
+		calendar.add(Calendar.DAY_OF_MONTH, days);
 	}
 
-	private static final Pattern P_DURATION = Pattern.compile("(\\d+):(\\d{2})");
-
 	private static final int parseDuration(final CharSequence str)
 	{
-		final Matcher m = P_DURATION.matcher(str);
-		if (m.matches())
-			return Integer.parseInt(m.group(1)) * 60 + Integer.parseInt(m.group(2));
-		else
+		// h:mm, hours not limited
+		final int colon = str.length() - 3;
+		final int hours = colon > 0 && str.charAt(colon) == ':' ? ParserUtils.digits(str, 0, colon) : -1;
+		final int minutes = hours != -1 ? ParserUtils.digits(str, colon + 1, colon + 3) : -1;
+		if (hours == -1 || minutes == -1)
 			throw new IllegalArgumentException("cannot parse duration: '" + str + "'");
+
+		return hours * 60 + minutes;
 	}
 
 	private static final String locationXml(final Location location)
@@ -1420,7 +1499,7 @@ public abstract class AbstractHafasProvider extends AbstractNetworkProvider
 	
 	private QueryConnectionsResult queryConnectionsBinary(final String uri) throws IOException
 	{
-		char[] buf = ParserUtils.scrape(uri, null, ISO_8859_1, null).toString().toCharArray();
+		final ByteBuffer buf = ParserUtils.scrapeByteBuffer(httpTransport(), uri);
 		HafasBinaryFile f = new HafasBinaryFile(buf, timeZone());
 		
 		final ResultHeader header = new ResultHeader(SERVER_PRODUCT);
@@ -1429,16 +1508,20 @@ public abstract class AbstractHafasProvider extends AbstractNetworkProvider
 		final Location resTo = f.getTo();
 		
 		final List<Connection> connections = new ArrayList<Connection>();
-		for (HafasBinaryFile.Connection c : f.getConnections())
+		final int numConnections = f.getNumConnections();
+		for (int iConnection = 0; iConnection < numConnections; iConnection++)
 		{
+			final HafasBinaryFile.Connection c = f.getConnection(iConnection);
 			final String id = c.getAttributes().get("ConnectionId");
 			final Location departure = c.getDepartureStation();
 			final Location arrival = c.getArrivalStation();
 			final int numChanges = c.getNumChanges();
 			
 			List<Part> parts = new ArrayList<Part>();
-			for (HafasBinaryFile.Connection.Part p : c.getParts())
+			final int numParts = c.getNumParts();
+			for (int iPart = 0; iPart < numParts; iPart++)
 			{
+				final HafasBinaryFile.Connection.Part p = c.getPart(iPart);
 				final int partType = p.getType();
 				final Location partDeparture = p.getDepartureStation();
 				final Location partArrival = p.getArrivalStation();
@@ -1463,7 +1546,7 @@ public abstract class AbstractHafasProvider extends AbstractNetworkProvider
 					final Date plannedArrivalTime = p.getPlannedArrivalTime();
 					final Date predictedArrivalTime = p.getEstimatedArrivalTime();
 					
-					final Line line = parseLineWithoutType(p.getLine());
+					final Line line = parseLineWithoutTypeCached(p.getLine());
 					final Location direction = p.getDirection();
 					
 					final String plannedDeparturePlatform = p.getPlannedDeparturePlatform(); 
@@ -1477,9 +1560,11 @@ public abstract class AbstractHafasProvider extends AbstractNetworkProvider
 							? estimatedArrivalPlatform : plannedArrivalPlatform;
 					
 					
-					final List<Stop> intermediateStops = new ArrayList<Stop>();
-					for (HafasBinaryFile.Connection.Part.Stop s : p.getStops())
+					final int numStops = p.getNumStops();
+					final List<Stop> intermediateStops = new ArrayList<Stop>(numStops);
+					for (int iStop = 0; iStop < numStops; iStop++)
 					{
+						final HafasBinaryFile.Connection.Part.Stop s = p.getStop(iStop);
 						intermediateStops.add(new Stop(s.getStation(), s.getArrivalPlatform(), s.getArrivalTime()));
 					}
 					
@@ -1536,7 +1621,7 @@ public abstract class AbstractHafasProvider extends AbstractNetworkProvider
 	protected final NearbyStationsResult xmlNearbyStations(final String uri) throws IOException
 	{
 		// scrape page
-		final CharSequence page = ParserUtils.scrape(uri);
+		final CharSequence page = ParserUtils.scrape(httpTransport(), uri);
 
 		final List<Location> stations = new ArrayList<Location>();
 
@@ -1591,33 +1676,66 @@ public abstract class AbstractHafasProvider extends AbstractNetworkProvider
 
 	protected final NearbyStationsResult jsonNearbyStations(final String uri) throws IOException
 	{
-		final CharSequence page = ParserUtils.scrape(uri, null, jsonEncoding, null);
+		return jsonNearbyStations(uri, 0);
+	}
+
+	/**
+	 * @param maxStations
+	 *            stop collecting stations once this many have been found, or 0 for no limit; the rest of the response is
+	 *            still read, so the connection can be reused
+	 */
+	protected final NearbyStationsResult jsonNearbyStations(final String uri, final int maxStations) throws IOException
+	{
+		JsonReader reader = null;
 
 		try
 		{
-			final JSONObject head = new JSONObject(page.toString());
-			final int error = head.getInt("error");
-			if (error == 0)
-			{
-				final JSONArray aStops = head.getJSONArray("stops");
-				final int nStops = aStops.length();
-				final List<Location> stations = new ArrayList<Location>(nStops);
+			reader = new JsonReader(ParserUtils.scrapeReader(httpTransport(), uri, jsonEncoding));
+
+			Integer error = null;
+			List<Location> stations = null;
 
-				for (int i = 0; i < nStops; i++)
+			reader.beginObject();
+			while (reader.hasNext())
+			{
+				final String name = reader.nextName();
+				if ("error".equals(name))
+				{
+					error = reader.nextInt();
+				}
+				else if ("stops".equals(name))
 				{
-					final JSONObject stop = aStops.optJSONObject(i);
-					final int id = stop.getInt("extId");
-					final String name = ParserUtils.resolveEntities(stop.getString("name"));
-					final int lat = stop.getInt("y");
-					final int lon = stop.getInt("x");
-					final int stopWeight = stop.optInt("stopweight", -1);
-
-					if (stopWeight != 0)
+					stations = new ArrayList<Location>();
+					reader.beginArray();
+					while (reader.hasNext())
 					{
-						final String[] placeAndName = splitPlaceAndName(name);
-						stations.add(new Location(LocationType.STATION, id, lat, lon, placeAndName[0], placeAndName[1]));
+						// no need to parse the rest
+						if (maxStations > 0 && stations.size() >= maxStations)
+						{
+							reader.skipValue();
+							continue;
+						}
+
+						final Location station = jsonNearbyStation(reader);
+						if (station != null)
+							stations.add(station);
 					}
+					reader.endArray();
 				}
+				else
+				{
+					reader.skipValue();
+				}
+			}
+			reader.endObject();
+
+			if (error == null)
+				throw new JSONException("no error code");
+
+			if (error == 0)
+			{
+				if (stations == null)
+					throw new JSONException("no stops");
 
 				return new NearbyStationsResult(null, stations);
 			}
@@ -1633,59 +1751,280 @@ public abstract class AbstractHafasProvider extends AbstractNetworkProvider
 		catch (final JSONException x)
 		{
 			x.printStackTrace();
-			throw new RuntimeException("cannot parse: '" + page + "' on " + uri, x);
+			throw new RuntimeException("cannot parse: " + uri, x);
+		}
+		finally
+		{
+			if (reader != null)
+				reader.close();
 		}
 	}
 
-	private final static Pattern P_NEARBY_COARSE = Pattern.compile("<tr class=\"(zebra[^\"]*)\">(.*?)</tr>", Pattern.DOTALL);
+	private Location jsonNearbyStation(final JsonReader reader) throws IOException, JSONException
+	{
+		Integer id = null;
+		String name = null;
+		Integer lat = null;
+		Integer lon = null;
+		int stopWeight = -1;
+
+		reader.beginObject();
+		while (reader.hasNext())
+		{
+			final String key = reader.nextName();
+			if ("extId".equals(key))
+				id = reader.nextInt();
+			else if ("name".equals(key))
+				name = reader.nextString();
+			else if ("y".equals(key))
+				lat = reader.nextInt();
+			else if ("x".equals(key))
+				lon = reader.nextInt();
+			else if ("stopweight".equals(key))
+				stopWeight = reader.nextInt(-1);
+			else
+				reader.skipValue();
+		}
+		reader.endObject();
+
+		if (id == null || name == null || lat == null || lon == null)
+			throw new JSONException("incomplete stop");
+
+		if (stopWeight == 0)
+			return null;
+
+		final String[] placeAndName = splitPlaceAndName(ParserUtils.resolveEntities(name));
+		return new Location(LocationType.STATION, id, lat, lon, placeAndName[0], placeAndName[1]);
+	}
+
 	private final static Pattern P_NEARBY_FINE_COORDS = Pattern
 			.compile("REQMapRoute0\\.Location0\\.X=(-?\\d+)&(?:amp;)?REQMapRoute0\\.Location0\\.Y=(-?\\d+)&");
-	private final static Pattern P_NEARBY_FINE_LOCATION = Pattern.compile("[\\?&;]input=(\\d+)&[^\"]*\">([^<]*)<");
+	private final static Pattern P_NEARBY_FINE_LOCATION = Pattern.compile("[\\?&;]input=(\\d+)&");
 
 	protected final NearbyStationsResult htmlNearbyStations(final String uri) throws IOException
 	{
 		final List<Location> stations = new ArrayList<Location>();
 
-		final CharSequence page = ParserUtils.scrape(uri);
-		String oldZebra = null;
+		Reader reader = null;
+
+		try
+		{
+			reader = ParserUtils.scrapeReader(httpTransport(), uri, ISO_8859_1);
+			final HtmlTokenizer html = new HtmlTokenizer(reader);
+			String oldZebra = null;
+
+			while (html.next() != HtmlTokenizer.Token.END_DOCUMENT)
+			{
+				if (!html.isStartTag("tr"))
+					continue;
 
-		final Matcher mCoarse = P_NEARBY_COARSE.matcher(page);
+				final String zebra = html.getAttribute("class");
+				if (zebra == null || !zebra.startsWith("zebra"))
+					continue;
 
-		while (mCoarse.find())
+				if (oldZebra != null && zebra.equals(oldZebra))
+					throw new IllegalArgumentException("missed row? last:" + zebra);
+				else
+					oldZebra = zebra;
+
+				final Location station = htmlNearbyStation(html);
+				if (station == null)
+					throw new IllegalArgumentException("cannot parse row '" + zebra + "' on " + uri);
+
+				stations.add(station);
+			}
+		}
+		finally
 		{
-			final String zebra = mCoarse.group(1);
-			if (oldZebra != null && zebra.equals(oldZebra))
-				throw new IllegalArgumentException("missed row? last:" + zebra);
-			else
-				oldZebra = zebra;
+			if (reader != null)
+				reader.close();
+		}
 
-			final Matcher mFineLocation = P_NEARBY_FINE_LOCATION.matcher(mCoarse.group(2));
+		return new NearbyStationsResult(null, stations);
+	}
 
-			if (mFineLocation.find())
+	private Location htmlNearbyStation(final HtmlTokenizer html) throws IOException
+	{
+		int parsedId = 0;
+		String parsedName = null;
+		boolean expectName = false;
+		int parsedLon = 0;
+		int parsedLat = 0;
+		boolean hasCoords = false;
+
+		while (html.next() != HtmlTokenizer.Token.END_DOCUMENT && !html.isEndTag("tr"))
+		{
+			if (expectName)
 			{
-				int parsedLon = 0;
-				int parsedLat = 0;
-				final int parsedId = Integer.parseInt(mFineLocation.group(1));
-				final String parsedName = ParserUtils.resolveEntities(mFineLocation.group(2));
+				// name is the text directly following the linking tag
+				expectName = false;
+				parsedName = html.getToken() == HtmlTokenizer.Token.TEXT ? html.getText() : "";
+			}
+
+			if (html.getToken() != HtmlTokenizer.Token.START_TAG)
+				continue;
 
-				final Matcher mFineCoords = P_NEARBY_FINE_COORDS.matcher(mCoarse.group(2));
+			for (int i = 0; i < html.getAttributeCount(); i++)
+			{
+				final String value = html.getAttributeValue(i);
 
-				if (mFineCoords.find())
+				if (parsedName == null && !expectName)
 				{
-					parsedLon = Integer.parseInt(mFineCoords.group(1));
-					parsedLat = Integer.parseInt(mFineCoords.group(2));
+					final Matcher mFineLocation = P_NEARBY_FINE_LOCATION.matcher(value);
+					if (mFineLocation.find())
+					{
+						parsedId = Integer.parseInt(mFineLocation.group(1));
+						expectName = true;
+					}
 				}
 
-				final String[] placeAndName = splitPlaceAndName(parsedName);
-				stations.add(new Location(LocationType.STATION, parsedId, parsedLat, parsedLon, placeAndName[0], placeAndName[1]));
+				if (!hasCoords)
+				{
+					final Matcher mFineCoords = P_NEARBY_FINE_COORDS.matcher(value);
+					if (mFineCoords.find())
+					{
+						parsedLon = Integer.parseInt(mFineCoords.group(1));
+						parsedLat = Integer.parseInt(mFineCoords.group(2));
+						hasCoords = true;
+					}
+				}
 			}
-			else
+		}
+
+		if (expectName)
+			parsedName = "";
+
+		if (parsedName == null)
+			return null;
+
+		final String[] placeAndName = splitPlaceAndName(ParserUtils.resolveEntities(parsedName));
+		return new Location(LocationType.STATION, parsedId, parsedLat, parsedLon, placeAndName[0], placeAndName[1]);
+	}
+
+	/**
+	 * One row of an HTML station board, with all values raw as they appear on the page.
+	 */
+	protected static final class HtmlDepartureRow
+	{
+		public String plannedTime;
+		public String prognosis;
+		public String lineType;
+		public String line;
+		public int destinationId;
+		public String destinationName;
+		public String position;
+	}
+
+	private static final Pattern P_HTML_DEPARTURE_PRODUCT = Pattern.compile("/(\\w+)_pic\\.gif$");
+	private static final Pattern P_HTML_DEPARTURE_DESTINATION = Pattern.compile("stboard\\.exe/\\w+\\?input=(\\d+)&");
+	private static final Pattern P_HTML_DEPARTURE_POSITION = Pattern.compile(ParserUtils.P_PLATFORM);
+
+	/**
+	 * Parses a {@code depboard} row of an HTML station board. The current token must be the start tag of the row.
+	 *
+	 * @param timePattern
+	 *            pattern of the planned time, which is taken from the first cell matching it
+	 * @param lineFromAlt
+	 *            take the line from the alt text of the product image rather than from the text following it
+	 * @return parsed row, or {@code null} if the row lacks time, product or destination
+	 */
+	protected final HtmlDepartureRow htmlDepartureRow(final HtmlTokenizer html, final Pattern timePattern, final boolean lineFromAlt)
+			throws IOException
+	{
+		final HtmlDepartureRow row = new HtmlDepartureRow();
+		boolean expectLine = false;
+
+		while (html.next() != HtmlTokenizer.Token.END_DOCUMENT && !html.isEndTag("tr"))
+		{
+			if (expectLine)
+			{
+				// line is the text directly following the product image
+				expectLine = false;
+				row.line = html.getToken() == HtmlTokenizer.Token.TEXT ? html.getText().trim() : "";
+			}
+
+			if (html.isStartTag("td"))
 			{
-				throw new IllegalArgumentException("cannot parse '" + mCoarse.group(2) + "' on " + uri);
+				final String cellClass = html.getAttribute("class");
+
+				if (row.plannedTime == null)
+				{
+					final String text = html.nextText().trim();
+					if (timePattern.matcher(text).matches())
+						row.plannedTime = text;
+				}
+				else if (cellClass != null && cellClass.contains("prognosis"))
+				{
+					row.prognosis = htmlPrognosis(html);
+				}
+				else if ("center sepline top".equals(cellClass) && row.position == null)
+				{
+					final String text = firstLine(html.nextText());
+					if (!"&nbsp;".equals(text) && P_HTML_DEPARTURE_POSITION.matcher(text).matches())
+						row.position = text;
+				}
+			}
+			else if (html.isStartTag("img") && row.lineType == null)
+			{
+				final String src = html.getAttribute("src");
+				final Matcher mProduct = src != null ? P_HTML_DEPARTURE_PRODUCT.matcher(src) : null;
+				if (mProduct != null && mProduct.find())
+				{
+					row.lineType = mProduct.group(1);
+					if (lineFromAlt)
+					{
+						final String alt = html.getAttribute("alt");
+						row.line = alt != null ? alt.trim() : "";
+					}
+					else
+					{
+						expectLine = true;
+					}
+				}
+			}
+			else if (html.isStartTag("a") && row.lineType != null && row.destinationName == null)
+			{
+				final String href = html.getAttribute("href");
+				final Matcher mDestination = href != null ? P_HTML_DEPARTURE_DESTINATION.matcher(href) : null;
+				if (mDestination != null && mDestination.find())
+				{
+					row.destinationId = Integer.parseInt(mDestination.group(1));
+					row.destinationName = html.nextText().trim();
+				}
 			}
 		}
 
-		return new NearbyStationsResult(null, stations);
+		if (expectLine)
+			row.line = "";
+
+		if (row.plannedTime == null || row.lineType == null || row.destinationName == null)
+			return null;
+
+		return row;
+	}
+
+	private static String htmlPrognosis(final HtmlTokenizer html) throws IOException
+	{
+		String prognosis = null;
+
+		while (html.next() != HtmlTokenizer.Token.END_DOCUMENT && !html.isEndTag("td"))
+		{
+			if (html.isStartTag("span"))
+			{
+				final String spanClass = html.getAttribute("class");
+				if (spanClass != null && spanClass.startsWith("rtLimit"))
+					prognosis = html.nextText().trim();
+			}
+		}
+
+		return prognosis;
+	}
+
+	private static String firstLine(final String text)
+	{
+		final String trimmed = text.trim();
+		final int newline = trimmed.indexOf('\n');
+		return newline >= 0 ? trimmed.substring(0, newline).trim() : trimmed;
 	}
 
 	private static final Pattern P_LINE_SBAHN = Pattern.compile("SN?\\d*");
@@ -1693,356 +2032,253 @@ public abstract class AbstractHafasProvider extends AbstractNetworkProvider
 	private static final Pattern P_LINE_BUS = Pattern.compile("BUS\\w{0,5}");
 	private static final Pattern P_LINE_TAXI = Pattern.compile("TAX\\w{0,5}");
 
-	protected char normalizeType(final String type)
+	private static final Map<String, Character> DEFAULT_PRODUCT_TYPES;
+
+	static
 	{
-		final String ucType = type.toUpperCase();
+		final Map<String, Character> types = new HashMap<String, Character>();
 
 		// Intercity
-		if ("EC".equals(ucType)) // EuroCity
-			return 'I';
-		if ("EN".equals(ucType)) // EuroNight
-			return 'I';
-		if ("D".equals(ucType)) // EuroNight, Sitzwagenabteil
-			return 'I';
-		if ("EIC".equals(ucType)) // Ekspres InterCity, Polen
-			return 'I';
-		if ("ICE".equals(ucType)) // InterCityExpress
-			return 'I';
-		if ("IC".equals(ucType)) // InterCity
-			return 'I';
-		if ("ICT".equals(ucType)) // InterCity
-			return 'I';
-		if ("ICN".equals(ucType)) // Intercity-Neigezug, Schweiz
-			return 'I';
-		if ("CNL".equals(ucType)) // CityNightLine
-			return 'I';
-		if ("OEC".equals(ucType)) // ÖBB-EuroCity
-			return 'I';
-		if ("OIC".equals(ucType)) // ÖBB-InterCity
-			return 'I';
-		if ("RJ".equals(ucType)) // RailJet, Österreichische Bundesbahnen
-			return 'I';
-		if ("THA".equals(ucType)) // Thalys
-			return 'I';
-		if ("TGV".equals(ucType)) // Train à Grande Vitesse
-			return 'I';
-		if ("DNZ".equals(ucType)) // Nachtzug Basel-Moskau
-			return 'I';
-		if ("AIR".equals(ucType)) // Generic Flight
-			return 'I';
-		if ("ECB".equals(ucType)) // EC, Verona-München
-			return 'I';
-		if ("LYN".equals(ucType)) // Dänemark
-			return 'I';
-		if ("NZ".equals(ucType)) // Schweden, Nacht
-			return 'I';
-		if ("INZ".equals(ucType)) // Nacht
-			return 'I';
-		if ("RHI".equals(ucType)) // ICE
-			return 'I';
-		if ("RHT".equals(ucType)) // TGV
-			return 'I';
-		if ("TGD".equals(ucType)) // TGV
-			return 'I';
-		if ("IRX".equals(ucType)) // IC
-			return 'I';
-		if ("ES".equals(ucType)) // Eurostar Italia
-			return 'I';
-		if ("EST".equals(ucType)) // Eurostar Frankreich
-			return 'I';
-		if ("EM".equals(ucType)) // Euromed, Barcelona-Alicante, Spanien
-			return 'I';
-		if ("A".equals(ucType)) // Spain, Highspeed
-			return 'I';
-		if ("AVE".equals(ucType)) // Alta Velocidad Española, Spanien
-			return 'I';
-		if ("ARC".equals(ucType)) // Arco (Renfe), Spanien
-			return 'I';
-		if ("ALS".equals(ucType)) // Alaris (Renfe), Spanien
-			return 'I';
-		if ("ATR".equals(ucType)) // Altaria (Renfe), Spanien
-			return 'R';
-		if ("TAL".equals(ucType)) // Talgo, Spanien
-			return 'I';
-		if ("TLG".equals(ucType)) // Spanien, Madrid
-			return 'I';
-		if ("HOT".equals(ucType)) // Spanien, Nacht
-			return 'I';
-		if ("X2".equals(ucType)) // X2000 Neigezug, Schweden
-			return 'I';
-		if ("X".equals(ucType)) // InterConnex
-			return 'I';
-		if ("FYR".equals(ucType)) // Fyra, Amsterdam-Schiphol-Rotterdam
-			return 'I';
-		if ("SC".equals(ucType)) // SuperCity, Tschechien
-			return 'I';
-		if ("FLUG".equals(ucType))
-			return 'I';
-		if ("TLK".equals(ucType)) // Tanie Linie Kolejowe, Polen
-			return 'I';
-		if ("INT".equals(ucType)) // Zürich-Brüssel - Budapest-Istanbul
-			return 'I';
-		if ("HKX".equals(ucType)) // Hamburg-Koeln-Express
-			return 'I';
+		types.put("EC", 'I'); // EuroCity
+		types.put("EN", 'I'); // EuroNight
+		types.put("D", 'I'); // EuroNight, Sitzwagenabteil
+		types.put("EIC", 'I'); // Ekspres InterCity, Polen
+		types.put("ICE", 'I'); // InterCityExpress
+		types.put("IC", 'I'); // InterCity
+		types.put("ICT", 'I'); // InterCity
+		types.put("ICN", 'I'); // Intercity-Neigezug, Schweiz
+		types.put("CNL", 'I'); // CityNightLine
+		types.put("OEC", 'I'); // ÖBB-EuroCity
+		types.put("OIC", 'I'); // ÖBB-InterCity
+		types.put("RJ", 'I'); // RailJet, Österreichische Bundesbahnen
+		types.put("THA", 'I'); // Thalys
+		types.put("TGV", 'I'); // Train à Grande Vitesse
+		types.put("DNZ", 'I'); // Nachtzug Basel-Moskau
+		types.put("AIR", 'I'); // Generic Flight
+		types.put("ECB", 'I'); // EC, Verona-München
+		types.put("LYN", 'I'); // Dänemark
+		types.put("NZ", 'I'); // Schweden, Nacht
+		types.put("INZ", 'I'); // Nacht
+		types.put("RHI", 'I'); // ICE
+		types.put("RHT", 'I'); // TGV
+		types.put("TGD", 'I'); // TGV
+		types.put("IRX", 'I'); // IC
+		types.put("ES", 'I'); // Eurostar Italia
+		types.put("EST", 'I'); // Eurostar Frankreich
+		types.put("EM", 'I'); // Euromed, Barcelona-Alicante, Spanien
+		types.put("A", 'I'); // Spain, Highspeed
+		types.put("AVE", 'I'); // Alta Velocidad Española, Spanien
+		types.put("ARC", 'I'); // Arco (Renfe), Spanien
+		types.put("ALS", 'I'); // Alaris (Renfe), Spanien
+		types.put("ATR", 'R'); // Altaria (Renfe), Spanien
+		types.put("TAL", 'I'); // Talgo, Spanien
+		types.put("TLG", 'I'); // Spanien, Madrid
+		types.put("HOT", 'I'); // Spanien, Nacht
+		types.put("X2", 'I'); // X2000 Neigezug, Schweden
+		types.put("X", 'I'); // InterConnex
+		types.put("FYR", 'I'); // Fyra, Amsterdam-Schiphol-Rotterdam
+		types.put("SC", 'I'); // SuperCity, Tschechien
+		types.put("FLUG", 'I');
+		types.put("TLK", 'I'); // Tanie Linie Kolejowe, Polen
+		types.put("INT", 'I'); // Zürich-Brüssel - Budapest-Istanbul
+		types.put("HKX", 'I'); // Hamburg-Koeln-Express
 
 		// Regional
-		if ("ZUG".equals(ucType)) // Generic Train
-			return 'R';
-		if ("R".equals(ucType)) // Generic Regional Train
-			return 'R';
-		if ("DPN".equals(ucType)) // Dritter Personen Nahverkehr
-			return 'R';
-		if ("RB".equals(ucType)) // RegionalBahn
-			return 'R';
-		if ("RE".equals(ucType)) // RegionalExpress
-			return 'R';
-		if ("IR".equals(ucType)) // Interregio
-			return 'R';
-		if ("IRE".equals(ucType)) // Interregio Express
-			return 'R';
-		if ("HEX".equals(ucType)) // Harz-Berlin-Express, Veolia
-			return 'R';
-		if ("WFB".equals(ucType)) // Westfalenbahn
-			return 'R';
-		if ("RT".equals(ucType)) // RegioTram
-			return 'R';
-		if ("REX".equals(ucType)) // RegionalExpress, Österreich
-			return 'R';
-		if ("OS".equals(ucType)) // Osobný vlak, Slovakia oder Osobní vlak, Czech Republic
-			return 'R';
-		if ("SP".equals(ucType)) // Spěšný vlak, Czech Republic
-			return 'R';
-		if ("EZ".equals(ucType)) // ÖBB ErlebnisBahn
-			return 'R';
-		if ("ARZ".equals(ucType)) // Auto-Reisezug Brig - Iselle di Trasquera
-			return 'R';
-		if ("OE".equals(ucType)) // Ostdeutsche Eisenbahn
-			return 'R';
-		if ("MR".equals(ucType)) // Märkische Regionalbahn
-			return 'R';
-		if ("PE".equals(ucType)) // Prignitzer Eisenbahn GmbH
-			return 'R';
-		if ("NE".equals(ucType)) // NEB Betriebsgesellschaft mbH
-			return 'R';
-		if ("MRB".equals(ucType)) // Mitteldeutsche Regiobahn
-			return 'R';
-		if ("ERB".equals(ucType)) // eurobahn (Keolis Deutschland)
-			return 'R';
-		if ("HLB".equals(ucType)) // Hessische Landesbahn
-			return 'R';
-		if ("VIA".equals(ucType))
-			return 'R';
-		if ("HSB".equals(ucType)) // Harzer Schmalspurbahnen
-			return 'R';
-		if ("OSB".equals(ucType)) // Ortenau-S-Bahn
-			return 'R';
-		if ("VBG".equals(ucType)) // Vogtlandbahn
-			return 'R';
-		if ("AKN".equals(ucType)) // AKN Eisenbahn AG
-			return 'R';
-		if ("OLA".equals(ucType)) // Ostseeland Verkehr
-			return 'R';
-		if ("UBB".equals(ucType)) // Usedomer Bäderbahn
-			return 'R';
-		if ("PEG".equals(ucType)) // Prignitzer Eisenbahn
-			return 'R';
-		if ("NWB".equals(ucType)) // NordWestBahn
-			return 'R';
-		if ("CAN".equals(ucType)) // cantus Verkehrsgesellschaft
-			return 'R';
-		if ("BRB".equals(ucType)) // ABELLIO Rail
-			return 'R';
-		if ("SBB".equals(ucType)) // Schweizerische Bundesbahnen
-			return 'R';
-		if ("VEC".equals(ucType)) // vectus Verkehrsgesellschaft
-			return 'R';
-		if ("TLX".equals(ucType)) // Trilex (Vogtlandbahn)
-			return 'R';
-		if ("HZL".equals(ucType)) // Hohenzollerische Landesbahn
-			return 'R';
-		if ("ABR".equals(ucType)) // Bayerische Regiobahn
-			return 'R';
-		if ("CB".equals(ucType)) // City Bahn Chemnitz
-			return 'R';
-		if ("WEG".equals(ucType)) // Württembergische Eisenbahn-Gesellschaft
-			return 'R';
-		if ("NEB".equals(ucType)) // Niederbarnimer Eisenbahn
-			return 'R';
-		if ("ME".equals(ucType)) // metronom Eisenbahngesellschaft
-			return 'R';
-		if ("MER".equals(ucType)) // metronom regional
-			return 'R';
-		if ("ALX".equals(ucType)) // Arriva-Länderbahn-Express
-			return 'R';
-		if ("EB".equals(ucType)) // Erfurter Bahn
-			return 'R';
-		if ("EBX".equals(ucType)) // Erfurter Bahn
-			return 'R';
-		if ("VEN".equals(ucType)) // Rhenus Veniro
-			return 'R';
-		if ("BOB".equals(ucType)) // Bayerische Oberlandbahn
-			return 'R';
-		if ("SBS".equals(ucType)) // Städtebahn Sachsen
-			return 'R';
-		if ("SES".equals(ucType)) // Städtebahn Sachsen Express
-			return 'R';
-		if ("EVB".equals(ucType)) // Eisenbahnen und Verkehrsbetriebe Elbe-Weser
-			return 'R';
-		if ("STB".equals(ucType)) // Süd-Thüringen-Bahn
-			return 'R';
-		if ("AG".equals(ucType)) // Ingolstadt-Landshut
-			return 'R';
-		if ("PRE".equals(ucType)) // Pressnitztalbahn
-			return 'R';
-		if ("DBG".equals(ucType)) // Döllnitzbahn GmbH
-			return 'R';
-		if ("SHB".equals(ucType)) // Schleswig-Holstein-Bahn
-			return 'R';
-		if ("NOB".equals(ucType)) // Nord-Ostsee-Bahn
-			return 'R';
-		if ("RTB".equals(ucType)) // Rurtalbahn
-			return 'R';
-		if ("BLB".equals(ucType)) // Berchtesgadener Land Bahn
-			return 'R';
-		if ("NBE".equals(ucType)) // Nordbahn Eisenbahngesellschaft
-			return 'R';
-		if ("SOE".equals(ucType)) // Sächsisch-Oberlausitzer Eisenbahngesellschaft
-			return 'R';
-		if ("SDG".equals(ucType)) // Sächsische Dampfeisenbahngesellschaft
-			return 'R';
-		if ("VE".equals(ucType)) // Lutherstadt Wittenberg
-			return 'R';
-		if ("DAB".equals(ucType)) // Daadetalbahn
-			return 'R';
-		if ("WTB".equals(ucType)) // Wutachtalbahn e.V.
-			return 'R';
-		if ("BE".equals(ucType)) // Grensland-Express
-			return 'R';
-		if ("ARR".equals(ucType)) // Ostfriesland
-			return 'R';
-		if ("HTB".equals(ucType)) // Hörseltalbahn
-			return 'R';
-		if ("FEG".equals(ucType)) // Freiberger Eisenbahngesellschaft
-			return 'R';
-		if ("NEG".equals(ucType)) // Norddeutsche Eisenbahngesellschaft Niebüll
-			return 'R';
-		if ("RBG".equals(ucType)) // Regental Bahnbetriebs GmbH
-			return 'R';
-		if ("MBB".equals(ucType)) // Mecklenburgische Bäderbahn Molli
-			return 'R';
-		if ("VEB".equals(ucType)) // Vulkan-Eifel-Bahn Betriebsgesellschaft
-			return 'R';
-		if ("LEO".equals(ucType)) // Chiemgauer Lokalbahn
-			return 'R';
-		if ("VX".equals(ucType)) // Vogtland Express
-			return 'R';
-		if ("MSB".equals(ucType)) // Mainschleifenbahn
-			return 'R';
-		if ("P".equals(ucType)) // Kasbachtalbahn
-			return 'R';
-		if ("ÖBA".equals(ucType)) // Öchsle-Bahn Betriebsgesellschaft
-			return 'R';
-		if ("KTB".equals(ucType)) // Kandertalbahn
-			return 'R';
-		if ("ERX".equals(ucType)) // erixx
-			return 'R';
-		if ("ATZ".equals(ucType)) // Autotunnelzug
-			return 'R';
-		if ("ATB".equals(ucType)) // Autoschleuse Tauernbahn
-			return 'R';
-		if ("CAT".equals(ucType)) // City Airport Train
-			return 'R';
-		if ("EXTRA".equals(ucType) || "EXT".equals(ucType)) // Extrazug
-			return 'R';
-		if ("KD".equals(ucType)) // Koleje Dolnośląskie (Niederschlesische Eisenbahn)
-			return 'R';
-		if ("KM".equals(ucType)) // Koleje Mazowieckie
-			return 'R';
-		if ("EX".equals(ucType)) // Polen
-			return 'R';
-		if ("PCC".equals(ucType)) // PCC Rail, Polen
-			return 'R';
-		if ("ZR".equals(ucType)) // ZSR (Slovakian Republic Railways)
-			return 'R';
-		if ("WB".equals(ucType)) // WESTbahn
-			return 'R';
-		if ("RNV".equals(ucType)) // Rhein-Neckar-Verkehr GmbH
-			return 'R';
-		if ("DWE".equals(ucType)) // Dessau-Wörlitzer Eisenbahn
-			return 'R';
-		if ("BKB".equals(ucType)) // Buckower Kleinbahn
-			return 'R';
-
-		// if ("E".equals(normalizedType)) // Eilzug, stimmt wahrscheinlich nicht
-		// return "R" + normalizedName;
+		types.put("ZUG", 'R'); // Generic Train
+		types.put("R", 'R'); // Generic Regional Train
+		types.put("DPN", 'R'); // Dritter Personen Nahverkehr
+		types.put("RB", 'R'); // RegionalBahn
+		types.put("RE", 'R'); // RegionalExpress
+		types.put("IR", 'R'); // Interregio
+		types.put("IRE", 'R'); // Interregio Express
+		types.put("HEX", 'R'); // Harz-Berlin-Express, Veolia
+		types.put("WFB", 'R'); // Westfalenbahn
+		types.put("RT", 'R'); // RegioTram
+		types.put("REX", 'R'); // RegionalExpress, Österreich
+		types.put("OS", 'R'); // Osobný vlak, Slovakia oder Osobní vlak, Czech Republic
+		types.put("SP", 'R'); // Spěšný vlak, Czech Republic
+		types.put("EZ", 'R'); // ÖBB ErlebnisBahn
+		types.put("ARZ", 'R'); // Auto-Reisezug Brig - Iselle di Trasquera
+		types.put("OE", 'R'); // Ostdeutsche Eisenbahn
+		types.put("MR", 'R'); // Märkische Regionalbahn
+		types.put("PE", 'R'); // Prignitzer Eisenbahn GmbH
+		types.put("NE", 'R'); // NEB Betriebsgesellschaft mbH
+		types.put("MRB", 'R'); // Mitteldeutsche Regiobahn
+		types.put("ERB", 'R'); // eurobahn (Keolis Deutschland)
+		types.put("HLB", 'R'); // Hessische Landesbahn
+		types.put("VIA", 'R');
+		types.put("HSB", 'R'); // Harzer Schmalspurbahnen
+		types.put("OSB", 'R'); // Ortenau-S-Bahn
+		types.put("VBG", 'R'); // Vogtlandbahn
+		types.put("AKN", 'R'); // AKN Eisenbahn AG
+		types.put("OLA", 'R'); // Ostseeland Verkehr
+		types.put("UBB", 'R'); // Usedomer Bäderbahn
+		types.put("PEG", 'R'); // Prignitzer Eisenbahn
+		types.put("NWB", 'R'); // NordWestBahn
+		types.put("CAN", 'R'); // cantus Verkehrsgesellschaft
+		types.put("BRB", 'R'); // ABELLIO Rail
+		types.put("SBB", 'R'); // Schweizerische Bundesbahnen
+		types.put("VEC", 'R'); // vectus Verkehrsgesellschaft
+		types.put("TLX", 'R'); // Trilex (Vogtlandbahn)
+		types.put("HZL", 'R'); // Hohenzollerische Landesbahn
+		types.put("ABR", 'R'); // Bayerische Regiobahn
+		types.put("CB", 'R'); // City Bahn Chemnitz
+		types.put("WEG", 'R'); // Württembergische Eisenbahn-Gesellschaft
+		types.put("NEB", 'R'); // Niederbarnimer Eisenbahn
+		types.put("ME", 'R'); // metronom Eisenbahngesellschaft
+		types.put("MER", 'R'); // metronom regional
+		types.put("ALX", 'R'); // Arriva-Länderbahn-Express
+		types.put("EB", 'R'); // Erfurter Bahn
+		types.put("EBX", 'R'); // Erfurter Bahn
+		types.put("VEN", 'R'); // Rhenus Veniro
+		types.put("BOB", 'R'); // Bayerische Oberlandbahn
+		types.put("SBS", 'R'); // Städtebahn Sachsen
+		types.put("SES", 'R'); // Städtebahn Sachsen Express
+		types.put("EVB", 'R'); // Eisenbahnen und Verkehrsbetriebe Elbe-Weser
+		types.put("STB", 'R'); // Süd-Thüringen-Bahn
+		types.put("AG", 'R'); // Ingolstadt-Landshut
+		types.put("PRE", 'R'); // Pressnitztalbahn
+		types.put("DBG", 'R'); // Döllnitzbahn GmbH
+		types.put("SHB", 'R'); // Schleswig-Holstein-Bahn
+		types.put("NOB", 'R'); // Nord-Ostsee-Bahn
+		types.put("RTB", 'R'); // Rurtalbahn
+		types.put("BLB", 'R'); // Berchtesgadener Land Bahn
+		types.put("NBE", 'R'); // Nordbahn Eisenbahngesellschaft
+		types.put("SOE", 'R'); // Sächsisch-Oberlausitzer Eisenbahngesellschaft
+		types.put("SDG", 'R'); // Sächsische Dampfeisenbahngesellschaft
+		types.put("VE", 'R'); // Lutherstadt Wittenberg
+		types.put("DAB", 'R'); // Daadetalbahn
+		types.put("WTB", 'R'); // Wutachtalbahn e.V.
+		types.put("BE", 'R'); // Grensland-Express
+		types.put("ARR", 'R'); // Ostfriesland
+		types.put("HTB", 'R'); // Hörseltalbahn
+		types.put("FEG", 'R'); // Freiberger Eisenbahngesellschaft
+		types.put("NEG", 'R'); // Norddeutsche Eisenbahngesellschaft Niebüll
+		types.put("RBG", 'R'); // Regental Bahnbetriebs GmbH
+		types.put("MBB", 'R'); // Mecklenburgische Bäderbahn Molli
+		types.put("VEB", 'R'); // Vulkan-Eifel-Bahn Betriebsgesellschaft
+		types.put("LEO", 'R'); // Chiemgauer Lokalbahn
+		types.put("VX", 'R'); // Vogtland Express
+		types.put("MSB", 'R'); // Mainschleifenbahn
+		types.put("P", 'R'); // Kasbachtalbahn
+		types.put("ÖBA", 'R'); // Öchsle-Bahn Betriebsgesellschaft
+		types.put("KTB", 'R'); // Kandertalbahn
+		types.put("ERX", 'R'); // erixx
+		types.put("ATZ", 'R'); // Autotunnelzug
+		types.put("ATB", 'R'); // Autoschleuse Tauernbahn
+		types.put("CAT", 'R'); // City Airport Train
+		types.put("EXTRA", 'R'); // Extrazug
+		types.put("EXT", 'R'); // Extrazug
+		types.put("KD", 'R'); // Koleje Dolnośląskie (Niederschlesische Eisenbahn)
+		types.put("KM", 'R'); // Koleje Mazowieckie
+		types.put("EX", 'R'); // Polen
+		types.put("PCC", 'R'); // PCC Rail, Polen
+		types.put("ZR", 'R'); // ZSR (Slovakian Republic Railways)
+		types.put("WB", 'R'); // WESTbahn
+		types.put("RNV", 'R'); // Rhein-Neckar-Verkehr GmbH
+		types.put("DWE", 'R'); // Dessau-Wörlitzer Eisenbahn
+		types.put("BKB", 'R'); // Buckower Kleinbahn
+
+		// types.put("E", 'R'); // Eilzug, stimmt wahrscheinlich nicht
 
 		// Suburban Trains
-		if (P_LINE_SBAHN.matcher(ucType).matches()) // Generic (Night) S-Bahn
-			return 'S';
-		if ("BSB".equals(ucType)) // Breisgau S-Bahn
-			return 'S';
-		if ("SWE".equals(ucType)) // Südwestdeutsche Verkehrs-AG, Ortenau-S-Bahn
-			return 'S';
-		if ("RER".equals(ucType)) // Réseau Express Régional, Frankreich
-			return 'S';
-		if ("WKD".equals(ucType)) // Warszawska Kolej Dojazdowa (Warsaw Suburban Railway)
-			return 'S';
-		if ("SKM".equals(ucType)) // Szybka Kolej Miejska Tricity
-			return 'S';
-		if ("SKW".equals(ucType)) // Szybka Kolej Miejska Warschau
-			return 'S';
-		// if ("SPR".equals(normalizedType)) // Sprinter, Niederlande
-		// return "S" + normalizedName;
+		types.put("BSB", 'S'); // Breisgau S-Bahn
+		types.put("SWE", 'S'); // Südwestdeutsche Verkehrs-AG, Ortenau-S-Bahn
+		types.put("RER", 'S'); // Réseau Express Régional, Frankreich
+		types.put("WKD", 'S'); // Warszawska Kolej Dojazdowa (Warsaw Suburban Railway)
+		types.put("SKM", 'S'); // Szybka Kolej Miejska Tricity
+		types.put("SKW", 'S'); // Szybka Kolej Miejska Warschau
+		// types.put("SPR", 'S'); // Sprinter, Niederlande
 
 		// Subway
-		if ("U".equals(ucType)) // Generic U-Bahn
-			return 'U';
-		if ("MET".equals(ucType))
-			return 'U';
-		if ("METRO".equals(ucType))
-			return 'U';
+		types.put("U", 'U'); // Generic U-Bahn
+		types.put("MET", 'U');
+		types.put("METRO", 'U');
 
 		// Tram
-		if (P_LINE_TRAM.matcher(ucType).matches()) // Generic Tram
-			return 'T';
-		if ("TRAM".equals(ucType))
-			return 'T';
-		if ("TRA".equals(ucType))
-			return 'T';
-		if ("STRWLB".equals(ucType)) // Wiener Lokalbahnen
-			return 'T';
-		if ("SCHW-B".equals(ucType)) // Schwebebahn, gilt als "Straßenbahn besonderer Bauart"
-			return 'T';
+		types.put("TRAM", 'T');
+		types.put("TRA", 'T');
+		types.put("STRWLB", 'T'); // Wiener Lokalbahnen
+		types.put("SCHW-B", 'T'); // Schwebebahn, gilt als "Straßenbahn besonderer Bauart"
 
 		// Bus
+		types.put("NFB", 'B'); // Niederflur-Bus
+		types.put("SEV", 'B'); // Schienen-Ersatz-Verkehr
+		types.put("BUSSEV", 'B'); // Schienen-Ersatz-Verkehr
+		types.put("BSV", 'B'); // Bus SEV
+		types.put("FB", 'B'); // Fernbus? Luxemburg-Saarbrücken
+		types.put("EXB", 'B'); // Expressbus München-Prag?
+		types.put("TRO", 'B'); // Trolleybus
+		types.put("RFB", 'B'); // Rufbus
+		types.put("RUF", 'B'); // Rufbus
+		types.put("RFT", 'B'); // Ruftaxi
+		types.put("LT", 'B'); // Linien-Taxi
+		// types.put("N", 'B'); // Nachtbus
+
+		// Ferry
+		types.put("SCHIFF", 'F');
+		types.put("FÄHRE", 'F');
+		types.put("FÄH", 'F');
+		types.put("FAE", 'F');
+		types.put("SCH", 'F'); // Schiff
+		types.put("AS", 'F'); // SyltShuttle, eigentlich Autoreisezug
+		types.put("KAT", 'F'); // Katamaran, e.g. Friedrichshafen - Konstanz
+		types.put("BAT", 'F'); // Boots Anlege Terminal?
+		types.put("BAV", 'F'); // Boots Anlege?
+
+		// Cable Car
+		types.put("SEILBAHN", 'C');
+		types.put("SB", 'C'); // Seilbahn
+		types.put("ZAHNR", 'C'); // Zahnradbahn, u.a. Zugspitzbahn
+		types.put("GB", 'C'); // Gondelbahn
+		types.put("LB", 'C'); // Luftseilbahn
+		types.put("FUN", 'C'); // Funiculaire (Standseilbahn)
+		types.put("SL", 'C'); // Sessel-Lift
+
+		// types.put("L", '?');
+		// types.put("CR", '?');
+		// types.put("TRN", '?');
+
+		DEFAULT_PRODUCT_TYPES = Collections.unmodifiableMap(types);
+	}
+
+	private Map<String, Character> productTypes = DEFAULT_PRODUCT_TYPES;
+
+	/**
+	 * Map a product type code to a product, in addition to the defaults of {@link #normalizeType(String)}. Entries
+	 * added here take precedence over the defaults. To be called from the constructor of a subclass.
+	 *
+	 * @param type
+	 *            product type code, in upper case
+	 */
+	protected void addProductType(final String type, final char product)
+	{
+		if (productTypes == DEFAULT_PRODUCT_TYPES)
+			productTypes = new HashMap<String, Character>(DEFAULT_PRODUCT_TYPES);
+
+		productTypes.put(type, product);
+	}
+
+	protected char normalizeType(final String type)
+	{
+		Character product = productTypes.get(type);
+		if (product != null)
+			return product;
+
+		final String ucType = type.toUpperCase();
+
+		product = productTypes.get(ucType);
+		if (product != null)
+			return product;
+
+		if (P_LINE_SBAHN.matcher(ucType).matches()) // Generic (Night) S-Bahn
+			return 'S';
+		if (P_LINE_TRAM.matcher(ucType).matches()) // Generic Tram
+			return 'T';
 		if (P_LINE_BUS.matcher(ucType).matches()) // Generic Bus
 			return 'B';
-		if ("NFB".equals(ucType)) // Niederflur-Bus
-			return 'B';
-		if ("SEV".equals(ucType)) // Schienen-Ersatz-Verkehr
-			return 'B';
-		if ("BUSSEV".equals(ucType)) // Schienen-Ersatz-Verkehr
-			return 'B';
-		if ("BSV".equals(ucType)) // Bus SEV
-			return 'B';
-		if ("FB".equals(ucType)) // Fernbus? Luxemburg-Saarbrücken
-			return 'B';
-		if ("EXB".equals(ucType)) // Expressbus München-Prag?
-			return 'B';
-		if ("TRO".equals(ucType)) // Trolleybus
-			return 'B';
-		if ("RFB".equals(ucType)) // Rufbus
-			return 'B';
-		if ("RUF".equals(ucType)) // Rufbus
-			return 'B';
 		if (P_LINE_TAXI.matcher(ucType).matches()) // Generic Taxi
 			return 'B';
-		if ("RFT".equals(ucType)) // Ruftaxi
-			return 'B';
-		if ("LT".equals(ucType)) // Linien-Taxi
-			return 'B';
-		// if ("N".equals(normalizedType)) // Nachtbus
-		// return "B" + normalizedName;
 
 		// Phone
 		if (ucType.startsWith("AST")) // Anruf-Sammel-Taxi
@@ -2052,49 +2288,6 @@ public abstract class AbstractHafasProvider extends AbstractNetworkProvider
 		if (ucType.startsWith("BUXI")) // Bus-Taxi (Schweiz)
 			return 'P';
 
-		// Ferry
-		if ("SCHIFF".equals(ucType))
-			return 'F';
-		if ("FÄHRE".equals(ucType))
-			return 'F';
-		if ("FÄH".equals(ucType))
-			return 'F';
-		if ("FAE".equals(ucType))
-			return 'F';
-		if ("SCH".equals(ucType)) // Schiff
-			return 'F';
-		if ("AS".equals(ucType)) // SyltShuttle, eigentlich Autoreisezug
-			return 'F';
-		if ("KAT".equals(ucType)) // Katamaran, e.g. Friedrichshafen - Konstanz
-			return 'F';
-		if ("BAT".equals(ucType)) // Boots Anlege Terminal?
-			return 'F';
-		if ("BAV".equals(ucType)) // Boots Anlege?
-			return 'F';
-
-		// Cable Car
-		if ("SEILBAHN".equals(ucType))
-			return 'C';
-		if ("SB".equals(ucType)) // Seilbahn
-			return 'C';
-		if ("ZAHNR".equals(ucType)) // Zahnradbahn, u.a. Zugspitzbahn
-			return 'C';
-		if ("GB".equals(ucType)) // Gondelbahn
-			return 'C';
-		if ("LB".equals(ucType)) // Luftseilbahn
-			return 'C';
-		if ("FUN".equals(ucType)) // Funiculaire (Standseilbahn)
-			return 'C';
-		if ("SL".equals(ucType)) // Sessel-Lift
-			return 'C';
-
-		// if ("L".equals(normalizedType))
-		// return "?" + normalizedName;
-		// if ("CR".equals(normalizedType))
-		// return "?" + normalizedName;
-		// if ("TRN".equals(normalizedType))
-		// return "?" + normalizedName;
-
 		return 0;
 	}
 
@@ -2221,6 +2414,51 @@ public abstract class AbstractHafasProvider extends AbstractNetworkProvider
 		throw new IllegalStateException("cannot normalize line#type '" + lineAndType + "'");
 	}
 
+	/**
+	 * Like {@link #parseLine(String, String, boolean)}, but looks up the result in the line cache first.
+	 */
+	protected final Line parseLineCached(final String type, final String line, final boolean wheelchairAccess)
+	{
+		final LineCache.Key key = LineCache.key("L", type, line, wheelchairAccess);
+		Line result = getLineCache().get(key);
+		if (result == null)
+		{
+			result = parseLine(type, line, wheelchairAccess);
+			getLineCache().put(key, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Like {@link #parseLineWithoutType(String)}, but looks up the result in the line cache first.
+	 */
+	protected final Line parseLineWithoutTypeCached(final String line)
+	{
+		final LineCache.Key key = LineCache.key("W", line);
+		Line result = getLineCache().get(key);
+		if (result == null)
+		{
+			result = parseLineWithoutType(line);
+			getLineCache().put(key, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Like {@link #parseLineAndType(String)}, but looks up the result in the line cache first.
+	 */
+	protected final Line parseLineAndTypeCached(final String lineAndType)
+	{
+		final LineCache.Key key = LineCache.key("A", lineAndType);
+		Line result = getLineCache().get(key);
+		if (result == null)
+		{
+			result = parseLineAndType(lineAndType);
+			getLineCache().put(key, result);
+		}
+		return result;
+	}
+
 	protected final Line newLine(final String lineStr, final Line.Attr... attrs)
 	{
 		if (attrs.length == 0)
@@ -24,6 +24,8 @@ import de.schildbach.pte.dto.Connection;
 import de.schildbach.pte.dto.GetConnectionDetailsResult;
 import de.schildbach.pte.dto.Point;
 import de.schildbach.pte.dto.Style;
+import de.schildbach.pte.util.HttpTransport;
+import de.schildbach.pte.util.LineCache;
 
 /**
  * @author Andreas Schildbach
@@ -33,6 +35,26 @@ public abstract class AbstractNetworkProvider implements NetworkProvider
 	protected static final Charset UTF_8 = Charset.forName("UTF-8");
 	protected static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
 
+	private static final int LINE_CACHE_SIZE = 256;
+
+	private HttpTransport httpTransport = HttpTransport.DEFAULT;
+	private final LineCache lineCache = new LineCache(LINE_CACHE_SIZE);
+
+	public void setHttpTransport(final HttpTransport httpTransport)
+	{
+		this.httpTransport = httpTransport;
+	}
+
+	protected HttpTransport httpTransport()
+	{
+		return httpTransport;
+	}
+
+	public LineCache getLineCache()
+	{
+		return lineCache;
+	}
+
 	public Style lineStyle(final String line)
 	{
 		if (line.length() == 0)
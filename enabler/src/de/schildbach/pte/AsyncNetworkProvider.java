@@ -0,0 +1,100 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Future;
+
+import de.schildbach.pte.NetworkProvider.Accessibility;
+import de.schildbach.pte.NetworkProvider.Capability;
+import de.schildbach.pte.NetworkProvider.Option;
+import de.schildbach.pte.NetworkProvider.WalkSpeed;
+import de.schildbach.pte.dto.Connection;
+import de.schildbach.pte.dto.GetConnectionDetailsResult;
+import de.schildbach.pte.dto.Location;
+import de.schildbach.pte.dto.NearbyStationsResult;
+import de.schildbach.pte.dto.Point;
+import de.schildbach.pte.dto.QueryConnectionsContext;
+import de.schildbach.pte.dto.QueryConnectionsResult;
+import de.schildbach.pte.dto.QueryDeparturesResult;
+import de.schildbach.pte.dto.Style;
+
+/**
+ * Non-blocking companion of {@link NetworkProvider}. Each query returns immediately with a {@link Future} of its
+ * result. An {@link java.io.IOException} thrown by the query is reported as cause of the
+ * {@link java.util.concurrent.ExecutionException} thrown by {@link Future#get()}.
+ * 
+ * Instead of waiting on the future, a {@link Callback} can be passed to be notified once the query is done. It may be
+ * {@code null}.
+ *
+ * @author Andreas Schildbach
+ */
+public interface AsyncNetworkProvider
+{
+	/**
+	 * Receives the outcome of a query. Invoked on the thread that ran the query.
+	 */
+	public interface Callback<T>
+	{
+		void onResult(T result);
+
+		void onError(Throwable x);
+	}
+
+	NetworkId id();
+
+	boolean hasCapabilities(Capability... capabilities);
+
+	/**
+	 * @see NetworkProvider#queryNearbyStations(Location, int, int)
+	 */
+	Future<NearbyStationsResult> queryNearbyStations(Location location, int maxDistance, int maxStations, Callback<NearbyStationsResult> callback);
+
+	/**
+	 * @see NetworkProvider#queryDepartures(int, int, boolean)
+	 */
+	Future<QueryDeparturesResult> queryDepartures(int stationId, int maxDepartures, boolean equivs, Callback<QueryDeparturesResult> callback);
+
+	/**
+	 * @see NetworkProvider#autocompleteStations(CharSequence)
+	 */
+	Future<List<Location>> autocompleteStations(CharSequence constraint, Callback<List<Location>> callback);
+
+	/**
+	 * @see NetworkProvider#queryConnections(Location, Location, Location, Date, boolean, int, String, WalkSpeed, Accessibility, Set)
+	 */
+	Future<QueryConnectionsResult> queryConnections(Location from, Location via, Location to, Date date, boolean dep, int numConnections,
+			String products, WalkSpeed walkSpeed, Accessibility accessibility, Set<Option> options, Callback<QueryConnectionsResult> callback);
+
+	/**
+	 * @see NetworkProvider#queryMoreConnections(QueryConnectionsContext, boolean, int)
+	 */
+	Future<QueryConnectionsResult> queryMoreConnections(QueryConnectionsContext context, boolean later, int numConnections,
+			Callback<QueryConnectionsResult> callback);
+
+	/**
+	 * @see NetworkProvider#getConnectionDetails(Connection)
+	 */
+	Future<GetConnectionDetailsResult> getConnectionDetails(Connection connection, Callback<GetConnectionDetailsResult> callback);
+
+	Style lineStyle(String line);
+
+	Point[] getArea();
+}
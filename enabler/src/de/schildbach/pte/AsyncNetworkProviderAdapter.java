@@ -0,0 +1,184 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import de.schildbach.pte.NetworkProvider.Accessibility;
+import de.schildbach.pte.NetworkProvider.Capability;
+import de.schildbach.pte.NetworkProvider.Option;
+import de.schildbach.pte.NetworkProvider.WalkSpeed;
+import de.schildbach.pte.dto.Connection;
+import de.schildbach.pte.dto.GetConnectionDetailsResult;
+import de.schildbach.pte.dto.Location;
+import de.schildbach.pte.dto.NearbyStationsResult;
+import de.schildbach.pte.dto.Point;
+import de.schildbach.pte.dto.QueryConnectionsContext;
+import de.schildbach.pte.dto.QueryConnectionsResult;
+import de.schildbach.pte.dto.QueryDeparturesResult;
+import de.schildbach.pte.dto.Style;
+
+/**
+ * Makes any blocking {@link NetworkProvider} available as {@link AsyncNetworkProvider}, by running its queries on the
+ * given executor. The size of the executor bounds the number of queries that are in flight at the same time.
+ *
+ * @author Andreas Schildbach
+ */
+public class AsyncNetworkProviderAdapter implements AsyncNetworkProvider
+{
+	private final NetworkProvider provider;
+	private final ExecutorService executor;
+
+	public AsyncNetworkProviderAdapter(final NetworkProvider provider, final ExecutorService executor)
+	{
+		this.provider = provider;
+		this.executor = executor;
+	}
+
+	public NetworkProvider getProvider()
+	{
+		return provider;
+	}
+
+	public NetworkId id()
+	{
+		return provider.id();
+	}
+
+	public boolean hasCapabilities(final Capability... capabilities)
+	{
+		return provider.hasCapabilities(capabilities);
+	}
+
+	public Future<NearbyStationsResult> queryNearbyStations(final Location location, final int maxDistance, final int maxStations,
+			final Callback<NearbyStationsResult> callback)
+	{
+		return submit(new Callable<NearbyStationsResult>()
+		{
+			public NearbyStationsResult call() throws Exception
+			{
+				return provider.queryNearbyStations(location, maxDistance, maxStations);
+			}
+		}, callback);
+	}
+
+	public Future<QueryDeparturesResult> queryDepartures(final int stationId, final int maxDepartures, final boolean equivs,
+			final Callback<QueryDeparturesResult> callback)
+	{
+		return submit(new Callable<QueryDeparturesResult>()
+		{
+			public QueryDeparturesResult call() throws Exception
+			{
+				return provider.queryDepartures(stationId, maxDepartures, equivs);
+			}
+		}, callback);
+	}
+
+	public Future<List<Location>> autocompleteStations(final CharSequence constraint, final Callback<List<Location>> callback)
+	{
+		return submit(new Callable<List<Location>>()
+		{
+			public List<Location> call() throws Exception
+			{
+				return provider.autocompleteStations(constraint);
+			}
+		}, callback);
+	}
+
+	public Future<QueryConnectionsResult> queryConnections(final Location from, final Location via, final Location to, final Date date,
+			final boolean dep, final int numConnections, final String products, final WalkSpeed walkSpeed, final Accessibility accessibility,
+			final Set<Option> options, final Callback<QueryConnectionsResult> callback)
+	{
+		return submit(new Callable<QueryConnectionsResult>()
+		{
+			public QueryConnectionsResult call() throws Exception
+			{
+				return provider.queryConnections(from, via, to, date, dep, numConnections, products, walkSpeed, accessibility, options);
+			}
+		}, callback);
+	}
+
+	public Future<QueryConnectionsResult> queryMoreConnections(final QueryConnectionsContext context, final boolean later,
+			final int numConnections, final Callback<QueryConnectionsResult> callback)
+	{
+		return submit(new Callable<QueryConnectionsResult>()
+		{
+			public QueryConnectionsResult call() throws Exception
+			{
+				return provider.queryMoreConnections(context, later, numConnections);
+			}
+		}, callback);
+	}
+
+	public Future<GetConnectionDetailsResult> getConnectionDetails(final Connection connection, final Callback<GetConnectionDetailsResult> callback)
+	{
+		return submit(new Callable<GetConnectionDetailsResult>()
+		{
+			public GetConnectionDetailsResult call() throws Exception
+			{
+				return provider.getConnectionDetails(connection);
+			}
+		}, callback);
+	}
+
+	public Style lineStyle(final String line)
+	{
+		return provider.lineStyle(line);
+	}
+
+	public Point[] getArea()
+	{
+		return provider.getArea();
+	}
+
+	private <T> Future<T> submit(final Callable<T> query, final Callback<T> callback)
+	{
+		if (callback == null)
+			return executor.submit(query);
+
+		return executor.submit(new Callable<T>()
+		{
+			public T call() throws Exception
+			{
+				final T result;
+				try
+				{
+					result = query.call();
+				}
+				catch (final Exception x)
+				{
+					callback.onError(x);
+					throw x;
+				}
+				catch (final Error x)
+				{
+					callback.onError(x);
+					throw x;
+				}
+
+				callback.onResult(result);
+				return result;
+			}
+		});
+	}
+}
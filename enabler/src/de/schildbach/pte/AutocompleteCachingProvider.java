@@ -0,0 +1,72 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte;
+
+import java.io.IOException;
+import java.util.List;
+
+import de.schildbach.pte.dto.Location;
+import de.schildbach.pte.util.AutocompleteCache;
+
+/**
+ * Answers {@link #autocompleteStations(CharSequence)} from an {@link AutocompleteCache} where possible. As users type
+ * station names character by character, most constraints extend one that has just been queried, and can be answered
+ * locally as long as the result for that shorter constraint was not truncated by the provider. The cache can be shared
+ * by the decorators of several providers.
+ *
+ * @author Andreas Schildbach
+ */
+public class AutocompleteCachingProvider extends ForwardingNetworkProvider
+{
+	private final AutocompleteCache cache;
+	private final int maxSuggestions;
+
+	/**
+	 * @param maxSuggestions
+	 *            number of suggestions at which the provider truncates its results, or {@code 0} if unknown; results
+	 *            with fewer suggestions are considered complete
+	 */
+	public AutocompleteCachingProvider(final NetworkProvider provider, final AutocompleteCache cache, final int maxSuggestions)
+	{
+		super(provider);
+
+		this.cache = cache;
+		this.maxSuggestions = maxSuggestions;
+	}
+
+	public AutocompleteCache getCache()
+	{
+		return cache;
+	}
+
+	@Override
+	public List<Location> autocompleteStations(final CharSequence constraint) throws IOException
+	{
+		final NetworkId network = id();
+
+		final List<Location> cached = cache.get(network, constraint);
+		if (cached != null)
+			return cached;
+
+		final List<Location> locations = super.autocompleteStations(constraint);
+		if (locations != null)
+			cache.put(network, constraint, locations, maxSuggestions > 0 && locations.size() < maxSuggestions);
+
+		return locations;
+	}
+}
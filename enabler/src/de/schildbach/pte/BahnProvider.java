@@ -43,6 +43,10 @@ public final class BahnProvider extends AbstractHafasProvider
 	public BahnProvider()
 	{
 		super("http://reiseauskunft.bahn.de/bin/query.exe/dn", 14, null);
+
+		addProductType("DZ", 'R'); // Dampfzug
+
+		addProductType("LTT", 'B');
 	}
 
     public NetworkId id()
@@ -130,7 +134,7 @@ public final class BahnProvider extends AbstractHafasProvider
 			uri.append("&look_x=").append(location.lon);
 			uri.append("&look_y=").append(location.lat);
 
-			return jsonNearbyStations(uri.toString());
+			return jsonNearbyStations(uri.toString(), maxStations);
 		}
 		else if (location.type == LocationType.STATION && location.hasId())
 		{
@@ -139,7 +143,7 @@ public final class BahnProvider extends AbstractHafasProvider
 			uri.append("&distance=").append(maxDistance != 0 ? maxDistance / 1000 : 50);
 			uri.append("&input=").append(location.id);
 
-			final CharSequence page = ParserUtils.scrape(uri.toString());
+			final CharSequence page = ParserUtils.scrape(httpTransport(), uri.toString());
 
 			final Matcher m = P_NEARBY_STATIONS_BY_STATION.matcher(page);
 
@@ -209,12 +213,6 @@ public final class BahnProvider extends AbstractHafasProvider
 	{
 		final String ucType = type.toUpperCase();
 
-		if ("DZ".equals(ucType)) // Dampfzug
-			return 'R';
-
-		if ("LTT".equals(ucType))
-			return 'B';
-
 		if (ucType.startsWith("RFB")) // Rufbus
 			return 'P';
 
@@ -18,6 +18,7 @@
 package de.schildbach.pte;
 
 import java.io.IOException;
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
@@ -50,6 +51,7 @@ import de.schildbach.pte.dto.Style.Shape;
 import de.schildbach.pte.exception.SessionExpiredException;
 import de.schildbach.pte.exception.UnexpectedRedirectException;
 import de.schildbach.pte.geo.Berlin;
+import de.schildbach.pte.util.HtmlTokenizer;
 import de.schildbach.pte.util.ParserUtils;
 
 /**
@@ -91,6 +93,8 @@ public final class BvgProvider extends AbstractHafasProvider
 	{
 		super(API_BASE + "query.bin/dn", 8, null);
 
+		addProductType("AUSFL", 'R'); // Umgebung Berlin
+
 		this.additionalQueryParameter = additionalQueryParameter;
 	}
 
@@ -189,7 +193,7 @@ public final class BvgProvider extends AbstractHafasProvider
 			uri.append("&distance=").append(maxDistance != 0 ? maxDistance / 1000 : 50);
 			uri.append("&input=").append(location.id);
 
-			final CharSequence page = ParserUtils.scrape(uri.toString());
+			final CharSequence page = ParserUtils.scrape(httpTransport(), uri.toString());
 
 			final Matcher mError = P_NEARBY_ERRORS.matcher(page);
 			if (mError.find())
@@ -274,42 +278,17 @@ public final class BvgProvider extends AbstractHafasProvider
 		return uri.toString();
 	}
 
-	private static final Pattern P_DEPARTURES_PLAN_HEAD = Pattern.compile(".*?" //
-			+ "<strong>(.*?)</strong>.*?Datum:\\s*([^<\n]+)[<\n].*?" //
-	, Pattern.DOTALL);
-	private static final Pattern P_DEPARTURES_PLAN_COARSE = Pattern.compile("" //
-			+ "<tr class=\"ivu_table_bg\\d\">\\s*((?:<td class=\"ivu_table_c_dep\">|<td>).+?)\\s*</tr>" //
-	, Pattern.DOTALL);
-	private static final Pattern P_DEPARTURES_PLAN_FINE = Pattern.compile("" //
-			+ "<td><strong>(\\d{1,2}:\\d{2})</strong></td>.*?" // time
-			+ "<strong>\\s*(.*?)[\\s\\*]*</strong>.*?" // line
-			+ "(?:\\((Gl\\. " + ParserUtils.P_PLATFORM + ")\\).*?)?" // position
-			+ "<a href=\"/Fahrinfo/bin/stboard\\.bin/dox/dox.*?evaId=(\\d+)&[^>]*>" // destinationId
-			+ "\\s*(.*?)\\s*</a>.*?" // destination
-	, Pattern.DOTALL);
+	private static final Pattern P_DEPARTURES_HEAD_DATE = Pattern.compile("Datum:\\s*([^\n]+)");
+	private static final Pattern P_DEPARTURES_ROW = Pattern.compile("ivu_table_bg\\d");
+	private static final Pattern P_DEPARTURES_PLAN_TIME = Pattern.compile("\\d{1,2}:\\d{2}");
+	private static final Pattern P_DEPARTURES_PLAN_LINE = Pattern.compile("\\s*(.*?)[\\s\\*]*", Pattern.DOTALL);
+	private static final Pattern P_DEPARTURES_PLAN_POSITION = Pattern.compile("\\((Gl\\. " + ParserUtils.P_PLATFORM + ")\\)");
+	private static final Pattern P_DEPARTURES_PLAN_DESTINATION = Pattern.compile("^/Fahrinfo/bin/stboard\\.bin/dox/dox.*?evaId=(\\d+)&");
 	private static final Pattern P_DEPARTURES_PLAN_ERRORS = Pattern.compile("(Bhf\\./Hst\\.:)|(Wartungsarbeiten)|" //
 			+ "(http-equiv=\"refresh\")", Pattern.CASE_INSENSITIVE);
 
-	private static final Pattern P_DEPARTURES_LIVE_HEAD = Pattern.compile(".*?" //
-			+ "<strong>(.*?)</strong>.*?Datum:\\s*([^<\n]+)[<\n].*?" //
-	, Pattern.DOTALL);
-	private static final Pattern P_DEPARTURES_LIVE_COARSE = Pattern.compile("" //
-			+ "<tr class=\"ivu_table_bg\\d\">\\s*((?:<td class=\"ivu_table_c_dep\">|<td>).+?)\\s*</tr>" //
-	, Pattern.DOTALL);
-	private static final Pattern P_DEPARTURES_LIVE_FINE = Pattern.compile("" //
-			+ "<td class=\"ivu_table_c_dep\">\\s*(\\d{1,2}:\\d{2})\\s*" // time
-			+ "(\\*)?\\s*</td>\\s*" // planned
-			+ "<td class=\"ivu_table_c_line\">\\s*(.*?)\\s*</td>\\s*" // line
-			+ "<td>.*?<a.*?[^-]>\\s*(.*?)\\s*</a>.*?</td>" // destination
-	, Pattern.DOTALL);
-	private static final Pattern P_DEPARTURES_LIVE_MSGS_COARSE = Pattern.compile("" //
-			+ "<tr class=\"ivu_table_bg\\d\">\\s*(<td class=\"ivu_table_c_line\">.+?)\\s*</tr>" //
-	, Pattern.DOTALL);
-	private static final Pattern P_DEPARTURES_LIVE_MSGS_FINE = Pattern.compile("" //
-			+ "<td class=\"ivu_table_c_line\">\\s*(.*?)\\s*</td>\\s*" // line
-			+ "<td class=\"ivu_table_c_dep\">\\s*(\\d{2}\\.\\d{2}\\.\\d{4})\\s*</td>\\s*" // date
-			+ "<td>([^<]*)</td>" // message
-	, Pattern.DOTALL);
+	private static final Pattern P_DEPARTURES_LIVE_TIME = Pattern.compile("\\s*(\\d{1,2}:\\d{2})\\s*(\\*)?\\s*");
+	private static final Pattern P_DEPARTURES_LIVE_MSGS_DATE = Pattern.compile("\\s*\\d{2}\\.\\d{2}\\.\\d{4}\\s*");
 	private static final Pattern P_DEPARTURES_LIVE_ERRORS = Pattern.compile("(Haltestelle:)|(Wartungsgr&uuml;nden)|(http-equiv=\"refresh\")",
 			Pattern.CASE_INSENSITIVE);
 
@@ -322,7 +301,7 @@ public final class BvgProvider extends AbstractHafasProvider
 		{
 			// scrape page
 			final String uri = departuresQueryLiveUri(stationId);
-			final CharSequence page = ParserUtils.scrape(uri);
+			final CharSequence page = ParserUtils.scrape(httpTransport(), uri);
 
 			final Matcher mError = P_DEPARTURES_LIVE_ERRORS.matcher(page);
 			if (mError.find())
@@ -336,48 +315,86 @@ public final class BvgProvider extends AbstractHafasProvider
 			}
 
 			// parse page
-			final Matcher mHead = P_DEPARTURES_LIVE_HEAD.matcher(page);
-			if (mHead.matches())
+			final HtmlTokenizer html = new HtmlTokenizer(new StringReader(page.toString()));
+			String location = null;
+			Calendar currentTime = null;
+			final Map<String, String> messages = new HashMap<String, String>();
+			final List<Departure> departures = new ArrayList<Departure>(8);
+
+			while (html.next() != HtmlTokenizer.Token.END_DOCUMENT)
 			{
-				final String[] placeAndName = splitPlaceAndName(ParserUtils.resolveEntities(mHead.group(1)));
-				final Calendar currentTime = new GregorianCalendar(timeZone());
-				currentTime.clear();
-				parseDateTime(currentTime, mHead.group(2));
+				if (location == null && html.isStartTag("strong"))
+				{
+					location = html.nextText();
+				}
+				else if (location != null && currentTime == null && html.getToken() == HtmlTokenizer.Token.TEXT)
+				{
+					final Matcher mDate = P_DEPARTURES_HEAD_DATE.matcher(html.getText());
+					if (mDate.find())
+					{
+						currentTime = new GregorianCalendar(timeZone());
+						currentTime.clear();
+						parseDateTime(currentTime, mDate.group(1));
+					}
+				}
+				else if (isDeparturesRow(html))
+				{
+					if (currentTime == null)
+						throw new IllegalArgumentException("cannot parse '" + page + "' on " + uri);
 
-				final Map<String, String> messages = new HashMap<String, String>();
+					if (!nextStartTagInRow(html) || !html.isStartTag("td"))
+						continue;
 
-				final Matcher mMsgsCoarse = P_DEPARTURES_LIVE_MSGS_COARSE.matcher(page);
-				while (mMsgsCoarse.find())
-				{
-					final Matcher mMsgsFine = P_DEPARTURES_LIVE_MSGS_FINE.matcher(mMsgsCoarse.group(1));
-					if (mMsgsFine.matches())
+					final String cellClass = html.getAttribute("class");
+
+					if ("ivu_table_c_line".equals(cellClass))
 					{
-						final Line line = parseLineWithoutType(ParserUtils.resolveEntities(mMsgsFine.group(1)));
-						final String message = ParserUtils.resolveEntities(mMsgsFine.group(3)).replace('\n', ' ');
+						final String lineText = html.nextText().trim();
+
+						if (!nextStartTagInRow(html) || !html.isStartTag("td") || !"ivu_table_c_dep".equals(html.getAttribute("class"))
+								|| !P_DEPARTURES_LIVE_MSGS_DATE.matcher(html.nextText()).matches() || !nextStartTagInRow(html)
+								|| !html.isStartTag("td"))
+							throw new IllegalArgumentException("cannot parse message of '" + lineText + "' on " + uri);
+
+						final Line line = parseLineWithoutTypeCached(ParserUtils.resolveEntities(lineText));
+						final String message = ParserUtils.resolveEntities(html.nextText()).replace('\n', ' ');
 						messages.put(line.label, message);
 					}
-					else
+					else if ("ivu_table_c_dep".equals(cellClass) || html.getAttributeCount() == 0)
 					{
-						throw new IllegalArgumentException("cannot parse '" + mMsgsCoarse.group(1) + "' on " + uri);
-					}
-				}
+						final String timeText = html.nextText();
+						final Matcher mTime = P_DEPARTURES_LIVE_TIME.matcher(timeText);
 
-				final List<Departure> departures = new ArrayList<Departure>(8);
+						if (cellClass == null || !mTime.matches() || !nextStartTagInRow(html) || !html.isStartTag("td")
+								|| !"ivu_table_c_line".equals(html.getAttribute("class")))
+							throw new IllegalArgumentException("cannot parse departure at '" + timeText + "' on " + uri);
+
+						final String lineText = html.nextText().trim();
+
+						if (!nextStartTagInRow(html) || !html.isStartTag("td"))
+							throw new IllegalArgumentException("cannot parse departure at '" + timeText + "' on " + uri);
+
+						String destinationText = null;
+						while (html.next() != HtmlTokenizer.Token.END_DOCUMENT && !html.isEndTag("td"))
+						{
+							if (html.isStartTag("a"))
+							{
+								destinationText = html.nextText().trim();
+								break;
+							}
+						}
+
+						if (destinationText == null)
+							throw new IllegalArgumentException("cannot parse departure at '" + timeText + "' on " + uri);
 
-				final Matcher mDepCoarse = P_DEPARTURES_LIVE_COARSE.matcher(page);
-				while (mDepCoarse.find())
-				{
-					final Matcher mDepFine = P_DEPARTURES_LIVE_FINE.matcher(mDepCoarse.group(1));
-					if (mDepFine.matches())
-					{
 						final Calendar parsedTime = new GregorianCalendar(timeZone());
 						parsedTime.setTimeInMillis(currentTime.getTimeInMillis());
-						ParserUtils.parseEuropeanTime(parsedTime, mDepFine.group(1));
+						ParserUtils.parseEuropeanTime(parsedTime, mTime.group(1));
 
 						if (parsedTime.getTimeInMillis() - currentTime.getTimeInMillis() < -PARSER_DAY_ROLLOVER_THRESHOLD_MS)
 							parsedTime.add(Calendar.DAY_OF_MONTH, 1);
 
-						boolean isPlanned = mDepFine.group(2) != null;
+						boolean isPlanned = mTime.group(2) != null;
 
 						Date plannedTime = null;
 						Date predictedTime = null;
@@ -386,39 +403,43 @@ public final class BvgProvider extends AbstractHafasProvider
 						else
 							plannedTime = parsedTime.getTime();
 
-						final Line line = parseLineWithoutType(ParserUtils.resolveEntities(mDepFine.group(3)));
+						final Line line = parseLineWithoutTypeCached(ParserUtils.resolveEntities(lineText));
 
 						final String position = null;
 
-						final String[] destinationPlaceAndName = splitPlaceAndName(ParserUtils.resolveEntities(mDepFine.group(4)));
+						final String[] destinationPlaceAndName = splitPlaceAndName(ParserUtils.resolveEntities(destinationText));
 						final Location destination = new Location(LocationType.ANY, 0, destinationPlaceAndName[0], destinationPlaceAndName[1]);
 
-						final String message = messages.get(line.label);
-
-						final Departure dep = new Departure(plannedTime, predictedTime, line, position, destination, null, message);
+						final Departure dep = new Departure(plannedTime, predictedTime, line, position, destination, null, null);
 						if (!departures.contains(dep))
 							departures.add(dep);
 					}
-					else
-					{
-						throw new IllegalArgumentException("cannot parse '" + mDepCoarse.group(1) + "' on " + uri);
-					}
 				}
-
-				result.stationDepartures.add(new StationDepartures(new Location(LocationType.STATION, stationId, placeAndName[0], placeAndName[1]),
-						departures, null));
-				return result;
 			}
-			else
-			{
+
+			if (currentTime == null)
 				throw new IllegalArgumentException("cannot parse '" + page + "' on " + uri);
+
+			// messages can follow the departures they belong to
+			for (int i = 0; i < departures.size(); i++)
+			{
+				final Departure dep = departures.get(i);
+				final String message = messages.get(dep.line.label);
+				if (message != null)
+					departures.set(i, new Departure(dep.plannedTime, dep.predictedTime, dep.line, dep.position, dep.destination, dep.capacity,
+							message));
 			}
+
+			final String[] placeAndName = splitPlaceAndName(ParserUtils.resolveEntities(location));
+			result.stationDepartures.add(new StationDepartures(new Location(LocationType.STATION, stationId, placeAndName[0], placeAndName[1]),
+					departures, null));
+			return result;
 		}
 		else
 		{
 			// scrape page
 			final String uri = departuresQueryPlanUri(stationId, maxDepartures);
-			final CharSequence page = ParserUtils.scrape(uri);
+			final CharSequence page = ParserUtils.scrape(httpTransport(), uri);
 
 			final Matcher mError = P_DEPARTURES_PLAN_ERRORS.matcher(page);
 			if (mError.find())
@@ -432,60 +453,136 @@ public final class BvgProvider extends AbstractHafasProvider
 			}
 
 			// parse page
-			final Matcher mHead = P_DEPARTURES_PLAN_HEAD.matcher(page);
-			if (mHead.matches())
+			final HtmlTokenizer html = new HtmlTokenizer(new StringReader(page.toString()));
+			String location = null;
+			Calendar currentTime = null;
+			final List<Departure> departures = new ArrayList<Departure>(8);
+
+			while (html.next() != HtmlTokenizer.Token.END_DOCUMENT)
 			{
-				final String[] placeAndName = splitPlaceAndName(ParserUtils.resolveEntities(mHead.group(1)));
-				final Calendar currentTime = new GregorianCalendar(timeZone());
-				currentTime.clear();
-				ParserUtils.parseGermanDate(currentTime, mHead.group(2));
-				final List<Departure> departures = new ArrayList<Departure>(8);
-
-				final Matcher mDepCoarse = P_DEPARTURES_PLAN_COARSE.matcher(page);
-				while (mDepCoarse.find())
+				if (location == null && html.isStartTag("strong"))
+				{
+					location = html.nextText();
+				}
+				else if (location != null && currentTime == null && html.getToken() == HtmlTokenizer.Token.TEXT)
 				{
-					final Matcher mDepFine = P_DEPARTURES_PLAN_FINE.matcher(mDepCoarse.group(1));
-					if (mDepFine.matches())
+					final Matcher mDate = P_DEPARTURES_HEAD_DATE.matcher(html.getText());
+					if (mDate.find())
 					{
-						final Calendar parsedTime = new GregorianCalendar(timeZone());
-						parsedTime.setTimeInMillis(currentTime.getTimeInMillis());
-						ParserUtils.parseEuropeanTime(parsedTime, mDepFine.group(1));
-
-						if (parsedTime.getTimeInMillis() - currentTime.getTimeInMillis() < -PARSER_DAY_ROLLOVER_THRESHOLD_MS)
-							parsedTime.add(Calendar.DAY_OF_MONTH, 1);
-
-						final Date plannedTime = parsedTime.getTime();
+						currentTime = new GregorianCalendar(timeZone());
+						currentTime.clear();
+						ParserUtils.parseGermanDate(currentTime, mDate.group(1));
+					}
+				}
+				else if (isDeparturesRow(html))
+				{
+					if (currentTime == null)
+						throw new IllegalArgumentException("cannot parse '" + page + "' on " + uri);
 
-						final Line line = parseLineWithoutType(ParserUtils.resolveEntities(mDepFine.group(2)));
+					if (!nextStartTagInRow(html) || !html.isStartTag("td")
+							|| !("ivu_table_c_dep".equals(html.getAttribute("class")) || html.getAttributeCount() == 0))
+						continue;
 
-						final String position = ParserUtils.resolveEntities(mDepFine.group(3));
+					final String timeText = html.nextText().trim();
+					if (!P_DEPARTURES_PLAN_TIME.matcher(timeText).matches())
+						throw new IllegalArgumentException("cannot parse departure at '" + timeText + "' on " + uri);
 
-						final int destinationId = Integer.parseInt(mDepFine.group(4));
-						final String[] destinationPlaceAndName = splitPlaceAndName(ParserUtils.resolveEntities(mDepFine.group(5)));
-						final Location destination = new Location(destinationId > 0 ? LocationType.STATION : LocationType.ANY, destinationId,
-								destinationPlaceAndName[0], destinationPlaceAndName[1]);
+					String lineText = null;
+					String positionText = null;
+					int destinationId = 0;
+					String destinationText = null;
 
-						final Departure dep = new Departure(plannedTime, null, line, position, destination, null, null);
-						if (!departures.contains(dep))
-							departures.add(dep);
-					}
-					else
+					while (html.next() != HtmlTokenizer.Token.END_DOCUMENT && !html.isEndTag("tr"))
 					{
-						throw new IllegalArgumentException("cannot parse '" + mDepCoarse.group(1) + "' on " + uri);
+						if (lineText == null)
+						{
+							if (html.isStartTag("strong"))
+								lineText = html.nextText();
+						}
+						else if (html.getToken() == HtmlTokenizer.Token.TEXT)
+						{
+							final Matcher mPosition = P_DEPARTURES_PLAN_POSITION.matcher(html.getText());
+							if (positionText == null && mPosition.find())
+								positionText = mPosition.group(1);
+						}
+						else if (html.isStartTag("a"))
+						{
+							final String href = html.getAttribute("href");
+							final Matcher mDestination = href != null ? P_DEPARTURES_PLAN_DESTINATION.matcher(href) : null;
+							if (mDestination != null && mDestination.find())
+							{
+								destinationId = Integer.parseInt(mDestination.group(1));
+								destinationText = html.nextText().trim();
+								break;
+							}
+						}
 					}
-				}
 
-				result.stationDepartures.add(new StationDepartures(new Location(LocationType.STATION, stationId, placeAndName[0], placeAndName[1]),
-						departures, null));
-				return result;
+					if (lineText == null || destinationText == null)
+						throw new IllegalArgumentException("cannot parse departure at '" + timeText + "' on " + uri);
+
+					final Calendar parsedTime = new GregorianCalendar(timeZone());
+					parsedTime.setTimeInMillis(currentTime.getTimeInMillis());
+					ParserUtils.parseEuropeanTime(parsedTime, timeText);
+
+					if (parsedTime.getTimeInMillis() - currentTime.getTimeInMillis() < -PARSER_DAY_ROLLOVER_THRESHOLD_MS)
+						parsedTime.add(Calendar.DAY_OF_MONTH, 1);
+
+					final Date plannedTime = parsedTime.getTime();
+
+					final Matcher mLine = P_DEPARTURES_PLAN_LINE.matcher(lineText);
+					mLine.matches();
+					final Line line = parseLineWithoutTypeCached(ParserUtils.resolveEntities(mLine.group(1)));
+
+					final String position = ParserUtils.resolveEntities(positionText);
+
+					final String[] destinationPlaceAndName = splitPlaceAndName(ParserUtils.resolveEntities(destinationText));
+					final Location destination = new Location(destinationId > 0 ? LocationType.STATION : LocationType.ANY, destinationId,
+							destinationPlaceAndName[0], destinationPlaceAndName[1]);
+
+					final Departure dep = new Departure(plannedTime, null, line, position, destination, null, null);
+					if (!departures.contains(dep))
+						departures.add(dep);
+				}
 			}
-			else
-			{
+
+			if (currentTime == null)
 				throw new IllegalArgumentException("cannot parse '" + page + "' on " + uri);
-			}
+
+			final String[] placeAndName = splitPlaceAndName(ParserUtils.resolveEntities(location));
+			result.stationDepartures.add(new StationDepartures(new Location(LocationType.STATION, stationId, placeAndName[0], placeAndName[1]),
+					departures, null));
+			return result;
 		}
 	}
 
+	private static boolean isDeparturesRow(final HtmlTokenizer html)
+	{
+		if (!html.isStartTag("tr"))
+			return false;
+
+		final String rowClass = html.getAttribute("class");
+		return rowClass != null && P_DEPARTURES_ROW.matcher(rowClass).matches();
+	}
+
+	/**
+	 * Advance to the next start tag within the current table row.
+	 *
+	 * @return false if the row or document ends first
+	 */
+	private static boolean nextStartTagInRow(final HtmlTokenizer html) throws IOException
+	{
+		while (html.next() != HtmlTokenizer.Token.END_DOCUMENT)
+		{
+			if (html.getToken() == HtmlTokenizer.Token.START_TAG)
+				return true;
+			if (html.isEndTag("tr"))
+				return false;
+		}
+
+		return false;
+	}
+
 	public List<Location> autocompleteStations(final CharSequence constraint) throws IOException
 	{
 		return xmlMLcReq(constraint);
@@ -521,7 +618,7 @@ public final class BvgProvider extends AbstractHafasProvider
 			throws IOException
 	{
 		final String uri = connectionsQueryUri(from, via, to, date, dep, products);
-		final CharSequence page = ParserUtils.scrape(uri);
+		final CharSequence page = ParserUtils.scrape(httpTransport(), uri);
 
 		List<Location> fromAddresses = null;
 		List<Location> viaAddresses = null;
@@ -582,7 +679,7 @@ public final class BvgProvider extends AbstractHafasProvider
 		if (uri == null)
 			throw new IllegalStateException("cannot query " + (later ? "later" : "earlier"));
 
-		final CharSequence page = ParserUtils.scrape(uri);
+		final CharSequence page = ParserUtils.scrape(httpTransport(), uri);
 
 		return queryConnections(uri, page);
 	}
@@ -686,7 +783,7 @@ public final class BvgProvider extends AbstractHafasProvider
 			throw new IOException("cannot find all details link in '" + firstPage + "' on " + firstUri);
 
 		final String allDetailsUri = BASE_URL + ParserUtils.resolveEntities(mAllDetailsAction.group(1));
-		final CharSequence page = ParserUtils.scrape(allDetailsUri);
+		final CharSequence page = ParserUtils.scrape(httpTransport(), allDetailsUri);
 
 		final Matcher mHead = P_CONNECTIONS_HEAD.matcher(page);
 		if (mHead.matches())
@@ -807,7 +904,7 @@ public final class BvgProvider extends AbstractHafasProvider
 							final String arrivalPosition = !mDetails.group(4).equals("&nbsp;") ? ParserUtils.resolveEntities(mDetails.group(4))
 									: null;
 
-							final Line line = parseLineWithoutType(ParserUtils.resolveEntities(tDep[3]));
+							final Line line = parseLineWithoutTypeCached(ParserUtils.resolveEntities(tDep[3]));
 
 							final Location destination;
 							if (mDetails.group(3) != null)
@@ -903,21 +1000,6 @@ public final class BvgProvider extends AbstractHafasProvider
 		return super.parseLineWithoutType(line);
 	}
 
-	@Override
-	protected char normalizeType(final String type)
-	{
-		final String ucType = type.toUpperCase();
-
-		if ("AUSFL".equals(ucType)) // Umgebung Berlin
-			return 'R';
-
-		final char t = super.normalizeType(type);
-		if (t != 0)
-			return t;
-
-		return 0;
-	}
-
 	private static final Map<String, Style> LINES = new HashMap<String, Style>();
 
 	static
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.Set;
+
+import de.schildbach.pte.dto.Location;
+import de.schildbach.pte.dto.QueryConnectionsContext;
+import de.schildbach.pte.dto.QueryConnectionsResult;
+import de.schildbach.pte.exception.SessionExpiredException;
+import de.schildbach.pte.util.ConnectionsCache;
+
+/**
+ * Answers {@link #queryConnections} and {@link #queryMoreConnections} from a {@link ConnectionsCache}, so that many
+ * users asking for the same trip at about the same time cause only one query to the provider, and the pages they
+ * browse to are fetched only once. A {@link SessionExpiredException} while paging invalidates the whole session in the
+ * cache before it is passed on. The cache can be shared by the decorators of several providers.
+ *
+ * @author Andreas Schildbach
+ */
+public class ConnectionsCachingProvider extends ForwardingNetworkProvider
+{
+	private final ConnectionsCache cache;
+	private final boolean reusableContexts;
+
+	/**
+	 * @param reusableContexts
+	 *            {@code true} if a context can be used any number of times, {@code false} if using it advances state kept
+	 *            by the provider, in which case a cached query is no longer handed out once paging from it has started
+	 */
+	public ConnectionsCachingProvider(final NetworkProvider provider, final ConnectionsCache cache, final boolean reusableContexts)
+	{
+		super(provider);
+
+		this.cache = cache;
+		this.reusableContexts = reusableContexts;
+	}
+
+	public ConnectionsCache getCache()
+	{
+		return cache;
+	}
+
+	@Override
+	public QueryConnectionsResult queryConnections(final Location from, final Location via, final Location to, final Date date, final boolean dep,
+			final int numConnections, final String products, final WalkSpeed walkSpeed, final Accessibility accessibility, final Set<Option> options)
+			throws IOException
+	{
+		final Object key = cache.key(id(), from, via, to, date, dep, numConnections, products, walkSpeed, accessibility, options);
+
+		final QueryConnectionsResult cached = cache.get(key);
+		if (cached != null)
+			return cached;
+
+		final QueryConnectionsResult result = super.queryConnections(from, via, to, date, dep, numConnections, products, walkSpeed, accessibility,
+				options);
+		cache.put(key, result);
+
+		return result;
+	}
+
+	@Override
+	public QueryConnectionsResult queryMoreConnections(final QueryConnectionsContext context, final boolean later, final int numConnections)
+			throws IOException
+	{
+		final QueryConnectionsResult cached = cache.getMore(context, later, numConnections);
+		if (cached != null)
+			return cached;
+
+		final QueryConnectionsResult result;
+		try
+		{
+			result = super.queryMoreConnections(context, later, numConnections);
+		}
+		catch (final SessionExpiredException x)
+		{
+			cache.invalidate(context);
+			throw x;
+		}
+
+		cache.putMore(context, later, numConnections, result, !reusableContexts);
+
+		return result;
+	}
+}
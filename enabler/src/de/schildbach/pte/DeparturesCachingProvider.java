@@ -0,0 +1,60 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+
+import de.schildbach.pte.dto.QueryDeparturesResult;
+import de.schildbach.pte.util.DeparturesCache;
+
+/**
+ * Answers {@link #queryDepartures(int, int, boolean)} from a {@link DeparturesCache}, so that many clients polling the
+ * same station within the time to live of the cache cause only one query to the provider. The cache can be shared by
+ * the decorators of several providers.
+ *
+ * @author Andreas Schildbach
+ */
+public class DeparturesCachingProvider extends ForwardingNetworkProvider
+{
+	private final DeparturesCache cache;
+
+	public DeparturesCachingProvider(final NetworkProvider provider, final DeparturesCache cache)
+	{
+		super(provider);
+
+		this.cache = cache;
+	}
+
+	public DeparturesCache getCache()
+	{
+		return cache;
+	}
+
+	@Override
+	public QueryDeparturesResult queryDepartures(final int stationId, final int maxDepartures, final boolean equivs) throws IOException
+	{
+		return cache.get(id(), stationId, maxDepartures, equivs, new Callable<QueryDeparturesResult>()
+		{
+			public QueryDeparturesResult call() throws IOException
+			{
+				return DeparturesCachingProvider.super.queryDepartures(stationId, maxDepartures, equivs);
+			}
+		});
+	}
+}
@@ -40,6 +40,25 @@ public class DsbProvider extends AbstractHafasProvider
 	public DsbProvider()
 	{
 		super(API_BASE + "query.exe/dn", 11, null);
+
+		addProductType("ICL", 'I');
+
+		addProductType("ØR", 'R');
+		addProductType("RA", 'R');
+		addProductType("RX", 'R');
+		addProductType("PP", 'R');
+
+		addProductType("S-TOG", 'S');
+
+		addProductType("BYBUS", 'B');
+		addProductType("X-BUS", 'B');
+		addProductType("HV-BUS", 'B'); // Havnebus
+		addProductType("T-BUS", 'B'); // Togbus
+
+		addProductType("TELEBUS", 'P');
+		addProductType("TELETAXI", 'P');
+
+		addProductType("FÆRGE", 'F');
 	}
 
 	public NetworkId id()
@@ -161,48 +180,4 @@ public class DsbProvider extends AbstractHafasProvider
 
 		return xmlLocationList(uri);
 	}
-
-	@Override
-	protected char normalizeType(final String type)
-	{
-		final String ucType = type.toUpperCase();
-
-		if ("ICL".equals(ucType))
-			return 'I';
-
-		if ("ØR".equals(ucType))
-			return 'R';
-		if ("RA".equals(ucType))
-			return 'R';
-		if ("RX".equals(ucType))
-			return 'R';
-		if ("PP".equals(ucType))
-			return 'R';
-
-		if ("S-TOG".equals(ucType))
-			return 'S';
-
-		if ("BYBUS".equals(ucType))
-			return 'B';
-		if ("X-BUS".equals(ucType))
-			return 'B';
-		if ("HV-BUS".equals(ucType)) // Havnebus
-			return 'B';
-		if ("T-BUS".equals(ucType)) // Togbus
-			return 'B';
-
-		if ("TELEBUS".equals(ucType))
-			return 'P';
-		if ("TELETAXI".equals(ucType))
-			return 'P';
-
-		if ("FÆRGE".equals(ucType))
-			return 'F';
-
-		final char t = super.normalizeType(type);
-		if (t != 0)
-			return t;
-
-		return 0;
-	}
 }
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+import de.schildbach.pte.dto.Connection;
+import de.schildbach.pte.dto.GetConnectionDetailsResult;
+import de.schildbach.pte.dto.Location;
+import de.schildbach.pte.dto.NearbyStationsResult;
+import de.schildbach.pte.dto.Point;
+import de.schildbach.pte.dto.QueryConnectionsContext;
+import de.schildbach.pte.dto.QueryConnectionsResult;
+import de.schildbach.pte.dto.QueryDeparturesResult;
+import de.schildbach.pte.dto.Style;
+
+/**
+ * Base for decorators of a {@link NetworkProvider}. Forwards every call to the wrapped provider, so subclasses only
+ * need to override the queries they are interested in.
+ *
+ * @author Andreas Schildbach
+ */
+public abstract class ForwardingNetworkProvider implements NetworkProvider
+{
+	private final NetworkProvider provider;
+
+	protected ForwardingNetworkProvider(final NetworkProvider provider)
+	{
+		this.provider = provider;
+	}
+
+	public NetworkProvider getProvider()
+	{
+		return provider;
+	}
+
+	public NetworkId id()
+	{
+		return provider.id();
+	}
+
+	public boolean hasCapabilities(final Capability... capabilities)
+	{
+		return provider.hasCapabilities(capabilities);
+	}
+
+	public NearbyStationsResult queryNearbyStations(final Location location, final int maxDistance, final int maxStations) throws IOException
+	{
+		return provider.queryNearbyStations(location, maxDistance, maxStations);
+	}
+
+	public QueryDeparturesResult queryDepartures(final int stationId, final int maxDepartures, final boolean equivs) throws IOException
+	{
+		return provider.queryDepartures(stationId, maxDepartures, equivs);
+	}
+
+	public List<Location> autocompleteStations(final CharSequence constraint) throws IOException
+	{
+		return provider.autocompleteStations(constraint);
+	}
+
+	public QueryConnectionsResult queryConnections(final Location from, final Location via, final Location to, final Date date, final boolean dep,
+			final int numConnections, final String products, final WalkSpeed walkSpeed, final Accessibility accessibility, final Set<Option> options)
+			throws IOException
+	{
+		return provider.queryConnections(from, via, to, date, dep, numConnections, products, walkSpeed, accessibility, options);
+	}
+
+	public QueryConnectionsResult queryMoreConnections(final QueryConnectionsContext context, final boolean later, final int numConnections)
+			throws IOException
+	{
+		return provider.queryMoreConnections(context, later, numConnections);
+	}
+
+	public GetConnectionDetailsResult getConnectionDetails(final Connection connection) throws IOException
+	{
+		return provider.getConnectionDetails(connection);
+	}
+
+	public Style lineStyle(final String line)
+	{
+		return provider.lineStyle(line);
+	}
+
+	public Point[] getArea()
+	{
+		return provider.getArea();
+	}
+}
@@ -18,6 +18,7 @@
 package de.schildbach.pte;
 
 import java.io.IOException;
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
@@ -38,6 +39,7 @@ import de.schildbach.pte.dto.QueryDeparturesResult.Status;
 import de.schildbach.pte.dto.ResultHeader;
 import de.schildbach.pte.dto.StationDepartures;
 import de.schildbach.pte.dto.Style;
+import de.schildbach.pte.util.HtmlTokenizer;
 import de.schildbach.pte.util.ParserUtils;
 
 /**
@@ -126,35 +128,11 @@ public class InvgProvider extends AbstractHafasProvider
 		return uri.toString();
 	}
 
-	private static final Pattern P_DEPARTURES_HEAD_COARSE = Pattern
-			.compile(
-					".*?" //
-							+ "(?:" //
-							+ "<div class=\"summary clearfix\">.*?<div class=\"block\">.*?(<div>.*?</div>.*?<div class=\"last\">.*?</div>).*?</div>.*?" //
-							+ "<div class=\"linkGroup\">.*?input=(\\d+).*?" // locationId
-							+ "(?:<table class=\"resultTable\" cellspacing=\"0\">(.*?)</table>|(verkehren an dieser Haltestelle keine))"//
-							+ "|(Eingabe kann nicht interpretiert)|(Verbindung zum Server konnte leider nicht hergestellt werden|kann vom Server derzeit leider nicht bearbeitet werden))" //
-							+ ".*?" //
-					, Pattern.DOTALL);
-	private static final Pattern P_DEPARTURES_HEAD_FINE = Pattern.compile(".*?" //
-			+ "<span class=\"output\">(.*?)<.*?" // location
-			+ "<span class=\"output\">\n(\\d{2}\\.\\d{2}\\.\\d{2}),\n" // date
-			+ "Abfahrt (\\d{1,2}:\\d{2}).*?" // time
-	, Pattern.DOTALL);
-	private static final Pattern P_DEPARTURES_COARSE = Pattern.compile("<tr class=\"(depboard-\\w*)\">(.*?)</tr>", Pattern.DOTALL);
-	private static final Pattern P_DEPARTURES_FINE = Pattern.compile(".*?" //
-			+ "<td class=\"time\">(\\d{1,2}:\\d{2})</td>\n" // plannedTime
-			+ "(?:<td class=\"[\\w ]*prognosis[\\w ]*\">\n" //
-			+ "(?:&nbsp;|<span class=\"rtLimit\\d\">(p&#252;nktlich|\\d{1,2}:\\d{2})</span>)\n</td>\n" // predictedTime
-			+ ")?.*?" //
-			+ "<img class=\"product\" src=\"/hafas-res/img/products/(\\w+)_pic\\.gif\"[^>]*>\\s*(.*?)\\s*</.*?" // type,
-																												// line
-			+ "<strong>\n" //
-			+ "<a href=\"http://fpa\\.invg\\.de/bin/stboard\\.exe/dn\\?input=(\\d+)&[^>]*>" // destinationId
-			+ "\\s*(.*?)\\s*</a>\n" // destination
-			+ "</strong>.*?" //
-			+ "(?:<td class=\"center sepline top\">\n(" + ParserUtils.P_PLATFORM + ").*?)?" // position
-	, Pattern.DOTALL);
+	private static final Pattern P_DEPARTURES_HEAD_TIME = Pattern.compile("(\\d{2}\\.\\d{2}\\.\\d{2}),\\s*Abfahrt (\\d{1,2}:\\d{2})");
+	private static final Pattern P_DEPARTURES_LOCATION_ID = Pattern.compile("input=(\\d+)");
+	private static final Pattern P_DEPARTURES_TIME = Pattern.compile("\\d{1,2}:\\d{2}");
+	private static final Pattern P_DEPARTURES_MESSAGES = Pattern.compile("(verkehren an dieser Haltestelle keine)|(Eingabe kann nicht interpretiert)|" //
+			+ "(Verbindung zum Server konnte leider nicht hergestellt werden|kann vom Server derzeit leider nicht bearbeitet werden)");
 
 	public QueryDeparturesResult queryDepartures(final int stationId, final int maxDepartures, final boolean equivs) throws IOException
 	{
@@ -163,113 +141,141 @@ public class InvgProvider extends AbstractHafasProvider
 
 		// scrape page
 		final String uri = departuresQueryUri(stationId, maxDepartures);
-		final CharSequence page = ParserUtils.scrape(uri);
+		final CharSequence page = ParserUtils.scrape(httpTransport(), uri);
 
 		// parse page
-		final Matcher mHeadCoarse = P_DEPARTURES_HEAD_COARSE.matcher(page);
-		if (mHeadCoarse.matches())
+		final HtmlTokenizer html = new HtmlTokenizer(new StringReader(page.toString()));
+		boolean inSummary = false;
+		boolean inLinkGroup = false;
+		String location = null;
+		Calendar currentTime = null;
+		int locationId = 0;
+		final List<Departure> departures = new ArrayList<Departure>(8);
+		String oldZebra = null;
+
+		while (html.next() != HtmlTokenizer.Token.END_DOCUMENT)
 		{
-			// messages
-			if (mHeadCoarse.group(4) != null)
+			if (html.getToken() == HtmlTokenizer.Token.TEXT)
 			{
-				result.stationDepartures.add(new StationDepartures(new Location(LocationType.STATION, stationId),
-						Collections.<Departure> emptyList(), null));
-				return result;
+				// messages
+				final Matcher mMessage = P_DEPARTURES_MESSAGES.matcher(html.getText());
+				if (mMessage.find())
+				{
+					if (mMessage.group(1) != null)
+					{
+						result.stationDepartures.add(new StationDepartures(new Location(LocationType.STATION, stationId),
+								Collections.<Departure> emptyList(), null));
+						return result;
+					}
+					else if (mMessage.group(2) != null)
+						return new QueryDeparturesResult(header, Status.INVALID_STATION);
+					else if (mMessage.group(3) != null)
+						return new QueryDeparturesResult(header, Status.SERVICE_DOWN);
+				}
 			}
-			else if (mHeadCoarse.group(5) != null)
-				return new QueryDeparturesResult(header, Status.INVALID_STATION);
-			else if (mHeadCoarse.group(6) != null)
-				return new QueryDeparturesResult(header, Status.SERVICE_DOWN);
-
-			final int locationId = Integer.parseInt(mHeadCoarse.group(2));
-
-			final Matcher mHeadFine = P_DEPARTURES_HEAD_FINE.matcher(mHeadCoarse.group(1));
-			if (mHeadFine.matches())
+			else if (html.isStartTag("div"))
+			{
+				final String divClass = html.getAttribute("class");
+				if ("summary clearfix".equals(divClass))
+					inSummary = true;
+				else if ("linkGroup".equals(divClass))
+					inLinkGroup = true;
+			}
+			else if (inSummary && html.isStartTag("span") && "output".equals(html.getAttribute("class")))
 			{
-				final String location = ParserUtils.resolveEntities(mHeadFine.group(1));
-				final Calendar currentTime = new GregorianCalendar(timeZone());
-				currentTime.clear();
-				ParserUtils.parseGermanDate(currentTime, mHeadFine.group(2));
-				ParserUtils.parseEuropeanTime(currentTime, mHeadFine.group(3));
-				final List<Departure> departures = new ArrayList<Departure>(8);
-				String oldZebra = null;
-
-				final Matcher mDepCoarse = P_DEPARTURES_COARSE.matcher(mHeadCoarse.group(3));
-				while (mDepCoarse.find())
+				if (location == null)
 				{
-					final String zebra = mDepCoarse.group(1);
-					if (oldZebra != null && zebra.equals(oldZebra))
-						throw new IllegalArgumentException("missed row? last:" + zebra);
-					else
-						oldZebra = zebra;
+					location = ParserUtils.resolveEntities(html.nextText());
+				}
+				else if (currentTime == null)
+				{
+					final String text = html.nextText();
+					final Matcher mHeadTime = P_DEPARTURES_HEAD_TIME.matcher(text);
+					if (!mHeadTime.find())
+						throw new IllegalArgumentException("cannot parse '" + text + "' on " + stationId);
+
+					currentTime = new GregorianCalendar(timeZone());
+					currentTime.clear();
+					ParserUtils.parseGermanDate(currentTime, mHeadTime.group(1));
+					ParserUtils.parseEuropeanTime(currentTime, mHeadTime.group(2));
+				}
+			}
+			else if (inLinkGroup && locationId == 0 && html.isStartTag("a"))
+			{
+				final String href = html.getAttribute("href");
+				final Matcher mLocationId = href != null ? P_DEPARTURES_LOCATION_ID.matcher(href) : null;
+				if (mLocationId != null && mLocationId.find())
+					locationId = Integer.parseInt(mLocationId.group(1));
+			}
+			else if (html.isStartTag("tr"))
+			{
+				final String zebra = html.getAttribute("class");
+				if (zebra == null || !zebra.startsWith("depboard-"))
+					continue;
+
+				if (currentTime == null)
+					throw new IllegalArgumentException("cannot parse '" + page + "' on " + stationId);
+
+				if (oldZebra != null && zebra.equals(oldZebra))
+					throw new IllegalArgumentException("missed row? last:" + zebra);
+				else
+					oldZebra = zebra;
 
-					final Matcher mDepFine = P_DEPARTURES_FINE.matcher(mDepCoarse.group(2));
-					if (mDepFine.matches())
+				final HtmlDepartureRow row = htmlDepartureRow(html, P_DEPARTURES_TIME, false);
+				if (row == null)
+					throw new IllegalArgumentException("cannot parse row '" + zebra + "' on " + stationId);
+
+				final Calendar plannedTime = new GregorianCalendar(timeZone());
+				plannedTime.setTimeInMillis(currentTime.getTimeInMillis());
+				ParserUtils.parseEuropeanTime(plannedTime, row.plannedTime);
+
+				if (plannedTime.getTimeInMillis() - currentTime.getTimeInMillis() < -PARSER_DAY_ROLLOVER_THRESHOLD_MS)
+					plannedTime.add(Calendar.DAY_OF_MONTH, 1);
+
+				final Calendar predictedTime;
+				final String prognosis = ParserUtils.resolveEntities(row.prognosis);
+				if (prognosis != null)
+				{
+					predictedTime = new GregorianCalendar(timeZone());
+					if (prognosis.equals("pünktlich"))
 					{
-						final Calendar plannedTime = new GregorianCalendar(timeZone());
-						plannedTime.setTimeInMillis(currentTime.getTimeInMillis());
-						ParserUtils.parseEuropeanTime(plannedTime, mDepFine.group(1));
-
-						if (plannedTime.getTimeInMillis() - currentTime.getTimeInMillis() < -PARSER_DAY_ROLLOVER_THRESHOLD_MS)
-							plannedTime.add(Calendar.DAY_OF_MONTH, 1);
-
-						final Calendar predictedTime;
-						final String prognosis = ParserUtils.resolveEntities(mDepFine.group(2));
-						if (prognosis != null)
-						{
-							predictedTime = new GregorianCalendar(timeZone());
-							if (prognosis.equals("pünktlich"))
-							{
-								predictedTime.setTimeInMillis(plannedTime.getTimeInMillis());
-							}
-							else
-							{
-								predictedTime.setTimeInMillis(currentTime.getTimeInMillis());
-								ParserUtils.parseEuropeanTime(predictedTime, prognosis);
-							}
-						}
-						else
-						{
-							predictedTime = null;
-						}
-
-						final String lineType = mDepFine.group(3);
-
-						final Line line = parseLine(lineType, ParserUtils.resolveEntities(mDepFine.group(4)), false);
-
-						final int destinationId = mDepFine.group(5) != null ? Integer.parseInt(mDepFine.group(5)) : 0;
-						final String destinationName = ParserUtils.resolveEntities(mDepFine.group(6));
-						final Location destination = new Location(destinationId > 0 ? LocationType.STATION : LocationType.ANY, destinationId, null,
-								destinationName);
-
-						final String position = mDepFine.group(7) != null ? "Gl. " + ParserUtils.resolveEntities(mDepFine.group(7)) : null;
-
-						final Departure dep = new Departure(plannedTime.getTime(), predictedTime != null ? predictedTime.getTime() : null, line,
-								position, destination, null, null);
-
-						if (!departures.contains(dep))
-							departures.add(dep);
+						predictedTime.setTimeInMillis(plannedTime.getTimeInMillis());
 					}
 					else
 					{
-						throw new IllegalArgumentException("cannot parse '" + mDepCoarse.group(2) + "' on " + stationId);
+						predictedTime.setTimeInMillis(currentTime.getTimeInMillis());
+						ParserUtils.parseEuropeanTime(predictedTime, prognosis);
 					}
 				}
+				else
+				{
+					predictedTime = null;
+				}
 
-				final String[] placeAndName = splitPlaceAndName(location);
-				result.stationDepartures.add(new StationDepartures(new Location(LocationType.STATION, locationId, placeAndName[0], placeAndName[1]),
-						departures, null));
-				return result;
-			}
-			else
-			{
-				throw new IllegalArgumentException("cannot parse '" + mHeadCoarse.group(1) + "' on " + stationId);
+				final Line line = parseLineCached(row.lineType, ParserUtils.resolveEntities(row.line), false);
+
+				final int destinationId = row.destinationId;
+				final String destinationName = ParserUtils.resolveEntities(row.destinationName);
+				final Location destination = new Location(destinationId > 0 ? LocationType.STATION : LocationType.ANY, destinationId, null,
+						destinationName);
+
+				final String position = row.position != null ? "Gl. " + ParserUtils.resolveEntities(row.position) : null;
+
+				final Departure dep = new Departure(plannedTime.getTime(), predictedTime != null ? predictedTime.getTime() : null, line,
+						position, destination, null, null);
+
+				if (!departures.contains(dep))
+					departures.add(dep);
 			}
 		}
-		else
-		{
+
+		if (currentTime == null || locationId == 0)
 			throw new IllegalArgumentException("cannot parse '" + page + "' on " + stationId);
-		}
+
+		final String[] placeAndName = splitPlaceAndName(location);
+		result.stationDepartures.add(new StationDepartures(new Location(LocationType.STATION, locationId, placeAndName[0], placeAndName[1]),
+				departures, null));
+		return result;
 	}
 
 	public List<Location> autocompleteStations(final CharSequence constraint) throws IOException
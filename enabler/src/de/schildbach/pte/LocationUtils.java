@@ -111,4 +111,74 @@ public final class LocationUtils
 
 		return (float) (b * A * (sigma - deltaSigma));
 	}
+
+	private static final double WGS84_A = 6378137.0; // major axis
+	private static final double WGS84_E2 = 6.69437999014e-3; // first eccentricity squared
+
+	/**
+	 * Fast approximation of {@link #computeDistance(double, double, double, double)}, projecting both points onto the
+	 * plane tangent to the ellipsoid at their mean latitude. Between 70 degrees north and south, the error is below
+	 * 0.001% up to 10 km and below 0.02% up to 100 km; it grows towards the poles and with distance, to about 0.25% at
+	 * 500 km. Use the exact method for long distances.
+	 *
+	 * @return distance in meters
+	 */
+	public static float computeDistanceFast(final double lat1, final double lon1, final double lat2, final double lon2)
+	{
+		final double midLat = Math.toRadians((lat1 + lat2) / 2);
+		final double sinMidLat = Math.sin(midLat);
+		final double w2 = 1 - WGS84_E2 * sinMidLat * sinMidLat;
+		final double w = Math.sqrt(w2);
+		final double meridionalRadius = WGS84_A * (1 - WGS84_E2) / (w2 * w);
+		final double normalRadius = WGS84_A / w;
+
+		final double dy = meridionalRadius * Math.toRadians(lat2 - lat1);
+		final double dx = normalRadius * Math.cos(midLat) * Math.toRadians(normalizeLonDelta(lon2 - lon1));
+
+		return (float) Math.sqrt(dx * dx + dy * dy);
+	}
+
+	/**
+	 * Batch variant of {@link #computeDistanceFast(double, double, double, double)} for coordinates in micro-degrees,
+	 * as used by {@link de.schildbach.pte.dto.Location} and {@link de.schildbach.pte.dto.Point}. Everything depending
+	 * on the reference point is computed once.
+	 *
+	 * @param out
+	 *            receives the distance in meters from the reference point to each point, must be at least as long as
+	 *            lats and lons
+	 */
+	public static void computeDistances(final int refLat, final int refLon, final int[] lats, final int[] lons, final float[] out)
+	{
+		if (lats.length != lons.length)
+			throw new IllegalArgumentException("lats and lons differ in length: " + lats.length + " vs " + lons.length);
+
+		final double refLatRad = Math.toRadians(refLat / 1E6);
+		final double sinRefLat = Math.sin(refLatRad);
+		final double cosRefLat = Math.cos(refLatRad);
+		final double w2 = 1 - WGS84_E2 * sinRefLat * sinRefLat;
+		final double w = Math.sqrt(w2);
+		final double radiansPerMicroDegree = Math.PI / 180 / 1E6;
+		final double ky = WGS84_A * (1 - WGS84_E2) / (w2 * w) * radiansPerMicroDegree;
+		final double kx = WGS84_A / w * radiansPerMicroDegree;
+
+		for (int i = 0; i < lats.length; i++)
+		{
+			final double dLat = lats[i] - refLat;
+			// cos of mean latitude, to first order
+			final double cosMidLat = cosRefLat - sinRefLat * (dLat * radiansPerMicroDegree / 2);
+			final double dy = ky * dLat;
+			final double dx = kx * cosMidLat * normalizeLonDelta((lons[i] - (double) refLon) / 1E6) * 1E6;
+			out[i] = (float) Math.sqrt(dx * dx + dy * dy);
+		}
+	}
+
+	private static double normalizeLonDelta(double dLon)
+	{
+		if (dLon > 180)
+			dLon -= 360;
+		else if (dLon < -180)
+			dLon += 360;
+
+		return dLon;
+	}
 }
@@ -37,6 +37,8 @@ public class LuProvider extends AbstractHafasProvider
 	public LuProvider()
 	{
 		super(API_BASE + "query.exe/fn", 10, null, UTF_8, UTF_8);
+
+		addProductType("CRE", 'R');
 	}
 
 	public NetworkId id()
@@ -129,7 +131,7 @@ public class LuProvider extends AbstractHafasProvider
 			uri.append("&look_x=").append(location.lon);
 			uri.append("&look_y=").append(location.lat);
 
-			return jsonNearbyStations(uri.toString());
+			return jsonNearbyStations(uri.toString(), maxStations);
 		}
 		else if (location.type == LocationType.STATION && location.hasId())
 		{
@@ -166,19 +168,4 @@ public class LuProvider extends AbstractHafasProvider
 	{
 		return xmlMLcReq(constraint);
 	}
-
-	@Override
-	protected char normalizeType(final String type)
-	{
-		final String ucType = type.toUpperCase();
-
-		if ("CRE".equals(ucType))
-			return 'R';
-
-		final char t = super.normalizeType(type);
-		if (t != 0)
-			return t;
-
-		return 0;
-	}
 }
@@ -36,6 +36,24 @@ public class NasaProvider extends AbstractHafasProvider
 	public NasaProvider()
 	{
 		super(API_BASE + "query.exe/dn", 8, null);
+
+		addProductType("ECW", 'I');
+		addProductType("IXB", 'I'); // ICE International
+		addProductType("RRT", 'I');
+
+		addProductType("DPF", 'R'); // mit Dampflok bespannter Zug
+		addProductType("DAM", 'R'); // Harzer Schmalspurbahnen: mit Dampflok bespannter Zug
+		addProductType("TW", 'R'); // Harzer Schmalspurbahnen: Triebwagen
+		addProductType("RR", 'R'); // Polen
+		addProductType("BAHN", 'R');
+		addProductType("ZUGBAHN", 'R');
+		addProductType("DAMPFZUG", 'R');
+
+		addProductType("E", 'S'); // Stadtbahn Karlsruhe: S4/S31/xxxxx
+
+		addProductType("BSV", 'B');
+		addProductType("RUFBUS", 'B'); // Rufbus
+		addProductType("RBS", 'B'); // Rufbus
 	}
 
 	public NetworkId id()
@@ -168,48 +186,4 @@ public class NasaProvider extends AbstractHafasProvider
 	{
 		return xmlMLcReq(constraint);
 	}
-
-	@Override
-	protected char normalizeType(String type)
-	{
-		final String ucType = type.toUpperCase();
-
-		if ("ECW".equals(ucType))
-			return 'I';
-		if ("IXB".equals(ucType)) // ICE International
-			return 'I';
-		if ("RRT".equals(ucType))
-			return 'I';
-
-		if ("DPF".equals(ucType)) // mit Dampflok bespannter Zug
-			return 'R';
-		if ("DAM".equals(ucType)) // Harzer Schmalspurbahnen: mit Dampflok bespannter Zug
-			return 'R';
-		if ("TW".equals(ucType)) // Harzer Schmalspurbahnen: Triebwagen
-			return 'R';
-		if ("RR".equals(ucType)) // Polen
-			return 'R';
-		if ("BAHN".equals(ucType))
-			return 'R';
-		if ("ZUGBAHN".equals(ucType))
-			return 'R';
-		if ("DAMPFZUG".equals(ucType))
-			return 'R';
-
-		if ("E".equals(ucType)) // Stadtbahn Karlsruhe: S4/S31/xxxxx
-			return 'S';
-
-		if ("BSV".equals(ucType))
-			return 'B';
-		if ("RUFBUS".equals(ucType)) // Rufbus
-			return 'B';
-		if ("RBS".equals(ucType)) // Rufbus
-			return 'B';
-
-		final char t = super.normalizeType(type);
-		if (t != 0)
-			return t;
-
-		return 0;
-	}
 }
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte;
+
+import java.io.IOException;
+
+import de.schildbach.pte.dto.Location;
+import de.schildbach.pte.dto.NearbyStationsResult;
+import de.schildbach.pte.util.NearbyStationsCache;
+
+/**
+ * Answers {@link #queryNearbyStations(Location, int, int)} for coordinates from a {@link NearbyStationsCache}, so that
+ * slightly different position fixes around the same place are served without querying the provider again. Queries by
+ * station id are always forwarded. The cache can be shared by the decorators of several providers.
+ *
+ * @author Andreas Schildbach
+ */
+public class NearbyStationsCachingProvider extends ForwardingNetworkProvider
+{
+	private final NearbyStationsCache cache;
+
+	public NearbyStationsCachingProvider(final NetworkProvider provider, final NearbyStationsCache cache)
+	{
+		super(provider);
+
+		this.cache = cache;
+	}
+
+	public NearbyStationsCache getCache()
+	{
+		return cache;
+	}
+
+	@Override
+	public NearbyStationsResult queryNearbyStations(final Location location, final int maxDistance, final int maxStations) throws IOException
+	{
+		if (!location.hasLocation())
+			return super.queryNearbyStations(location, maxDistance, maxStations);
+
+		final NetworkId network = id();
+
+		final NearbyStationsResult cached = cache.get(network, location.lat, location.lon, maxDistance, maxStations);
+		if (cached != null)
+			return cached;
+
+		final NearbyStationsResult result = super.queryNearbyStations(location, maxDistance, maxStations);
+		cache.put(network, location.lat, location.lon, maxDistance, maxStations, result);
+
+		return result;
+	}
+}
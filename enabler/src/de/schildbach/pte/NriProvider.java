@@ -142,7 +142,7 @@ public class NriProvider extends AbstractHafasProvider
 			uri.append("&look_x=").append(location.lon);
 			uri.append("&look_y=").append(location.lat);
 
-			return jsonNearbyStations(uri.toString());
+			return jsonNearbyStations(uri.toString(), maxStations);
 		}
 		else if (location.type == LocationType.STATION && location.hasId())
 		{
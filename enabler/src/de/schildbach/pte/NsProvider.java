@@ -50,6 +50,13 @@ public class NsProvider extends AbstractHafasProvider
 	public NsProvider()
 	{
 		super(API_URI, 6, null);
+
+		addProductType("L", 'R');
+		addProductType("CR", 'R');
+		addProductType("ICT", 'R'); // Brügge
+		addProductType("TRN", 'R'); // Mons
+
+		addProductType("MÉT", 'U');
 	}
 
 	public NetworkId id()
@@ -131,7 +138,7 @@ public class NsProvider extends AbstractHafasProvider
 
 		// scrape page
 		final String uri = departuresQueryUri(stationId, maxDepartures);
-		final CharSequence page = ParserUtils.scrape(uri);
+		final CharSequence page = ParserUtils.scrape(httpTransport(), uri);
 
 		// parse page
 		final Matcher mHeadCoarse = P_DEPARTURES_HEAD_COARSE.matcher(page);
@@ -159,7 +166,7 @@ public class NsProvider extends AbstractHafasProvider
 					final Matcher mDepFine = P_DEPARTURES_FINE.matcher(mDepCoarse.group(1));
 					if (mDepFine.matches())
 					{
-						final Line line = parseLineWithoutType(ParserUtils.resolveEntities(mDepFine.group(1)));
+						final Line line = parseLineWithoutTypeCached(ParserUtils.resolveEntities(mDepFine.group(1)));
 
 						final String destinationName = ParserUtils.resolveEntities(mDepFine.group(2));
 						final Location destination = new Location(LocationType.ANY, 0, null, destinationName);
@@ -202,28 +209,4 @@ public class NsProvider extends AbstractHafasProvider
 	{
 		throw new UnsupportedOperationException();
 	}
-
-	@Override
-	protected char normalizeType(final String type)
-	{
-		final String ucType = type.toUpperCase();
-
-		if (ucType.equals("L"))
-			return 'R';
-		if (ucType.equals("CR"))
-			return 'R';
-		if (ucType.equals("ICT")) // Brügge
-			return 'R';
-		if (ucType.equals("TRN")) // Mons
-			return 'R';
-
-		if (ucType.equals("MÉT"))
-			return 'U';
-
-		final char t = super.normalizeType(type);
-		if (t != 0)
-			return t;
-
-		return 0;
-	}
 }
@@ -36,6 +36,10 @@ public class NvvProvider extends AbstractHafasProvider
 	public NvvProvider()
 	{
 		super(API_BASE + "query.exe/dn", 17, null, UTF_8, UTF_8);
+
+		addProductType("U-BAHN", 'U');
+
+		addProductType("LTAXI", 'B');
 	}
 
 	public NetworkId id()
@@ -125,7 +129,7 @@ public class NvvProvider extends AbstractHafasProvider
 			uri.append("&look_x=").append(location.lon);
 			uri.append("&look_y=").append(location.lat);
 
-			return jsonNearbyStations(uri.toString());
+			return jsonNearbyStations(uri.toString(), maxStations);
 		}
 		else if (location.type == LocationType.STATION && location.hasId())
 		{
@@ -160,22 +164,4 @@ public class NvvProvider extends AbstractHafasProvider
 	{
 		return xmlMLcReq(constraint);
 	}
-
-	@Override
-	protected char normalizeType(final String type)
-	{
-		final String ucType = type.toUpperCase();
-
-		if ("U-BAHN".equals(ucType))
-			return 'U';
-
-		if ("LTAXI".equals(ucType))
-			return 'B';
-
-		final char t = super.normalizeType(type);
-		if (t != 0)
-			return t;
-
-		return 0;
-	}
 }
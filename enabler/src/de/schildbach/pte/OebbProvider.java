@@ -39,6 +39,40 @@ public class OebbProvider extends AbstractHafasProvider
 	public OebbProvider()
 	{
 		super(API_BASE + "query.exe/dn", 12, null);
+
+		addProductType("RR", 'I'); // Finnland, Connections only?
+		addProductType("EE", 'I'); // Rumänien, Connections only?
+		addProductType("OZ", 'I'); // Schweden, Oeresundzug, Connections only?
+		addProductType("UUU", 'I'); // Italien, Nacht, Connections only?
+
+		addProductType("S2", 'R'); // Helsinki-Turku, Connections only?
+		addProductType("RE", 'R'); // RegionalExpress Deutschland
+		addProductType("DPN", 'R'); // Connections only? TODO nicht evtl. doch eher ne S-Bahn?
+		addProductType("E", 'R'); // Budapest, Ungarn
+		addProductType("IP", 'R'); // Ozd, Ungarn
+		addProductType("N", 'R'); // Frankreich, Tours
+		addProductType("DPF", 'R'); // VX=Vogtland Express, Connections only?
+		// addProductType("SBE", 'R'); // Zittau-Seifhennersdorf, via JSON API
+		addProductType("UAU", 'R'); // Rußland
+
+		addProductType("RSB", 'S'); // Schnellbahn Wien
+		// addProductType("DPN", 'S'); // S3 Bad Reichenhall-Freilassing, via JSON API
+
+		addProductType("LKB", 'T'); // Connections only?
+		// addProductType("WLB", 'T'); // via JSON API
+
+		addProductType("OBU", 'B'); // Connections only?
+		addProductType("ICB", 'B'); // ÖBB ICBus
+		addProductType("BSV", 'B'); // Deutschland, Connections only?
+		addProductType("O-BUS", 'B'); // Stadtbus
+
+		addProductType("SCH", 'F'); // Connections only?
+		addProductType("F", 'F'); // Fähre
+
+		addProductType("LIF", 'C');
+		addProductType("LIFT", 'C'); // Graz Uhrturm
+		addProductType("SSB", 'C'); // Graz Schlossbergbahn
+		// addProductType("HBB", 'C'); // Innsbruck Hungerburgbahn, via JSON API
 	}
 
 	public NetworkId id()
@@ -149,7 +183,7 @@ public class OebbProvider extends AbstractHafasProvider
 			uri.append("&look_x=").append(location.lon);
 			uri.append("&look_y=").append(location.lat);
 
-			return jsonNearbyStations(uri.toString());
+			return jsonNearbyStations(uri.toString(), maxStations);
 		}
 		else if (location.type == LocationType.STATION && location.hasId())
 		{
@@ -203,67 +237,6 @@ public class OebbProvider extends AbstractHafasProvider
 	{
 		final String ucType = type.toUpperCase();
 
-		if (ucType.equals("RR")) // Finnland, Connections only?
-			return 'I';
-		if (ucType.equals("EE")) // Rumänien, Connections only?
-			return 'I';
-		if (ucType.equals("OZ")) // Schweden, Oeresundzug, Connections only?
-			return 'I';
-		if (ucType.equals("UUU")) // Italien, Nacht, Connections only?
-			return 'I';
-
-		if (ucType.equals("S2")) // Helsinki-Turku, Connections only?
-			return 'R';
-		if (ucType.equals("RE")) // RegionalExpress Deutschland
-			return 'R';
-		if (ucType.equals("DPN")) // Connections only? TODO nicht evtl. doch eher ne S-Bahn?
-			return 'R';
-		if (ucType.equals("E")) // Budapest, Ungarn
-			return 'R';
-		if (ucType.equals("IP")) // Ozd, Ungarn
-			return 'R';
-		if (ucType.equals("N")) // Frankreich, Tours
-			return 'R';
-		if (ucType.equals("DPF")) // VX=Vogtland Express, Connections only?
-			return 'R';
-		// if (ucType.equals("SBE")) // Zittau-Seifhennersdorf, via JSON API
-		// return 'R';
-		if ("UAU".equals(ucType)) // Rußland
-			return 'R';
-
-		if (ucType.equals("RSB")) // Schnellbahn Wien
-			return 'S';
-		// if (ucType.equals("DPN")) // S3 Bad Reichenhall-Freilassing, via JSON API
-		// return 'S';
-
-		if (ucType.equals("LKB")) // Connections only?
-			return 'T';
-		// if (ucType.equals("WLB")) // via JSON API
-		// return 'T';
-
-		if (ucType.equals("OBU")) // Connections only?
-			return 'B';
-		if (ucType.equals("ICB")) // ÖBB ICBus
-			return 'B';
-		if (ucType.equals("BSV")) // Deutschland, Connections only?
-			return 'B';
-		if (ucType.equals("O-BUS")) // Stadtbus
-			return 'B';
-
-		if (ucType.equals("SCH")) // Connections only?
-			return 'F';
-		if (ucType.equals("F")) // Fähre
-			return 'F';
-
-		if (ucType.equals("LIF"))
-			return 'C';
-		if (ucType.equals("LIFT")) // Graz Uhrturm
-			return 'C';
-		if (ucType.equals("SSB")) // Graz Schlossbergbahn
-			return 'C';
-		// if (ucType.equals("HBB")) // Innsbruck Hungerburgbahn, via JSON API
-		// return 'C';
-
 		final char t = super.normalizeType(type);
 		if (t != 0)
 			return t;
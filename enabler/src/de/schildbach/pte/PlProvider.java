@@ -18,6 +18,7 @@
 package de.schildbach.pte;
 
 import java.io.IOException;
+import java.io.Reader;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -43,6 +44,15 @@ public class PlProvider extends AbstractHafasProvider
 	public PlProvider()
 	{
 		super(API_BASE + "query.exe/pn", 7, null, UTF_8, UTF_8);
+
+		addProductType("AR", 'R'); // Arriva Polaczen
+		addProductType("N", 'R');
+		addProductType("KW", 'R'); // Koleje Wielkopolskie
+		addProductType("KS", 'R'); // Koleje Śląskie
+		addProductType("E", 'R');
+		addProductType("DB", 'R');
+
+		addProductType("FRE", 'F');
 	}
 
 	public NetworkId id()
@@ -147,7 +157,7 @@ public class PlProvider extends AbstractHafasProvider
 			uri.append("&look_x=").append(location.lon);
 			uri.append("&look_y=").append(location.lat);
 
-			return jsonNearbyStations(uri.toString());
+			return jsonNearbyStations(uri.toString(), maxStations);
 		}
 		else if (location.type == LocationType.STATION && location.hasId())
 		{
@@ -182,14 +192,15 @@ public class PlProvider extends AbstractHafasProvider
 	}
 
 	@Override
-	protected void addCustomReplaces(final StringReplaceReader reader)
+	protected Reader addCustomReplaces(final Reader reader)
 	{
-		reader.replace("dir=\"Sp ", " "); // Poland
-		reader.replace("dir=\"B ", " "); // Poland
-		reader.replace("dir=\"K ", " "); // Poland
-		reader.replace("dir=\"Eutingen i. G ", "dir=\"Eutingen\" "); // Poland
-		reader.replace("StargetLoc", "Süd\" targetLoc"); // Poland
-		reader.replace("platform=\"K ", " "); // Poland
+		final StringReplaceReader replaceReader = new StringReplaceReader(reader, "dir=\"Sp ", " "); // Poland
+		replaceReader.replace("dir=\"B ", " "); // Poland
+		replaceReader.replace("dir=\"K ", " "); // Poland
+		replaceReader.replace("dir=\"Eutingen i. G ", "dir=\"Eutingen\" "); // Poland
+		replaceReader.replace("StargetLoc", "Süd\" targetLoc"); // Poland
+		replaceReader.replace("platform=\"K ", " "); // Poland
+		return replaceReader;
 	}
 
 	public List<Location> autocompleteStations(final CharSequence constraint) throws IOException
@@ -212,32 +223,4 @@ public class PlProvider extends AbstractHafasProvider
 
 		return super.parseLineWithoutType(line);
 	}
-
-	@Override
-	protected char normalizeType(final String type)
-	{
-		final String ucType = type.toUpperCase();
-
-		if ("AR".equals(ucType)) // Arriva Polaczen
-			return 'R';
-		if ("N".equals(ucType))
-			return 'R';
-		if ("KW".equals(ucType)) // Koleje Wielkopolskie
-			return 'R';
-		if ("KS".equals(ucType)) // Koleje Śląskie
-			return 'R';
-		if ("E".equals(ucType))
-			return 'R';
-		if ("DB".equals(ucType))
-			return 'R';
-
-		if ("FRE".equals(ucType))
-			return 'F';
-
-		final char t = super.normalizeType(type);
-		if (t != 0)
-			return t;
-
-		return 0;
-	}
 }
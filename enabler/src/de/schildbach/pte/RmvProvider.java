@@ -49,6 +49,16 @@ public class RmvProvider extends AbstractHafasProvider
 	public RmvProvider()
 	{
 		super(API_BASE + "query.exe/dn", 16, null, UTF_8, null);
+
+		addProductType("U-BAHN", 'U');
+
+		addProductType("B", 'B');
+		addProductType("BUFB", 'B'); // BuFB
+		addProductType("BUVB", 'B'); // BuVB
+		addProductType("LTAXI", 'B');
+		addProductType("BN", 'B'); // BN Venus
+		addProductType("ASOF", 'B');
+		addProductType("AT", 'B'); // Anschluß Sammel Taxi, Anmeldung nicht erforderlich
 	}
 
 	public NetworkId id()
@@ -140,7 +150,7 @@ public class RmvProvider extends AbstractHafasProvider
 			uri.append("&look_x=").append(location.lon);
 			uri.append("&look_y=").append(location.lat);
 
-			return jsonNearbyStations(uri.toString());
+			return jsonNearbyStations(uri.toString(), maxStations);
 		}
 		else if (location.type == LocationType.STATION && location.hasId())
 		{
@@ -210,7 +220,7 @@ public class RmvProvider extends AbstractHafasProvider
 
 		// scrape page
 		final String uri = departuresQueryUri(stationId, maxDepartures);
-		final CharSequence page = ParserUtils.scrape(uri);
+		final CharSequence page = ParserUtils.scrape(httpTransport(), uri);
 
 		// parse page
 		final Matcher mHeadCoarse = P_DEPARTURES_HEAD_COARSE.matcher(page);
@@ -240,7 +250,7 @@ public class RmvProvider extends AbstractHafasProvider
 					final Matcher mDepFine = P_DEPARTURES_FINE.matcher(mDepCoarse.group(1));
 					if (mDepFine.matches())
 					{
-						final Line line = parseLineWithoutType(ParserUtils.resolveEntities(mDepFine.group(1)));
+						final Line line = parseLineWithoutTypeCached(ParserUtils.resolveEntities(mDepFine.group(1)));
 
 						final String destinationName = ParserUtils.resolveEntities(mDepFine.group(2));
 						final Location destination = new Location(LocationType.ANY, 0, null, destinationName);
@@ -316,34 +326,4 @@ public class RmvProvider extends AbstractHafasProvider
 
 		return super.parseLineWithoutType(line);
 	}
-
-	@Override
-	protected char normalizeType(final String type)
-	{
-		final String ucType = type.toUpperCase();
-
-		if ("U-BAHN".equals(ucType))
-			return 'U';
-
-		if ("B".equals(ucType))
-			return 'B';
-		if ("BUFB".equals(ucType)) // BuFB
-			return 'B';
-		if ("BUVB".equals(ucType)) // BuVB
-			return 'B';
-		if ("LTAXI".equals(ucType))
-			return 'B';
-		if ("BN".equals(ucType)) // BN Venus
-			return 'B';
-		if ("ASOF".equals(ucType))
-			return 'B';
-		if ("AT".equals(ucType)) // Anschluß Sammel Taxi, Anmeldung nicht erforderlich
-			return 'B';
-
-		final char t = super.normalizeType(type);
-		if (t != 0)
-			return t;
-
-		return 0;
-	}
 }
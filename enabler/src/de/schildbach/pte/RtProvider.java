@@ -37,6 +37,9 @@ public class RtProvider extends AbstractHafasProvider
 	public RtProvider()
 	{
 		super(API_BASE + "query.exe/dn", 10, null, UTF_8, null);
+
+		addProductType("E", 'R'); // Romania, Croatia
+		addProductType("N", 'R'); // Frankreich, Tours
 	}
 
 	public NetworkId id()
@@ -113,7 +116,7 @@ public class RtProvider extends AbstractHafasProvider
 			uri.append("&look_x=").append(location.lon);
 			uri.append("&look_y=").append(location.lat);
 
-			return jsonNearbyStations(uri.toString());
+			return jsonNearbyStations(uri.toString(), maxStations);
 		}
 		else if (location.type == LocationType.STATION && location.hasId())
 		{
@@ -161,11 +164,6 @@ public class RtProvider extends AbstractHafasProvider
 	{
 		final String ucType = type.toUpperCase();
 
-		if ("E".equals(ucType)) // Romania, Croatia
-			return 'R';
-		if ("N".equals(ucType)) // Frankreich, Tours
-			return 'R';
-
 		final char t = super.normalizeType(type);
 		if (t != 0)
 			return t;
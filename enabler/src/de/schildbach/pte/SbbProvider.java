@@ -38,6 +38,16 @@ public class SbbProvider extends AbstractHafasProvider
 	public SbbProvider(final String accessId)
 	{
 		super(API_URI, 10, accessId);
+
+		addProductType("IN", 'I'); // Italien Roma-Lecce
+
+		addProductType("E", 'R');
+		addProductType("T", 'R');
+
+		addProductType("M", 'U'); // Metro Wien
+
+		addProductType("TX", 'B');
+		addProductType("NFO", 'B');
 	}
 
 	public NetworkId id()
@@ -108,7 +118,7 @@ public class SbbProvider extends AbstractHafasProvider
 			uri.append("&look_x=").append(location.lon);
 			uri.append("&look_y=").append(location.lat);
 
-			return jsonNearbyStations(uri.toString());
+			return jsonNearbyStations(uri.toString(), maxStations);
 		}
 		else if (location.type == LocationType.STATION && location.hasId())
 		{
@@ -150,32 +160,4 @@ public class SbbProvider extends AbstractHafasProvider
 
 		return jsonGetStops(uri);
 	}
-
-	@Override
-	protected char normalizeType(final String type)
-	{
-		final String ucType = type.toUpperCase();
-
-		if ("IN".equals(ucType)) // Italien Roma-Lecce
-			return 'I';
-
-		if ("E".equals(ucType))
-			return 'R';
-		if ("T".equals(ucType))
-			return 'R';
-
-		if ("M".equals(ucType)) // Metro Wien
-			return 'U';
-
-		if ("TX".equals(ucType))
-			return 'B';
-		if ("NFO".equals(ucType))
-			return 'B';
-
-		final char t = super.normalizeType(type);
-		if (t != 0)
-			return t;
-
-		return 0;
-	}
 }
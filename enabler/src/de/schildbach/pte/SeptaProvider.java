@@ -18,6 +18,7 @@
 package de.schildbach.pte;
 
 import java.io.IOException;
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
@@ -36,6 +37,7 @@ import de.schildbach.pte.dto.QueryDeparturesResult;
 import de.schildbach.pte.dto.QueryDeparturesResult.Status;
 import de.schildbach.pte.dto.ResultHeader;
 import de.schildbach.pte.dto.StationDepartures;
+import de.schildbach.pte.util.HtmlTokenizer;
 import de.schildbach.pte.util.ParserUtils;
 
 /**
@@ -156,31 +158,10 @@ public class SeptaProvider extends AbstractHafasProvider
 		return uri.toString();
 	}
 
-	private static final Pattern P_DEPARTURES_PAGE_COARSE = Pattern
-			.compile(
-					".*?" //
-							+ "(?:" //
-							+ "<div class=\"hfsTitleText\">([^<]*)<.*?" // location
-							+ "\n(\\d{2}/\\d{2}/\\d{4})[^\n]*\n" // date
-							+ "Departure (\\d{1,2}:\\d{2} [AP]M)\n.*?" // time
-							+ "(?:<table class=\"resultTable\"[^>]*>(.+?)</table>|(No trains in this space of time))" //
-							+ "|(input cannot be interpreted)|(Verbindung zum Server konnte leider nicht hergestellt werden|kann vom Server derzeit leider nicht bearbeitet werden))" //
-							+ ".*?" //
-					, Pattern.DOTALL);
-	private static final Pattern P_DEPARTURES_COARSE = Pattern.compile("<tr class=\"(depboard-\\w*)\">(.*?)</tr>", Pattern.DOTALL);
-	private static final Pattern P_DEPARTURES_FINE = Pattern.compile(".*?" //
-			+ "<td class=\"time\">(\\d{1,2}:\\d{2} [AP]M)</td>\n" // plannedTime
-			+ "(?:<td class=\"[\\w ]*prognosis[\\w ]*\">\n" //
-			+ "(?:&nbsp;|<span class=\"rtLimit\\d\">(p&#252;nktlich|\\d{1,2}:\\d{2})</span>)\n</td>\n" // predictedTime
-			+ ")?.*?" //
-			+ "<img class=\"product\" src=\"/hafas-res/img/products/(\\w+)_pic\\.gif\" width=\"\\d+\" height=\"\\d+\" alt=\"([^\"]*)\".*?" // type,
-			// line
-			+ "<strong>\n" //
-			+ "<a href=\"http://airs1\\.septa\\.org/bin/stboard\\.exe/en\\?input=(\\d+)&[^>]*>" // destinationId
-			+ "\\s*(.*?)\\s*</a>\n" // destination
-			+ "</strong>.*?" //
-			+ "(?:<td class=\"center sepline top\">\n(" + ParserUtils.P_PLATFORM + ").*?)?" // position
-	, Pattern.DOTALL);
+	private static final Pattern P_DEPARTURES_HEAD_TIME = Pattern.compile("(\\d{2}/\\d{2}/\\d{4})[^\n]*\nDeparture (\\d{1,2}:\\d{2} [AP]M)\n");
+	private static final Pattern P_DEPARTURES_TIME = Pattern.compile("\\d{1,2}:\\d{2} [AP]M");
+	private static final Pattern P_DEPARTURES_MESSAGES = Pattern.compile("(No trains in this space of time)|(input cannot be interpreted)|" //
+			+ "(Verbindung zum Server konnte leider nicht hergestellt werden|kann vom Server derzeit leider nicht bearbeitet werden)");
 
 	public QueryDeparturesResult queryDepartures(final int stationId, final int maxDepartures, final boolean equivs) throws IOException
 	{
@@ -189,102 +170,122 @@ public class SeptaProvider extends AbstractHafasProvider
 
 		// scrape page
 		final String uri = departuresQueryUri(stationId, maxDepartures);
-		final CharSequence page = ParserUtils.scrape(uri);
+		final CharSequence page = ParserUtils.scrape(httpTransport(), uri);
 
 		// parse page
-		final Matcher mPageCoarse = P_DEPARTURES_PAGE_COARSE.matcher(page);
-		if (mPageCoarse.matches())
+		final HtmlTokenizer html = new HtmlTokenizer(new StringReader(page.toString()));
+		String location = null;
+		final StringBuilder headText = new StringBuilder();
+		Calendar currentTime = null;
+		final List<Departure> departures = new ArrayList<Departure>(8);
+		String oldZebra = null;
+
+		while (html.next() != HtmlTokenizer.Token.END_DOCUMENT)
 		{
-			// messages
-			if (mPageCoarse.group(5) != null)
+			if (html.getToken() == HtmlTokenizer.Token.TEXT)
 			{
-				result.stationDepartures.add(new StationDepartures(new Location(LocationType.STATION, stationId),
-						Collections.<Departure> emptyList(), null));
-				return result;
+				// messages
+				final Matcher mMessage = P_DEPARTURES_MESSAGES.matcher(html.getText());
+				if (mMessage.find())
+				{
+					if (mMessage.group(1) != null)
+					{
+						result.stationDepartures.add(new StationDepartures(new Location(LocationType.STATION, stationId),
+								Collections.<Departure> emptyList(), null));
+						return result;
+					}
+					else if (mMessage.group(2) != null)
+						return new QueryDeparturesResult(header, Status.INVALID_STATION);
+					else if (mMessage.group(3) != null)
+						return new QueryDeparturesResult(header, Status.SERVICE_DOWN);
+				}
+
+				if (location != null && currentTime == null)
+				{
+					headText.append(html.getText());
+
+					final Matcher mHeadTime = P_DEPARTURES_HEAD_TIME.matcher(headText);
+					if (mHeadTime.find())
+					{
+						currentTime = new GregorianCalendar(timeZone());
+						currentTime.clear();
+						ParserUtils.parseAmericanDate(currentTime, mHeadTime.group(1));
+						ParserUtils.parseAmericanTime(currentTime, mHeadTime.group(2));
+					}
+				}
+			}
+			else if (location == null && html.isStartTag("div") && "hfsTitleText".equals(html.getAttribute("class")))
+			{
+				// location is the text directly following the tag
+				location = html.next() == HtmlTokenizer.Token.TEXT ? ParserUtils.resolveEntities(html.getText()) : "";
 			}
-			else if (mPageCoarse.group(6) != null)
-				return new QueryDeparturesResult(header, Status.INVALID_STATION);
-			else if (mPageCoarse.group(7) != null)
-				return new QueryDeparturesResult(header, Status.SERVICE_DOWN);
-
-			final String location = ParserUtils.resolveEntities(mPageCoarse.group(1));
-			final Calendar currentTime = new GregorianCalendar(timeZone());
-			currentTime.clear();
-			ParserUtils.parseAmericanDate(currentTime, mPageCoarse.group(2));
-			ParserUtils.parseAmericanTime(currentTime, mPageCoarse.group(3));
-
-			final List<Departure> departures = new ArrayList<Departure>(8);
-			String oldZebra = null;
-
-			final Matcher mDepCoarse = P_DEPARTURES_COARSE.matcher(mPageCoarse.group(4));
-			while (mDepCoarse.find())
+			else if (html.isStartTag("tr"))
 			{
-				final String zebra = mDepCoarse.group(1);
+				final String zebra = html.getAttribute("class");
+				if (zebra == null || !zebra.startsWith("depboard-"))
+					continue;
+
+				if (currentTime == null)
+					throw new IllegalArgumentException("cannot parse '" + page + "' on " + stationId);
+
 				if (oldZebra != null && zebra.equals(oldZebra))
 					throw new IllegalArgumentException("missed row? last:" + zebra);
 				else
 					oldZebra = zebra;
 
-				final Matcher mDepFine = P_DEPARTURES_FINE.matcher(mDepCoarse.group(2));
-				if (mDepFine.matches())
-				{
-					final Calendar plannedTime = new GregorianCalendar(timeZone());
-					plannedTime.setTimeInMillis(currentTime.getTimeInMillis());
-					ParserUtils.parseAmericanTime(plannedTime, mDepFine.group(1));
+				final HtmlDepartureRow row = htmlDepartureRow(html, P_DEPARTURES_TIME, true);
+				if (row == null)
+					throw new IllegalArgumentException("cannot parse row '" + zebra + "' on " + stationId);
+
+				final Calendar plannedTime = new GregorianCalendar(timeZone());
+				plannedTime.setTimeInMillis(currentTime.getTimeInMillis());
+				ParserUtils.parseAmericanTime(plannedTime, row.plannedTime);
 
-					if (plannedTime.getTimeInMillis() - currentTime.getTimeInMillis() < -PARSER_DAY_ROLLOVER_THRESHOLD_MS)
-						plannedTime.add(Calendar.DAY_OF_MONTH, 1);
+				if (plannedTime.getTimeInMillis() - currentTime.getTimeInMillis() < -PARSER_DAY_ROLLOVER_THRESHOLD_MS)
+					plannedTime.add(Calendar.DAY_OF_MONTH, 1);
 
-					final Calendar predictedTime;
-					final String prognosis = ParserUtils.resolveEntities(mDepFine.group(2));
-					if (prognosis != null)
+				final Calendar predictedTime;
+				final String prognosis = ParserUtils.resolveEntities(row.prognosis);
+				if (prognosis != null)
+				{
+					predictedTime = new GregorianCalendar(timeZone());
+					if (prognosis.equals("pünktlich"))
 					{
-						predictedTime = new GregorianCalendar(timeZone());
-						if (prognosis.equals("pünktlich"))
-						{
-							predictedTime.setTimeInMillis(plannedTime.getTimeInMillis());
-						}
-						else
-						{
-							predictedTime.setTimeInMillis(currentTime.getTimeInMillis());
-							ParserUtils.parseAmericanTime(predictedTime, prognosis);
-						}
+						predictedTime.setTimeInMillis(plannedTime.getTimeInMillis());
 					}
 					else
 					{
-						predictedTime = null;
+						predictedTime.setTimeInMillis(currentTime.getTimeInMillis());
+						ParserUtils.parseAmericanTime(predictedTime, prognosis);
 					}
+				}
+				else
+				{
+					predictedTime = null;
+				}
 
-					final String lineType = mDepFine.group(3);
-
-					final Line line = parseLine(lineType, ParserUtils.resolveEntities(mDepFine.group(4)), false);
+				final Line line = parseLineCached(row.lineType, ParserUtils.resolveEntities(row.line), false);
 
-					final int destinationId = mDepFine.group(5) != null ? Integer.parseInt(mDepFine.group(5)) : 0;
-					final String destinationName = ParserUtils.resolveEntities(mDepFine.group(6));
-					final Location destination = new Location(destinationId > 0 ? LocationType.STATION : LocationType.ANY, destinationId, null,
-							destinationName);
+				final int destinationId = row.destinationId;
+				final String destinationName = ParserUtils.resolveEntities(row.destinationName);
+				final Location destination = new Location(destinationId > 0 ? LocationType.STATION : LocationType.ANY, destinationId, null,
+						destinationName);
 
-					final String position = mDepFine.group(7) != null ? "Gl. " + ParserUtils.resolveEntities(mDepFine.group(7)) : null;
+				final String position = row.position != null ? "Gl. " + ParserUtils.resolveEntities(row.position) : null;
 
-					final Departure dep = new Departure(plannedTime.getTime(), predictedTime != null ? predictedTime.getTime() : null, line,
-							position, destination, null, null);
+				final Departure dep = new Departure(plannedTime.getTime(), predictedTime != null ? predictedTime.getTime() : null, line,
+						position, destination, null, null);
 
-					if (!departures.contains(dep))
-						departures.add(dep);
-				}
-				else
-				{
-					throw new IllegalArgumentException("cannot parse '" + mDepCoarse.group(2) + "' on " + stationId);
-				}
+				if (!departures.contains(dep))
+					departures.add(dep);
 			}
-
-			result.stationDepartures.add(new StationDepartures(new Location(LocationType.STATION, stationId, null, location), departures, null));
-			return result;
 		}
-		else
-		{
+
+		if (currentTime == null)
 			throw new IllegalArgumentException("cannot parse '" + page + "' on " + stationId);
-		}
+
+		result.stationDepartures.add(new StationDepartures(new Location(LocationType.STATION, stationId, null, location), departures, null));
+		return result;
 	}
 
 	private static final String AUTOCOMPLETE_URI = API_BASE
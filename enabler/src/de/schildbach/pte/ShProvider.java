@@ -51,6 +51,10 @@ public class ShProvider extends AbstractHafasProvider
 	public ShProvider()
 	{
 		super(API_BASE + "query.exe/dn", 10, null, null, UTF_8);
+
+		addProductType("KBS", 'B');
+		addProductType("KB1", 'B');
+		addProductType("KLB", 'B');
 	}
 
 	public NetworkId id()
@@ -175,7 +179,7 @@ public class ShProvider extends AbstractHafasProvider
 
 		// scrape page
 		final String uri = departuresQueryUri(stationId, maxDepartures);
-		final CharSequence page = ParserUtils.scrape(uri);
+		final CharSequence page = ParserUtils.scrape(httpTransport(), uri);
 
 		// parse page
 		final Matcher mHeadCoarse = P_DEPARTURES_HEAD_COARSE.matcher(page);
@@ -223,7 +227,7 @@ public class ShProvider extends AbstractHafasProvider
 
 					final String lineType = mDepFine.group(2);
 
-					final Line line = parseLine(lineType, ParserUtils.resolveEntities(mDepFine.group(3).trim()), false);
+					final Line line = parseLineCached(lineType, ParserUtils.resolveEntities(mDepFine.group(3).trim()), false);
 
 					final int destinationId = mDepFine.group(4) != null ? Integer.parseInt(mDepFine.group(4)) : 0;
 					final String destinationName = ParserUtils.resolveEntities(mDepFine.group(5));
@@ -256,23 +260,4 @@ public class ShProvider extends AbstractHafasProvider
 	{
 		return xmlMLcReq(constraint);
 	}
-
-	@Override
-	protected char normalizeType(final String type)
-	{
-		final String ucType = type.toUpperCase();
-
-		if ("KBS".equals(ucType))
-			return 'B';
-		if ("KB1".equals(ucType))
-			return 'B';
-		if ("KLB".equals(ucType))
-			return 'B';
-
-		final char t = super.normalizeType(type);
-		if (t != 0)
-			return t;
-
-		return 0;
-	}
 }
@@ -37,6 +37,15 @@ public class SncbProvider extends AbstractHafasProvider
 	public SncbProvider()
 	{
 		super(API_BASE + "query.exe/nn", 16, null);
+
+		addProductType("THALYS", 'I');
+
+		addProductType("L", 'R');
+		addProductType("CR", 'R');
+
+		addProductType("MÉTRO", 'U');
+
+		addProductType("TRAMWAY", 'T');
 	}
 
 	public NetworkId id()
@@ -148,21 +157,9 @@ public class SncbProvider extends AbstractHafasProvider
 
 		if (ucType.startsWith("IC "))
 			return 'I';
-		if ("THALYS".equals(ucType))
-			return 'I';
 
 		if (ucType.startsWith("IR "))
 			return 'R';
-		if ("L".equals(ucType))
-			return 'R';
-		if ("CR".equals(ucType))
-			return 'R';
-
-		if ("MÉTRO".equals(ucType))
-			return 'U';
-
-		if ("TRAMWAY".equals(ucType))
-			return 'T';
 
 		final char t = super.normalizeType(type);
 		if (t != 0)
@@ -0,0 +1,230 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import de.schildbach.pte.dto.Connection;
+import de.schildbach.pte.dto.Departure;
+import de.schildbach.pte.dto.GetConnectionDetailsResult;
+import de.schildbach.pte.dto.Location;
+import de.schildbach.pte.dto.LocationType;
+import de.schildbach.pte.dto.NearbyStationsResult;
+import de.schildbach.pte.dto.QueryConnectionsContext;
+import de.schildbach.pte.dto.QueryConnectionsResult;
+import de.schildbach.pte.dto.QueryDeparturesResult;
+import de.schildbach.pte.dto.StationDepartures;
+import de.schildbach.pte.dto.Stop;
+import de.schildbach.pte.util.AutocompleteCache;
+import de.schildbach.pte.util.StationDirectory;
+
+/**
+ * Records every station seen in query results in a {@link StationDirectory}, and answers
+ * {@link #autocompleteStations(CharSequence)} from it if the directory knows enough matching stations, or one named
+ * exactly like the constraint. Otherwise the provider is asked, and the stations only known locally are appended to its
+ * suggestions. Failing to record stations never fails a query. Use one directory per network.
+ *
+ * @author Andreas Schildbach
+ */
+public class StationDirectoryProvider extends ForwardingNetworkProvider
+{
+	private final StationDirectory directory;
+	private final int maxSuggestions;
+
+	/**
+	 * @param maxSuggestions
+	 *            maximum number of suggestions, or {@code 0} for no limit; the directory answers on its own once it knows
+	 *            this many matching stations
+	 */
+	public StationDirectoryProvider(final NetworkProvider provider, final StationDirectory directory, final int maxSuggestions)
+	{
+		super(provider);
+
+		this.directory = directory;
+		this.maxSuggestions = maxSuggestions;
+	}
+
+	public StationDirectory getDirectory()
+	{
+		return directory;
+	}
+
+	/**
+	 * @return station with the given id, if it has been seen before, or {@code null}
+	 */
+	public Location getStation(final int id)
+	{
+		return directory.get(id);
+	}
+
+	@Override
+	public List<Location> autocompleteStations(final CharSequence constraint) throws IOException
+	{
+		final List<Location> local = directory.autocomplete(constraint, maxSuggestions);
+		if ((maxSuggestions > 0 && local.size() >= maxSuggestions) || containsExactMatch(local, constraint))
+			return local;
+
+		final List<Location> locations = super.autocompleteStations(constraint);
+		if (locations == null)
+			return local.isEmpty() ? null : local;
+
+		directory.addAll(locations);
+
+		// suggestions of the provider first, then the stations only known locally
+		final Set<Integer> ids = new HashSet<Integer>();
+		for (final Location location : locations)
+			if (location.type == LocationType.STATION && location.hasId())
+				ids.add(location.id);
+
+		final List<Location> merged = new ArrayList<Location>(locations);
+		for (final Location location : local)
+			if (!ids.contains(location.id) && (maxSuggestions == 0 || merged.size() < maxSuggestions))
+				merged.add(location);
+
+		return merged;
+	}
+
+	@Override
+	public NearbyStationsResult queryNearbyStations(final Location location, final int maxDistance, final int maxStations) throws IOException
+	{
+		final NearbyStationsResult result = super.queryNearbyStations(location, maxDistance, maxStations);
+
+		if (result != null && result.stations != null)
+			directory.addAll(result.stations);
+
+		return result;
+	}
+
+	@Override
+	public QueryDeparturesResult queryDepartures(final int stationId, final int maxDepartures, final boolean equivs) throws IOException
+	{
+		final QueryDeparturesResult result = super.queryDepartures(stationId, maxDepartures, equivs);
+
+		if (result != null)
+		{
+			for (final StationDepartures stationDepartures : result.stationDepartures)
+			{
+				directory.add(stationDepartures.location);
+				if (stationDepartures.departures != null)
+					for (final Departure departure : stationDepartures.departures)
+						directory.add(departure.destination);
+			}
+		}
+
+		return result;
+	}
+
+	@Override
+	public QueryConnectionsResult queryConnections(final Location from, final Location via, final Location to, final Date date, final boolean dep,
+			final int numConnections, final String products, final WalkSpeed walkSpeed, final Accessibility accessibility, final Set<Option> options)
+			throws IOException
+	{
+		final QueryConnectionsResult result = super.queryConnections(from, via, to, date, dep, numConnections, products, walkSpeed, accessibility,
+				options);
+
+		addAll(result);
+
+		return result;
+	}
+
+	@Override
+	public QueryConnectionsResult queryMoreConnections(final QueryConnectionsContext context, final boolean later, final int numConnections)
+			throws IOException
+	{
+		final QueryConnectionsResult result = super.queryMoreConnections(context, later, numConnections);
+
+		addAll(result);
+
+		return result;
+	}
+
+	@Override
+	public GetConnectionDetailsResult getConnectionDetails(final Connection connection) throws IOException
+	{
+		final GetConnectionDetailsResult result = super.getConnectionDetails(connection);
+
+		if (result != null)
+			addAll(result.connection);
+
+		return result;
+	}
+
+	private void addAll(final QueryConnectionsResult result)
+	{
+		if (result == null)
+			return;
+
+		directory.add(result.from);
+		directory.add(result.via);
+		directory.add(result.to);
+		if (result.ambiguousFrom != null)
+			directory.addAll(result.ambiguousFrom);
+		if (result.ambiguousVia != null)
+			directory.addAll(result.ambiguousVia);
+		if (result.ambiguousTo != null)
+			directory.addAll(result.ambiguousTo);
+		if (result.connections != null)
+			for (final Connection connection : result.connections)
+				addAll(connection);
+	}
+
+	private void addAll(final Connection connection)
+	{
+		if (connection == null)
+			return;
+
+		directory.add(connection.from);
+		directory.add(connection.to);
+		if (connection.parts != null)
+		{
+			for (final Connection.Part part : connection.parts)
+			{
+				directory.add(part.departure);
+				directory.add(part.arrival);
+				if (part instanceof Connection.Trip)
+				{
+					final Connection.Trip trip = (Connection.Trip) part;
+					directory.add(trip.destination);
+					if (trip.intermediateStops != null)
+						for (final Stop stop : trip.intermediateStops)
+							directory.add(stop.location);
+				}
+			}
+		}
+	}
+
+	private static boolean containsExactMatch(final List<Location> locations, final CharSequence constraint)
+	{
+		final String normalized = AutocompleteCache.normalize(constraint);
+
+		for (final Location location : locations)
+		{
+			if (AutocompleteCache.normalize(location.name).equals(normalized))
+				return true;
+			if (location.place != null && AutocompleteCache.normalize(location.place + " " + location.name).equals(normalized))
+				return true;
+		}
+
+		return false;
+	}
+}
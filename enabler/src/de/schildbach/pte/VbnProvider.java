@@ -37,6 +37,15 @@ public class VbnProvider extends AbstractHafasProvider
 	public VbnProvider()
 	{
 		super(API_BASE + "query.exe/dn", 10, null);
+
+		addProductType("P", 'R'); // Brohltalbahn
+
+		addProductType("TB", 'B');
+		addProductType("RFTAST", 'B');
+
+		addProductType("BUSFÄHRE", 'F'); // Blexen - Bremerhaven
+
+		addProductType("SEILB", 'C');
 	}
 
 	public NetworkId id()
@@ -113,7 +122,7 @@ public class VbnProvider extends AbstractHafasProvider
 			uri.append("&look_x=").append(location.lon);
 			uri.append("&look_y=").append(location.lat);
 
-			return jsonNearbyStations(uri.toString());
+			return jsonNearbyStations(uri.toString(), maxStations);
 		}
 		else if (location.type == LocationType.STATION && location.hasId())
 		{
@@ -156,30 +165,4 @@ public class VbnProvider extends AbstractHafasProvider
 
 		return jsonGetStops(uri);
 	}
-
-	@Override
-	protected char normalizeType(final String type)
-	{
-		final String ucType = type.toUpperCase();
-
-		if ("P".equals(ucType)) // Brohltalbahn
-			return 'R';
-
-		if ("TB".equals(ucType))
-			return 'B';
-		if ("RFTAST".equals(ucType))
-			return 'B';
-
-		if ("BUSFÄHRE".equals(ucType)) // Blexen - Bremerhaven
-			return 'F';
-
-		if ("SEILB".equals(ucType))
-			return 'C';
-
-		final char t = super.normalizeType(type);
-		if (t != 0)
-			return t;
-
-		return 0;
-	}
 }
@@ -18,6 +18,7 @@
 package de.schildbach.pte;
 
 import java.io.IOException;
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
@@ -35,6 +36,7 @@ import de.schildbach.pte.dto.QueryDeparturesResult;
 import de.schildbach.pte.dto.QueryDeparturesResult.Status;
 import de.schildbach.pte.dto.ResultHeader;
 import de.schildbach.pte.dto.StationDepartures;
+import de.schildbach.pte.util.HtmlTokenizer;
 import de.schildbach.pte.util.ParserUtils;
 
 /**
@@ -49,6 +51,11 @@ public class VgsProvider extends AbstractHafasProvider
 	public VgsProvider()
 	{
 		super(API_BASE + "query.exe/dn", 11, null);
+
+		addProductType("E", 'S'); // Stadtbahn Karlsruhe: S4/S31/xxxxx
+
+		addProductType("BSS", 'B');
+		addProductType("BOV", 'B');
 	}
 
 	public NetworkId id()
@@ -126,7 +133,7 @@ public class VgsProvider extends AbstractHafasProvider
 			uri.append("&look_x=").append(location.lon);
 			uri.append("&look_y=").append(location.lat);
 
-			return jsonNearbyStations(uri.toString());
+			return jsonNearbyStations(uri.toString(), maxStations);
 		}
 		else if (location.type == LocationType.STATION && location.hasId())
 		{
@@ -158,33 +165,11 @@ public class VgsProvider extends AbstractHafasProvider
 		return uri.toString();
 	}
 
-	private static final Pattern P_DEPARTURES_HEAD_COARSE = Pattern
-			.compile(
-					".*?" //
-							+ "(?:" //
-							+ "<table class=\"hafasResult\"[^>]*>(.+?)</table>.*?" //
-							+ "(?:<table cellspacing=\"0\" class=\"hafasResult\"[^>]*>(.+?)</table>|(verkehren an dieser Haltestelle keine))"//
-							+ "|(Eingabe kann nicht interpretiert)|(Verbindung zum Server konnte leider nicht hergestellt werden|kann vom Server derzeit leider nicht bearbeitet werden))" //
-							+ ".*?" //
-					, Pattern.DOTALL);
-	private static final Pattern P_DEPARTURES_HEAD_FINE = Pattern.compile(".*?" //
-			+ "<td class=\"querysummary screennowrap\">\\s*(.*?)\\s*<.*?" // location
-			+ "(\\d{2}\\.\\d{2}\\.\\d{2}).*?" // date
-			+ "Abfahrt (\\d{1,2}:\\d{2}).*?" // time
-	, Pattern.DOTALL);
-	private static final Pattern P_DEPARTURES_COARSE = Pattern.compile("<tr class=\"(depboard-\\w*)\">(.*?)</tr>", Pattern.DOTALL);
-	private static final Pattern P_DEPARTURES_FINE = Pattern.compile(".*?" //
-			+ "<td class=\"[\\w ]*\">(\\d{1,2}:\\d{2})</td>\n" // plannedTime
-			+ "(?:<td class=\"[\\w ]*prognosis[\\w ]*\">\n" //
-			+ "(?:&nbsp;|<span class=\"rtLimit\\d\">(p&#252;nktlich|\\d{1,2}:\\d{2})</span>)\n</td>\n" // predictedTime
-			+ ")?.*?" //
-			+ "<img src=\"/hafas-res/img/(\\w+)_pic\\.gif\"[^>]*>\\s*(.*?)\\s*<.*?" // type, line
-			+ "<span class=\"bold\">\n" //
-			+ "<a href=\"http://www\\.saarfahrplan\\.de/cgi-bin/stboard\\.exe/dn\\?input=(\\d+)&[^>]*>" // destinationId
-			+ "\\s*(.*?)\\s*</a>\n" // destination
-			+ "</span>.*?" //
-			+ "(?:<td class=\"center sepline top\">\n(" + ParserUtils.P_PLATFORM + ").*?)?" // position
-	, Pattern.DOTALL);
+	private static final Pattern P_DEPARTURES_HEAD_TIME = Pattern.compile("(\\d{2}\\.\\d{2}\\.\\d{2}).*?Abfahrt (\\d{1,2}:\\d{2})",
+			Pattern.DOTALL);
+	private static final Pattern P_DEPARTURES_TIME = Pattern.compile("\\d{1,2}:\\d{2}");
+	private static final Pattern P_DEPARTURES_MESSAGES = Pattern.compile("(verkehren an dieser Haltestelle keine)|(Eingabe kann nicht interpretiert)|" //
+			+ "(Verbindung zum Server konnte leider nicht hergestellt werden|kann vom Server derzeit leider nicht bearbeitet werden)");
 
 	public QueryDeparturesResult queryDepartures(final int stationId, final int maxDepartures, final boolean equivs) throws IOException
 	{
@@ -193,109 +178,131 @@ public class VgsProvider extends AbstractHafasProvider
 
 		// scrape page
 		final String uri = departuresQueryUri(stationId, maxDepartures);
-		final CharSequence page = ParserUtils.scrape(uri);
+		final CharSequence page = ParserUtils.scrape(httpTransport(), uri);
 
 		// parse page
-		final Matcher mHeadCoarse = P_DEPARTURES_HEAD_COARSE.matcher(page);
-		if (mHeadCoarse.matches())
+		final HtmlTokenizer html = new HtmlTokenizer(new StringReader(page.toString()));
+		boolean inHead = false;
+		boolean headSeen = false;
+		String location = null;
+		final StringBuilder headText = new StringBuilder();
+		Calendar currentTime = null;
+		final List<Departure> departures = new ArrayList<Departure>(8);
+		String oldZebra = null;
+
+		while (html.next() != HtmlTokenizer.Token.END_DOCUMENT)
 		{
-			// messages
-			if (mHeadCoarse.group(3) != null)
+			if (html.getToken() == HtmlTokenizer.Token.TEXT)
 			{
-				result.stationDepartures.add(new StationDepartures(new Location(LocationType.STATION, stationId),
-						Collections.<Departure> emptyList(), null));
-				return result;
-			}
-			else if (mHeadCoarse.group(4) != null)
-				return new QueryDeparturesResult(header, Status.INVALID_STATION);
-			else if (mHeadCoarse.group(5) != null)
-				return new QueryDeparturesResult(header, Status.SERVICE_DOWN);
+				// messages
+				final Matcher mMessage = P_DEPARTURES_MESSAGES.matcher(html.getText());
+				if (mMessage.find())
+				{
+					if (mMessage.group(1) != null)
+					{
+						result.stationDepartures.add(new StationDepartures(new Location(LocationType.STATION, stationId),
+								Collections.<Departure> emptyList(), null));
+						return result;
+					}
+					else if (mMessage.group(2) != null)
+						return new QueryDeparturesResult(header, Status.INVALID_STATION);
+					else if (mMessage.group(3) != null)
+						return new QueryDeparturesResult(header, Status.SERVICE_DOWN);
+				}
 
-			final Matcher mHeadFine = P_DEPARTURES_HEAD_FINE.matcher(mHeadCoarse.group(1));
-			if (mHeadFine.matches())
+				if (inHead && location != null)
+					headText.append(html.getText());
+			}
+			else if (!headSeen && html.isStartTag("table") && "hafasResult".equals(html.getAttribute("class")))
+			{
+				inHead = true;
+				headSeen = true;
+			}
+			else if (inHead && html.isEndTag("table"))
 			{
-				final String location = ParserUtils.resolveEntities(mHeadFine.group(1));
-				final Calendar currentTime = new GregorianCalendar(timeZone());
+				inHead = false;
+
+				final Matcher mHeadTime = P_DEPARTURES_HEAD_TIME.matcher(headText);
+				if (location == null || !mHeadTime.find())
+					throw new IllegalArgumentException("cannot parse '" + headText + "' on " + stationId);
+
+				currentTime = new GregorianCalendar(timeZone());
 				currentTime.clear();
-				ParserUtils.parseGermanDate(currentTime, mHeadFine.group(2));
-				ParserUtils.parseEuropeanTime(currentTime, mHeadFine.group(3));
-				final List<Departure> departures = new ArrayList<Departure>(8);
-				String oldZebra = null;
+				ParserUtils.parseGermanDate(currentTime, mHeadTime.group(1));
+				ParserUtils.parseEuropeanTime(currentTime, mHeadTime.group(2));
+			}
+			else if (inHead && location == null && html.isStartTag("td") && "querysummary screennowrap".equals(html.getAttribute("class")))
+			{
+				// location is the text directly following the tag
+				location = html.next() == HtmlTokenizer.Token.TEXT ? ParserUtils.resolveEntities(html.getText().trim()) : "";
+			}
+			else if (html.isStartTag("tr"))
+			{
+				final String zebra = html.getAttribute("class");
+				if (zebra == null || !zebra.startsWith("depboard-"))
+					continue;
 
-				final Matcher mDepCoarse = P_DEPARTURES_COARSE.matcher(mHeadCoarse.group(2));
-				while (mDepCoarse.find())
-				{
-					final String zebra = mDepCoarse.group(1);
-					if (oldZebra != null && zebra.equals(oldZebra))
-						throw new IllegalArgumentException("missed row? last:" + zebra);
-					else
-						oldZebra = zebra;
+				if (currentTime == null)
+					throw new IllegalArgumentException("cannot parse '" + page + "' on " + stationId);
+
+				if (oldZebra != null && zebra.equals(oldZebra))
+					throw new IllegalArgumentException("missed row? last:" + zebra);
+				else
+					oldZebra = zebra;
 
-					final Matcher mDepFine = P_DEPARTURES_FINE.matcher(mDepCoarse.group(2));
-					if (mDepFine.matches())
+				final HtmlDepartureRow row = htmlDepartureRow(html, P_DEPARTURES_TIME, false);
+				if (row == null)
+					throw new IllegalArgumentException("cannot parse row '" + zebra + "' on " + stationId);
+
+				final Calendar plannedTime = new GregorianCalendar(timeZone());
+				plannedTime.setTimeInMillis(currentTime.getTimeInMillis());
+				ParserUtils.parseEuropeanTime(plannedTime, row.plannedTime);
+
+				if (plannedTime.getTimeInMillis() - currentTime.getTimeInMillis() < -PARSER_DAY_ROLLOVER_THRESHOLD_MS)
+					plannedTime.add(Calendar.DAY_OF_MONTH, 1);
+
+				final Calendar predictedTime;
+				final String prognosis = ParserUtils.resolveEntities(row.prognosis);
+				if (prognosis != null)
+				{
+					predictedTime = new GregorianCalendar(timeZone());
+					if (!prognosis.equals("pünktlich"))
 					{
-						final Calendar plannedTime = new GregorianCalendar(timeZone());
-						plannedTime.setTimeInMillis(currentTime.getTimeInMillis());
-						ParserUtils.parseEuropeanTime(plannedTime, mDepFine.group(1));
-
-						if (plannedTime.getTimeInMillis() - currentTime.getTimeInMillis() < -PARSER_DAY_ROLLOVER_THRESHOLD_MS)
-							plannedTime.add(Calendar.DAY_OF_MONTH, 1);
-
-						final Calendar predictedTime;
-						final String prognosis = ParserUtils.resolveEntities(mDepFine.group(2));
-						if (prognosis != null)
-						{
-							predictedTime = new GregorianCalendar(timeZone());
-							if (!prognosis.equals("pünktlich"))
-							{
-								predictedTime.setTimeInMillis(plannedTime.getTimeInMillis());
-							}
-							else
-							{
-								predictedTime.setTimeInMillis(currentTime.getTimeInMillis());
-								ParserUtils.parseEuropeanTime(predictedTime, prognosis);
-							}
-						}
-						else
-						{
-							predictedTime = null;
-						}
-
-						final String lineType = mDepFine.group(3);
-
-						final Line line = parseLine(lineType, ParserUtils.resolveEntities(mDepFine.group(4)), false);
-
-						final int destinationId = mDepFine.group(5) != null ? Integer.parseInt(mDepFine.group(5)) : 0;
-						final String destinationName = ParserUtils.resolveEntities(mDepFine.group(6));
-						final Location destination = new Location(destinationId > 0 ? LocationType.STATION : LocationType.ANY, destinationId, null,
-								destinationName);
-
-						final String position = mDepFine.group(7) != null ? "Gl. " + ParserUtils.resolveEntities(mDepFine.group(7)) : null;
-
-						final Departure dep = new Departure(plannedTime.getTime(), predictedTime != null ? predictedTime.getTime() : null, line,
-								position, destination, null, null);
-
-						if (!departures.contains(dep))
-							departures.add(dep);
+						predictedTime.setTimeInMillis(plannedTime.getTimeInMillis());
 					}
 					else
 					{
-						throw new IllegalArgumentException("cannot parse '" + mDepCoarse.group(2) + "' on " + stationId);
+						predictedTime.setTimeInMillis(currentTime.getTimeInMillis());
+						ParserUtils.parseEuropeanTime(predictedTime, prognosis);
 					}
 				}
+				else
+				{
+					predictedTime = null;
+				}
 
-				result.stationDepartures.add(new StationDepartures(new Location(LocationType.STATION, stationId, null, location), departures, null));
-				return result;
-			}
-			else
-			{
-				throw new IllegalArgumentException("cannot parse '" + mHeadCoarse.group(1) + "' on " + stationId);
+				final Line line = parseLineCached(row.lineType, ParserUtils.resolveEntities(row.line), false);
+
+				final int destinationId = row.destinationId;
+				final String destinationName = ParserUtils.resolveEntities(row.destinationName);
+				final Location destination = new Location(destinationId > 0 ? LocationType.STATION : LocationType.ANY, destinationId, null,
+						destinationName);
+
+				final String position = row.position != null ? "Gl. " + ParserUtils.resolveEntities(row.position) : null;
+
+				final Departure dep = new Departure(plannedTime.getTime(), predictedTime != null ? predictedTime.getTime() : null, line,
+						position, destination, null, null);
+
+				if (!departures.contains(dep))
+					departures.add(dep);
 			}
 		}
-		else
-		{
+
+		if (currentTime == null)
 			throw new IllegalArgumentException("cannot parse '" + page + "' on " + stationId);
-		}
+
+		result.stationDepartures.add(new StationDepartures(new Location(LocationType.STATION, stationId, null, location), departures, null));
+		return result;
 	}
 
 	private static final String AUTOCOMPLETE_URI = API_BASE
@@ -313,14 +320,6 @@ public class VgsProvider extends AbstractHafasProvider
 	{
 		final String ucType = type.toUpperCase();
 
-		if (ucType.equals("E")) // Stadtbahn Karlsruhe: S4/S31/xxxxx
-			return 'S';
-
-		if (ucType.equals("BSS"))
-			return 'B';
-		if (ucType.equals("BOV"))
-			return 'B';
-
 		final char t = super.normalizeType(type);
 		if (t != 0)
 			return t;
@@ -38,6 +38,29 @@ public class ZvvProvider extends AbstractHafasProvider
 	public ZvvProvider()
 	{
 		super(API_BASE + "query.exe/dn", 10, null, UTF_8, UTF_8);
+
+		// E-Bus: Bus, Tram oder Zug?
+
+		addProductType("S-BAHN", 'S');
+
+		addProductType("T", 'T');
+		addProductType("TRM", 'T');
+		addProductType("TRM-NF", 'T'); // Niederflur
+
+		addProductType("BUS-NF", 'B'); // Niederflur
+		addProductType("TRO-NF", 'B'); // Niederflur
+		addProductType("N", 'B'); // Nachtbus
+		addProductType("BUXI", 'B');
+		addProductType("TX", 'B');
+		addProductType("E-BUS", 'B');
+		addProductType("TROLLEY", 'B');
+
+		addProductType("D-SCHIFF", 'F');
+
+		addProductType("BERGBAHN", 'C');
+
+		addProductType("UNB", '?');
+		addProductType("???", '?');
 	}
 
 	public NetworkId id()
@@ -151,7 +174,7 @@ public class ZvvProvider extends AbstractHafasProvider
 			uri.append("&look_x=").append(location.lon);
 			uri.append("&look_y=").append(location.lat);
 
-			return jsonNearbyStations(uri.toString());
+			return jsonNearbyStations(uri.toString(), maxStations);
 		}
 		else if (location.type == LocationType.STATION && location.hasId())
 		{
@@ -218,54 +241,4 @@ public class ZvvProvider extends AbstractHafasProvider
 
 		throw new IllegalStateException("cannot normalize line#type " + lineAndType);
 	}
-
-	@Override
-	protected char normalizeType(final String type)
-	{
-		final String ucType = type.toUpperCase();
-
-		// E-Bus: Bus, Tram oder Zug?
-
-		if ("S-BAHN".equals(ucType))
-			return 'S';
-
-		if ("T".equals(ucType))
-			return 'T';
-		if ("TRM".equals(ucType))
-			return 'T';
-		if ("TRM-NF".equals(ucType)) // Niederflur
-			return 'T';
-
-		if ("BUS-NF".equals(ucType)) // Niederflur
-			return 'B';
-		if ("TRO-NF".equals(ucType)) // Niederflur
-			return 'B';
-		if ("N".equals(ucType)) // Nachtbus
-			return 'B';
-		if ("BUXI".equals(ucType))
-			return 'B';
-		if ("TX".equals(ucType))
-			return 'B';
-		if ("E-BUS".equals(ucType))
-			return 'B';
-		if ("TROLLEY".equals(ucType))
-			return 'B';
-
-		if ("D-SCHIFF".equals(ucType))
-			return 'F';
-
-		if ("BERGBAHN".equals(ucType))
-			return 'C';
-
-		if ("UNB".equals(ucType))
-			return '?';
-		if ("???".equals(ucType))
-			return '?';
-
-		final char t = super.normalizeType(type);
-		if (t != 0)
-			return t;
-
-		return 0;
-	}
 }
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.geo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import de.schildbach.pte.NetworkId;
+import de.schildbach.pte.NetworkProvider;
+import de.schildbach.pte.dto.Point;
+
+/**
+ * Finds the providers whose area covers a given coordinate. Areas are indexed once at registration. Providers that
+ * define their area only by a center point, or not at all, are never reported as covering. Thread-safe; registration
+ * is expected to happen rarely, lookups often.
+ *
+ * @author Andreas Schildbach
+ */
+public final class AreaRegistry
+{
+	private static final class Entry
+	{
+		final NetworkProvider provider;
+		final PolygonIndex area;
+
+		Entry(final NetworkProvider provider, final PolygonIndex area)
+		{
+			this.provider = provider;
+			this.area = area;
+		}
+	}
+
+	private final List<Entry> entries = new CopyOnWriteArrayList<Entry>();
+
+	/**
+	 * @return true if the provider has a polygon area and was registered, false if it was ignored
+	 */
+	public boolean register(final NetworkProvider provider)
+	{
+		final Point[] area = provider.getArea();
+		if (area == null || area.length < 3)
+			return false;
+
+		entries.add(new Entry(provider, new PolygonIndex(area)));
+		return true;
+	}
+
+	/**
+	 * @param lat
+	 *            latitude in micro-degrees
+	 * @param lon
+	 *            longitude in micro-degrees
+	 * @return providers covering the coordinate, in order of registration
+	 */
+	public List<NetworkProvider> coveringProviders(final int lat, final int lon)
+	{
+		final List<NetworkProvider> providers = new ArrayList<NetworkProvider>(2);
+
+		for (final Entry entry : entries)
+			if (entry.area.contains(lat, lon))
+				providers.add(entry.provider);
+
+		return providers;
+	}
+
+	/**
+	 * @param lat
+	 *            latitude in micro-degrees
+	 * @param lon
+	 *            longitude in micro-degrees
+	 * @return ids of the networks covering the coordinate, in order of registration
+	 */
+	public List<NetworkId> coveringNetworks(final int lat, final int lon)
+	{
+		final List<NetworkId> ids = new ArrayList<NetworkId>(2);
+
+		for (final Entry entry : entries)
+			if (entry.area.contains(lat, lon))
+				ids.add(entry.provider.id());
+
+		return ids;
+	}
+}
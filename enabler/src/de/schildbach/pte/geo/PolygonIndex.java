@@ -0,0 +1,138 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.geo;
+
+import de.schildbach.pte.dto.Point;
+
+/**
+ * Point-in-polygon test for a fixed polygon, e.g. the area of a network. The edges are bucketed into horizontal bands
+ * of latitude, so the usual crossing-number test only has to look at the few edges of the band the coordinate falls
+ * into, rather than at all vertices. Immutable and thread-safe.
+ *
+ * @author Andreas Schildbach
+ */
+public final class PolygonIndex
+{
+	private static final int EDGES_PER_BAND = 4;
+	private static final int MAX_BANDS = 1024;
+
+	private final int minLat, maxLat, minLon, maxLon;
+	private final int numBands;
+	private final long bandHeight;
+
+	// per band, the edges overlapping it as indices into the vertex arrays
+	private final int[][] bands;
+	private final int[] lats, lons;
+
+	/**
+	 * @param polygon
+	 *            vertices of a simple polygon, in micro-degrees; may or may not repeat the first vertex at the end
+	 */
+	public PolygonIndex(final Point[] polygon)
+	{
+		if (polygon.length < 3)
+			throw new IllegalArgumentException("need at least 3 points for a polygon, got " + polygon.length);
+
+		final int n = polygon.length;
+		lats = new int[n];
+		lons = new int[n];
+
+		int minLat = Integer.MAX_VALUE, maxLat = Integer.MIN_VALUE, minLon = Integer.MAX_VALUE, maxLon = Integer.MIN_VALUE;
+		for (int i = 0; i < n; i++)
+		{
+			final Point point = polygon[i];
+			lats[i] = point.lat;
+			lons[i] = point.lon;
+			minLat = Math.min(minLat, point.lat);
+			maxLat = Math.max(maxLat, point.lat);
+			minLon = Math.min(minLon, point.lon);
+			maxLon = Math.max(maxLon, point.lon);
+		}
+		this.minLat = minLat;
+		this.maxLat = maxLat;
+		this.minLon = minLon;
+		this.maxLon = maxLon;
+
+		numBands = Math.max(1, Math.min(MAX_BANDS, n / EDGES_PER_BAND));
+		bandHeight = ((long) maxLat - minLat) / numBands + 1;
+
+		// count first, then fill
+		final int[] counts = new int[numBands];
+		for (int i = 0; i < n; i++)
+		{
+			final int j = (i + 1) % n;
+			for (int band = band(Math.min(lats[i], lats[j])), last = band(Math.max(lats[i], lats[j])); band <= last; band++)
+				counts[band]++;
+		}
+
+		bands = new int[numBands][];
+		for (int band = 0; band < numBands; band++)
+			bands[band] = new int[counts[band]];
+
+		final int[] fill = new int[numBands];
+		for (int i = 0; i < n; i++)
+		{
+			final int j = (i + 1) % n;
+			for (int band = band(Math.min(lats[i], lats[j])), last = band(Math.max(lats[i], lats[j])); band <= last; band++)
+				bands[band][fill[band]++] = i;
+		}
+	}
+
+	/**
+	 * @param lat
+	 *            latitude in micro-degrees
+	 * @param lon
+	 *            longitude in micro-degrees
+	 * @return true if the coordinate lies within the polygon
+	 */
+	public boolean contains(final int lat, final int lon)
+	{
+		if (lat < minLat || lat > maxLat || lon < minLon || lon > maxLon)
+			return false;
+
+		final int n = lats.length;
+		boolean inside = false;
+
+		for (final int i : bands[band(lat)])
+		{
+			final int j = (i + 1) % n;
+			final int latI = lats[i], latJ = lats[j];
+
+			if ((latI > lat) != (latJ > lat))
+			{
+				// longitude where the edge crosses the latitude of the coordinate, compared without division
+				final long dLat = (long) latJ - latI;
+				final long cross = ((long) lons[j] - lons[i]) * ((long) lat - latI) - ((long) lon - lons[i]) * dLat;
+				if (dLat > 0 ? cross > 0 : cross < 0)
+					inside = !inside;
+			}
+		}
+
+		return inside;
+	}
+
+	public boolean contains(final Point point)
+	{
+		return contains(point.lat, point.lon);
+	}
+
+	private int band(final int lat)
+	{
+		return (int) (((long) lat - minLat) / bandHeight);
+	}
+}
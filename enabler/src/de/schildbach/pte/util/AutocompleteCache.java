@@ -0,0 +1,365 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.schildbach.pte.NetworkId;
+import de.schildbach.pte.dto.Location;
+
+/**
+ * Cache of recent autocomplete results, organized as one trie of normalized constraints per network. Besides exact
+ * hits, a constraint can be answered by filtering the cached result of one of its prefixes, provided that result was
+ * complete, i.e. not truncated by the provider. This relies on the provider never suggesting a location for a longer
+ * constraint that it would not also have suggested for the shorter one.
+ *
+ * Entries expire after a fixed time to live, results derived from a prefix together with the result of that prefix.
+ * The least recently used entries are evicted once the cache is full. Thread-safe.
+ *
+ * @author Andreas Schildbach
+ */
+public final class AutocompleteCache
+{
+	private static final class Node
+	{
+		final Node parent;
+		final char c;
+		char[] childChars = new char[0];
+		Node[] children = new Node[0];
+
+		// entry, if any
+		List<Location> locations = null;
+		boolean complete;
+		long expiresAt;
+
+		Node(final Node parent, final char c)
+		{
+			this.parent = parent;
+			this.c = c;
+		}
+
+		Node child(final char c)
+		{
+			for (int i = 0; i < childChars.length; i++)
+				if (childChars[i] == c)
+					return children[i];
+			return null;
+		}
+
+		Node addChild(final char c)
+		{
+			final int length = childChars.length;
+			final char[] newChildChars = new char[length + 1];
+			final Node[] newChildren = new Node[length + 1];
+			System.arraycopy(childChars, 0, newChildChars, 0, length);
+			System.arraycopy(children, 0, newChildren, 0, length);
+			final Node child = new Node(this, c);
+			newChildChars[length] = c;
+			newChildren[length] = child;
+			childChars = newChildChars;
+			children = newChildren;
+			return child;
+		}
+
+		void removeChild(final Node child)
+		{
+			final int length = childChars.length;
+			for (int i = 0; i < length; i++)
+			{
+				if (children[i] == child)
+				{
+					final char[] newChildChars = new char[length - 1];
+					final Node[] newChildren = new Node[length - 1];
+					System.arraycopy(childChars, 0, newChildChars, 0, i);
+					System.arraycopy(children, 0, newChildren, 0, i);
+					System.arraycopy(childChars, i + 1, newChildChars, i, length - i - 1);
+					System.arraycopy(children, i + 1, newChildren, i, length - i - 1);
+					childChars = newChildChars;
+					children = newChildren;
+					return;
+				}
+			}
+		}
+	}
+
+	private final long timeToLive;
+	private final Clock clock;
+	private final Map<NetworkId, Node> roots = new HashMap<NetworkId, Node>();
+	private final LinkedHashMap<Node, Node> entries;
+	private long hitCount = 0;
+	private long prefixHitCount = 0;
+	private long missCount = 0;
+
+	/**
+	 * @param maxEntries
+	 *            maximum number of cached results, across all networks
+	 * @param timeToLive
+	 *            time in milliseconds after which a cached result expires
+	 */
+	public AutocompleteCache(final int maxEntries, final long timeToLive)
+	{
+		this(maxEntries, timeToLive, Clock.SYSTEM);
+	}
+
+	/**
+	 * @param clock
+	 *            source of the current time, for expiry
+	 */
+	public AutocompleteCache(final int maxEntries, final long timeToLive, final Clock clock)
+	{
+		this.timeToLive = timeToLive;
+		this.clock = clock;
+		this.entries = new LinkedHashMap<Node, Node>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 6322906441569113047L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<Node, Node> eldest)
+			{
+				if (size() <= maxEntries)
+					return false;
+
+				clearEntry(eldest.getKey());
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * @return suggestions for the given constraint, or {@code null} if they are neither cached nor can be derived from
+	 *         a cached prefix
+	 */
+	public synchronized List<Location> get(final NetworkId network, final CharSequence constraint)
+	{
+		final String key = normalize(constraint);
+		final long now = clock.currentTimeMillis();
+
+		Node node = roots.get(network);
+		Node prefix = null;
+		for (int i = 0; node != null; i++)
+		{
+			if (node.locations != null && node.expiresAt <= now)
+			{
+				final Node expired = node;
+				node = i < key.length() ? node.child(key.charAt(i)) : null;
+				remove(expired);
+				continue;
+			}
+
+			if (i == key.length())
+			{
+				if (node.locations != null)
+				{
+					entries.get(node); // touch
+					hitCount++;
+					return new ArrayList<Location>(node.locations);
+				}
+				break;
+			}
+
+			if (node.locations != null && node.complete)
+				prefix = node;
+
+			node = node.child(key.charAt(i));
+		}
+
+		if (prefix == null)
+		{
+			missCount++;
+			return null;
+		}
+
+		entries.get(prefix); // touch
+		prefixHitCount++;
+
+		final String[] words = words(key);
+		final List<Location> filtered = new ArrayList<Location>();
+		for (final Location location : prefix.locations)
+			if (matches(location, words))
+				filtered.add(location);
+
+		// the filtered result is complete as well, so remember it for this very constraint, but only for as long as the
+		// result it was derived from is valid
+		put(network, key, filtered, true, prefix.expiresAt);
+
+		return filtered;
+	}
+
+	public synchronized void put(final NetworkId network, final CharSequence constraint, final List<Location> locations, final boolean complete)
+	{
+		put(network, normalize(constraint), locations, complete, clock.currentTimeMillis() + timeToLive);
+	}
+
+	private void put(final NetworkId network, final String key, final List<Location> locations, final boolean complete, final long expiresAt)
+	{
+		Node node = roots.get(network);
+		if (node == null)
+		{
+			node = new Node(null, '\0');
+			roots.put(network, node);
+		}
+
+		for (int i = 0; i < key.length(); i++)
+		{
+			final char c = key.charAt(i);
+			final Node child = node.child(c);
+			node = child != null ? child : node.addChild(c);
+		}
+
+		node.locations = new ArrayList<Location>(locations);
+		node.complete = complete;
+		node.expiresAt = expiresAt;
+		entries.put(node, node);
+	}
+
+	public synchronized int size()
+	{
+		return entries.size();
+	}
+
+	public synchronized void clear()
+	{
+		roots.clear();
+		entries.clear();
+	}
+
+	public synchronized long getHitCount()
+	{
+		return hitCount;
+	}
+
+	/**
+	 * @return number of lookups answered by filtering the result of a prefix
+	 */
+	public synchronized long getPrefixHitCount()
+	{
+		return prefixHitCount;
+	}
+
+	public synchronized long getMissCount()
+	{
+		return missCount;
+	}
+
+	@Override
+	public synchronized String toString()
+	{
+		return getClass().getName() + "[" + entries.size() + " entries," + hitCount + " hits," + prefixHitCount + " prefix hits," + missCount
+				+ " misses]";
+	}
+
+	/**
+	 * @return constraint in lower case, with surrounding whitespace removed and inner whitespace collapsed
+	 */
+	public static String normalize(final CharSequence constraint)
+	{
+		final StringBuilder builder = new StringBuilder(constraint.length());
+		boolean space = false;
+
+		for (int i = 0; i < constraint.length(); i++)
+		{
+			final char c = constraint.charAt(i);
+			if (Character.isWhitespace(c))
+			{
+				space = builder.length() > 0;
+			}
+			else
+			{
+				if (space)
+					builder.append(' ');
+				builder.append(Character.toLowerCase(c));
+				space = false;
+			}
+		}
+
+		return builder.toString();
+	}
+
+	private void remove(final Node node)
+	{
+		entries.remove(node);
+		clearEntry(node);
+	}
+
+	private void clearEntry(final Node node)
+	{
+		node.locations = null;
+
+		// prune branches that no longer lead to any entry
+		Node n = node;
+		while (n.parent != null && n.locations == null && n.children.length == 0)
+		{
+			n.parent.removeChild(n);
+			n = n.parent;
+		}
+
+		if (n.parent == null && n.locations == null && n.children.length == 0)
+			for (final Iterator<Node> i = roots.values().iterator(); i.hasNext();)
+				if (i.next() == n)
+					i.remove();
+	}
+
+	static boolean matches(final Location location, final String[] words)
+	{
+		final String[] locationWords = words(normalize((location.place != null ? location.place + " " : "") + (location.name != null ? location.name : "")));
+
+		for (final String word : words)
+		{
+			boolean found = false;
+			for (final String locationWord : locationWords)
+			{
+				if (locationWord.startsWith(word))
+				{
+					found = true;
+					break;
+				}
+			}
+			if (!found)
+				return false;
+		}
+
+		return true;
+	}
+
+	static String[] words(final String normalized)
+	{
+		final List<String> words = new ArrayList<String>();
+		int start = -1;
+
+		for (int i = 0; i <= normalized.length(); i++)
+		{
+			final boolean letterOrDigit = i < normalized.length() && Character.isLetterOrDigit(normalized.charAt(i));
+			if (letterOrDigit && start == -1)
+			{
+				start = i;
+			}
+			else if (!letterOrDigit && start != -1)
+			{
+				words.add(normalized.substring(start, i));
+				start = -1;
+			}
+		}
+
+		return words.toArray(new String[words.size()]);
+	}
+}
@@ -36,7 +36,8 @@ final public class CharQueue
 	 * queueFront is the location of the first item in the queue
 	 */
 
-	private char[] queueElements;
+	private char[] queueElements; // length is always a power of two
+	private int mask; // queueElements.length - 1, for cheap wrap around
 	private int queueFront;
 	private int queueRear;
 	private int elementCount; // number of elements in the queue
@@ -45,7 +46,8 @@ final public class CharQueue
 
 	public CharQueue(int Size)
 	{
-		queueElements = new char[Size];
+		queueElements = new char[powerOfTwoAtLeast(Size)];
+		mask = queueElements.length - 1;
 		queueFront = 0;
 		queueRear = 0;
 		elementCount = 0;
@@ -101,7 +103,7 @@ final public class CharQueue
 	public String toString()
 	{
 		StringBuffer queueString = new StringBuffer(elementCount);
-		if (queueFront < queueRear)
+		if (queueFront + elementCount <= capacity())
 		{
 			queueString.append(queueElements, queueFront, elementCount);
 		}
@@ -129,7 +131,7 @@ final public class CharQueue
 	public char dequeue()
 	{
 		char itemRemoved = queueElements[queueFront];
-		queueFront = (queueFront + 1) % capacity();
+		queueFront = (queueFront + 1) & mask;
 		elementCount--;
 		return itemRemoved;
 	}
@@ -171,7 +173,7 @@ final public class CharQueue
 			System.arraycopy(queueElements, 0, charsRemoved, offset + numCharsAtEnd, numCharsToReturn - numCharsAtEnd);
 		}
 
-		queueFront = (queueFront + numCharsToReturn) % capacity();
+		queueFront = (queueFront + numCharsToReturn) & mask;
 		elementCount = elementCount - numCharsToReturn;
 		return numCharsToReturn;
 	}
@@ -203,7 +205,7 @@ final public class CharQueue
 			grow();
 
 		queueElements[queueRear] = charToAdd;
-		queueRear = (queueRear + 1) % capacity();
+		queueRear = (queueRear + 1) & mask;
 		elementCount++;
 	}
 
@@ -229,8 +231,7 @@ final public class CharQueue
 	public void enqueue(char[] charsToAdd, int offset, int numCharsToAdd)
 	{
 		if (numCharsToAdd > unusedCapacity())
-			grow(Math.max(numCharsToAdd + 32, capacity() * 2));
-		// 32 to insure some spare capacity after growing
+			grow(elementCount + numCharsToAdd);
 
 		int numSpacesAtEnd = capacity() - queueRear;
 
@@ -246,7 +247,7 @@ final public class CharQueue
 			System.arraycopy(charsToAdd, offset + numSpacesAtEnd, queueElements, 0, numCharsToAdd - numSpacesAtEnd);
 		}
 
-		queueRear = (queueRear + numCharsToAdd) % capacity();
+		queueRear = (queueRear + numCharsToAdd) & mask;
 		elementCount = elementCount + numCharsToAdd;
 	}
 
@@ -261,27 +262,21 @@ final public class CharQueue
 	}
 
 	/**
-	 * Grows the queue. Growth policy insures amortized cost per insert is O(1)
+	 * Grows the queue. Doubling insures that amortized cost per insert is O(1)
 	 */
 	private void grow()
 	{
-		// Doubling queue insures that amortized cost per insert is O(1)
-		if (capacity() <= 16)
-			grow(32);
-		else if (capacity() <= 1024)
-			grow(capacity() * 2);
-		else
-			grow((int) (capacity() * 1.5));
+		grow(capacity() + 1);
 	}
 
 	/**
-	 * Grows the queue to the given new size
+	 * Grows the queue to the smallest power of two that holds at least minCapacity chars
 	 */
-	private void grow(int newSize)
+	private void grow(int minCapacity)
 	{
-		char[] newQueue = new char[newSize];
+		char[] newQueue = new char[powerOfTwoAtLeast(minCapacity)];
 
-		if (queueFront < queueRear)
+		if (queueFront + elementCount <= capacity())
 		{
 			System.arraycopy(queueElements, queueFront, newQueue, 0, elementCount);
 		}
@@ -293,7 +288,16 @@ final public class CharQueue
 		}
 
 		queueElements = newQueue;
+		mask = newQueue.length - 1;
 		queueFront = 0;
 		queueRear = elementCount;
 	}
+
+	private static int powerOfTwoAtLeast(int n)
+	{
+		int powerOfTwo = 16;
+		while (powerOfTwo < n)
+			powerOfTwo <<= 1;
+		return powerOfTwo;
+	}
 }
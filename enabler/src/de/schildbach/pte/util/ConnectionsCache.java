@@ -0,0 +1,403 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import de.schildbach.pte.NetworkId;
+import de.schildbach.pte.NetworkProvider.Accessibility;
+import de.schildbach.pte.NetworkProvider.Option;
+import de.schildbach.pte.NetworkProvider.WalkSpeed;
+import de.schildbach.pte.dto.Connection;
+import de.schildbach.pte.dto.Location;
+import de.schildbach.pte.dto.QueryConnectionsContext;
+import de.schildbach.pte.dto.QueryConnectionsResult;
+
+/**
+ * Short-lived cache of connection results, including the pages reached from them via their
+ * {@link QueryConnectionsContext}. A query and the pages following it form a session, as the contexts usually refer to
+ * state kept by the provider. If the provider reports that state to be gone, the whole session is invalidated via
+ * {@link #invalidate(QueryConnectionsContext)}, so the next request for the same query starts afresh.
+ *
+ * Queries are keyed by network, locations, date rounded to a configurable resolution, and all other parameters.
+ * Pages are keyed by the very context object they were requested with, so they are only found by callers that got
+ * that context from this cache. Only results with status {@link QueryConnectionsResult.Status#OK} are cached. Callers
+ * get their own copy of the list of connections. Thread-safe.
+ *
+ * @author Andreas Schildbach
+ */
+public final class ConnectionsCache
+{
+	private static final class QueryKey
+	{
+		final List<Object> parts;
+
+		QueryKey(final List<Object> parts)
+		{
+			this.parts = parts;
+		}
+
+		@Override
+		public boolean equals(final Object o)
+		{
+			return o instanceof QueryKey && parts.equals(((QueryKey) o).parts);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return parts.hashCode();
+		}
+	}
+
+	private static final class PageKey
+	{
+		final QueryConnectionsContext context;
+		final boolean later;
+		final int numConnections;
+
+		PageKey(final QueryConnectionsContext context, final boolean later, final int numConnections)
+		{
+			this.context = context;
+			this.later = later;
+			this.numConnections = numConnections;
+		}
+
+		@Override
+		public boolean equals(final Object o)
+		{
+			if (o == this)
+				return true;
+			if (!(o instanceof PageKey))
+				return false;
+			final PageKey other = (PageKey) o;
+			return this.context == other.context && this.later == other.later && this.numConnections == other.numConnections;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return (System.identityHashCode(context) * 29 + (later ? 1 : 0)) * 29 + numConnections;
+		}
+	}
+
+	private static final class Session
+	{
+		final QueryKey key;
+		final QueryConnectionsResult result;
+		final long expiresAt;
+		boolean consumed = false;
+		final List<QueryConnectionsContext> contexts = new ArrayList<QueryConnectionsContext>(4);
+		final List<PageKey> pages = new ArrayList<PageKey>(4);
+
+		Session(final QueryKey key, final QueryConnectionsResult result, final long expiresAt)
+		{
+			this.key = key;
+			this.result = result;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+	private static final class Page
+	{
+		final QueryConnectionsResult result;
+		final long expiresAt;
+
+		Page(final QueryConnectionsResult result, final long expiresAt)
+		{
+			this.result = result;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+	private final long timeToLive;
+	private final long dateResolution;
+	private final Clock clock;
+	private final LinkedHashMap<Session, Session> sessions;
+	private final Map<QueryKey, Session> queries = new HashMap<QueryKey, Session>();
+	private final Map<QueryConnectionsContext, Session> contexts = new IdentityHashMap<QueryConnectionsContext, Session>();
+	private final Map<PageKey, Page> pages = new HashMap<PageKey, Page>();
+	private long hitCount = 0;
+	private long missCount = 0;
+	private long pageHitCount = 0;
+	private long pageMissCount = 0;
+	private long invalidationCount = 0;
+
+	/**
+	 * @param maxSessions
+	 *            maximum number of cached queries including their pages, across all networks
+	 * @param timeToLive
+	 *            time in milliseconds a result is served from the cache after it has been fetched
+	 * @param dateResolution
+	 *            resolution in milliseconds to which query dates are rounded down, e.g. one minute
+	 */
+	public ConnectionsCache(final int maxSessions, final long timeToLive, final long dateResolution)
+	{
+		this(maxSessions, timeToLive, dateResolution, Clock.SYSTEM);
+	}
+
+	/**
+	 * @param clock
+	 *            source of the current time, for expiry
+	 */
+	public ConnectionsCache(final int maxSessions, final long timeToLive, final long dateResolution, final Clock clock)
+	{
+		if (dateResolution <= 0)
+			throw new IllegalArgumentException("dateResolution must be positive: " + dateResolution);
+
+		this.timeToLive = timeToLive;
+		this.dateResolution = dateResolution;
+		this.clock = clock;
+		this.sessions = new LinkedHashMap<Session, Session>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = -1545416374300512290L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<Session, Session> eldest)
+			{
+				if (size() <= maxSessions)
+					return false;
+
+				unregister(eldest.getKey());
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * @return opaque key for a query, to be used with {@link #get(Object)} and {@link #put(Object, QueryConnectionsResult)}
+	 */
+	public Object key(final NetworkId network, final Location from, final Location via, final Location to, final Date date, final boolean dep,
+			final int numConnections, final String products, final WalkSpeed walkSpeed, final Accessibility accessibility,
+			final Set<Option> options)
+	{
+		final List<Object> parts = new ArrayList<Object>(14);
+		parts.add(network);
+		parts.add(locationKey(from));
+		parts.add(locationKey(via));
+		parts.add(locationKey(to));
+		parts.add(date != null ? date.getTime() / dateResolution : null);
+		parts.add(dep);
+		parts.add(numConnections);
+		parts.add(products);
+		parts.add(walkSpeed);
+		parts.add(accessibility);
+		// copied, so that the key does not change with the caller's set
+		parts.add(options != null && !options.isEmpty() ? EnumSet.copyOf(options) : Collections.emptySet());
+
+		return new QueryKey(parts);
+	}
+
+	/**
+	 * @return cached result for the query, or {@code null}
+	 */
+	public synchronized QueryConnectionsResult get(final Object key)
+	{
+		final Session session = queries.get(key);
+
+		if (session == null || session.consumed)
+		{
+			missCount++;
+			return null;
+		}
+
+		if (session.expiresAt <= clock.currentTimeMillis())
+		{
+			remove(session);
+			missCount++;
+			return null;
+		}
+
+		sessions.get(session); // touch
+		hitCount++;
+		return copy(session.result);
+	}
+
+	public synchronized void put(final Object key, final QueryConnectionsResult result)
+	{
+		if (!isCacheable(result))
+			return;
+
+		// a previous session for the same query stays around for those paging through it
+		final Session session = new Session((QueryKey) key, result, clock.currentTimeMillis() + timeToLive);
+		queries.put(session.key, session);
+		sessions.put(session, session);
+		register(session, result.context);
+	}
+
+	/**
+	 * @return cached page reached from the given context, or {@code null}
+	 */
+	public synchronized QueryConnectionsResult getMore(final QueryConnectionsContext context, final boolean later, final int numConnections)
+	{
+		final Session session = contexts.get(context);
+		final Page page = session != null ? pages.get(new PageKey(context, later, numConnections)) : null;
+
+		if (page == null || page.expiresAt <= clock.currentTimeMillis())
+		{
+			pageMissCount++;
+			return null;
+		}
+
+		sessions.get(session); // touch
+		pageHitCount++;
+		return copy(page.result);
+	}
+
+	/**
+	 * Remember a page fetched from the provider. Only pages reached from contexts known to this cache are kept.
+	 * 
+	 * @param consumesContext
+	 *            {@code true} if the provider keeps state that is advanced by using a context, so that the cached
+	 *            query of the session can no longer be handed out to new callers
+	 */
+	public synchronized void putMore(final QueryConnectionsContext context, final boolean later, final int numConnections,
+			final QueryConnectionsResult result, final boolean consumesContext)
+	{
+		final Session session = contexts.get(context);
+		if (session == null)
+			return;
+
+		if (consumesContext)
+			session.consumed = true;
+
+		if (!isCacheable(result))
+			return;
+
+		final PageKey pageKey = new PageKey(context, later, numConnections);
+		pages.put(pageKey, new Page(result, clock.currentTimeMillis() + timeToLive));
+		session.pages.add(pageKey);
+		register(session, result.context);
+	}
+
+	/**
+	 * Drop the session the given context belongs to, e.g. because the provider has reported it as expired.
+	 */
+	public synchronized void invalidate(final QueryConnectionsContext context)
+	{
+		final Session session = contexts.get(context);
+		if (session != null)
+		{
+			remove(session);
+			invalidationCount++;
+		}
+	}
+
+	public synchronized int size()
+	{
+		return sessions.size();
+	}
+
+	public synchronized void clear()
+	{
+		sessions.clear();
+		queries.clear();
+		contexts.clear();
+		pages.clear();
+	}
+
+	public synchronized long getHitCount()
+	{
+		return hitCount;
+	}
+
+	public synchronized long getMissCount()
+	{
+		return missCount;
+	}
+
+	public synchronized long getPageHitCount()
+	{
+		return pageHitCount;
+	}
+
+	public synchronized long getPageMissCount()
+	{
+		return pageMissCount;
+	}
+
+	public synchronized long getInvalidationCount()
+	{
+		return invalidationCount;
+	}
+
+	@Override
+	public synchronized String toString()
+	{
+		return getClass().getName() + "[" + sessions.size() + " sessions," + pages.size() + " pages," + hitCount + " hits," + missCount
+				+ " misses," + pageHitCount + " page hits," + pageMissCount + " page misses," + invalidationCount + " invalidations]";
+	}
+
+	private void register(final Session session, final QueryConnectionsContext context)
+	{
+		if (context != null && !contexts.containsKey(context))
+		{
+			contexts.put(context, session);
+			session.contexts.add(context);
+		}
+	}
+
+	private void remove(final Session session)
+	{
+		sessions.remove(session);
+		unregister(session);
+	}
+
+	private void unregister(final Session session)
+	{
+		if (queries.get(session.key) == session)
+			queries.remove(session.key);
+		for (final QueryConnectionsContext context : session.contexts)
+			contexts.remove(context);
+		for (final PageKey pageKey : session.pages)
+			pages.remove(pageKey);
+	}
+
+	private static boolean isCacheable(final QueryConnectionsResult result)
+	{
+		return result != null && result.status == QueryConnectionsResult.Status.OK && result.connections != null;
+	}
+
+	private static QueryConnectionsResult copy(final QueryConnectionsResult result)
+	{
+		return new QueryConnectionsResult(result.header, result.queryUri, result.from, result.via, result.to, result.context,
+				new ArrayList<Connection>(result.connections));
+	}
+
+	private static Object locationKey(final Location location)
+	{
+		if (location == null)
+			return null;
+		if (location.hasId())
+			return location.type + ":" + location.id;
+		if (location.hasLocation())
+			return location.type + "@" + location.lat + "," + location.lon;
+
+		return location.type + "/" + (location.place != null ? AutocompleteCache.normalize(location.place) : "") + "/"
+				+ (location.name != null ? AutocompleteCache.normalize(location.name) : "");
+	}
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import de.schildbach.pte.NetworkId;
+import de.schildbach.pte.dto.Departure;
+import de.schildbach.pte.dto.QueryDeparturesResult;
+import de.schildbach.pte.dto.StationDepartures;
+
+/**
+ * Short-lived cache of departure boards, keyed by network, station and whether equivalent stations are included. A
+ * board fetched with more departures also serves requests for fewer departures, by truncating the list of each
+ * station. Concurrent misses for the same key are coalesced into a single fetch, which all callers wait for.
+ *
+ * Only results with status {@link QueryDeparturesResult.Status#OK} are kept beyond the fetch. Callers get their own
+ * copy of the result, so they may modify it. Thread-safe.
+ *
+ * @author Andreas Schildbach
+ */
+public final class DeparturesCache
+{
+	private static final class Key
+	{
+		final NetworkId network;
+		final int stationId;
+		final boolean equivs;
+
+		Key(final NetworkId network, final int stationId, final boolean equivs)
+		{
+			this.network = network;
+			this.stationId = stationId;
+			this.equivs = equivs;
+		}
+
+		@Override
+		public boolean equals(final Object o)
+		{
+			if (o == this)
+				return true;
+			if (!(o instanceof Key))
+				return false;
+			final Key other = (Key) o;
+			return this.network == other.network && this.stationId == other.stationId && this.equivs == other.equivs;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return (network.hashCode() * 29 + stationId) * 29 + (equivs ? 1 : 0);
+		}
+	}
+
+	private static final class Board
+	{
+		final FutureTask<QueryDeparturesResult> fetch;
+		final int maxDepartures;
+		long expiresAt = Long.MAX_VALUE; // while in flight
+
+		Board(final FutureTask<QueryDeparturesResult> fetch, final int maxDepartures)
+		{
+			this.fetch = fetch;
+			this.maxDepartures = maxDepartures;
+		}
+
+		boolean covers(final int maxDepartures)
+		{
+			return this.maxDepartures == 0 || (maxDepartures != 0 && maxDepartures <= this.maxDepartures);
+		}
+	}
+
+	private final long timeToLive;
+	private final Clock clock;
+	private final Map<Key, Board> boards;
+	private long hitCount = 0;
+	private long missCount = 0;
+	private long coalescedCount = 0;
+
+	/**
+	 * @param maxEntries
+	 *            maximum number of cached boards, across all networks
+	 * @param timeToLive
+	 *            time in milliseconds a board is served from the cache after it has been fetched, e.g. 15 to 30 seconds
+	 */
+	public DeparturesCache(final int maxEntries, final long timeToLive)
+	{
+		this(maxEntries, timeToLive, Clock.SYSTEM);
+	}
+
+	/**
+	 * @param clock
+	 *            source of the current time, for expiry
+	 */
+	public DeparturesCache(final int maxEntries, final long timeToLive, final Clock clock)
+	{
+		this.timeToLive = timeToLive;
+		this.clock = clock;
+		this.boards = new LinkedHashMap<Key, Board>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = -7392853526281036612L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<Key, Board> eldest)
+			{
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Get a departure board from the cache, or fetch it if there is none that covers the requested number of
+	 * departures.
+	 * 
+	 * @param maxDepartures
+	 *            maximum number of departures per station, or {@code 0} for all the provider returns
+	 * @param fetch
+	 *            fetches the board from the provider, called with the same parameters
+	 */
+	public QueryDeparturesResult get(final NetworkId network, final int stationId, final int maxDepartures, final boolean equivs,
+			final Callable<QueryDeparturesResult> fetch) throws IOException
+	{
+		final Key key = new Key(network, stationId, equivs);
+		final Board board;
+		final boolean owner;
+
+		synchronized (this)
+		{
+			final Board cached = boards.get(key);
+			if (cached != null && cached.expiresAt > clock.currentTimeMillis() && cached.covers(maxDepartures))
+			{
+				if (cached.fetch.isDone())
+					hitCount++;
+				else
+					coalescedCount++;
+
+				board = cached;
+				owner = false;
+			}
+			else
+			{
+				missCount++;
+
+				board = new Board(new FutureTask<QueryDeparturesResult>(fetch), maxDepartures);
+				boards.put(key, board);
+				owner = true;
+			}
+		}
+
+		if (owner)
+		{
+			board.fetch.run();
+
+			synchronized (this)
+			{
+				if (isCacheable(board.fetch))
+					board.expiresAt = clock.currentTimeMillis() + timeToLive;
+				else if (boards.get(key) == board)
+					boards.remove(key);
+			}
+		}
+
+		return truncate(await(board.fetch), maxDepartures);
+	}
+
+	public synchronized int size()
+	{
+		return boards.size();
+	}
+
+	public synchronized void clear()
+	{
+		boards.clear();
+	}
+
+	public synchronized long getHitCount()
+	{
+		return hitCount;
+	}
+
+	public synchronized long getMissCount()
+	{
+		return missCount;
+	}
+
+	/**
+	 * @return number of requests that waited for a fetch already in flight, rather than fetching themselves
+	 */
+	public synchronized long getCoalescedCount()
+	{
+		return coalescedCount;
+	}
+
+	@Override
+	public synchronized String toString()
+	{
+		return getClass().getName() + "[" + boards.size() + " boards," + hitCount + " hits," + missCount + " misses," + coalescedCount
+				+ " coalesced]";
+	}
+
+	private static boolean isCacheable(final FutureTask<QueryDeparturesResult> fetch)
+	{
+		try
+		{
+			final QueryDeparturesResult result = fetch.get();
+			return result != null && result.status == QueryDeparturesResult.Status.OK;
+		}
+		catch (final InterruptedException x)
+		{
+			throw new IllegalStateException(x); // cannot happen, fetch is done
+		}
+		catch (final ExecutionException x)
+		{
+			return false;
+		}
+	}
+
+	private static QueryDeparturesResult await(final FutureTask<QueryDeparturesResult> fetch) throws IOException
+	{
+		try
+		{
+			return fetch.get();
+		}
+		catch (final InterruptedException x)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while waiting for departures");
+		}
+		catch (final ExecutionException x)
+		{
+			final Throwable cause = x.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new RuntimeException(cause);
+		}
+	}
+
+	private static QueryDeparturesResult truncate(final QueryDeparturesResult result, final int maxDepartures)
+	{
+		if (result == null)
+			return null;
+
+		final QueryDeparturesResult copy = new QueryDeparturesResult(result.header, result.status);
+
+		for (final StationDepartures stationDepartures : result.stationDepartures)
+		{
+			final List<Departure> departures;
+			if (stationDepartures.departures == null)
+				departures = null;
+			else if (maxDepartures > 0 && stationDepartures.departures.size() > maxDepartures)
+				departures = new ArrayList<Departure>(stationDepartures.departures.subList(0, maxDepartures));
+			else
+				departures = new ArrayList<Departure>(stationDepartures.departures);
+
+			copy.stationDepartures.add(new StationDepartures(stationDepartures.location, departures, stationDepartures.lines));
+		}
+
+		return copy;
+	}
+}
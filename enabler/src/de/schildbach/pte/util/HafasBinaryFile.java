@@ -1,13 +1,22 @@
 package de.schildbach.pte.util;
 
-import java.io.ByteArrayOutputStream;
-import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
 import java.util.GregorianCalendar;
-import java.util.Hashtable;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.TimeZone;
-import java.util.Vector;
 
 import de.schildbach.pte.dto.Location;
 import de.schildbach.pte.dto.LocationType;
@@ -16,7 +25,10 @@ public class HafasBinaryFile
 {
 	boolean DEBUG = false;
 
-	private final char[] buf;
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+	private final ByteBuffer buf;
 	private final TimeZone timezone;
 
 	private final int version;
@@ -26,6 +38,7 @@ public class HafasBinaryFile
 	private final int serviceDaysTable;
 	private final int stationsTable;
 	private final int remarksTable;
+	private final int stringsTable;
 	private int extendedHeader;
 
 	private int connectionsHeader;
@@ -36,15 +49,39 @@ public class HafasBinaryFile
 	private int stopsTableOffset;
 	private int stopElementSize;
 
-	private final Vector<HafasBinaryFile.Connection> connections = new Vector<HafasBinaryFile.Connection>();
-	private static final Hashtable<String, String> EMPTY_STRING_HASHTABLE = new Hashtable<String, String>(0);
+	private int numConnections;
+
+	// strings and stations are stored once per file, but referenced by many parts and stops
+	private final Map<Integer, String> stringCache = new HashMap<Integer, String>();
+	private final Map<Integer, Location> stationCache = new HashMap<Integer, Location>();
+
+	// epoch millis and zone offset of local midnight, indexed by day relative to baseDay
+	private long[] dayMidnights = new long[0];
+	private int[] dayOffsets = new int[0];
+	private Calendar calendar;
+
+	private static final long MINUTE_MILLIS = 60 * 1000;
+	private static final long HOUR_MILLIS = 60 * MINUTE_MILLIS;
 
+	/**
+	 * @param buf
+	 *            file as ISO-8859-1 decoded characters, one per byte
+	 */
 	public HafasBinaryFile(final char[] buf, final TimeZone timezone)
 	{
-		this.buf = buf;
+		this(toByteBuffer(buf), timezone);
+	}
+
+	/**
+	 * Decode a file from the remaining bytes of the given buffer, which can be heap-allocated or memory-mapped. The
+	 * buffer is read via absolute gets only, so its position is not changed.
+	 */
+	public HafasBinaryFile(final ByteBuffer buf, final TimeZone timezone)
+	{
+		this.buf = buf.slice().order(ByteOrder.LITTLE_ENDIAN);
 		this.timezone = timezone;
 
-		if (buf.length < 2)
+		if (this.buf.limit() < 2)
 			throw new IllegalStateException("Empty Data");
 
 		version = getWord(0);
@@ -55,6 +92,7 @@ public class HafasBinaryFile
 		baseDay = getWord(0x28);
 		stationsTable = getDword(0x36);
 		remarksTable = getDword(0x3a);
+		stringsTable = getDword(0x24);
 		extendedHeader = getDword(0x46);
 
 		if (extendedHeader == 0)
@@ -89,33 +127,35 @@ public class HafasBinaryFile
 		}
 
 
-		final int numConnections = getWord(0x1e);
 		// TODO the original app check (extendedHeader + 0x1e) for an index of a "special" connection that is not added to the array
-		for (int i = 0; i < numConnections; i++) {
-			connections.add(new Connection(i));
-		}
+		numConnections = getWord(0x1e);
+	}
+
+	private static ByteBuffer toByteBuffer(final char[] chars)
+	{
+		final byte[] bytes = new byte[chars.length];
+		for (int i = 0; i < chars.length; i++)
+			bytes[i] = (byte) chars[i];
+		return ByteBuffer.wrap(bytes);
 	}
 
 	private int getDword(final int pos)
 	{
-		int result = buf[pos]
-				+ buf[pos+1] * 0x100
-				+ buf[pos+2] * 0x10000
-				+ buf[pos+3] * 0x1000000;
+		int result = buf.getInt(pos);
 		if (DEBUG) System.out.printf("getDword(0x%x) = 0x%x\n", pos, result);
 		return result;
 	}
 
 	private int getWord(final int pos)
 	{
-		int result = buf[pos] + buf[pos+1] * 0x100;
+		int result = buf.getShort(pos) & 0xffff;
 		if (DEBUG) System.out.printf("getWord(0x%x) = 0x%x\n", pos, result);
 		return result;
 	}
 
 	private int getByte(final int pos)
 	{
-		int result = buf[pos];
+		int result = buf.get(pos) & 0xff;
 		if (DEBUG) System.out.printf("getByte(0x%x) = 0x%x\n", pos, result);
 		return result;
 	}
@@ -125,34 +165,70 @@ public class HafasBinaryFile
 		if (day <= 0 || time < 0 || time == 0xffff)
 			return null;
 
-		Calendar cal = new GregorianCalendar(timezone);
-		cal.set(1980, 0, day, 0, 0, 0);
-		cal.set(Calendar.HOUR_OF_DAY, time / 100);
-		cal.set(Calendar.MINUTE, time % 100);
+		final int dayIndex = day - baseDay;
+		if (dayIndex >= 0)
+		{
+			if (dayIndex >= dayMidnights.length || dayMidnights[dayIndex] == 0)
+				initDayBase(dayIndex, day);
+
+			final long millis = dayMidnights[dayIndex] + (time / 100) * HOUR_MILLIS + (time % 100) * MINUTE_MILLIS;
+
+			// plain arithmetic is only valid if there is no offset change between midnight and the given time
+			if (timezone.getOffset(millis) == dayOffsets[dayIndex])
+				return new Date(millis);
+		}
+
+		final Calendar cal = calendar();
+		cal.set(1980, 0, day, time / 100, time % 100, 0);
 		return cal.getTime();
 	}
 
+	private void initDayBase(final int dayIndex, final int day)
+	{
+		if (dayIndex >= dayMidnights.length)
+		{
+			final int length = Math.max(dayIndex + 1, dayMidnights.length * 2);
+			final long[] midnights = new long[length];
+			System.arraycopy(dayMidnights, 0, midnights, 0, dayMidnights.length);
+			dayMidnights = midnights;
+			final int[] offsets = new int[length];
+			System.arraycopy(dayOffsets, 0, offsets, 0, dayOffsets.length);
+			dayOffsets = offsets;
+		}
+
+		final Calendar cal = calendar();
+		cal.set(1980, 0, day, 0, 0, 0);
+		final long midnight = cal.getTimeInMillis();
+		dayMidnights[dayIndex] = midnight;
+		dayOffsets[dayIndex] = timezone.getOffset(midnight);
+	}
+
+	private Calendar calendar()
+	{
+		if (calendar == null)
+			calendar = new GregorianCalendar(timezone);
+		calendar.clear();
+		return calendar;
+	}
+
 	private String getString(int pos)
 	{
-		int stringsStart = getDword(0x24);
-		pos = stringsStart + getWord(pos);
+		pos = stringsTable + getWord(pos);
 
-		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
-		while (true) {
-			char b = buf[pos++];
-			if (b == 0)
-				break;
-			bytes.write(b);
-		}
+		final Integer key = pos;
+		final String cached = stringCache.get(key);
+		if (cached != null)
+			return cached;
 
-		String result;
-		try {
-			result = bytes.toString(isUtf8 ? "utf-8" : "iso-8859-1");
-		} catch (UnsupportedEncodingException e) {
-			e.printStackTrace();
-			result = bytes.toString();
-		}
+		int end = pos;
+		while (buf.get(end) != 0)
+			end++;
+
+		final ByteBuffer bytes = buf.duplicate();
+		bytes.limit(end).position(pos);
+		String result = (isUtf8 ? UTF_8 : ISO_8859_1).decode(bytes).toString();
 		if (DEBUG) System.out.printf("getString(0x%x) = %s\n", pos, result);
+		stringCache.put(key, result);
 		return result;
 	}
 
@@ -185,16 +261,23 @@ public class HafasBinaryFile
 		return result;
 	}
 
-	private Hashtable<String, String> getKeyValuePairs(int startIdx)
+	private Map<String, String> getKeyValuePairs(int startIdx)
 	{
-		Hashtable<String, String> result = new Hashtable<String, String>();
-
+		int count = 0;
 		for (int i = startIdx; i < 0x10000; i++) {
 			String[] kvp = getKeyValuePair(i);
 			if (kvp == null || kvp[0].equals("---"))
 				break;
+			count++;
+		}
 
-			result.put(kvp[0], kvp[1]);
+		if (count == 0)
+			return Collections.emptyMap();
+
+		AttributeMap result = new AttributeMap(count);
+		for (int i = startIdx; i < startIdx + count; i++) {
+			String[] kvp = getKeyValuePair(i);
+			result.putInternal(kvp[0], kvp[1]);
 		}
 		return result;
 	}
@@ -202,12 +285,19 @@ public class HafasBinaryFile
 
 	private Location getStation(final int idx)
 	{
+		final Integer key = idx;
+		final Location cached = stationCache.get(key);
+		if (cached != null)
+			return cached;
+
 		final int ptr = stationsTable + idx * 14;
 		final String name = getString(ptr);
 		final int id = getDword(ptr + 2);
 		final int lon = getWord(ptr + 6);
 		final int lat = getWord(ptr + 8);
-		return new Location(LocationType.STATION, id, lat, lon, null, name);
+		final Location station = new Location(LocationType.STATION, id, lat, lon, null, name);
+		stationCache.put(key, station);
+		return station;
 	}
 
 	public Location getFrom()
@@ -256,9 +346,27 @@ public class HafasBinaryFile
 		return (result != 0xffff) ? result : 1;
 	}
 
-	public Vector<HafasBinaryFile.Connection> getConnections()
+	public int getNumConnections()
 	{
-		return connections;
+		return numConnections;
+	}
+
+	/**
+	 * Decode the connection at the given index. Nothing but its offsets is read until one of its getters is called.
+	 */
+	public HafasBinaryFile.Connection getConnection(final int idx)
+	{
+		if (idx < 0 || idx >= numConnections)
+			throw new IndexOutOfBoundsException("connection " + idx + " of " + numConnections);
+		return new Connection(idx);
+	}
+
+	public List<HafasBinaryFile.Connection> getConnections()
+	{
+		final HafasBinaryFile.Connection[] connections = new HafasBinaryFile.Connection[numConnections];
+		for (int i = 0; i < numConnections; i++)
+			connections[i] = new Connection(i);
+		return Collections.unmodifiableList(Arrays.asList(connections));
 	}
 
 	// FIXME
@@ -270,8 +378,8 @@ public class HafasBinaryFile
 		private final int connIdx;
 		private final int connectionDay;
 
-		private final Vector<HafasBinaryFile.Connection.Part> parts = new Vector<HafasBinaryFile.Connection.Part>();
-		private Hashtable<String, String> attributes;
+		private final int numParts;
+		private Map<String, String> attributes;
 
 		public Connection(int idx)
 		{
@@ -280,10 +388,7 @@ public class HafasBinaryFile
 
 			this.connectionDay = baseDay + getBaseDay();
 
-			final int partCount = getWord(0x4a + connIdx*0xc + 6);
-			for (int i = 0; i < partCount; i++) {
-				parts.add(new Part(i));
-			}
+			this.numParts = getWord(0x4a + connIdx*0xc + 6);
 		}
 
 		public int getIndex()
@@ -315,18 +420,33 @@ public class HafasBinaryFile
 			return day;
 		}
 
-		public Vector<HafasBinaryFile.Connection.Part> getParts()
+		public int getNumParts()
 		{
-			return parts;
+			return numParts;
 		}
 
-		public Hashtable<String, String> getAttributes()
+		public HafasBinaryFile.Connection.Part getPart(final int idx)
+		{
+			if (idx < 0 || idx >= numParts)
+				throw new IndexOutOfBoundsException("part " + idx + " of " + numParts);
+			return new Part(idx);
+		}
+
+		public List<HafasBinaryFile.Connection.Part> getParts()
+		{
+			final HafasBinaryFile.Connection.Part[] parts = new HafasBinaryFile.Connection.Part[numParts];
+			for (int i = 0; i < numParts; i++)
+				parts[i] = new Part(i);
+			return Collections.unmodifiableList(Arrays.asList(parts));
+		}
+
+		public Map<String, String> getAttributes()
 		{
 			if (attributes != null)
 				return attributes;
 
 			if (connectionAttributesTable == 0) {
-				attributes = EMPTY_STRING_HASHTABLE; 
+				attributes = Collections.emptyMap();
 			} else {
 				int startIdx = getWord(connectionAttributesTable + connIdx*2);
 				attributes = getKeyValuePairs(startIdx);
@@ -352,14 +472,12 @@ public class HafasBinaryFile
 
 		public Location getDepartureStation()
 		{
-			Part first = parts.firstElement();
-			return (first == null) ? null : first.getDepartureStation(); 
+			return (numParts == 0) ? null : new Part(0).getDepartureStation();
 		}
 
 		public Location getArrivalStation()
 		{
-			Part first = parts.lastElement();
-			return (first == null) ? null : first.getArrivalStation(); 
+			return (numParts == 0) ? null : new Part(numParts - 1).getArrivalStation();
 		}
 
 		public class Part
@@ -367,9 +485,9 @@ public class HafasBinaryFile
 			private final int partIdx;
 			private final int partInfoOffset;
 			private final int partRealtimeInfoOffset;
-			private final Vector<HafasBinaryFile.Connection.Part.Stop> stops = new Vector<HafasBinaryFile.Connection.Part.Stop>();
-			private Hashtable<String, String> attributes;
-			private Vector<String> remarks;
+			private final int numStops;
+			private Map<String, String> attributes;
+			private List<String> remarks;
 
 			public Part(int partIdx)
 			{
@@ -377,12 +495,7 @@ public class HafasBinaryFile
 				this.partInfoOffset = 0x4a + getDword(0x4a + connIdx*0xc + 2) + partIdx*0x14;
 				this.partRealtimeInfoOffset = connectionOffset + connectionPartInfoOffset + connectionPartInfoSize * partIdx;
 
-				if (stopElementSize > 0) {
-					final int stopCount = getWord(partRealtimeInfoOffset + 0xe);
-					for (int i = 0; i < stopCount; i++) {
-						stops.add(new Stop(i));
-					}
-				}
+				this.numStops = (stopElementSize > 0) ? getWord(partRealtimeInfoOffset + 0xe) : 0;
 			}
 
 			public int getIndex()
@@ -390,9 +503,24 @@ public class HafasBinaryFile
 				return partIdx;
 			}
 
-			public Vector<HafasBinaryFile.Connection.Part.Stop> getStops()
+			public int getNumStops()
+			{
+				return numStops;
+			}
+
+			public HafasBinaryFile.Connection.Part.Stop getStop(final int idx)
 			{
-				return stops;
+				if (idx < 0 || idx >= numStops)
+					throw new IndexOutOfBoundsException("stop " + idx + " of " + numStops);
+				return new Stop(idx);
+			}
+
+			public List<HafasBinaryFile.Connection.Part.Stop> getStops()
+			{
+				final HafasBinaryFile.Connection.Part.Stop[] stops = new HafasBinaryFile.Connection.Part.Stop[numStops];
+				for (int i = 0; i < numStops; i++)
+					stops[i] = new Stop(i);
+				return Collections.unmodifiableList(Arrays.asList(stops));
 			}
 
 			public int getType()
@@ -508,7 +636,7 @@ public class HafasBinaryFile
 					return null;
 			}
 
-			public Hashtable<String, String> getAttributes()
+			public Map<String, String> getAttributes()
 			{
 				if (attributes != null)
 					return attributes;
@@ -516,7 +644,7 @@ public class HafasBinaryFile
 				return attributes;
 			}
 
-			public Vector<String> getRemarks()
+			public List<String> getRemarks()
 			{
 				if (remarks != null)
 					return remarks;
@@ -524,10 +652,11 @@ public class HafasBinaryFile
 				final int remarksOffset = remarksTable + getWord(partInfoOffset + 0x12);
 				final int remarkssCount = getWord(remarksOffset);
 
-				remarks = new Vector<String>(remarkssCount);
+				final String[] result = new String[remarkssCount];
 				for (int i = 1; i <= remarkssCount; i++)
-					remarks.add(getString(remarksOffset + 2*i));
+					result[i - 1] = getString(remarksOffset + 2*i);
 
+				remarks = Collections.unmodifiableList(Arrays.asList(result));
 				return remarks;
 			}
 
@@ -569,7 +698,7 @@ public class HafasBinaryFile
 
 				public Stop(int stopIdx)
 				{
-					this.stopIdx = partIdx;
+					this.stopIdx = stopIdx;
 
 					int firstStop = getWord(partRealtimeInfoOffset + 0xc);
 					this.stopInfoOffset = stopsTableOffset + (firstStop + stopIdx) * stopElementSize;
@@ -645,4 +774,169 @@ public class HafasBinaryFile
 			}
 		}
 	}
+
+	/**
+	 * Read-only map with open addressing, sized once for the attributes of a connection or part.
+	 */
+	private static final class AttributeMap extends AbstractMap<String, String>
+	{
+		private final String[] keys;
+		private final String[] values;
+		private final int mask;
+		private int size;
+
+		public AttributeMap(final int expectedSize)
+		{
+			int capacity = 2;
+			while (capacity < expectedSize * 2)
+				capacity <<= 1;
+
+			keys = new String[capacity];
+			values = new String[capacity];
+			mask = capacity - 1;
+		}
+
+		private void putInternal(final String key, final String value)
+		{
+			int i = index(key);
+			while (keys[i] != null && !keys[i].equals(key))
+				i = (i + 1) & mask;
+
+			if (keys[i] == null)
+				size++;
+			keys[i] = key;
+			values[i] = value;
+		}
+
+		private int index(final Object key)
+		{
+			final int h = key.hashCode();
+			return (h ^ (h >>> 16)) & mask;
+		}
+
+		@Override
+		public String get(final Object key)
+		{
+			if (key == null)
+				return null;
+
+			int i = index(key);
+			while (keys[i] != null)
+			{
+				if (keys[i].equals(key))
+					return values[i];
+				i = (i + 1) & mask;
+			}
+			return null;
+		}
+
+		@Override
+		public boolean containsKey(final Object key)
+		{
+			return get(key) != null;
+		}
+
+		@Override
+		public int size()
+		{
+			return size;
+		}
+
+		@Override
+		public Set<Map.Entry<String, String>> entrySet()
+		{
+			return new AbstractSet<Map.Entry<String, String>>()
+			{
+				@Override
+				public int size()
+				{
+					return size;
+				}
+
+				@Override
+				public Iterator<Map.Entry<String, String>> iterator()
+				{
+					return new Iterator<Map.Entry<String, String>>()
+					{
+						private int next = advance(0);
+
+						private int advance(int i)
+						{
+							while (i < keys.length && keys[i] == null)
+								i++;
+							return i;
+						}
+
+						public boolean hasNext()
+						{
+							return next < keys.length;
+						}
+
+						public Map.Entry<String, String> next()
+						{
+							if (next >= keys.length)
+								throw new NoSuchElementException();
+
+							final Map.Entry<String, String> entry = new AttributeEntry(keys[next], values[next]);
+							next = advance(next + 1);
+							return entry;
+						}
+
+						public void remove()
+						{
+							throw new UnsupportedOperationException();
+						}
+					};
+				}
+			};
+		}
+	}
+
+	private static final class AttributeEntry implements Map.Entry<String, String>
+	{
+		private final String key;
+		private final String value;
+
+		public AttributeEntry(final String key, final String value)
+		{
+			this.key = key;
+			this.value = value;
+		}
+
+		public String getKey()
+		{
+			return key;
+		}
+
+		public String getValue()
+		{
+			return value;
+		}
+
+		public String setValue(final String value)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public boolean equals(final Object o)
+		{
+			if (!(o instanceof Map.Entry))
+				return false;
+			final Map.Entry<?, ?> other = (Map.Entry<?, ?>) o;
+			return key.equals(other.getKey()) && (value == null ? other.getValue() == null : value.equals(other.getValue()));
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return key.hashCode() ^ (value == null ? 0 : value.hashCode());
+		}
+
+		@Override
+		public String toString()
+		{
+			return key + "=" + value;
+		}
+	}
 }
@@ -0,0 +1,450 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lenient pull tokenizer for HTML pages, reading straight from a {@link Reader} in a single pass. Only the current
+ * token is kept in memory.
+ *
+ * Tag and attribute names are reported in lower case. Attribute values and text are reported raw, so entities have to
+ * be resolved by the caller, e.g. using {@link ParserUtils#resolveEntities(CharSequence)}. Comments, doctype and
+ * processing instructions are skipped, as well as the content of {@code script} and {@code style} elements. There is
+ * no tree building: empty element tags like {@code <br/>} are reported as start tag only, and unbalanced tags are
+ * reported as they appear.
+ *
+ * @author Andreas Schildbach
+ */
+public final class HtmlTokenizer
+{
+	public enum Token
+	{
+		START_TAG, END_TAG, TEXT, END_DOCUMENT
+	}
+
+	private static final int BUFFER_SIZE = 4096;
+
+	private final Reader reader;
+	private final char[] buffer = new char[BUFFER_SIZE];
+	private int position = 0;
+	private int limit = 0;
+	private int pushback = -1;
+	private int pendingMarkup = -1;
+
+	private Token token = null;
+	private String name = null;
+	private boolean emptyElementTag = false;
+	private final StringBuilder text = new StringBuilder();
+	private final List<String> attributeNames = new ArrayList<String>();
+	private final List<String> attributeValues = new ArrayList<String>();
+	private String rawTextElement = null;
+
+	public HtmlTokenizer(final Reader reader)
+	{
+		this.reader = reader;
+	}
+
+	/**
+	 * Advance to the next token.
+	 */
+	public Token next() throws IOException
+	{
+		name = null;
+		emptyElementTag = false;
+		text.setLength(0);
+		attributeNames.clear();
+		attributeValues.clear();
+
+		if (rawTextElement != null)
+		{
+			final String element = rawTextElement;
+			rawTextElement = null;
+			if (skipRawText(element))
+			{
+				name = element;
+				return token = Token.END_TAG;
+			}
+			return token = Token.END_DOCUMENT;
+		}
+
+		while (true)
+		{
+			final int c2;
+
+			if (pendingMarkup != -1)
+			{
+				c2 = pendingMarkup;
+				pendingMarkup = -1;
+			}
+			else
+			{
+				final int c = read();
+
+				if (c == -1)
+					return token = text.length() > 0 ? Token.TEXT : Token.END_DOCUMENT;
+
+				if (c != '<')
+				{
+					text.append((char) c);
+					continue;
+				}
+
+				c2 = read();
+
+				if (text.length() > 0 && (c2 == '/' || c2 == '!' || c2 == '?' || isNameStart(c2)))
+				{
+					// markup ends the text, deliver the text first
+					pendingMarkup = c2;
+					return token = Token.TEXT;
+				}
+			}
+
+			if (c2 == '!' || c2 == '?')
+			{
+				skipMarkupDeclaration(c2);
+			}
+			else if (c2 == '/')
+			{
+				final int c3 = read();
+				if (isNameStart(c3))
+				{
+					name = readName(c3);
+					skipUntil('>');
+					return token = Token.END_TAG;
+				}
+				else
+				{
+					skipUntil('>');
+				}
+			}
+			else if (isNameStart(c2))
+			{
+				name = readName(c2);
+				readAttributes();
+				if (!emptyElementTag && ("script".equals(name) || "style".equals(name)))
+					rawTextElement = name;
+				return token = Token.START_TAG;
+			}
+			else
+			{
+				text.append('<');
+				if (c2 == -1)
+					return token = Token.TEXT;
+				if (c2 == '<')
+					unread(c2);
+				else
+					text.append((char) c2);
+			}
+		}
+	}
+
+	public Token getToken()
+	{
+		return token;
+	}
+
+	/**
+	 * @return lower-case element name of a start or end tag
+	 */
+	public String getName()
+	{
+		return name;
+	}
+
+	/**
+	 * @return raw text of a text token
+	 */
+	public String getText()
+	{
+		return text.toString();
+	}
+
+	public boolean isEmptyElementTag()
+	{
+		return emptyElementTag;
+	}
+
+	public int getAttributeCount()
+	{
+		return attributeNames.size();
+	}
+
+	public String getAttributeName(final int index)
+	{
+		return attributeNames.get(index);
+	}
+
+	public String getAttributeValue(final int index)
+	{
+		return attributeValues.get(index);
+	}
+
+	/**
+	 * @return raw value of the given attribute of a start tag, the empty string for an attribute without value, or
+	 *         {@code null} if there is no such attribute
+	 */
+	public String getAttribute(final String attributeName)
+	{
+		final int index = attributeNames.indexOf(attributeName);
+		return index >= 0 ? attributeValues.get(index) : null;
+	}
+
+	/**
+	 * @return true if the current token is a start tag of the given element
+	 */
+	public boolean isStartTag(final String elementName)
+	{
+		return token == Token.START_TAG && elementName.equals(name);
+	}
+
+	/**
+	 * @return true if the current token is an end tag of the given element
+	 */
+	public boolean isEndTag(final String elementName)
+	{
+		return token == Token.END_TAG && elementName.equals(name);
+	}
+
+	/**
+	 * Reads the text content of the element whose start tag is the current token, up to and including its end tag.
+	 * Nested markup is skipped, the text of nested elements is included.
+	 *
+	 * @return raw text content, or the empty string for an empty element tag
+	 */
+	public String nextText() throws IOException
+	{
+		if (token != Token.START_TAG)
+			throw new IllegalStateException("not on a start tag: " + token);
+
+		if (emptyElementTag)
+			return "";
+
+		final String element = name;
+		final StringBuilder content = new StringBuilder();
+		int depth = 1;
+
+		while (next() != Token.END_DOCUMENT)
+		{
+			if (token == Token.TEXT)
+				content.append(text);
+			else if (token == Token.START_TAG && element.equals(name) && !emptyElementTag)
+				depth++;
+			else if (token == Token.END_TAG && element.equals(name) && --depth == 0)
+				break;
+		}
+
+		return content.toString();
+	}
+
+	private void readAttributes() throws IOException
+	{
+		while (true)
+		{
+			int c = skipWhitespace();
+
+			if (c == -1 || c == '>')
+				return;
+
+			if (c == '/')
+			{
+				c = read();
+				if (c == '>')
+				{
+					emptyElementTag = true;
+					return;
+				}
+				unread(c);
+				continue;
+			}
+
+			final StringBuilder attributeName = new StringBuilder();
+			while (c != -1 && c != '=' && c != '>' && c != '/' && !isWhitespace(c))
+			{
+				attributeName.append(Character.toLowerCase((char) c));
+				c = read();
+			}
+
+			if (isWhitespace(c))
+				c = skipWhitespace();
+
+			final String value;
+			if (c == '=')
+			{
+				value = readAttributeValue();
+			}
+			else
+			{
+				unread(c);
+				value = "";
+			}
+
+			attributeNames.add(attributeName.toString());
+			attributeValues.add(value);
+		}
+	}
+
+	private String readAttributeValue() throws IOException
+	{
+		int c = skipWhitespace();
+		final StringBuilder value = new StringBuilder();
+
+		if (c == '"' || c == '\'')
+		{
+			final int quote = c;
+			while ((c = read()) != -1 && c != quote)
+				value.append((char) c);
+		}
+		else
+		{
+			while (c != -1 && c != '>' && !isWhitespace(c))
+			{
+				value.append((char) c);
+				c = read();
+			}
+			unread(c);
+		}
+
+		return value.toString();
+	}
+
+	private String readName(int c) throws IOException
+	{
+		final StringBuilder builder = new StringBuilder();
+		while (c != -1 && c != '>' && c != '/' && !isWhitespace(c))
+		{
+			builder.append(Character.toLowerCase((char) c));
+			c = read();
+		}
+		unread(c);
+		return builder.toString();
+	}
+
+	private void skipMarkupDeclaration(final int first) throws IOException
+	{
+		if (first == '!')
+		{
+			final int c1 = read();
+			if (c1 == '-')
+			{
+				final int c2 = read();
+				if (c2 == '-')
+				{
+					// comment, ends with -->
+					int dashes = 0;
+					int c;
+					while ((c = read()) != -1)
+					{
+						if (c == '>' && dashes >= 2)
+							return;
+						dashes = c == '-' ? dashes + 1 : 0;
+					}
+					return;
+				}
+				unread(c2);
+			}
+			else
+			{
+				unread(c1);
+			}
+		}
+
+		skipUntil('>');
+	}
+
+	private boolean skipRawText(final String element) throws IOException
+	{
+		final String end = "</" + element;
+		int matched = 0;
+		int c;
+		while ((c = read()) != -1)
+		{
+			if (Character.toLowerCase((char) c) == end.charAt(matched))
+			{
+				matched++;
+				if (matched == end.length())
+				{
+					skipUntil('>');
+					return true;
+				}
+			}
+			else
+			{
+				matched = c == '<' ? 1 : 0;
+			}
+		}
+		return false;
+	}
+
+	private void skipUntil(final char end) throws IOException
+	{
+		int c;
+		while ((c = read()) != -1 && c != end)
+			;
+	}
+
+	private int skipWhitespace() throws IOException
+	{
+		int c;
+		while (isWhitespace(c = read()))
+			;
+		return c;
+	}
+
+	private static boolean isWhitespace(final int c)
+	{
+		return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+	}
+
+	private static boolean isNameStart(final int c)
+	{
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+	}
+
+	private int read() throws IOException
+	{
+		if (pushback != -1)
+		{
+			final int c = pushback;
+			pushback = -1;
+			return c;
+		}
+
+		if (position == limit)
+		{
+			limit = reader.read(buffer, 0, buffer.length);
+			position = 0;
+			if (limit <= 0)
+			{
+				limit = 0;
+				return -1;
+			}
+		}
+
+		return buffer[position++];
+	}
+
+	private void unread(final int c)
+	{
+		if (c != -1)
+			pushback = c;
+	}
+}
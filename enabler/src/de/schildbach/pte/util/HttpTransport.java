@@ -0,0 +1,112 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Opens the HTTP connections used for scraping.
+ *
+ * Connections are pooled per host by the keep-alive cache of {@link HttpURLConnection}. A socket only goes back to
+ * that pool if its response has been read completely and closed, so responses that are not consumed by the caller
+ * must be handed to {@link #release(HttpURLConnection)}.
+ *
+ * Subclasses can override {@link #openConnection(URL)} to plug in a different connection implementation.
+ *
+ * @author Andreas Schildbach
+ */
+public class HttpTransport
+{
+	public static final int DEFAULT_CONNECT_TIMEOUT = 5000;
+	public static final int DEFAULT_READ_TIMEOUT = 15000;
+
+	public static final HttpTransport DEFAULT = new HttpTransport(DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT);
+
+	private static final int DRAIN_BUFFER_SIZE = 512;
+
+	private final int connectTimeout;
+	private final int readTimeout;
+
+	public HttpTransport(final int connectTimeout, final int readTimeout)
+	{
+		this.connectTimeout = connectTimeout;
+		this.readTimeout = readTimeout;
+	}
+
+	public int getConnectTimeout()
+	{
+		return connectTimeout;
+	}
+
+	public int getReadTimeout()
+	{
+		return readTimeout;
+	}
+
+	/**
+	 * Open a connection to the given URL, configured with the timeouts of this transport.
+	 */
+	public final HttpURLConnection open(final URL url) throws IOException
+	{
+		final HttpURLConnection connection = openConnection(url);
+
+		connection.setConnectTimeout(connectTimeout);
+		connection.setReadTimeout(readTimeout);
+
+		return connection;
+	}
+
+	protected HttpURLConnection openConnection(final URL url) throws IOException
+	{
+		return (HttpURLConnection) url.openConnection();
+	}
+
+	/**
+	 * Consume the error body of a connection whose response is not going to be read, so that its socket can be reused.
+	 */
+	public void release(final HttpURLConnection connection)
+	{
+		final InputStream errorStream = connection.getErrorStream();
+		if (errorStream == null)
+			return;
+
+		try
+		{
+			final byte[] buffer = new byte[DRAIN_BUFFER_SIZE];
+			while (errorStream.read(buffer) != -1)
+				;
+			errorStream.close();
+		}
+		catch (final IOException x)
+		{
+			// socket cannot be reused, nothing more to do
+		}
+	}
+
+	/**
+	 * Set the maximum number of idle connections kept alive per host. This is a process-wide setting of
+	 * {@link HttpURLConnection} and has to be applied before the first connection is opened.
+	 */
+	public static void setMaxConnectionsPerHost(final int maxConnections)
+	{
+		System.setProperty("http.maxConnections", Integer.toString(maxConnections));
+	}
+}
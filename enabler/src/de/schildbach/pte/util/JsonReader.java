@@ -0,0 +1,463 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+import org.json.JSONException;
+
+/**
+ * Pull parser for JSON, reading straight from a {@link Reader} without building a document tree. Values are consumed
+ * in document order, and anything not of interest can be skipped via {@link #skipValue()}.
+ *
+ * Like {@code org.json}, scalar values are coerced leniently: {@link #nextString()} accepts numbers and booleans, and
+ * {@link #nextInt()} accepts numbers in quotes. Anything following the top-level value is ignored, so JSONP wrappers
+ * can be handled by {@link #skipPast(char)} and then stopping after the value.
+ *
+ * @author Andreas Schildbach
+ */
+public final class JsonReader implements Closeable
+{
+	public enum Token
+	{
+		BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+	}
+
+	private static final int EMPTY_DOCUMENT = 0;
+	private static final int NONEMPTY_DOCUMENT = 1;
+	private static final int EMPTY_ARRAY = 2;
+	private static final int NONEMPTY_ARRAY = 3;
+	private static final int EMPTY_OBJECT = 4;
+	private static final int DANGLING_NAME = 5;
+	private static final int NONEMPTY_OBJECT = 6;
+
+	private final Reader reader;
+	private final char[] buffer = new char[1024];
+	private int position = 0;
+	private int limit = 0;
+
+	private int[] stack = new int[16];
+	private int stackSize = 1;
+
+	private Token peeked = null;
+	private String value = null;
+	private final StringBuilder builder = new StringBuilder();
+
+	public JsonReader(final Reader reader)
+	{
+		this.reader = reader;
+		this.stack[0] = EMPTY_DOCUMENT;
+	}
+
+	/**
+	 * Discard input up to and including the first occurrence of the given character, e.g. a JSONP prefix like
+	 * {@code callback=}. Must be called before the top-level value is read.
+	 */
+	public void skipPast(final char c) throws IOException, JSONException
+	{
+		int read;
+		while ((read = read()) != c)
+			if (read == -1)
+				throw new JSONException("expected '" + c + "' but reached end of input");
+	}
+
+	public Token peek() throws IOException, JSONException
+	{
+		if (peeked != null)
+			return peeked;
+
+		final int scope = stack[stackSize - 1];
+
+		if (scope == EMPTY_ARRAY || scope == NONEMPTY_ARRAY)
+		{
+			stack[stackSize - 1] = NONEMPTY_ARRAY;
+			final int c = nextNonWhitespace();
+			if (c == ']')
+				return peeked = Token.END_ARRAY;
+			if (scope == NONEMPTY_ARRAY)
+			{
+				if (c != ',')
+					throw syntaxError("expected ',' or ']'", c);
+			}
+			else
+			{
+				unread(c);
+			}
+			return peeked = readValue();
+		}
+		else if (scope == EMPTY_OBJECT || scope == NONEMPTY_OBJECT)
+		{
+			int c = nextNonWhitespace();
+			if (c == '}')
+				return peeked = Token.END_OBJECT;
+			if (scope == NONEMPTY_OBJECT)
+			{
+				if (c != ',')
+					throw syntaxError("expected ',' or '}'", c);
+				c = nextNonWhitespace();
+			}
+			if (c != '"' && c != '\'')
+				throw syntaxError("expected name", c);
+			value = readString((char) c);
+			stack[stackSize - 1] = DANGLING_NAME;
+			return peeked = Token.NAME;
+		}
+		else if (scope == DANGLING_NAME)
+		{
+			final int c = nextNonWhitespace();
+			if (c != ':')
+				throw syntaxError("expected ':'", c);
+			stack[stackSize - 1] = NONEMPTY_OBJECT;
+			return peeked = readValue();
+		}
+		else if (scope == EMPTY_DOCUMENT)
+		{
+			stack[stackSize - 1] = NONEMPTY_DOCUMENT;
+			return peeked = readValue();
+		}
+		else
+		{
+			return peeked = Token.END_DOCUMENT;
+		}
+	}
+
+	public boolean hasNext() throws IOException, JSONException
+	{
+		final Token token = peek();
+		return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+	}
+
+	public void beginObject() throws IOException, JSONException
+	{
+		expect(Token.BEGIN_OBJECT);
+		push(EMPTY_OBJECT);
+	}
+
+	public void endObject() throws IOException, JSONException
+	{
+		expect(Token.END_OBJECT);
+		stackSize--;
+	}
+
+	public void beginArray() throws IOException, JSONException
+	{
+		expect(Token.BEGIN_ARRAY);
+		push(EMPTY_ARRAY);
+	}
+
+	public void endArray() throws IOException, JSONException
+	{
+		expect(Token.END_ARRAY);
+		stackSize--;
+	}
+
+	public String nextName() throws IOException, JSONException
+	{
+		expect(Token.NAME);
+		return value;
+	}
+
+	/**
+	 * @return string, or the literal text of a number or boolean, or {@code null} for a JSON null
+	 */
+	public String nextString() throws IOException, JSONException
+	{
+		final Token token = peek();
+		if (token == Token.NULL)
+		{
+			peeked = null;
+			return null;
+		}
+		if (token != Token.STRING && token != Token.NUMBER && token != Token.BOOLEAN)
+			throw new JSONException("expected string but was " + token);
+
+		peeked = null;
+		return value;
+	}
+
+	public int nextInt() throws IOException, JSONException
+	{
+		final Token token = peek();
+		if (token != Token.NUMBER && token != Token.STRING)
+			throw new JSONException("expected number but was " + token);
+
+		peeked = null;
+		try
+		{
+			return Integer.parseInt(value);
+		}
+		catch (final NumberFormatException x)
+		{
+			try
+			{
+				return (int) Double.parseDouble(value);
+			}
+			catch (final NumberFormatException x2)
+			{
+				throw new JSONException("not a number: '" + value + "'");
+			}
+		}
+	}
+
+	/**
+	 * Like {@link #nextInt()}, but returns the given default for null or values that cannot be parsed as a number,
+	 * much like {@code JSONObject.optInt()}.
+	 */
+	public int nextInt(final int defaultValue) throws IOException, JSONException
+	{
+		final String str = nextString();
+		if (str == null)
+			return defaultValue;
+
+		try
+		{
+			return Integer.parseInt(str);
+		}
+		catch (final NumberFormatException x)
+		{
+			try
+			{
+				return (int) Double.parseDouble(str);
+			}
+			catch (final NumberFormatException x2)
+			{
+				return defaultValue;
+			}
+		}
+	}
+
+	public boolean nextBoolean() throws IOException, JSONException
+	{
+		final Token token = peek();
+		if (token != Token.BOOLEAN && token != Token.STRING)
+			throw new JSONException("expected boolean but was " + token);
+
+		peeked = null;
+		if ("true".equalsIgnoreCase(value))
+			return true;
+		if ("false".equalsIgnoreCase(value))
+			return false;
+		throw new JSONException("not a boolean: '" + value + "'");
+	}
+
+	public void nextNull() throws IOException, JSONException
+	{
+		expect(Token.NULL);
+	}
+
+	/**
+	 * Skip the next value, including all of its contents if it is an object or array.
+	 */
+	public void skipValue() throws IOException, JSONException
+	{
+		int depth = 0;
+
+		do
+		{
+			final Token token = peek();
+
+			if (token == Token.BEGIN_OBJECT)
+			{
+				beginObject();
+				depth++;
+			}
+			else if (token == Token.BEGIN_ARRAY)
+			{
+				beginArray();
+				depth++;
+			}
+			else if (token == Token.END_OBJECT)
+			{
+				endObject();
+				depth--;
+			}
+			else if (token == Token.END_ARRAY)
+			{
+				endArray();
+				depth--;
+			}
+			else if (token == Token.END_DOCUMENT)
+			{
+				throw new JSONException("unexpected end of document");
+			}
+			else
+			{
+				peeked = null;
+			}
+		}
+		while (depth > 0);
+	}
+
+	public void close() throws IOException
+	{
+		reader.close();
+	}
+
+	private void expect(final Token expected) throws IOException, JSONException
+	{
+		final Token token = peek();
+		if (token != expected)
+			throw new JSONException("expected " + expected + " but was " + token);
+
+		peeked = null;
+	}
+
+	private void push(final int scope)
+	{
+		if (stackSize == stack.length)
+		{
+			final int[] newStack = new int[stackSize * 2];
+			System.arraycopy(stack, 0, newStack, 0, stackSize);
+			stack = newStack;
+		}
+
+		stack[stackSize++] = scope;
+	}
+
+	private Token readValue() throws IOException, JSONException
+	{
+		final int c = nextNonWhitespace();
+
+		if (c == '{')
+			return Token.BEGIN_OBJECT;
+		if (c == '[')
+			return Token.BEGIN_ARRAY;
+		if (c == '"' || c == '\'')
+		{
+			value = readString((char) c);
+			return Token.STRING;
+		}
+		if (c == -1)
+			throw new JSONException("unexpected end of input");
+
+		// literal
+		builder.setLength(0);
+		int l = c;
+		while (l != -1 && !isLiteralEnd(l))
+		{
+			builder.append((char) l);
+			l = read();
+		}
+		unread(l);
+
+		if (builder.length() == 0)
+			throw syntaxError("expected value", c);
+
+		value = builder.toString();
+		if ("true".equals(value) || "false".equals(value))
+			return Token.BOOLEAN;
+		if ("null".equals(value))
+			return Token.NULL;
+		return Token.NUMBER;
+	}
+
+	private String readString(final char quote) throws IOException, JSONException
+	{
+		builder.setLength(0);
+
+		while (true)
+		{
+			final int c = read();
+
+			if (c == quote)
+				return builder.toString();
+			else if (c == -1)
+				throw new JSONException("unterminated string");
+			else if (c != '\\')
+				builder.append((char) c);
+			else
+				builder.append(readEscape());
+		}
+	}
+
+	private char readEscape() throws IOException, JSONException
+	{
+		final int c = read();
+
+		switch (c)
+		{
+			case 'b':
+				return '\b';
+			case 'f':
+				return '\f';
+			case 'n':
+				return '\n';
+			case 'r':
+				return '\r';
+			case 't':
+				return '\t';
+			case 'u':
+				int code = 0;
+				for (int i = 0; i < 4; i++)
+				{
+					final int digit = Character.digit(read(), 16);
+					if (digit == -1)
+						throw new JSONException("illegal unicode escape");
+					code = (code << 4) | digit;
+				}
+				return (char) code;
+			case -1:
+				throw new JSONException("unterminated escape");
+			default:
+				return (char) c;
+		}
+	}
+
+	private static boolean isLiteralEnd(final int c)
+	{
+		return c == ',' || c == ':' || c == ']' || c == '}' || c == '[' || c == '{' || c == '"' || c == ';' || c <= ' ';
+	}
+
+	private int nextNonWhitespace() throws IOException
+	{
+		int c;
+		while ((c = read()) != -1 && c <= ' ')
+			;
+		return c;
+	}
+
+	private void unread(final int c)
+	{
+		// only ever the character just read, which is still in the buffer
+		if (c != -1)
+			position--;
+	}
+
+	private int read() throws IOException
+	{
+		if (position == limit)
+		{
+			limit = reader.read(buffer, 0, buffer.length);
+			position = 0;
+			if (limit <= 0)
+			{
+				limit = 0;
+				return -1;
+			}
+		}
+
+		return buffer[position++];
+	}
+
+	private JSONException syntaxError(final String message, final int c)
+	{
+		return new JSONException(message + " but was " + (c == -1 ? "end of input" : "'" + (char) c + "'"));
+	}
+}
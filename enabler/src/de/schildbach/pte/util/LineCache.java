@@ -0,0 +1,141 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.util;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import de.schildbach.pte.dto.Line;
+
+/**
+ * Bounded, least-recently-used cache from the raw line input of a provider to the parsed {@link Line}, including its
+ * style. A station board typically repeats a handful of lines many times, so most lookups are hits. Thread-safe.
+ *
+ * @author Andreas Schildbach
+ */
+public final class LineCache
+{
+	private final Map<Key, Line> lines;
+	private long hitCount = 0;
+	private long missCount = 0;
+
+	public LineCache(final int maxSize)
+	{
+		this.lines = new LinkedHashMap<Key, Line>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = -2431806519870390218L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<Key, Line> eldest)
+			{
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/**
+	 * Builds a key from the given field tuple. Two keys are equal if and only if their fields are pairwise equal, so
+	 * unlike a joined string, no field content can make different tuples collide. Fields may be {@code null}.
+	 */
+	public static Key key(final Object... fields)
+	{
+		return new Key(fields);
+	}
+
+	/**
+	 * @return cached line, or {@code null} if the key is unknown
+	 */
+	public synchronized Line get(final Key key)
+	{
+		final Line line = lines.get(key);
+
+		if (line != null)
+			hitCount++;
+		else
+			missCount++;
+
+		return line;
+	}
+
+	public synchronized void put(final Key key, final Line line)
+	{
+		if (line != null)
+			lines.put(key, line);
+	}
+
+	public synchronized int size()
+	{
+		return lines.size();
+	}
+
+	public synchronized void clear()
+	{
+		lines.clear();
+	}
+
+	public synchronized long getHitCount()
+	{
+		return hitCount;
+	}
+
+	public synchronized long getMissCount()
+	{
+		return missCount;
+	}
+
+	@Override
+	public synchronized String toString()
+	{
+		return getClass().getName() + "[" + lines.size() + " lines," + hitCount + " hits," + missCount + " misses]";
+	}
+
+	public static final class Key
+	{
+		private final Object[] fields;
+		private final int hashCode;
+
+		private Key(final Object[] fields)
+		{
+			this.fields = fields.clone();
+			this.hashCode = Arrays.hashCode(this.fields);
+		}
+
+		@Override
+		public boolean equals(final Object o)
+		{
+			if (o == this)
+				return true;
+			if (!(o instanceof Key))
+				return false;
+			return Arrays.equals(this.fields, ((Key) o).fields);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hashCode;
+		}
+
+		@Override
+		public String toString()
+		{
+			return Arrays.toString(fields);
+		}
+	}
+}
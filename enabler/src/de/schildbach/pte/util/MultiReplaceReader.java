@@ -0,0 +1,388 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.util;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Replaces any number of patterns in a character stream in a single pass. All pattern-replacement pairs are compiled
+ * into one Aho-Corasick automaton on first read, so the cost per input character does not depend on the number of
+ * patterns. Unlike chaining {@link StringReplaceReader}s, replacements are applied simultaneously: the replaced text is
+ * not searched again, and where matches overlap, the one ending first wins (the longest one, if several end at the
+ * same position). Patterns that can overlap or that occur in a replacement therefore give a different result than a
+ * chain, and need chained {@link StringReplaceReader}s where the order of replacement matters.
+ *
+ * @author Andreas Schildbach
+ */
+public final class MultiReplaceReader extends FilterReader
+{
+	private static final int BUFFER_SIZE = 1024;
+
+	private final List<String> patternList = new ArrayList<String>();
+	private final List<String> replacementList = new ArrayList<String>();
+
+	// automaton, compiled on first read
+	private int[] asciiClasses;
+	private char[] alphabet;
+	private int numClasses;
+	private int[] transitions;
+	private char[][] labels;
+	private int[] matches;
+	private int[] patternLengths;
+	private char[][] replacements;
+	private int maxExpansion;
+
+	private int state = 0;
+	private final char[] inputBuffer = new char[BUFFER_SIZE];
+	private char[] outputBuffer = new char[BUFFER_SIZE * 2];
+	private int outputPosition = 0;
+	private int outputLength = 0;
+	private boolean reachedEOF = false;
+
+	public MultiReplaceReader(final Reader in)
+	{
+		super(in);
+	}
+
+	public MultiReplaceReader(final Reader in, final String pattern, final String replacement)
+	{
+		this(in);
+		replace(pattern, replacement);
+	}
+
+	/**
+	 * Adds a pattern-replacement pair. Must be called before the first read. If the same pattern is added twice, the
+	 * first replacement is used.
+	 */
+	public void replace(final String pattern, final String replacement)
+	{
+		if (transitions != null)
+			throw new IllegalStateException("cannot add replacements after reading has started");
+		if (pattern.length() == 0)
+			throw new IllegalArgumentException("empty pattern");
+
+		patternList.add(pattern);
+		replacementList.add(replacement);
+	}
+
+	@Override
+	public int read() throws IOException
+	{
+		synchronized (lock)
+		{
+			if (outputPosition == outputLength && !fill())
+				return -1;
+
+			return outputBuffer[outputPosition++];
+		}
+	}
+
+	@Override
+	public int read(final char[] buffer, final int offset, final int length) throws IOException
+	{
+		synchronized (lock)
+		{
+			if (length == 0)
+				return 0;
+
+			if (outputPosition == outputLength && !fill())
+				return -1;
+
+			final int count = Math.min(length, outputLength - outputPosition);
+			System.arraycopy(outputBuffer, outputPosition, buffer, offset, count);
+			outputPosition += count;
+
+			return count;
+		}
+	}
+
+	@Override
+	public long skip(final long n) throws IOException
+	{
+		synchronized (lock)
+		{
+			long skipped = 0;
+
+			while (skipped < n)
+			{
+				if (outputPosition == outputLength && !fill())
+					break;
+
+				final int count = (int) Math.min(n - skipped, outputLength - outputPosition);
+				outputPosition += count;
+				skipped += count;
+			}
+
+			return skipped;
+		}
+	}
+
+	@Override
+	public boolean ready() throws IOException
+	{
+		synchronized (lock)
+		{
+			return outputPosition < outputLength || in.ready();
+		}
+	}
+
+	@Override
+	public boolean markSupported()
+	{
+		return false;
+	}
+
+	@Override
+	public void mark(final int readAheadLimit) throws IOException
+	{
+		throw new IOException("mark() not supported");
+	}
+
+	@Override
+	public void reset() throws IOException
+	{
+		throw new IOException("reset() not supported");
+	}
+
+	private boolean fill() throws IOException
+	{
+		if (transitions == null)
+			compile();
+
+		outputPosition = 0;
+		outputLength = 0;
+
+		while (outputLength == 0)
+		{
+			if (reachedEOF)
+				return false;
+
+			final int count = in.read(inputBuffer, 0, inputBuffer.length);
+
+			if (count == -1)
+			{
+				// pending partial match is plain text after all
+				reachedEOF = true;
+				if (outputLength + maxExpansion > outputBuffer.length)
+					growOutputBuffer();
+				emit(labels[state], labels[state].length);
+				state = 0;
+			}
+			else
+			{
+				filter(inputBuffer, count);
+			}
+		}
+
+		return true;
+	}
+
+	private void filter(final char[] input, final int count)
+	{
+		for (int i = 0; i < count; i++)
+		{
+			if (outputLength + maxExpansion > outputBuffer.length)
+				growOutputBuffer();
+
+			final char c = input[i];
+			final int charClass = charClass(c);
+
+			if (state == 0 && charClass == 0)
+			{
+				outputBuffer[outputLength++] = c;
+				continue;
+			}
+
+			final char[] label = labels[state];
+			final int next = transitions[state * numClasses + charClass];
+
+			// characters falling off the front of the partial match are plain text
+			final int dropped = label.length + 1 - labels[next].length;
+			if (dropped > 0)
+			{
+				final int droppedFromLabel = Math.min(dropped, label.length);
+				System.arraycopy(label, 0, outputBuffer, outputLength, droppedFromLabel);
+				outputLength += droppedFromLabel;
+				if (dropped > label.length)
+					outputBuffer[outputLength++] = c;
+			}
+
+			state = next;
+
+			final int match = matches[next];
+			if (match >= 0)
+			{
+				emit(labels[next], labels[next].length - patternLengths[match]);
+				emit(replacements[match], replacements[match].length);
+				state = 0;
+			}
+		}
+	}
+
+	private void emit(final char[] chars, final int length)
+	{
+		System.arraycopy(chars, 0, outputBuffer, outputLength, length);
+		outputLength += length;
+	}
+
+	private void growOutputBuffer()
+	{
+		final char[] newBuffer = new char[Math.max(outputBuffer.length * 2, outputLength + maxExpansion)];
+		System.arraycopy(outputBuffer, 0, newBuffer, 0, outputLength);
+		outputBuffer = newBuffer;
+	}
+
+	private int charClass(final char c)
+	{
+		if (c < asciiClasses.length)
+			return asciiClasses[c];
+
+		final int index = Arrays.binarySearch(alphabet, c);
+		return index >= 0 ? index + 1 : 0;
+	}
+
+	private void compile()
+	{
+		final int numPatterns = patternList.size();
+
+		// characters not occurring in any pattern share class 0, which always leads back to the root
+		final SortedSet<Character> chars = new TreeSet<Character>();
+		for (final String pattern : patternList)
+			for (int i = 0; i < pattern.length(); i++)
+				chars.add(pattern.charAt(i));
+
+		alphabet = new char[chars.size()];
+		asciiClasses = new int[128];
+		int index = 0;
+		for (final char c : chars)
+		{
+			alphabet[index++] = c;
+			if (c < asciiClasses.length)
+				asciiClasses[c] = index;
+		}
+		numClasses = alphabet.length + 1;
+
+		// trie
+		final List<int[]> gotoList = new ArrayList<int[]>();
+		final List<char[]> labelList = new ArrayList<char[]>();
+		final List<Integer> matchList = new ArrayList<Integer>();
+		gotoList.add(newGotoRow());
+		labelList.add(new char[0]);
+		matchList.add(-1);
+
+		patternLengths = new int[numPatterns];
+		replacements = new char[numPatterns][];
+		int maxPatternLength = 0;
+		int maxReplacementLength = 0;
+
+		for (int iPattern = 0; iPattern < numPatterns; iPattern++)
+		{
+			final char[] pattern = patternList.get(iPattern).toCharArray();
+			patternLengths[iPattern] = pattern.length;
+			replacements[iPattern] = replacementList.get(iPattern).toCharArray();
+			maxPatternLength = Math.max(maxPatternLength, pattern.length);
+			maxReplacementLength = Math.max(maxReplacementLength, replacements[iPattern].length);
+
+			int s = 0;
+			for (int i = 0; i < pattern.length; i++)
+			{
+				final int charClass = charClass(pattern[i]);
+				int t = gotoList.get(s)[charClass];
+				if (t == -1)
+				{
+					t = gotoList.size();
+					gotoList.add(newGotoRow());
+					final char[] label = new char[i + 1];
+					System.arraycopy(pattern, 0, label, 0, i + 1);
+					labelList.add(label);
+					matchList.add(-1);
+					gotoList.get(s)[charClass] = t;
+				}
+				s = t;
+			}
+
+			if (matchList.get(s) == -1)
+				matchList.set(s, iPattern);
+		}
+
+		final int numStates = gotoList.size();
+		labels = labelList.toArray(new char[numStates][]);
+		matches = new int[numStates];
+		for (int s = 0; s < numStates; s++)
+			matches[s] = matchList.get(s);
+
+		// breadth-first construction of failure links, folded into a complete transition table
+		transitions = new int[numStates * numClasses];
+		final int[] fail = new int[numStates];
+		final int[] queue = new int[numStates];
+		int queueHead = 0;
+		int queueTail = 0;
+
+		final int[] rootRow = gotoList.get(0);
+		for (int charClass = 0; charClass < numClasses; charClass++)
+		{
+			final int t = rootRow[charClass];
+			if (t != -1)
+			{
+				transitions[charClass] = t;
+				fail[t] = 0;
+				queue[queueTail++] = t;
+			}
+		}
+
+		while (queueHead < queueTail)
+		{
+			final int s = queue[queueHead++];
+			if (matches[s] == -1)
+				matches[s] = matches[fail[s]];
+
+			final int[] row = gotoList.get(s);
+			for (int charClass = 0; charClass < numClasses; charClass++)
+			{
+				final int t = row[charClass];
+				final int failTransition = transitions[fail[s] * numClasses + charClass];
+				if (t == -1)
+				{
+					transitions[s * numClasses + charClass] = failTransition;
+				}
+				else
+				{
+					transitions[s * numClasses + charClass] = t;
+					fail[t] = failTransition;
+					queue[queueTail++] = t;
+				}
+			}
+		}
+
+		maxExpansion = maxPatternLength + maxReplacementLength + 1;
+	}
+
+	private int[] newGotoRow()
+	{
+		final int[] row = new int[numClasses];
+		Arrays.fill(row, -1);
+		return row;
+	}
+}
@@ -0,0 +1,341 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import de.schildbach.pte.LocationUtils;
+import de.schildbach.pte.NetworkId;
+import de.schildbach.pte.dto.Location;
+import de.schildbach.pte.dto.NearbyStationsResult;
+import de.schildbach.pte.dto.ResultHeader;
+
+/**
+ * Cache of nearby stations, organized in cells of quantized coordinates. Each result fetched from the provider is
+ * remembered, in the cell of the coordinate it was fetched for, as a circle of coverage: the radius within which it
+ * knows all stations. That is the requested maximum distance if a maximum number of stations was requested as well and
+ * not reached. Otherwise the distance of the farthest station returned is used, because without a requested maximum
+ * the provider may still have truncated the result to a default number of stations.
+ *
+ * A request for a coordinate is answered from the stations of its cell, filtered by distance and sorted, as long as
+ * some circle of the cell covers the requested distance, or covers at least the requested number of stations. Requests
+ * with neither a maximum distance nor a maximum number of stations depend on provider defaults and are never answered
+ * from the cache. Thread-safe.
+ *
+ * @author Andreas Schildbach
+ */
+public final class NearbyStationsCache
+{
+	private static final int MAX_COVERAGES_PER_CELL = 4;
+
+	private static final class Key
+	{
+		final NetworkId network;
+		final int cellLat, cellLon;
+
+		Key(final NetworkId network, final int cellLat, final int cellLon)
+		{
+			this.network = network;
+			this.cellLat = cellLat;
+			this.cellLon = cellLon;
+		}
+
+		@Override
+		public boolean equals(final Object o)
+		{
+			if (o == this)
+				return true;
+			if (!(o instanceof Key))
+				return false;
+			final Key other = (Key) o;
+			return this.network == other.network && this.cellLat == other.cellLat && this.cellLon == other.cellLon;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return (network.hashCode() * 29 + cellLat) * 29 + cellLon;
+		}
+	}
+
+	private static final class Coverage
+	{
+		final int lat, lon;
+		final float radius;
+		final ResultHeader header;
+		final Location[] stations;
+		final int[] lats, lons;
+		final long expiresAt;
+
+		Coverage(final int lat, final int lon, final float radius, final ResultHeader header, final Location[] stations, final long expiresAt)
+		{
+			this.lat = lat;
+			this.lon = lon;
+			this.radius = radius;
+			this.header = header;
+			this.stations = stations;
+			this.expiresAt = expiresAt;
+
+			lats = new int[stations.length];
+			lons = new int[stations.length];
+			for (int i = 0; i < stations.length; i++)
+			{
+				lats[i] = stations[i].lat;
+				lons[i] = stations[i].lon;
+			}
+		}
+	}
+
+	private static final class Candidate implements Comparable<Candidate>
+	{
+		final Location station;
+		final float distance;
+
+		Candidate(final Location station, final float distance)
+		{
+			this.station = station;
+			this.distance = distance;
+		}
+
+		public int compareTo(final Candidate other)
+		{
+			return Float.compare(this.distance, other.distance);
+		}
+	}
+
+	private final int cellSize;
+	private final long timeToLive;
+	private final Clock clock;
+	private final Map<Key, List<Coverage>> cells;
+	private long hitCount = 0;
+	private long missCount = 0;
+
+	/**
+	 * @param maxCells
+	 *            maximum number of cells, across all networks
+	 * @param cellSize
+	 *            edge length of a cell in micro-degrees, e.g. 5000 for roughly 500 meters
+	 * @param timeToLive
+	 *            time in milliseconds after which a fetched result expires
+	 */
+	public NearbyStationsCache(final int maxCells, final int cellSize, final long timeToLive)
+	{
+		this(maxCells, cellSize, timeToLive, Clock.SYSTEM);
+	}
+
+	/**
+	 * @param clock
+	 *            source of the current time, for expiry
+	 */
+	public NearbyStationsCache(final int maxCells, final int cellSize, final long timeToLive, final Clock clock)
+	{
+		if (cellSize <= 0)
+			throw new IllegalArgumentException("cellSize must be positive: " + cellSize);
+
+		this.cellSize = cellSize;
+		this.timeToLive = timeToLive;
+		this.clock = clock;
+		this.cells = new LinkedHashMap<Key, List<Coverage>>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 3318442785406785125L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<Key, List<Coverage>> eldest)
+			{
+				return size() > maxCells;
+			}
+		};
+	}
+
+	/**
+	 * @param lat
+	 *            latitude in micro-degrees
+	 * @param lon
+	 *            longitude in micro-degrees
+	 * @param maxDistance
+	 *            maximum distance in meters, or {@code 0}
+	 * @param maxStations
+	 *            maximum number of stations, or {@code 0}
+	 * @return nearby stations sorted by distance, or {@code null} if the cache does not cover the request
+	 */
+	public synchronized NearbyStationsResult get(final NetworkId network, final int lat, final int lon, final int maxDistance,
+			final int maxStations)
+	{
+		final Key key = key(network, lat, lon);
+		final List<Coverage> coverages = cells.get(key);
+		if (coverages == null || (maxDistance == 0 && maxStations == 0))
+		{
+			missCount++;
+			return null;
+		}
+
+		// radius around the requested coordinate within which all stations are known
+		final long now = clock.currentTimeMillis();
+		float available = 0;
+		Coverage best = null;
+		for (final Coverage coverage : coverages)
+		{
+			if (coverage.expiresAt <= now)
+				continue;
+
+			final float radius = coverage.radius - LocationUtils.computeDistanceFast(lat / 1E6, lon / 1E6, coverage.lat / 1E6, coverage.lon / 1E6);
+			if (radius > available)
+			{
+				available = radius;
+				best = coverage;
+			}
+		}
+
+		if (best == null)
+		{
+			removeExpired(coverages, now);
+			if (coverages.isEmpty())
+				cells.remove(key);
+			missCount++;
+			return null;
+		}
+
+		final float limit = maxDistance > 0 ? Math.min(maxDistance, available) : available;
+		final List<Candidate> candidates = new ArrayList<Candidate>();
+		final Set<Location> seen = new HashSet<Location>();
+		for (final Coverage coverage : coverages)
+		{
+			if (coverage.expiresAt <= now)
+				continue;
+
+			final float[] distances = new float[coverage.stations.length];
+			LocationUtils.computeDistances(lat, lon, coverage.lats, coverage.lons, distances);
+			for (int i = 0; i < distances.length; i++)
+				if (distances[i] <= limit && seen.add(coverage.stations[i]))
+					candidates.add(new Candidate(coverage.stations[i], distances[i]));
+		}
+
+		final boolean coversDistance = maxDistance > 0 && available >= maxDistance;
+		final boolean coversStations = maxStations > 0 && candidates.size() >= maxStations;
+		if (!coversDistance && !coversStations)
+		{
+			missCount++;
+			return null;
+		}
+
+		final Candidate[] sorted = candidates.toArray(new Candidate[candidates.size()]);
+		Arrays.sort(sorted);
+		final int count = maxStations > 0 ? Math.min(maxStations, sorted.length) : sorted.length;
+		final List<Location> stations = new ArrayList<Location>(count);
+		for (int i = 0; i < count; i++)
+			stations.add(sorted[i].station);
+
+		hitCount++;
+		return new NearbyStationsResult(best.header, stations);
+	}
+
+	/**
+	 * Remember a result fetched from the provider. Results that are not OK, or contain stations without coordinates,
+	 * are ignored.
+	 */
+	public synchronized void put(final NetworkId network, final int lat, final int lon, final int maxDistance, final int maxStations,
+			final NearbyStationsResult result)
+	{
+		if (result == null || result.status != NearbyStationsResult.Status.OK || result.stations == null)
+			return;
+
+		final Location[] stations = result.stations.toArray(new Location[result.stations.size()]);
+		for (final Location station : stations)
+			if (!station.hasLocation())
+				return;
+
+		float farthest = 0;
+		for (final Location station : stations)
+			farthest = Math.max(farthest, LocationUtils.computeDistanceFast(lat / 1E6, lon / 1E6, station.lat / 1E6, station.lon / 1E6));
+
+		// only a result below an explicitly requested number of stations is known not to be truncated
+		final boolean complete = maxStations > 0 && stations.length < maxStations;
+		final float radius = complete && maxDistance > 0 ? maxDistance : farthest;
+		if (radius <= 0)
+			return;
+
+		final long now = clock.currentTimeMillis();
+		final Key key = key(network, lat, lon);
+		List<Coverage> coverages = cells.get(key);
+		if (coverages == null)
+		{
+			coverages = new LinkedList<Coverage>();
+			cells.put(key, coverages);
+		}
+		else
+		{
+			removeExpired(coverages, now);
+		}
+
+		coverages.add(new Coverage(lat, lon, radius, result.header, stations, now + timeToLive));
+		if (coverages.size() > MAX_COVERAGES_PER_CELL)
+			coverages.remove(0);
+	}
+
+	public synchronized int size()
+	{
+		return cells.size();
+	}
+
+	public synchronized void clear()
+	{
+		cells.clear();
+	}
+
+	public synchronized long getHitCount()
+	{
+		return hitCount;
+	}
+
+	public synchronized long getMissCount()
+	{
+		return missCount;
+	}
+
+	@Override
+	public synchronized String toString()
+	{
+		return getClass().getName() + "[" + cells.size() + " cells," + hitCount + " hits," + missCount + " misses]";
+	}
+
+	private static void removeExpired(final List<Coverage> coverages, final long now)
+	{
+		for (final Iterator<Coverage> i = coverages.iterator(); i.hasNext();)
+			if (i.next().expiresAt <= now)
+				i.remove();
+	}
+
+	private Key key(final NetworkId network, final int lat, final int lon)
+	{
+		return new Key(network, floorDiv(lat, cellSize), floorDiv(lon, cellSize));
+	}
+
+	private static int floorDiv(final int value, final int divisor)
+	{
+		final int quotient = value / divisor;
+		return (value % divisor != 0 && value < 0) ? quotient - 1 : quotient;
+	}
+}
@@ -21,6 +21,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.PushbackReader;
 import java.io.Reader;
 import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
@@ -28,12 +29,18 @@ import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.nio.charset.Charset;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.GZIPInputStream;
@@ -48,33 +55,72 @@ public final class ParserUtils
 	private static final String SCRAPE_USER_AGENT = "Mozilla/5.0 (Windows NT 6.1; WOW64; rv:13.0) Gecko/20100101 Firefox/13.0";
 	private static final String SCRAPE_ACCEPT = "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8";
 	private static final int SCRAPE_INITIAL_CAPACITY = 4096;
-	private static final int SCRAPE_CONNECT_TIMEOUT = 5000;
-	private static final int SCRAPE_READ_TIMEOUT = 15000;
 	private static final Charset SCRAPE_DEFAULT_ENCODING = Charset.forName("ISO-8859-1");
 	private static final int SCRAPE_PAGE_EMPTY_THRESHOLD = 2;
 	private static final Pattern P_REFRESH = Pattern.compile("<META\\s+http-equiv=\"refresh\"\\s+content=\"\\d+;\\s*URL=([^\"]+)\"\\s*/>",
 			Pattern.CASE_INSENSITIVE);
 
-	private static String stateCookie;
+	private static final Map<String, SessionCookie> sharedSessionCookies = new HashMap<String, SessionCookie>();
 
+	/**
+	 * Forget the session cookies shared by the scrape methods that identify the session cookie by name only.
+	 */
 	public static void resetState()
 	{
-		stateCookie = null;
+		synchronized (sharedSessionCookies)
+		{
+			for (final SessionCookie sessionCookie : sharedSessionCookies.values())
+				sessionCookie.reset();
+		}
+	}
+
+	private static SessionCookie sharedSessionCookie(final String sessionCookieName)
+	{
+		if (sessionCookieName == null)
+			return null;
+
+		synchronized (sharedSessionCookies)
+		{
+			SessionCookie sessionCookie = sharedSessionCookies.get(sessionCookieName);
+			if (sessionCookie == null)
+			{
+				sessionCookie = new SessionCookie(sessionCookieName);
+				sharedSessionCookies.put(sessionCookieName, sessionCookie);
+			}
+			return sessionCookie;
+		}
 	}
 
 	public static final CharSequence scrape(final String url) throws IOException
 	{
-		return scrape(url, null, null, null);
+		return scrape(HttpTransport.DEFAULT, url);
 	}
 
 	public static final CharSequence scrape(final String url, final String postRequest, Charset encoding, final String sessionCookieName)
 			throws IOException
 	{
-		return scrape(url, postRequest, encoding, sessionCookieName, 3);
+		return scrape(HttpTransport.DEFAULT, url, postRequest, encoding, sharedSessionCookie(sessionCookieName));
 	}
 
-	public static final CharSequence scrape(final String urlStr, final String postRequest, Charset encoding, final String sessionCookieName, int tries)
+	public static final CharSequence scrape(final String url, final String postRequest, Charset encoding, final String sessionCookieName, int tries)
 			throws IOException
+	{
+		return scrape(HttpTransport.DEFAULT, url, postRequest, encoding, sharedSessionCookie(sessionCookieName), tries);
+	}
+
+	public static final CharSequence scrape(final HttpTransport transport, final String url) throws IOException
+	{
+		return scrape(transport, url, null, null, null);
+	}
+
+	public static final CharSequence scrape(final HttpTransport transport, final String url, final String postRequest, Charset encoding,
+			final SessionCookie sessionCookie) throws IOException
+	{
+		return scrape(transport, url, postRequest, encoding, sessionCookie, 3);
+	}
+
+	public static final CharSequence scrape(final HttpTransport transport, final String urlStr, final String postRequest, Charset encoding,
+			final SessionCookie sessionCookie, int tries) throws IOException
 	{
 		if (encoding == null)
 			encoding = SCRAPE_DEFAULT_ENCODING;
@@ -85,48 +131,12 @@ public final class ParserUtils
 			{
 				final StringBuilder buffer = new StringBuilder(SCRAPE_INITIAL_CAPACITY);
 				final URL url = new URL(urlStr);
-				final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-
-				connection.setDoInput(true);
-				connection.setDoOutput(postRequest != null);
-				connection.setConnectTimeout(SCRAPE_CONNECT_TIMEOUT);
-				connection.setReadTimeout(SCRAPE_READ_TIMEOUT);
-				connection.addRequestProperty("User-Agent", SCRAPE_USER_AGENT);
-				connection.addRequestProperty("Accept", SCRAPE_ACCEPT);
-				connection.addRequestProperty("Accept-Encoding", "gzip");
-				// workaround to disable Vodafone compression
-				connection.addRequestProperty("Cache-Control", "no-cache");
-
-				if (sessionCookieName != null && stateCookie != null)
-					connection.addRequestProperty("Cookie", stateCookie);
-
-				if (postRequest != null)
-				{
-					final byte[] postRequestBytes = postRequest.getBytes(encoding);
-
-					connection.setRequestMethod("POST");
-					connection.addRequestProperty("Content-Type", "application/x-www-form-urlencoded");
-					connection.addRequestProperty("Content-Length", Integer.toString(postRequestBytes.length));
-
-					final OutputStream os = connection.getOutputStream();
-					os.write(postRequestBytes);
-					os.close();
-				}
+				final HttpURLConnection connection = openScrapeConnection(transport, url, postRequest, encoding, sessionCookie);
 
 				final int responseCode = connection.getResponseCode();
 				if (responseCode == HttpURLConnection.HTTP_OK)
 				{
-					final String contentType = connection.getContentType();
-					final String contentEncoding = connection.getContentEncoding();
-					if (!url.equals(connection.getURL()))
-						throw new UnexpectedRedirectException(url, connection.getURL());
-
-					// TODO could check for gzip header here
-					final InputStream is;
-					if ("gzip".equalsIgnoreCase(contentEncoding) || "application/octet-stream".equalsIgnoreCase(contentType))
-						is = new GZIPInputStream(connection.getInputStream());
-					else
-						is = connection.getInputStream();
+					final InputStream is = scrapeResponseStream(url, connection);
 
 					final Reader pageReader = new InputStreamReader(is, encoding);
 					copy(pageReader, buffer);
@@ -137,22 +147,8 @@ public final class ParserUtils
 						final Matcher mRefresh = P_REFRESH.matcher(buffer);
 						if (!mRefresh.find())
 						{
-							if (sessionCookieName != null)
-							{
-								for (final Map.Entry<String, List<String>> entry : connection.getHeaderFields().entrySet())
-								{
-									if ("set-cookie".equalsIgnoreCase(entry.getKey()))
-									{
-										for (final String value : entry.getValue())
-										{
-											if (value.startsWith(sessionCookieName))
-											{
-												stateCookie = value.split(";", 2)[0];
-											}
-										}
-									}
-								}
-							}
+							if (sessionCookie != null)
+								updateSessionCookie(connection, sessionCookie);
 
 							return buffer;
 						}
@@ -173,6 +169,7 @@ public final class ParserUtils
 				else
 				{
 					final String message = "got response: " + responseCode + " " + connection.getResponseMessage();
+					transport.release(connection);
 					if (tries-- > 0)
 						System.out.println(message + ", retrying...");
 					else
@@ -189,6 +186,70 @@ public final class ParserUtils
 		}
 	}
 
+	private static HttpURLConnection openScrapeConnection(final HttpTransport transport, final URL url, final String postRequest,
+			final Charset encoding, final SessionCookie sessionCookie) throws IOException
+	{
+		final HttpURLConnection connection = transport.open(url);
+
+		connection.setDoInput(true);
+		connection.setDoOutput(postRequest != null);
+		connection.addRequestProperty("User-Agent", SCRAPE_USER_AGENT);
+		connection.addRequestProperty("Accept", SCRAPE_ACCEPT);
+		connection.addRequestProperty("Accept-Encoding", "gzip");
+		// workaround to disable Vodafone compression
+		connection.addRequestProperty("Cache-Control", "no-cache");
+
+		final String cookie = sessionCookie != null ? sessionCookie.get() : null;
+		if (cookie != null)
+			connection.addRequestProperty("Cookie", cookie);
+
+		if (postRequest != null)
+		{
+			final byte[] postRequestBytes = postRequest.getBytes(encoding);
+
+			connection.setRequestMethod("POST");
+			connection.addRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+			connection.addRequestProperty("Content-Length", Integer.toString(postRequestBytes.length));
+
+			final OutputStream os = connection.getOutputStream();
+			os.write(postRequestBytes);
+			os.close();
+		}
+
+		return connection;
+	}
+
+	private static InputStream scrapeResponseStream(final URL url, final HttpURLConnection connection) throws IOException
+	{
+		final String contentType = connection.getContentType();
+		final String contentEncoding = connection.getContentEncoding();
+		if (!url.equals(connection.getURL()))
+			throw new UnexpectedRedirectException(url, connection.getURL());
+
+		// TODO could check for gzip header here
+		if ("gzip".equalsIgnoreCase(contentEncoding) || "application/octet-stream".equalsIgnoreCase(contentType))
+			return new GZIPInputStream(connection.getInputStream());
+		else
+			return connection.getInputStream();
+	}
+
+	private static void updateSessionCookie(final HttpURLConnection connection, final SessionCookie sessionCookie)
+	{
+		for (final Map.Entry<String, List<String>> entry : connection.getHeaderFields().entrySet())
+		{
+			if ("set-cookie".equalsIgnoreCase(entry.getKey()))
+			{
+				for (final String value : entry.getValue())
+				{
+					if (value.startsWith(sessionCookie.getName()))
+					{
+						sessionCookie.set(value.split(";", 2)[0]);
+					}
+				}
+			}
+		}
+	}
+
 	private static final long copy(final Reader reader, final StringBuilder builder) throws IOException
 	{
 		final char[] buffer = new char[SCRAPE_INITIAL_CAPACITY];
@@ -202,13 +263,120 @@ public final class ParserUtils
 		return count;
 	}
 
+	public static final Reader scrapeReader(final HttpTransport transport, final String url, final Charset encoding) throws IOException
+	{
+		return scrapeReader(transport, url, null, encoding, null, 3);
+	}
+
+	/**
+	 * Like {@link #scrape(HttpTransport, String, String, Charset, SessionCookie, int)}, including its retries and checks,
+	 * but hands out the page as a stream rather than reading it completely. Only the beginning of the page, up to
+	 * {@link #SCRAPE_INITIAL_CAPACITY} characters, is looked at for an empty page or a refresh redirect.
+	 */
+	public static final Reader scrapeReader(final HttpTransport transport, final String urlStr, final String postRequest, Charset encoding,
+			final SessionCookie sessionCookie, int tries) throws IOException
+	{
+		if (encoding == null)
+			encoding = SCRAPE_DEFAULT_ENCODING;
+
+		while (true)
+		{
+			try
+			{
+				final URL url = new URL(urlStr);
+				final HttpURLConnection connection = openScrapeConnection(transport, url, postRequest, encoding, sessionCookie);
+
+				final int responseCode = connection.getResponseCode();
+				if (responseCode == HttpURLConnection.HTTP_OK)
+				{
+					final PushbackReader pageReader = new PushbackReader(new InputStreamReader(scrapeResponseStream(url, connection), encoding),
+							SCRAPE_INITIAL_CAPACITY);
+					final char[] head = new char[SCRAPE_INITIAL_CAPACITY];
+					final int length;
+					try
+					{
+						length = fill(pageReader, head);
+					}
+					catch (final IOException x)
+					{
+						pageReader.close();
+						throw x;
+					}
+
+					if (length > SCRAPE_PAGE_EMPTY_THRESHOLD)
+					{
+						final Matcher mRefresh = P_REFRESH.matcher(CharBuffer.wrap(head, 0, length));
+						if (!mRefresh.find())
+						{
+							if (sessionCookie != null)
+								updateSessionCookie(connection, sessionCookie);
+
+							pageReader.unread(head, 0, length);
+							return pageReader;
+						}
+						else
+						{
+							pageReader.close();
+							throw new UnexpectedRedirectException(url, new URL(mRefresh.group(1)));
+						}
+					}
+					else
+					{
+						pageReader.close();
+						final String message = "got empty page (length: " + length + ")";
+						if (tries-- > 0)
+							System.out.println(message + ", retrying...");
+						else
+							throw new IOException(message + ": " + url);
+					}
+				}
+				else
+				{
+					final String message = "got response: " + responseCode + " " + connection.getResponseMessage();
+					transport.release(connection);
+					if (tries-- > 0)
+						System.out.println(message + ", retrying...");
+					else
+						throw new IOException(message + ": " + url);
+				}
+			}
+			catch (final SocketTimeoutException x)
+			{
+				if (tries-- > 0)
+					System.out.println("socket timed out, retrying...");
+				else
+					throw x;
+			}
+		}
+	}
+
+	private static int fill(final Reader reader, final char[] buffer) throws IOException
+	{
+		int count = 0;
+		int n;
+		while (count < buffer.length && (n = reader.read(buffer, count, buffer.length - count)) != -1)
+			count += n;
+		return count;
+	}
+
 	public static final InputStream scrapeInputStream(final String url) throws IOException
 	{
-		return scrapeInputStream(url, null, null, null, 3);
+		return scrapeInputStream(HttpTransport.DEFAULT, url);
 	}
 
-	public static final InputStream scrapeInputStream(final String urlStr, final String postRequest, Charset requestEncoding,
+	public static final InputStream scrapeInputStream(final String url, final String postRequest, Charset requestEncoding,
 			final String sessionCookieName, int tries) throws IOException
+	{
+		return scrapeInputStream(HttpTransport.DEFAULT, url, postRequest, requestEncoding, sharedSessionCookie(sessionCookieName), tries);
+	}
+
+	public static final InputStream scrapeInputStream(final HttpTransport transport, final String url) throws IOException
+	{
+		return scrapeInputStream(transport, url, null, null, null, 3);
+	}
+
+	public static final InputStream scrapeInputStream(final HttpTransport transport, final String urlStr, final String postRequest,
+			Charset requestEncoding, final SessionCookie sessionCookie, int tries) throws IOException
 	{
 		if (requestEncoding == null)
 			requestEncoding = SCRAPE_DEFAULT_ENCODING;
@@ -216,19 +384,18 @@ public final class ParserUtils
 		while (true)
 		{
 			final URL url = new URL(urlStr);
-			final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+			final HttpURLConnection connection = transport.open(url);
 
 			connection.setDoInput(true);
 			connection.setDoOutput(postRequest != null);
-			connection.setConnectTimeout(SCRAPE_CONNECT_TIMEOUT);
-			connection.setReadTimeout(SCRAPE_READ_TIMEOUT);
 			connection.addRequestProperty("User-Agent", SCRAPE_USER_AGENT);
 			connection.addRequestProperty("Accept-Encoding", "gzip");
 			// workaround to disable Vodafone compression
 			connection.addRequestProperty("Cache-Control", "no-cache");
 
-			if (sessionCookieName != null && stateCookie != null)
-				connection.addRequestProperty("Cookie", stateCookie);
+			final String cookie = sessionCookie != null ? sessionCookie.get() : null;
+			if (cookie != null)
+				connection.addRequestProperty("Cookie", cookie);
 
 			if (postRequest != null)
 			{
@@ -252,22 +419,8 @@ public final class ParserUtils
 				if (!url.equals(connection.getURL()))
 					throw new UnexpectedRedirectException(url, connection.getURL());
 
-				if (sessionCookieName != null)
-				{
-					for (final Map.Entry<String, List<String>> entry : connection.getHeaderFields().entrySet())
-					{
-						if ("set-cookie".equalsIgnoreCase(entry.getKey()))
-						{
-							for (final String value : entry.getValue())
-							{
-								if (value.startsWith(sessionCookieName))
-								{
-									stateCookie = value.split(";", 2)[0];
-								}
-							}
-						}
-					}
-				}
+				if (sessionCookie != null)
+					updateSessionCookie(connection, sessionCookie);
 
 				// TODO could check for gzip header here
 				if ("gzip".equalsIgnoreCase(contentEncoding) || "application/octet-stream".equalsIgnoreCase(contentType))
@@ -278,6 +431,7 @@ public final class ParserUtils
 			else
 			{
 				final String message = "got response: " + responseCode + " " + connection.getResponseMessage();
+				transport.release(connection);
 				if (tries-- > 0)
 					System.out.println(message + ", retrying...");
 				else
@@ -286,131 +440,738 @@ public final class ParserUtils
 		}
 	}
 
-	private static final Pattern P_ENTITY = Pattern.compile("&(?:#(x[\\da-f]+|\\d+)|(amp|quot|apos|szlig|nbsp));");
+	public static final ByteBuffer scrapeByteBuffer(final HttpTransport transport, final String url) throws IOException
+	{
+		return scrapeByteBuffer(transport, url, null, null, null, 3);
+	}
+
+	/**
+	 * Like {@link #scrape(HttpTransport, String, String, Charset, SessionCookie, int)}, including its retries and checks,
+	 * but reads a binary response completely into a heap buffer, without decoding it into characters.
+	 *
+	 * @param encoding
+	 *            encoding of the post request
+	 */
+	public static final ByteBuffer scrapeByteBuffer(final HttpTransport transport, final String urlStr, final String postRequest,
+			Charset encoding, final SessionCookie sessionCookie, int tries) throws IOException
+	{
+		if (encoding == null)
+			encoding = SCRAPE_DEFAULT_ENCODING;
+
+		while (true)
+		{
+			try
+			{
+				final URL url = new URL(urlStr);
+				final HttpURLConnection connection = openScrapeConnection(transport, url, postRequest, encoding, sessionCookie);
 
+				final int responseCode = connection.getResponseCode();
+				if (responseCode == HttpURLConnection.HTTP_OK)
+				{
+					final InputStream is = scrapeResponseStream(url, connection);
+					final ByteBuffer buffer;
+					try
+					{
+						buffer = copy(is);
+					}
+					finally
+					{
+						is.close();
+					}
+
+					if (buffer.remaining() > SCRAPE_PAGE_EMPTY_THRESHOLD)
+					{
+						// one char per byte, so an html page redirecting elsewhere is still recognized
+						final Matcher mRefresh = P_REFRESH.matcher(SCRAPE_DEFAULT_ENCODING.decode(buffer.duplicate()));
+						if (!mRefresh.find())
+						{
+							if (sessionCookie != null)
+								updateSessionCookie(connection, sessionCookie);
+
+							return buffer;
+						}
+						else
+						{
+							throw new UnexpectedRedirectException(url, new URL(mRefresh.group(1)));
+						}
+					}
+					else
+					{
+						final String message = "got empty page (length: " + buffer.remaining() + ")";
+						if (tries-- > 0)
+							System.out.println(message + ", retrying...");
+						else
+							throw new IOException(message + ": " + url);
+					}
+				}
+				else
+				{
+					final String message = "got response: " + responseCode + " " + connection.getResponseMessage();
+					transport.release(connection);
+					if (tries-- > 0)
+						System.out.println(message + ", retrying...");
+					else
+						throw new IOException(message + ": " + url);
+				}
+			}
+			catch (final SocketTimeoutException x)
+			{
+				if (tries-- > 0)
+					System.out.println("socket timed out, retrying...");
+				else
+					throw x;
+			}
+		}
+	}
+
+	private static ByteBuffer copy(final InputStream is) throws IOException
+	{
+		byte[] buffer = new byte[SCRAPE_INITIAL_CAPACITY];
+		int count = 0;
+		int n;
+		while ((n = is.read(buffer, count, buffer.length - count)) != -1)
+		{
+			count += n;
+			if (count == buffer.length)
+			{
+				final byte[] grown = new byte[buffer.length * 2];
+				System.arraycopy(buffer, 0, grown, 0, count);
+				buffer = grown;
+			}
+		}
+
+		return ByteBuffer.wrap(buffer, 0, count);
+	}
+
+	private static final int MAX_ENTITY_LENGTH = 10;
+	private static final Map<String, Character> ENTITIES;
+
+	static
+	{
+		// named character references of HTML 4
+		final Map<String, Character> entities = new HashMap<String, Character>();
+
+		entities.put("apos", '\''); // XML, not in HTML 4
+		entities.put("AElig", (char) 0x00c6);
+		entities.put("Aacute", (char) 0x00c1);
+		entities.put("Acirc", (char) 0x00c2);
+		entities.put("Agrave", (char) 0x00c0);
+		entities.put("Alpha", (char) 0x0391);
+		entities.put("Aring", (char) 0x00c5);
+		entities.put("Atilde", (char) 0x00c3);
+		entities.put("Auml", (char) 0x00c4);
+		entities.put("Beta", (char) 0x0392);
+		entities.put("Ccedil", (char) 0x00c7);
+		entities.put("Chi", (char) 0x03a7);
+		entities.put("Dagger", (char) 0x2021);
+		entities.put("Delta", (char) 0x0394);
+		entities.put("ETH", (char) 0x00d0);
+		entities.put("Eacute", (char) 0x00c9);
+		entities.put("Ecirc", (char) 0x00ca);
+		entities.put("Egrave", (char) 0x00c8);
+		entities.put("Epsilon", (char) 0x0395);
+		entities.put("Eta", (char) 0x0397);
+		entities.put("Euml", (char) 0x00cb);
+		entities.put("Gamma", (char) 0x0393);
+		entities.put("Iacute", (char) 0x00cd);
+		entities.put("Icirc", (char) 0x00ce);
+		entities.put("Igrave", (char) 0x00cc);
+		entities.put("Iota", (char) 0x0399);
+		entities.put("Iuml", (char) 0x00cf);
+		entities.put("Kappa", (char) 0x039a);
+		entities.put("Lambda", (char) 0x039b);
+		entities.put("Mu", (char) 0x039c);
+		entities.put("Ntilde", (char) 0x00d1);
+		entities.put("Nu", (char) 0x039d);
+		entities.put("OElig", (char) 0x0152);
+		entities.put("Oacute", (char) 0x00d3);
+		entities.put("Ocirc", (char) 0x00d4);
+		entities.put("Ograve", (char) 0x00d2);
+		entities.put("Omega", (char) 0x03a9);
+		entities.put("Omicron", (char) 0x039f);
+		entities.put("Oslash", (char) 0x00d8);
+		entities.put("Otilde", (char) 0x00d5);
+		entities.put("Ouml", (char) 0x00d6);
+		entities.put("Phi", (char) 0x03a6);
+		entities.put("Pi", (char) 0x03a0);
+		entities.put("Prime", (char) 0x2033);
+		entities.put("Psi", (char) 0x03a8);
+		entities.put("Rho", (char) 0x03a1);
+		entities.put("Scaron", (char) 0x0160);
+		entities.put("Sigma", (char) 0x03a3);
+		entities.put("THORN", (char) 0x00de);
+		entities.put("Tau", (char) 0x03a4);
+		entities.put("Theta", (char) 0x0398);
+		entities.put("Uacute", (char) 0x00da);
+		entities.put("Ucirc", (char) 0x00db);
+		entities.put("Ugrave", (char) 0x00d9);
+		entities.put("Upsilon", (char) 0x03a5);
+		entities.put("Uuml", (char) 0x00dc);
+		entities.put("Xi", (char) 0x039e);
+		entities.put("Yacute", (char) 0x00dd);
+		entities.put("Yuml", (char) 0x0178);
+		entities.put("Zeta", (char) 0x0396);
+		entities.put("aacute", (char) 0x00e1);
+		entities.put("acirc", (char) 0x00e2);
+		entities.put("acute", (char) 0x00b4);
+		entities.put("aelig", (char) 0x00e6);
+		entities.put("agrave", (char) 0x00e0);
+		entities.put("alefsym", (char) 0x2135);
+		entities.put("alpha", (char) 0x03b1);
+		entities.put("amp", '&');
+		entities.put("and", (char) 0x2227);
+		entities.put("ang", (char) 0x2220);
+		entities.put("aring", (char) 0x00e5);
+		entities.put("asymp", (char) 0x2248);
+		entities.put("atilde", (char) 0x00e3);
+		entities.put("auml", (char) 0x00e4);
+		entities.put("bdquo", (char) 0x201e);
+		entities.put("beta", (char) 0x03b2);
+		entities.put("brvbar", (char) 0x00a6);
+		entities.put("bull", (char) 0x2022);
+		entities.put("cap", (char) 0x2229);
+		entities.put("ccedil", (char) 0x00e7);
+		entities.put("cedil", (char) 0x00b8);
+		entities.put("cent", (char) 0x00a2);
+		entities.put("chi", (char) 0x03c7);
+		entities.put("circ", (char) 0x02c6);
+		entities.put("clubs", (char) 0x2663);
+		entities.put("cong", (char) 0x2245);
+		entities.put("copy", (char) 0x00a9);
+		entities.put("crarr", (char) 0x21b5);
+		entities.put("cup", (char) 0x222a);
+		entities.put("curren", (char) 0x00a4);
+		entities.put("dArr", (char) 0x21d3);
+		entities.put("dagger", (char) 0x2020);
+		entities.put("darr", (char) 0x2193);
+		entities.put("deg", (char) 0x00b0);
+		entities.put("delta", (char) 0x03b4);
+		entities.put("diams", (char) 0x2666);
+		entities.put("divide", (char) 0x00f7);
+		entities.put("eacute", (char) 0x00e9);
+		entities.put("ecirc", (char) 0x00ea);
+		entities.put("egrave", (char) 0x00e8);
+		entities.put("empty", (char) 0x2205);
+		entities.put("emsp", (char) 0x2003);
+		entities.put("ensp", (char) 0x2002);
+		entities.put("epsilon", (char) 0x03b5);
+		entities.put("equiv", (char) 0x2261);
+		entities.put("eta", (char) 0x03b7);
+		entities.put("eth", (char) 0x00f0);
+		entities.put("euml", (char) 0x00eb);
+		entities.put("euro", (char) 0x20ac);
+		entities.put("exist", (char) 0x2203);
+		entities.put("fnof", (char) 0x0192);
+		entities.put("forall", (char) 0x2200);
+		entities.put("frac12", (char) 0x00bd);
+		entities.put("frac14", (char) 0x00bc);
+		entities.put("frac34", (char) 0x00be);
+		entities.put("frasl", (char) 0x2044);
+		entities.put("gamma", (char) 0x03b3);
+		entities.put("ge", (char) 0x2265);
+		entities.put("gt", '>');
+		entities.put("hArr", (char) 0x21d4);
+		entities.put("harr", (char) 0x2194);
+		entities.put("hearts", (char) 0x2665);
+		entities.put("hellip", (char) 0x2026);
+		entities.put("iacute", (char) 0x00ed);
+		entities.put("icirc", (char) 0x00ee);
+		entities.put("iexcl", (char) 0x00a1);
+		entities.put("igrave", (char) 0x00ec);
+		entities.put("image", (char) 0x2111);
+		entities.put("infin", (char) 0x221e);
+		entities.put("int", (char) 0x222b);
+		entities.put("iota", (char) 0x03b9);
+		entities.put("iquest", (char) 0x00bf);
+		entities.put("isin", (char) 0x2208);
+		entities.put("iuml", (char) 0x00ef);
+		entities.put("kappa", (char) 0x03ba);
+		entities.put("lArr", (char) 0x21d0);
+		entities.put("lambda", (char) 0x03bb);
+		entities.put("lang", (char) 0x2329);
+		entities.put("laquo", (char) 0x00ab);
+		entities.put("larr", (char) 0x2190);
+		entities.put("lceil", (char) 0x2308);
+		entities.put("ldquo", (char) 0x201c);
+		entities.put("le", (char) 0x2264);
+		entities.put("lfloor", (char) 0x230a);
+		entities.put("lowast", (char) 0x2217);
+		entities.put("loz", (char) 0x25ca);
+		entities.put("lrm", (char) 0x200e);
+		entities.put("lsaquo", (char) 0x2039);
+		entities.put("lsquo", (char) 0x2018);
+		entities.put("lt", '<');
+		entities.put("macr", (char) 0x00af);
+		entities.put("mdash", (char) 0x2014);
+		entities.put("micro", (char) 0x00b5);
+		entities.put("middot", (char) 0x00b7);
+		entities.put("minus", (char) 0x2212);
+		entities.put("mu", (char) 0x03bc);
+		entities.put("nabla", (char) 0x2207);
+		entities.put("nbsp", ' '); // deliberately a plain space
+		entities.put("ndash", (char) 0x2013);
+		entities.put("ne", (char) 0x2260);
+		entities.put("ni", (char) 0x220b);
+		entities.put("not", (char) 0x00ac);
+		entities.put("notin", (char) 0x2209);
+		entities.put("nsub", (char) 0x2284);
+		entities.put("ntilde", (char) 0x00f1);
+		entities.put("nu", (char) 0x03bd);
+		entities.put("oacute", (char) 0x00f3);
+		entities.put("ocirc", (char) 0x00f4);
+		entities.put("oelig", (char) 0x0153);
+		entities.put("ograve", (char) 0x00f2);
+		entities.put("oline", (char) 0x203e);
+		entities.put("omega", (char) 0x03c9);
+		entities.put("omicron", (char) 0x03bf);
+		entities.put("oplus", (char) 0x2295);
+		entities.put("or", (char) 0x2228);
+		entities.put("ordf", (char) 0x00aa);
+		entities.put("ordm", (char) 0x00ba);
+		entities.put("oslash", (char) 0x00f8);
+		entities.put("otilde", (char) 0x00f5);
+		entities.put("otimes", (char) 0x2297);
+		entities.put("ouml", (char) 0x00f6);
+		entities.put("para", (char) 0x00b6);
+		entities.put("part", (char) 0x2202);
+		entities.put("permil", (char) 0x2030);
+		entities.put("perp", (char) 0x22a5);
+		entities.put("phi", (char) 0x03c6);
+		entities.put("pi", (char) 0x03c0);
+		entities.put("piv", (char) 0x03d6);
+		entities.put("plusmn", (char) 0x00b1);
+		entities.put("pound", (char) 0x00a3);
+		entities.put("prime", (char) 0x2032);
+		entities.put("prod", (char) 0x220f);
+		entities.put("prop", (char) 0x221d);
+		entities.put("psi", (char) 0x03c8);
+		entities.put("quot", '"');
+		entities.put("rArr", (char) 0x21d2);
+		entities.put("radic", (char) 0x221a);
+		entities.put("rang", (char) 0x232a);
+		entities.put("raquo", (char) 0x00bb);
+		entities.put("rarr", (char) 0x2192);
+		entities.put("rceil", (char) 0x2309);
+		entities.put("rdquo", (char) 0x201d);
+		entities.put("real", (char) 0x211c);
+		entities.put("reg", (char) 0x00ae);
+		entities.put("rfloor", (char) 0x230b);
+		entities.put("rho", (char) 0x03c1);
+		entities.put("rlm", (char) 0x200f);
+		entities.put("rsaquo", (char) 0x203a);
+		entities.put("rsquo", (char) 0x2019);
+		entities.put("sbquo", (char) 0x201a);
+		entities.put("scaron", (char) 0x0161);
+		entities.put("sdot", (char) 0x22c5);
+		entities.put("sect", (char) 0x00a7);
+		entities.put("shy", (char) 0x00ad);
+		entities.put("sigma", (char) 0x03c3);
+		entities.put("sigmaf", (char) 0x03c2);
+		entities.put("sim", (char) 0x223c);
+		entities.put("spades", (char) 0x2660);
+		entities.put("sub", (char) 0x2282);
+		entities.put("sube", (char) 0x2286);
+		entities.put("sum", (char) 0x2211);
+		entities.put("sup", (char) 0x2283);
+		entities.put("sup1", (char) 0x00b9);
+		entities.put("sup2", (char) 0x00b2);
+		entities.put("sup3", (char) 0x00b3);
+		entities.put("supe", (char) 0x2287);
+		entities.put("szlig", (char) 0x00df);
+		entities.put("tau", (char) 0x03c4);
+		entities.put("there4", (char) 0x2234);
+		entities.put("theta", (char) 0x03b8);
+		entities.put("thetasym", (char) 0x03d1);
+		entities.put("thinsp", (char) 0x2009);
+		entities.put("thorn", (char) 0x00fe);
+		entities.put("tilde", (char) 0x02dc);
+		entities.put("times", (char) 0x00d7);
+		entities.put("trade", (char) 0x2122);
+		entities.put("uArr", (char) 0x21d1);
+		entities.put("uacute", (char) 0x00fa);
+		entities.put("uarr", (char) 0x2191);
+		entities.put("ucirc", (char) 0x00fb);
+		entities.put("ugrave", (char) 0x00f9);
+		entities.put("uml", (char) 0x00a8);
+		entities.put("upsih", (char) 0x03d2);
+		entities.put("upsilon", (char) 0x03c5);
+		entities.put("uuml", (char) 0x00fc);
+		entities.put("weierp", (char) 0x2118);
+		entities.put("xi", (char) 0x03be);
+		entities.put("yacute", (char) 0x00fd);
+		entities.put("yen", (char) 0x00a5);
+		entities.put("yuml", (char) 0x00ff);
+		entities.put("zeta", (char) 0x03b6);
+		entities.put("zwj", (char) 0x200d);
+		entities.put("zwnj", (char) 0x200c);
+
+		ENTITIES = Collections.unmodifiableMap(entities);
+	}
+
+	/**
+	 * Resolves numeric character references and the named entities of HTML 4. Anything that looks like an entity but
+	 * is unknown or malformed is left as is.
+	 */
 	public static String resolveEntities(final CharSequence str)
 	{
 		if (str == null)
 			return null;
 
-		final Matcher matcher = P_ENTITY.matcher(str);
-		final StringBuilder builder = new StringBuilder(str.length());
+		final int length = str.length();
+		int amp = indexOf(str, '&', 0);
+		if (amp == -1)
+			return str.toString();
+
+		final StringBuilder builder = new StringBuilder(length);
 		int pos = 0;
-		while (matcher.find())
+		while (amp != -1)
 		{
-			final char c;
-			final String code = matcher.group(1);
-			if (code != null)
+			final int semicolon = indexOf(str, ';', amp + 1, Math.min(length, amp + 2 + MAX_ENTITY_LENGTH));
+			final int c = semicolon != -1 ? resolveEntity(str, amp + 1, semicolon) : -1;
+
+			if (c != -1)
 			{
-				if (code.charAt(0) == 'x')
-					c = (char) Integer.valueOf(code.substring(1), 16).intValue();
-				else
-					c = (char) Integer.parseInt(code);
+				builder.append(str, pos, amp);
+				builder.appendCodePoint(c);
+				pos = semicolon + 1;
+				amp = indexOf(str, '&', pos);
 			}
 			else
 			{
-				final String namedEntity = matcher.group(2);
-				if (namedEntity.equals("amp"))
-					c = '&';
-				else if (namedEntity.equals("quot"))
-					c = '"';
-				else if (namedEntity.equals("apos"))
-					c = '\'';
-				else if (namedEntity.equals("szlig"))
-					c = 'ß';
-				else if (namedEntity.equals("nbsp"))
-					c = ' ';
-				else
-					throw new IllegalStateException("unknown entity: " + namedEntity);
+				amp = indexOf(str, '&', amp + 1);
 			}
-			builder.append(str.subSequence(pos, matcher.start()));
-			builder.append(c);
-			pos = matcher.end();
 		}
-		builder.append(str.subSequence(pos, str.length()));
+		builder.append(str, pos, length);
+
 		return builder.toString();
 	}
 
-	private static final Pattern P_ISO_DATE = Pattern.compile("(\\d{4})-(\\d{2})-(\\d{2})");
-	private static final Pattern P_ISO_DATE_REVERSE = Pattern.compile("(\\d{2})-(\\d{2})-(\\d{4})");
-
-	public static final void parseIsoDate(final Calendar calendar, final CharSequence str)
+	/**
+	 * @return code point of the entity between start and end, or -1 if unknown or malformed
+	 */
+	private static int resolveEntity(final CharSequence str, final int start, final int end)
 	{
-		final Matcher mIso = P_ISO_DATE.matcher(str);
-		if (mIso.matches())
+		if (start >= end)
+			return -1;
+
+		if (str.charAt(start) != '#')
 		{
-			calendar.set(Calendar.YEAR, Integer.parseInt(mIso.group(1)));
-			calendar.set(Calendar.MONTH, Integer.parseInt(mIso.group(2)) - 1);
-			calendar.set(Calendar.DAY_OF_MONTH, Integer.parseInt(mIso.group(3)));
-			return;
+			final Character c = ENTITIES.get(str.subSequence(start, end).toString());
+			return c != null ? c : -1;
 		}
 
-		final Matcher mIsoReverse = P_ISO_DATE_REVERSE.matcher(str);
-		if (mIsoReverse.matches())
+		final boolean hex = start + 1 < end && (str.charAt(start + 1) == 'x' || str.charAt(start + 1) == 'X');
+		final int digitsStart = hex ? start + 2 : start + 1;
+		if (digitsStart >= end)
+			return -1;
+
+		int codePoint = 0;
+		for (int i = digitsStart; i < end; i++)
 		{
-			calendar.set(Calendar.YEAR, Integer.parseInt(mIsoReverse.group(3)));
-			calendar.set(Calendar.MONTH, Integer.parseInt(mIsoReverse.group(2)) - 1);
-			calendar.set(Calendar.DAY_OF_MONTH, Integer.parseInt(mIsoReverse.group(1)));
-			return;
+			final int digit = Character.digit(str.charAt(i), hex ? 16 : 10);
+			if (digit == -1)
+				return -1;
+			codePoint = codePoint * (hex ? 16 : 10) + digit;
+			if (codePoint > Character.MAX_CODE_POINT)
+				return -1;
 		}
 
-		throw new RuntimeException("cannot parse: '" + str + "'");
+		return codePoint;
+	}
+
+	/**
+	 * @return index of the first occurrence of the character at or after start, or -1 if there is none
+	 */
+	public static int indexOf(final CharSequence str, final char c, final int start)
+	{
+		return indexOf(str, c, start, str.length());
+	}
 
+	private static int indexOf(final CharSequence str, final char c, final int start, final int end)
+	{
+		for (int i = start; i < end; i++)
+			if (str.charAt(i) == c)
+				return i;
+
+		return -1;
 	}
 
-	private static final Pattern P_GERMAN_DATE = Pattern.compile("(\\d{2})[\\./-](\\d{2})[\\./-](\\d{2,4})");
+	private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
 
-	public static final void parseGermanDate(final Calendar calendar, final CharSequence str)
+	/**
+	 * Parses {@code yyyy-mm-dd} or {@code dd-mm-yyyy}.
+	 *
+	 * @return packed date as in {@link #packDate(int, int, int)}, or -1 if not parsable
+	 */
+	public static int scanIsoDate(final CharSequence str)
 	{
-		final Matcher m = P_GERMAN_DATE.matcher(str);
-		if (!m.matches())
-			throw new RuntimeException("cannot parse: '" + str + "'");
+		if (str.length() != 10)
+			return -1;
+
+		if (str.charAt(4) == '-' && str.charAt(7) == '-')
+			return packDate(digits(str, 0, 4), digits(str, 5, 7), digits(str, 8, 10));
+		else if (str.charAt(2) == '-' && str.charAt(5) == '-')
+			return packDate(digits(str, 6, 10), digits(str, 3, 5), digits(str, 0, 2));
+		else
+			return -1;
+	}
+
+	/**
+	 * Parses {@code dd.mm.yy} or {@code dd.mm.yyyy}, also with {@code /} or {@code -} as separators. Two-digit years are
+	 * taken to be in this century.
+	 *
+	 * @return packed date as in {@link #packDate(int, int, int)}, or -1 if not parsable
+	 */
+	public static int scanGermanDate(final CharSequence str)
+	{
+		final int length = str.length();
+		if (length < 8 || length > 10 || !isDateSeparator(str.charAt(2)) || !isDateSeparator(str.charAt(5)))
+			return -1;
 
-		calendar.set(Calendar.DAY_OF_MONTH, Integer.parseInt(m.group(1)));
-		calendar.set(Calendar.MONTH, Integer.parseInt(m.group(2)) - 1);
-		final int year = Integer.parseInt(m.group(3));
-		calendar.set(Calendar.YEAR, year >= 100 ? year : year + 2000);
+		return packDate(fullYear(digits(str, 6, length)), digits(str, 3, 5), digits(str, 0, 2));
 	}
 
-	private static final Pattern P_AMERICAN_DATE = Pattern.compile("(\\d{2})/(\\d{2})/(\\d{2,4})");
+	/**
+	 * Parses {@code mm/dd/yy} or {@code mm/dd/yyyy}. Two-digit years are taken to be in this century.
+	 *
+	 * @return packed date as in {@link #packDate(int, int, int)}, or -1 if not parsable
+	 */
+	public static int scanAmericanDate(final CharSequence str)
+	{
+		final int length = str.length();
+		if (length < 8 || length > 10 || str.charAt(2) != '/' || str.charAt(5) != '/')
+			return -1;
 
-	public static final void parseAmericanDate(final Calendar calendar, final CharSequence str)
+		return packDate(fullYear(digits(str, 6, length)), digits(str, 0, 2), digits(str, 3, 5));
+	}
+
+	/**
+	 * Parses {@code h:mm}, {@code hh:mm} or the same with seconds appended.
+	 *
+	 * @return packed time as in {@link #packTime(int, int, int)}, or -1 if not parsable
+	 */
+	public static int scanEuropeanTime(final CharSequence str)
 	{
-		final Matcher m = P_AMERICAN_DATE.matcher(str);
-		if (!m.matches())
-			throw new RuntimeException("cannot parse: '" + str + "'");
+		return scanTime(str, 0, str.length());
+	}
+
+	/**
+	 * Parses {@code h:mm AM} or {@code hh:mm:ss PM} and the like.
+	 *
+	 * @return packed time of day on the 24-hour clock as in {@link #packTime(int, int, int)}, or -1 if not parsable
+	 */
+	public static int scanAmericanTime(final CharSequence str)
+	{
+		final int length = str.length();
+		if (length < 7 || str.charAt(length - 3) != ' ' || str.charAt(length - 1) != 'M')
+			return -1;
+
+		final char amPm = str.charAt(length - 2);
+		if (amPm != 'A' && amPm != 'P')
+			return -1;
 
-		calendar.set(Calendar.MONTH, Integer.parseInt(m.group(1)) - 1);
-		calendar.set(Calendar.DAY_OF_MONTH, Integer.parseInt(m.group(2)));
-		final int year = Integer.parseInt(m.group(3));
-		calendar.set(Calendar.YEAR, year >= 100 ? year : year + 2000);
+		final int time = scanTime(str, 0, length - 3);
+		if (time == -1)
+			return -1;
+
+		final int hour = time / 10000;
+		if (hour > 12)
+			return -1;
+
+		return packTime(hour % 12 + (amPm == 'P' ? 12 : 0), time / 100 % 100, time % 100);
 	}
 
-	private static final Pattern P_EUROPEAN_TIME = Pattern.compile("(\\d{1,2}):(\\d{2})(?::(\\d{2}))?");
+	/**
+	 * @return date packed as decimal {@code yyyymmdd}, or -1 if any of the fields is negative
+	 */
+	public static int packDate(final int year, final int month, final int day)
+	{
+		if (year < 0 || month < 0 || day < 0)
+			return -1;
 
-	public static final void parseEuropeanTime(final Calendar calendar, final CharSequence str)
+		return year * 10000 + month * 100 + day;
+	}
+
+	/**
+	 * @return time of day packed as decimal {@code hhmmss}, or -1 if any of the fields is negative
+	 */
+	public static int packTime(final int hour, final int minute, final int second)
 	{
-		final Matcher m = P_EUROPEAN_TIME.matcher(str);
-		if (!m.matches())
-			throw new RuntimeException("cannot parse: '" + str + "'");
+		if (hour < 0 || minute < 0 || second < 0)
+			return -1;
+
+		return hour * 10000 + minute * 100 + second;
+	}
 
-		calendar.set(Calendar.HOUR_OF_DAY, Integer.parseInt(m.group(1)));
-		calendar.set(Calendar.MINUTE, Integer.parseInt(m.group(2)));
-		calendar.set(Calendar.SECOND, m.group(3) != null ? Integer.parseInt(m.group(3)) : 0);
+	/**
+	 * Converts a packed local date and time in the given time zone to epoch millis, with the same result as setting
+	 * the fields of a {@link GregorianCalendar}. The zone offset of the last day looked up is cached per time zone, only
+	 * days with a daylight saving transition go through a calendar.
+	 */
+	public static long epochMillis(final TimeZone timeZone, final int packedDate, final int packedTime)
+	{
+		final int year = packedDate / 10000;
+		final int month = packedDate / 100 % 100;
+		final int day = packedDate % 100;
+		final int hour = packedTime / 10000;
+		final int minute = packedTime / 100 % 100;
+		final int second = packedTime % 100;
+
+		final long epochDay = epochDay(year, month, day);
+		final DayOffset dayOffset = dayOffset(timeZone, epochDay);
+
+		if (dayOffset.uniform)
+			return epochDay * MILLIS_PER_DAY + (hour * 3600 + minute * 60 + second) * 1000L - dayOffset.offset;
+
+		final Calendar calendar = new GregorianCalendar(timeZone);
+		calendar.clear();
+		calendar.set(year, month - 1, day, hour, minute, second);
+		return calendar.getTimeInMillis();
+	}
+
+	/**
+	 * @return days since 1970-01-01 in the proleptic Gregorian calendar
+	 */
+	private static long epochDay(final int year, final int month, final int day)
+	{
+		// shift the year to start in March, so that the leap day is last
+		final int y = month <= 2 ? year - 1 : year;
+		final int era = (y >= 0 ? y : y - 399) / 400;
+		final int yearOfEra = y - era * 400;
+		final int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+		final int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return era * 146097L + dayOfEra - 719468;
+	}
+
+	private static final class DayOffset
+	{
+		final long epochDay;
+		final int offset;
+		final boolean uniform; // same offset all day long
+
+		DayOffset(final long epochDay, final int offset, final boolean uniform)
+		{
+			this.epochDay = epochDay;
+			this.offset = offset;
+			this.uniform = uniform;
+		}
 	}
 
-	private static final Pattern P_AMERICAN_TIME = Pattern.compile("(\\d{1,2}):(\\d{2})(?::(\\d{2}))? (AM|PM)");
+	// last day looked up, by time zone id
+	private static final Map<String, DayOffset> lastDayOffsets = new ConcurrentHashMap<String, DayOffset>();
+
+	private static DayOffset dayOffset(final TimeZone timeZone, final long epochDay)
+	{
+		final String timeZoneId = timeZone.getID();
+		final DayOffset last = lastDayOffsets.get(timeZoneId);
+		if (last != null && last.epochDay == epochDay)
+			return last;
+
+		final long localMidnight = epochDay * MILLIS_PER_DAY;
+		final int estimatedOffset = timeZone.getOffset(localMidnight - timeZone.getRawOffset());
+		final int offset = timeZone.getOffset(localMidnight - estimatedOffset);
+		final boolean uniform = offset == estimatedOffset && timeZone.getOffset(localMidnight + MILLIS_PER_DAY - 1 - offset) == offset;
+
+		final DayOffset dayOffset = new DayOffset(epochDay, offset, uniform);
+		lastDayOffsets.put(timeZoneId, dayOffset);
+		return dayOffset;
+	}
+
+	/**
+	 * @return value of the ASCII digits between start (inclusive) and end (exclusive), or -1 if there is anything else
+	 */
+	public static int digits(final CharSequence str, final int start, final int end)
+	{
+		if (start >= end)
+			return -1;
+
+		int value = 0;
+		for (int i = start; i < end; i++)
+		{
+			final int digit = str.charAt(i) - '0';
+			if (digit < 0 || digit > 9)
+				return -1;
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+
+	private static int scanTime(final CharSequence str, final int start, final int end)
+	{
+		if (end - start < 4)
+			return -1;
+
+		final int colon = str.charAt(start + 1) == ':' ? start + 1 : start + 2;
+		if (str.charAt(colon) != ':' || colon + 3 > end)
+			return -1;
+
+		final int hour = digits(str, start, colon);
+		final int minute = digits(str, colon + 1, colon + 3);
+
+		if (end == colon + 3)
+			return packTime(hour, minute, 0);
+		else if (end == colon + 6 && str.charAt(colon + 3) == ':')
+			return packTime(hour, minute, digits(str, colon + 4, colon + 6));
+		else
+			return -1;
+	}
+
+	private static boolean isDateSeparator(final char c)
+	{
+		return c == '.' || c == '/' || c == '-';
+	}
+
+	private static int fullYear(final int year)
+	{
+		if (year < 0)
+			return -1;
+
+		return year >= 100 ? year : year + 2000;
+	}
+
+	public static final void parseIsoDate(final Calendar calendar, final CharSequence str)
+	{
+		setDate(calendar, scanIsoDate(str), str);
+	}
+
+	public static final void parseGermanDate(final Calendar calendar, final CharSequence str)
+	{
+		setDate(calendar, scanGermanDate(str), str);
+	}
+
+	public static final void parseAmericanDate(final Calendar calendar, final CharSequence str)
+	{
+		setDate(calendar, scanAmericanDate(str), str);
+	}
+
+	public static final void parseEuropeanTime(final Calendar calendar, final CharSequence str)
+	{
+		setTime(calendar, scanEuropeanTime(str), str);
+	}
 
 	public static final void parseAmericanTime(final Calendar calendar, final CharSequence str)
 	{
-		final Matcher m = P_AMERICAN_TIME.matcher(str);
-		if (!m.matches())
+		setTime(calendar, scanAmericanTime(str), str);
+	}
+
+	private static void setDate(final Calendar calendar, final int packedDate, final CharSequence str)
+	{
+		if (packedDate == -1)
+			throw new RuntimeException("cannot parse: '" + str + "'");
+
+		calendar.set(Calendar.YEAR, packedDate / 10000);
+		calendar.set(Calendar.MONTH, packedDate / 100 % 100 - 1);
+		calendar.set(Calendar.DAY_OF_MONTH, packedDate % 100);
+	}
+
+	private static void setTime(final Calendar calendar, final int packedTime, final CharSequence str)
+	{
+		if (packedTime == -1)
 			throw new RuntimeException("cannot parse: '" + str + "'");
 
-		calendar.set(Calendar.HOUR, Integer.parseInt(m.group(1)));
-		calendar.set(Calendar.MINUTE, Integer.parseInt(m.group(2)));
-		calendar.set(Calendar.SECOND, m.group(3) != null ? Integer.parseInt(m.group(3)) : 0);
-		calendar.set(Calendar.AM_PM, m.group(4).equals("AM") ? Calendar.AM : Calendar.PM);
+		calendar.set(Calendar.HOUR_OF_DAY, packedTime / 10000);
+		calendar.set(Calendar.MINUTE, packedTime / 100 % 100);
+		calendar.set(Calendar.SECOND, packedTime % 100);
 	}
 
 	public static long timeDiff(final Date d1, final Date d2)
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.util;
+
+import java.io.Serializable;
+
+/**
+ * Keeps a session cookie between the requests of one session, for example a connection query and the queries for
+ * earlier or later connections. Each session gets its own instance, so concurrent sessions cannot clobber each other.
+ *
+ * @author Andreas Schildbach
+ */
+public final class SessionCookie implements Serializable
+{
+	private static final long serialVersionUID = -4417535716385398398L;
+
+	private final String name;
+	private volatile String cookie;
+
+	public SessionCookie(final String name)
+	{
+		if (name == null)
+			throw new IllegalArgumentException("name must not be null");
+
+		this.name = name;
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	/**
+	 * @return cookie as to be sent in the {@code Cookie} request header, or {@code null} if none has been received yet
+	 */
+	public String get()
+	{
+		return cookie;
+	}
+
+	public void set(final String cookie)
+	{
+		this.cookie = cookie;
+	}
+
+	public void reset()
+	{
+		cookie = null;
+	}
+
+	@Override
+	public String toString()
+	{
+		return getClass().getName() + "[" + name + "," + cookie + "]";
+	}
+}
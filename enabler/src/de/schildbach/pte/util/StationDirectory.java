@@ -0,0 +1,608 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.util;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import de.schildbach.pte.dto.Location;
+import de.schildbach.pte.dto.LocationType;
+
+/**
+ * Local directory of the stations of one network, accumulated from the locations seen in query results and kept in a
+ * compact file. The file is memory-mapped and holds an index sorted by station id and an index sorted by name, so
+ * lookups neither parse nor load the whole file. Newly added stations are kept in memory and merged into a new file
+ * on {@link #flush()}. Adding never touches the file; if a flush executor is given, a flush is handed to it after a
+ * number of additions, so that queries recording stations never wait for the file to be rewritten.
+ *
+ * Autocompletion matches the words of the constraint, in any order, against the beginnings of the words of place and
+ * name, ignoring case. Thread-safe, but the file must not be shared by several instances.
+ *
+ * @author Andreas Schildbach
+ */
+public final class StationDirectory
+{
+	private static final int MAGIC = 0x50544531; // "PTE1"
+	private static final int HEADER_SIZE = 16;
+	private static final int FLUSH_THRESHOLD = 256;
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final LocationType[] LOCATION_TYPES = LocationType.values();
+
+	private final File file, tempFile, oldFile;
+
+	// mapped file
+	private ByteBuffer buf = null;
+	private int count = 0;
+	private int numKeys = 0;
+	private int idIndex, keyIndex;
+
+	// added since the last flush
+	private final Map<Integer, Location> pending = new HashMap<Integer, Location>();
+
+	private final Executor flushExecutor;
+	private boolean flushScheduled = false;
+	private int flushThreshold = FLUSH_THRESHOLD;
+
+	// serializes flushes, which write the file without holding the lock of this directory
+	private final Object flushLock = new Object();
+
+	/**
+	 * Directory that is only written by explicit calls to {@link #flush()}.
+	 */
+	public StationDirectory(final File file) throws IOException
+	{
+		this(file, null);
+	}
+
+	/**
+	 * @param flushExecutor
+	 *            executor to flush on once enough stations have been added, or {@code null} to flush only explicitly;
+	 *            a failed flush is retried after another batch of additions
+	 */
+	public StationDirectory(final File file, final Executor flushExecutor) throws IOException
+	{
+		this.file = file;
+		this.flushExecutor = flushExecutor;
+		this.tempFile = new File(file.getPath() + ".tmp");
+		this.oldFile = new File(file.getPath() + ".old");
+
+		// a flush was interrupted after moving the old file aside
+		if (!file.exists() && oldFile.exists() && !oldFile.renameTo(file))
+			throw new IOException("cannot rename " + oldFile + " to " + file);
+
+		if (file.exists())
+			map();
+	}
+
+	/**
+	 * Add a station, or update the known one with the same id. Locations other than stations, or without id or name,
+	 * are ignored.
+	 */
+	public synchronized void add(final Location location)
+	{
+		addPending(location);
+		scheduleFlush();
+	}
+
+	/**
+	 * Add stations as with {@link #add(Location)}.
+	 */
+	public synchronized void addAll(final Collection<Location> locations)
+	{
+		for (final Location location : locations)
+			addPending(location);
+		scheduleFlush();
+	}
+
+	/**
+	 * @return station with the given id, or {@code null} if it is unknown
+	 */
+	public synchronized Location get(final int id)
+	{
+		final Location location = pending.get(id);
+		if (location != null)
+			return location;
+
+		final int index = findId(id);
+		if (index < 0)
+			return null;
+
+		return readRecord(buf.getInt(idIndex + index * 8 + 4));
+	}
+
+	/**
+	 * @return stations matching the constraint, those whose name starts with the constraint first, or an empty list
+	 */
+	public synchronized List<Location> autocomplete(final CharSequence constraint, final int maxResults)
+	{
+		final String normalized = AutocompleteCache.normalize(constraint);
+		final String[] words = AutocompleteCache.words(normalized);
+		if (words.length == 0)
+			return new ArrayList<Location>(0);
+
+		// candidates from the name index, looking up the first word only
+		final Set<Integer> offsets = new LinkedHashSet<Integer>();
+		final byte[] prefix = encode(words[0]);
+		for (int i = lowerBound(prefix); i < numKeys; i++)
+		{
+			final int entry = keyIndex + i * 8;
+			if (!startsWith(buf.getInt(entry + 4), prefix))
+				break;
+			offsets.add(buf.getInt(entry));
+		}
+
+		final Map<Integer, Location> matches = new HashMap<Integer, Location>();
+		for (final int offset : offsets)
+		{
+			final Location location = readRecord(offset);
+			if (!pending.containsKey(location.id) && AutocompleteCache.matches(location, words))
+				matches.put(location.id, location);
+		}
+		for (final Location location : pending.values())
+			if (AutocompleteCache.matches(location, words))
+				matches.put(location.id, location);
+
+		final Set<Location> startsWithConstraint = new HashSet<Location>();
+		for (final Location location : matches.values())
+			if (AutocompleteCache.normalize(location.name).startsWith(normalized))
+				startsWithConstraint.add(location);
+
+		final List<Location> result = new ArrayList<Location>(matches.values());
+		Collections.sort(result, new Comparator<Location>()
+		{
+			public int compare(final Location l1, final Location l2)
+			{
+				final boolean starts1 = startsWithConstraint.contains(l1);
+				final boolean starts2 = startsWithConstraint.contains(l2);
+				if (starts1 != starts2)
+					return starts1 ? -1 : 1;
+				return l1.name.compareToIgnoreCase(l2.name);
+			}
+		});
+
+		return maxResults > 0 && result.size() > maxResults ? new ArrayList<Location>(result.subList(0, maxResults)) : result;
+	}
+
+	public synchronized int size()
+	{
+		int size = count;
+		for (final Integer id : pending.keySet())
+			if (findId(id) < 0)
+				size++;
+		return size;
+	}
+
+	/**
+	 * Merge the stations added since the last flush into the file. The new file is written next to the old one, synced
+	 * and then renamed, so a crash leaves the old file intact. Lookups and additions are not blocked while the file is
+	 * written, stations added meanwhile stay pending for the next flush. If the flush fails, the stations stay pending
+	 * and the old file stays in use.
+	 */
+	public void flush() throws IOException
+	{
+		synchronized (flushLock)
+		{
+			final Map<Integer, Location> flushed;
+			final Map<Integer, Location> all;
+
+			synchronized (this)
+			{
+				if (pending.isEmpty())
+					return;
+
+				flushed = new HashMap<Integer, Location>(pending);
+				all = new HashMap<Integer, Location>(count + pending.size());
+				for (int i = 0; i < count; i++)
+				{
+					final Location location = readRecord(buf.getInt(idIndex + i * 8 + 4));
+					all.put(location.id, location);
+				}
+				all.putAll(flushed);
+			}
+
+			// the old file stays mapped until the new one is in place
+			try
+			{
+				write(tempFile, all.values());
+				replaceFile();
+			}
+			catch (final IOException x)
+			{
+				tempFile.delete();
+				throw x;
+			}
+
+			synchronized (this)
+			{
+				map();
+
+				// keep what has been added or updated in the meantime
+				for (final Map.Entry<Integer, Location> entry : flushed.entrySet())
+					if (pending.get(entry.getKey()) == entry.getValue())
+						pending.remove(entry.getKey());
+			}
+		}
+	}
+
+	@Override
+	public synchronized String toString()
+	{
+		return getClass().getName() + "[" + file + "," + count + " stored," + pending.size() + " pending]";
+	}
+
+	private void scheduleFlush()
+	{
+		if (flushExecutor == null || flushScheduled || pending.size() < flushThreshold)
+			return;
+
+		flushScheduled = true;
+		try
+		{
+			flushExecutor.execute(new Runnable()
+			{
+				public void run()
+				{
+					backgroundFlush();
+				}
+			});
+		}
+		catch (final RejectedExecutionException x)
+		{
+			flushScheduled = false;
+		}
+	}
+
+	private void backgroundFlush()
+	{
+		boolean failed = false;
+		try
+		{
+			flush();
+		}
+		catch (final IOException x)
+		{
+			x.printStackTrace();
+			failed = true;
+		}
+
+		synchronized (this)
+		{
+			flushScheduled = false;
+			flushThreshold = failed ? pending.size() + FLUSH_THRESHOLD : FLUSH_THRESHOLD;
+		}
+	}
+
+	private void addPending(final Location location)
+	{
+		if (location == null || location.type != LocationType.STATION || !location.hasId() || location.name == null)
+			return;
+
+		final Location known = get(location.id);
+		final Location merged = merge(known, location);
+		if (known != null && sameDetails(merged, known))
+			return;
+
+		pending.put(merged.id, merged);
+	}
+
+	/**
+	 * Rename the temporary file over the file. Where the platform cannot rename over an existing file, the old file is
+	 * moved aside rather than deleted, so that there is always one complete file to recover from.
+	 */
+	private void replaceFile() throws IOException
+	{
+		if (tempFile.renameTo(file))
+			return;
+
+		oldFile.delete();
+		if (file.exists() && !file.renameTo(oldFile))
+			throw new IOException("cannot rename " + file + " to " + oldFile);
+
+		if (!tempFile.renameTo(file))
+		{
+			oldFile.renameTo(file);
+			throw new IOException("cannot rename " + tempFile + " to " + file);
+		}
+
+		oldFile.delete();
+	}
+
+	private void map() throws IOException
+	{
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try
+		{
+			final FileChannel channel = raf.getChannel();
+			final ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+			if (mapped.limit() < HEADER_SIZE || mapped.getInt(0) != MAGIC)
+				throw new IOException("not a station directory: " + file);
+
+			count = mapped.getInt(4);
+			numKeys = mapped.getInt(8);
+			idIndex = HEADER_SIZE;
+			keyIndex = idIndex + count * 8;
+			buf = mapped;
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+
+	private static void write(final File file, final Collection<Location> locations) throws IOException
+	{
+		final Location[] sorted = locations.toArray(new Location[locations.size()]);
+		Arrays.sort(sorted, new Comparator<Location>()
+		{
+			public int compare(final Location l1, final Location l2)
+			{
+				return l1.id < l2.id ? -1 : (l1.id > l2.id ? 1 : 0);
+			}
+		});
+
+		// keys: the normalized place and name, starting at each word
+		final List<byte[]> keys = new ArrayList<byte[]>();
+		final List<Integer> keyRecords = new ArrayList<Integer>();
+		final ByteArrayOutputStream records = new ByteArrayOutputStream();
+		final DataOutputStream recordsOut = new DataOutputStream(records);
+		final int[] recordOffsets = new int[sorted.length];
+
+		for (int i = 0; i < sorted.length; i++)
+		{
+			final Location location = sorted[i];
+			recordOffsets[i] = recordsOut.size();
+			recordsOut.writeInt(location.id);
+			recordsOut.writeInt(location.lat);
+			recordsOut.writeInt(location.lon);
+			recordsOut.writeByte(location.type.ordinal());
+			writeString(recordsOut, location.place);
+			writeString(recordsOut, location.name);
+
+			final String text = AutocompleteCache.normalize((location.place != null ? location.place + " " : "") + location.name);
+			for (int start = 0; start < text.length(); start++)
+			{
+				if (Character.isLetterOrDigit(text.charAt(start)) && (start == 0 || !Character.isLetterOrDigit(text.charAt(start - 1))))
+				{
+					keys.add(encode(text.substring(start)));
+					keyRecords.add(i);
+				}
+			}
+		}
+
+		final Integer[] keyOrder = new Integer[keys.size()];
+		for (int i = 0; i < keyOrder.length; i++)
+			keyOrder[i] = i;
+		Arrays.sort(keyOrder, new Comparator<Integer>()
+		{
+			public int compare(final Integer k1, final Integer k2)
+			{
+				return compareBytes(keys.get(k1), keys.get(k2));
+			}
+		});
+
+		final int recordsBase = HEADER_SIZE + sorted.length * 8 + keys.size() * 8;
+		final int keysBase = recordsBase + records.size();
+
+		final FileOutputStream os = new FileOutputStream(file);
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os));
+		try
+		{
+			out.writeInt(MAGIC);
+			out.writeInt(sorted.length);
+			out.writeInt(keys.size());
+			out.writeInt(0); // reserved
+
+			for (int i = 0; i < sorted.length; i++)
+			{
+				out.writeInt(sorted[i].id);
+				out.writeInt(recordsBase + recordOffsets[i]);
+			}
+
+			int keyOffset = keysBase;
+			final int[] keyOffsets = new int[keys.size()];
+			for (int i = 0; i < keys.size(); i++)
+			{
+				keyOffsets[i] = keyOffset;
+				keyOffset += 2 + keys.get(i).length;
+			}
+			for (final int k : keyOrder)
+			{
+				out.writeInt(recordsBase + recordOffsets[keyRecords.get(k)]);
+				out.writeInt(keyOffsets[k]);
+			}
+
+			records.writeTo(out);
+
+			for (final byte[] key : keys)
+			{
+				out.writeShort(key.length);
+				out.write(key);
+			}
+
+			// make sure the data is on disk before the file is renamed into place
+			out.flush();
+			os.getFD().sync();
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	private Location readRecord(final int offset)
+	{
+		final int id = buf.getInt(offset);
+		final int lat = buf.getInt(offset + 4);
+		final int lon = buf.getInt(offset + 8);
+		final LocationType type = LOCATION_TYPES[buf.get(offset + 12)];
+		final int placeOffset = offset + 13;
+		final String place = readString(placeOffset);
+		final String name = readString(placeOffset + 2 + Math.max(0, buf.getShort(placeOffset)));
+
+		return new Location(type, id, lat, lon, place, name);
+	}
+
+	private String readString(final int offset)
+	{
+		final int length = buf.getShort(offset);
+		if (length < 0)
+			return null;
+
+		final ByteBuffer bytes = buf.duplicate();
+		bytes.limit(offset + 2 + length).position(offset + 2);
+		return UTF_8.decode(bytes).toString();
+	}
+
+	private static void writeString(final DataOutputStream out, final String str) throws IOException
+	{
+		if (str == null)
+		{
+			out.writeShort(-1);
+		}
+		else
+		{
+			final byte[] bytes = encode(str);
+			out.writeShort(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	private static byte[] encode(final String str)
+	{
+		final ByteBuffer encoded = UTF_8.encode(CharBuffer.wrap(str));
+		final byte[] bytes = new byte[encoded.remaining()];
+		encoded.get(bytes);
+		return bytes;
+	}
+
+	private int findId(final int id)
+	{
+		int low = 0;
+		int high = count - 1;
+		while (low <= high)
+		{
+			final int mid = (low + high) >>> 1;
+			final int midId = buf.getInt(idIndex + mid * 8);
+			if (midId < id)
+				low = mid + 1;
+			else if (midId > id)
+				high = mid - 1;
+			else
+				return mid;
+		}
+		return -1;
+	}
+
+	// index of the first key not less than the given prefix
+	private int lowerBound(final byte[] prefix)
+	{
+		int low = 0;
+		int high = numKeys;
+		while (low < high)
+		{
+			final int mid = (low + high) >>> 1;
+			if (compareKey(buf.getInt(keyIndex + mid * 8 + 4), prefix) < 0)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+
+	private int compareKey(final int offset, final byte[] bytes)
+	{
+		final int length = buf.getShort(offset);
+		final int n = Math.min(length, bytes.length);
+		for (int i = 0; i < n; i++)
+		{
+			final int diff = (buf.get(offset + 2 + i) & 0xff) - (bytes[i] & 0xff);
+			if (diff != 0)
+				return diff;
+		}
+		return length - bytes.length;
+	}
+
+	private boolean startsWith(final int offset, final byte[] prefix)
+	{
+		final int length = buf.getShort(offset);
+		if (length < prefix.length)
+			return false;
+		for (int i = 0; i < prefix.length; i++)
+			if (buf.get(offset + 2 + i) != prefix[i])
+				return false;
+		return true;
+	}
+
+	private static int compareBytes(final byte[] b1, final byte[] b2)
+	{
+		final int n = Math.min(b1.length, b2.length);
+		for (int i = 0; i < n; i++)
+		{
+			final int diff = (b1[i] & 0xff) - (b2[i] & 0xff);
+			if (diff != 0)
+				return diff;
+		}
+		return b1.length - b2.length;
+	}
+
+	private static Location merge(final Location known, final Location location)
+	{
+		if (known == null)
+			return location;
+
+		// keep what is known if the new location lacks it
+		final int lat = location.hasLocation() ? location.lat : known.lat;
+		final int lon = location.hasLocation() ? location.lon : known.lon;
+		final String place = location.place != null ? location.place : known.place;
+
+		return new Location(LocationType.STATION, location.id, lat, lon, place, location.name);
+	}
+
+	private static boolean sameDetails(final Location l1, final Location l2)
+	{
+		return l1.lat == l2.lat && l1.lon == l2.lon && equals(l1.place, l2.place) && equals(l1.name, l2.name);
+	}
+
+	private static boolean equals(final String s1, final String s2)
+	{
+		return s1 == null ? s2 == null : s1.equals(s2);
+	}
+}
@@ -45,6 +45,7 @@ public class StringReplaceReader extends FilterReader implements Cloneable
 	protected char[] inputBuffer;
 	protected int[] shiftTable; // quick search shift table
 	protected int inputBufferCharCount; // number of chars in inputBuffer
+	private final char[] singleCharBuffer = new char[1];
 
 	protected char[] patternToFind = null;
 	protected char[] replacementPattern = null;
@@ -171,7 +172,6 @@ public class StringReplaceReader extends FilterReader implements Cloneable
 		{
 			// remaining input is less than length of pattern
 			transferRemainingInputToOutputBuffer();
-			System.out.println(">> End << " + outputBuffer);
 			charsRead = outputBuffer.dequeue(buffer, offset, charsToRead);
 			return charsRead;
 		}
@@ -201,7 +201,11 @@ public class StringReplaceReader extends FilterReader implements Cloneable
 	@Override
 	public int read() throws IOException
 	{
-		char[] output = new char[1];
+		// common case, avoids a round trip through the bulk read
+		if (!outputBuffer.isEmpty())
+			return outputBuffer.dequeue();
+
+		char[] output = singleCharBuffer;
 		int charsRead = read(output, 0, 1);
 		if (charsRead == EOFIndicator)
 			return EOFIndicator;
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.util;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+/**
+ * Thread-safe pool of {@link XmlPullParser} instances. The factory is looked up once, and parsers are reset via
+ * {@code setInput} and reused instead of being allocated per request.
+ *
+ * Each parser obtained from the pool must be handed back to {@link #release(XmlPullParser)} once parsing is done, and
+ * must not be used afterwards.
+ *
+ * @author Andreas Schildbach
+ */
+public final class XmlPullParserPool
+{
+	public static final int DEFAULT_MAX_IDLE = 8;
+
+	public static final XmlPullParserPool DEFAULT = new XmlPullParserPool(DEFAULT_MAX_IDLE);
+
+	private final XmlPullParserFactory factory;
+	private final int maxIdle;
+	private final Queue<XmlPullParser> idle = new ConcurrentLinkedQueue<XmlPullParser>();
+	private final AtomicInteger idleCount = new AtomicInteger();
+	private final AtomicInteger createdCount = new AtomicInteger();
+
+	public XmlPullParserPool(final int maxIdle)
+	{
+		try
+		{
+			this.factory = XmlPullParserFactory.newInstance(System.getProperty(XmlPullParserFactory.PROPERTY_NAME), null);
+		}
+		catch (final XmlPullParserException x)
+		{
+			throw new RuntimeException(x);
+		}
+
+		this.maxIdle = maxIdle;
+	}
+
+	public XmlPullParser obtain(final Reader reader) throws XmlPullParserException
+	{
+		final XmlPullParser pp = poll();
+		pp.setInput(reader);
+		return pp;
+	}
+
+	public XmlPullParser obtain(final InputStream is, final String encoding) throws XmlPullParserException
+	{
+		final XmlPullParser pp = poll();
+		pp.setInput(is, encoding);
+		return pp;
+	}
+
+	/**
+	 * Hand a parser back to the pool. Its input is detached, so that the pool doesn't keep the underlying stream
+	 * reachable. Accepts {@code null}, for convenient use in {@code finally} blocks.
+	 */
+	public void release(final XmlPullParser pp)
+	{
+		if (pp == null)
+			return;
+
+		try
+		{
+			pp.setInput(null);
+		}
+		catch (final XmlPullParserException x)
+		{
+			// parser cannot be reset, drop it
+			return;
+		}
+
+		if (idleCount.incrementAndGet() <= maxIdle)
+			idle.offer(pp);
+		else
+			idleCount.decrementAndGet();
+	}
+
+	/**
+	 * @return number of parsers created by this pool so far
+	 */
+	public int getCreatedCount()
+	{
+		return createdCount.get();
+	}
+
+	private XmlPullParser poll() throws XmlPullParserException
+	{
+		final XmlPullParser pp = idle.poll();
+		if (pp != null)
+		{
+			idleCount.decrementAndGet();
+			return pp;
+		}
+
+		createdCount.incrementAndGet();
+		return factory.newPullParser();
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Set;
+
+import org.junit.Test;
+
+import de.schildbach.pte.dto.Connection;
+import de.schildbach.pte.dto.Location;
+import de.schildbach.pte.dto.LocationType;
+import de.schildbach.pte.dto.QueryConnectionsContext;
+import de.schildbach.pte.dto.QueryConnectionsResult;
+import de.schildbach.pte.dto.ResultHeader;
+import de.schildbach.pte.exception.SessionExpiredException;
+import de.schildbach.pte.util.ConnectionsCache;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class ConnectionsCachingProviderTest
+{
+	private static final Location FROM = new Location(LocationType.STATION, 100);
+	private static final Location TO = new Location(LocationType.STATION, 200);
+	private static final Date DATE = new Date(1350000000000L);
+
+	private final Context context = new Context();
+	private int queries = 0;
+	private int moreQueries = 0;
+	private boolean sessionExpired = false;
+
+	private final NetworkProvider upstream = new StubNetworkProvider()
+	{
+		@Override
+		public QueryConnectionsResult queryConnections(final Location from, final Location via, final Location to, final Date date,
+				final boolean dep, final int numConnections, final String products, final WalkSpeed walkSpeed, final Accessibility accessibility,
+				final Set<Option> options)
+		{
+			queries++;
+			return result(context);
+		}
+
+		@Override
+		public QueryConnectionsResult queryMoreConnections(final QueryConnectionsContext context, final boolean later, final int numConnections)
+				throws IOException
+		{
+			moreQueries++;
+			if (sessionExpired)
+				throw new SessionExpiredException();
+			return result(new Context());
+		}
+	};
+
+	private final ConnectionsCache cache = new ConnectionsCache(10, 60000, 60000);
+
+	@Test
+	public void cachesQueriesAndPages() throws Exception
+	{
+		final ConnectionsCachingProvider provider = new ConnectionsCachingProvider(upstream, cache, true);
+
+		final QueryConnectionsResult result = query(provider);
+		assertSame(context, result.context);
+		query(provider);
+		assertEquals(1, queries);
+
+		provider.queryMoreConnections(result.context, true, 4);
+		provider.queryMoreConnections(result.context, true, 4);
+		assertEquals(1, moreQueries);
+	}
+
+	@Test
+	public void sessionExpiredInvalidatesSession() throws Exception
+	{
+		final ConnectionsCachingProvider provider = new ConnectionsCachingProvider(upstream, cache, true);
+
+		final QueryConnectionsResult result = query(provider);
+		sessionExpired = true;
+		try
+		{
+			provider.queryMoreConnections(result.context, true, 4);
+			fail();
+		}
+		catch (final SessionExpiredException x)
+		{
+			// passed on to the caller
+		}
+
+		assertEquals(1, cache.getInvalidationCount());
+		assertEquals(0, cache.size());
+
+		// the next caller starts afresh
+		query(provider);
+		assertEquals(2, queries);
+	}
+
+	@Test
+	public void consumedContextNotHandedOutAgain() throws Exception
+	{
+		final ConnectionsCachingProvider provider = new ConnectionsCachingProvider(upstream, cache, false);
+
+		final QueryConnectionsResult result = query(provider);
+		provider.queryMoreConnections(result.context, true, 4);
+		query(provider);
+		assertEquals(2, queries);
+	}
+
+	private QueryConnectionsResult query(final NetworkProvider provider) throws IOException
+	{
+		return provider.queryConnections(FROM, null, TO, DATE, true, 4, null, NetworkProvider.WalkSpeed.NORMAL, null, null);
+	}
+
+	private static QueryConnectionsResult result(final QueryConnectionsContext context)
+	{
+		return new QueryConnectionsResult(new ResultHeader("test"), null, FROM, null, TO, context, new ArrayList<Connection>());
+	}
+
+	private static class Context implements QueryConnectionsContext
+	{
+		private static final long serialVersionUID = 1L;
+
+		public boolean canQueryLater()
+		{
+			return true;
+		}
+
+		public boolean canQueryEarlier()
+		{
+			return true;
+		}
+	}
+}
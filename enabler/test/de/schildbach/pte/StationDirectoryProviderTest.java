@@ -0,0 +1,154 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.schildbach.pte.dto.Location;
+import de.schildbach.pte.dto.LocationType;
+import de.schildbach.pte.dto.NearbyStationsResult;
+import de.schildbach.pte.dto.ResultHeader;
+import de.schildbach.pte.util.StationDirectory;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class StationDirectoryProviderTest
+{
+	private static final Location ALEX = new Location(LocationType.STATION, 100, "Berlin", "Alexanderplatz");
+	private static final Location ALT_MARIENDORF = new Location(LocationType.STATION, 300, "Berlin", "Alt-Mariendorf");
+	private static final Location ALTGLIENICKE = new Location(LocationType.STATION, 400, "Berlin", "Altglienicke");
+	private static final Location ALEXANDERSTR = new Location(LocationType.ADDRESS, 0, "Berlin", "Alexanderstraße 1");
+
+	private File dir;
+	private StationDirectory directory;
+	private final List<CharSequence> upstreamQueries = new ArrayList<CharSequence>();
+
+	private final NetworkProvider upstream = new StubNetworkProvider()
+	{
+		@Override
+		public List<Location> autocompleteStations(final CharSequence constraint)
+		{
+			upstreamQueries.add(constraint);
+			return new ArrayList<Location>(Arrays.asList(ALTGLIENICKE, ALEXANDERSTR, ALT_MARIENDORF));
+		}
+
+		@Override
+		public NearbyStationsResult queryNearbyStations(final Location location, final int maxDistance, final int maxStations)
+		{
+			final List<Location> stations = new ArrayList<Location>();
+			for (int i = 1; i <= 300; i++)
+				stations.add(new Location(LocationType.STATION, i, null, "Station " + i));
+			return new NearbyStationsResult(new ResultHeader("test"), stations);
+		}
+	};
+
+	@Before
+	public void setUp() throws IOException
+	{
+		dir = File.createTempFile("stations", "");
+		dir.delete();
+		dir.mkdir();
+		directory = new StationDirectory(new File(dir, "stations.dat"));
+	}
+
+	@After
+	public void tearDown()
+	{
+		for (final File file : dir.listFiles())
+			file.delete();
+		dir.delete();
+	}
+
+	@Test
+	public void answersLocallyWhenEnoughMatches() throws Exception
+	{
+		directory.addAll(Arrays.asList(ALEX, ALT_MARIENDORF));
+		final StationDirectoryProvider provider = new StationDirectoryProvider(upstream, directory, 2);
+
+		assertEquals(Arrays.asList(ALEX, ALT_MARIENDORF), provider.autocompleteStations("al"));
+		assertEquals(0, upstreamQueries.size());
+	}
+
+	@Test
+	public void answersLocallyOnExactName() throws Exception
+	{
+		directory.addAll(Arrays.asList(ALEX, ALT_MARIENDORF));
+		final StationDirectoryProvider provider = new StationDirectoryProvider(upstream, directory, 10);
+
+		assertEquals(Arrays.asList(ALEX), provider.autocompleteStations("alexanderplatz"));
+		assertEquals(Arrays.asList(ALEX), provider.autocompleteStations("Berlin Alexanderplatz"));
+		assertEquals(0, upstreamQueries.size());
+	}
+
+	@Test
+	public void mergesWithUpstreamOtherwise() throws Exception
+	{
+		directory.addAll(Arrays.asList(ALEX, ALT_MARIENDORF));
+		final StationDirectoryProvider provider = new StationDirectoryProvider(upstream, directory, 10);
+
+		// the provider's suggestions first, then the stations it did not suggest
+		assertEquals(Arrays.asList(ALTGLIENICKE, ALEXANDERSTR, ALT_MARIENDORF, ALEX), provider.autocompleteStations("al"));
+		assertEquals(1, upstreamQueries.size());
+
+		// what the provider suggested has been recorded
+		assertNotNull(directory.get(ALTGLIENICKE.id));
+	}
+
+	@Test
+	public void mergedRespectsMaxSuggestions() throws Exception
+	{
+		directory.addAll(Arrays.asList(ALEX, ALT_MARIENDORF));
+		final StationDirectoryProvider provider = new StationDirectoryProvider(upstream, directory, 3);
+
+		assertEquals(Arrays.asList(ALTGLIENICKE, ALEXANDERSTR, ALT_MARIENDORF), provider.autocompleteStations("al"));
+	}
+
+	@Test
+	public void failingDirectoryDoesNotFailQuery() throws Exception
+	{
+		// flushing right away on the querying thread, the worst case for the query
+		final StationDirectory directory = new StationDirectory(new File(dir, "stations.dat"), new Executor()
+		{
+			public void execute(final Runnable task)
+			{
+				task.run();
+			}
+		});
+		final StationDirectoryProvider provider = new StationDirectoryProvider(upstream, directory, 10);
+
+		// the directory cannot write its temporary file while a directory is in its place
+		new File(dir, "stations.dat.tmp").mkdir();
+
+		final NearbyStationsResult result = provider.queryNearbyStations(new Location(LocationType.ANY, 52521918, 13413215), 0, 0);
+		assertEquals(300, result.stations.size());
+		assertEquals(300, directory.size());
+	}
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.geo;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.schildbach.pte.dto.Point;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class PolygonIndexTest
+{
+	private static final Point[] SQUARE = { new Point(0, 0), new Point(0, 100), new Point(100, 100), new Point(100, 0) };
+
+	// U-shaped, open to the north
+	private static final Point[] U = { new Point(0, 0), new Point(0, 300), new Point(300, 300), new Point(300, 200), new Point(100, 200),
+			new Point(100, 100), new Point(300, 100), new Point(300, 0) };
+
+	@Test
+	public void square()
+	{
+		final PolygonIndex index = new PolygonIndex(SQUARE);
+
+		assertTrue(index.contains(50, 50));
+		assertTrue(index.contains(new Point(1, 99)));
+		assertFalse(index.contains(-1, 50));
+		assertFalse(index.contains(50, 101));
+		assertFalse(index.contains(200, 200));
+	}
+
+	@Test
+	public void concave()
+	{
+		final PolygonIndex index = new PolygonIndex(U);
+
+		assertTrue(index.contains(50, 150));
+		assertTrue(index.contains(250, 50));
+		assertTrue(index.contains(250, 250));
+		// inside the bounding box, but in the gap of the U
+		assertFalse(index.contains(200, 150));
+		assertFalse(index.contains(299, 150));
+	}
+
+	@Test
+	public void closedAndOpenRingAgree()
+	{
+		final Point[] closed = new Point[U.length + 1];
+		System.arraycopy(U, 0, closed, 0, U.length);
+		closed[U.length] = U[0];
+
+		final PolygonIndex open = new PolygonIndex(U);
+		final PolygonIndex closedIndex = new PolygonIndex(closed);
+
+		for (int lat = -10; lat <= 310; lat += 7)
+			for (int lon = -10; lon <= 310; lon += 7)
+				assertEquals(open.contains(lat, lon), closedIndex.contains(lat, lon));
+	}
+
+	@Test
+	public void bandsAgreeWithFullScan()
+	{
+		final Point[] boundary = Berlin.BOUNDARY;
+		final PolygonIndex index = new PolygonIndex(boundary);
+
+		int minLat = Integer.MAX_VALUE, maxLat = Integer.MIN_VALUE, minLon = Integer.MAX_VALUE, maxLon = Integer.MIN_VALUE;
+		for (final Point point : boundary)
+		{
+			minLat = Math.min(minLat, point.lat);
+			maxLat = Math.max(maxLat, point.lat);
+			minLon = Math.min(minLon, point.lon);
+			maxLon = Math.max(maxLon, point.lon);
+		}
+
+		final Random random = new Random(42);
+		int inside = 0;
+		for (int i = 0; i < 20000; i++)
+		{
+			final int lat = minLat - 1000 + random.nextInt(maxLat - minLat + 2000);
+			final int lon = minLon - 1000 + random.nextInt(maxLon - minLon + 2000);
+			final boolean expected = fullScan(boundary, lat, lon);
+			assertEquals("at " + lat + "/" + lon, expected, index.contains(lat, lon));
+			if (expected)
+				inside++;
+		}
+
+		// make sure both outcomes have actually been exercised
+		assertTrue(inside > 0);
+		assertTrue(inside < 20000);
+	}
+
+	@Test
+	public void berlin()
+	{
+		final PolygonIndex index = new PolygonIndex(Berlin.BOUNDARY);
+
+		// Alexanderplatz
+		assertTrue(index.contains(52521918, 13413215));
+		// Potsdam
+		assertFalse(index.contains(52390885, 13064737));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void tooFewPoints()
+	{
+		new PolygonIndex(new Point[] { new Point(0, 0), new Point(1, 1) });
+	}
+
+	private static boolean fullScan(final Point[] polygon, final int lat, final int lon)
+	{
+		boolean inside = false;
+
+		for (int i = 0, j = polygon.length - 1; i < polygon.length; j = i++)
+		{
+			final Point a = polygon[i], b = polygon[j];
+			if ((a.lat > lat) != (b.lat > lat))
+			{
+				final double crossLon = a.lon + (double) (b.lon - a.lon) * (lat - a.lat) / (b.lat - a.lat);
+				if (lon < crossLon)
+					inside = !inside;
+			}
+		}
+
+		return inside;
+	}
+}
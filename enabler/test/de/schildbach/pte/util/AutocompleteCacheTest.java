@@ -0,0 +1,135 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.util;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.schildbach.pte.NetworkId;
+import de.schildbach.pte.dto.Location;
+import de.schildbach.pte.dto.LocationType;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class AutocompleteCacheTest
+{
+	private static final long TTL = 1000;
+
+	private static final Location HBF = new Location(LocationType.STATION, 1, "Berlin", "Hauptbahnhof");
+	private static final Location BERNAU = new Location(LocationType.STATION, 2, null, "Bernau Bahnhof");
+	private static final Location BERGEN = new Location(LocationType.STATION, 3, "Bergen", "Markt");
+	private static final List<Location> BER = Arrays.asList(HBF, BERNAU, BERGEN);
+
+	private final ManualClock clock = new ManualClock(0);
+
+	@Test
+	public void exactHitAndMiss()
+	{
+		final AutocompleteCache cache = new AutocompleteCache(10, TTL, clock);
+		cache.put(NetworkId.BVG, "Ber", BER, false);
+
+		assertEquals(BER, cache.get(NetworkId.BVG, "  bER "));
+		assertNull(cache.get(NetworkId.BVG, "bern"));
+		assertNull(cache.get(NetworkId.VBB, "ber"));
+		assertEquals(1, cache.getHitCount());
+		assertEquals(2, cache.getMissCount());
+	}
+
+	@Test
+	public void expiry()
+	{
+		final AutocompleteCache cache = new AutocompleteCache(10, TTL, clock);
+		cache.put(NetworkId.BVG, "ber", BER, true);
+
+		clock.advance(TTL - 1);
+		assertEquals(BER, cache.get(NetworkId.BVG, "ber"));
+
+		clock.advance(1);
+		assertNull(cache.get(NetworkId.BVG, "ber"));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void derivedFromCompletePrefix()
+	{
+		final AutocompleteCache cache = new AutocompleteCache(10, TTL, clock);
+		cache.put(NetworkId.BVG, "ber", BER, true);
+
+		assertEquals(Arrays.asList(BERNAU), cache.get(NetworkId.BVG, "bern"));
+		assertEquals(Arrays.asList(HBF), cache.get(NetworkId.BVG, "berlin haupt"));
+		assertEquals(Arrays.asList(BERGEN), cache.get(NetworkId.BVG, "ber ma"));
+		assertEquals(3, cache.getPrefixHitCount());
+
+		// the derived result is now an exact hit
+		assertEquals(Arrays.asList(BERNAU), cache.get(NetworkId.BVG, "bern"));
+		assertEquals(1, cache.getHitCount());
+	}
+
+	@Test
+	public void notDerivedFromTruncatedPrefix()
+	{
+		final AutocompleteCache cache = new AutocompleteCache(10, TTL, clock);
+		cache.put(NetworkId.BVG, "ber", BER, false);
+
+		assertNull(cache.get(NetworkId.BVG, "bern"));
+	}
+
+	@Test
+	public void derivedExpiresWithPrefix()
+	{
+		final AutocompleteCache cache = new AutocompleteCache(10, TTL, clock);
+		cache.put(NetworkId.BVG, "ber", BER, true);
+
+		clock.advance(TTL - 100);
+		assertEquals(Arrays.asList(BERNAU), cache.get(NetworkId.BVG, "bern"));
+
+		// a fresh time to live would keep the derived result for another 900ms
+		clock.advance(100);
+		assertNull(cache.get(NetworkId.BVG, "bern"));
+		assertNull(cache.get(NetworkId.BVG, "berna"));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void evictsLeastRecentlyUsed()
+	{
+		final AutocompleteCache cache = new AutocompleteCache(2, TTL, clock);
+		cache.put(NetworkId.BVG, "a", BER, false);
+		cache.put(NetworkId.BVG, "b", BER, false);
+		cache.get(NetworkId.BVG, "a");
+		cache.put(NetworkId.BVG, "c", BER, false);
+
+		assertEquals(2, cache.size());
+		assertEquals(BER, cache.get(NetworkId.BVG, "a"));
+		assertNull(cache.get(NetworkId.BVG, "b"));
+		assertEquals(BER, cache.get(NetworkId.BVG, "c"));
+	}
+
+	@Test
+	public void normalize()
+	{
+		assertEquals("berlin hbf", AutocompleteCache.normalize("  Berlin \t HBF "));
+		assertEquals("", AutocompleteCache.normalize(" "));
+	}
+}
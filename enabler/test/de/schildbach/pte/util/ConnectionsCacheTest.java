@@ -0,0 +1,206 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.util;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import de.schildbach.pte.NetworkId;
+import de.schildbach.pte.NetworkProvider.Option;
+import de.schildbach.pte.NetworkProvider.WalkSpeed;
+import de.schildbach.pte.dto.Connection;
+import de.schildbach.pte.dto.Location;
+import de.schildbach.pte.dto.LocationType;
+import de.schildbach.pte.dto.QueryConnectionsContext;
+import de.schildbach.pte.dto.QueryConnectionsResult;
+import de.schildbach.pte.dto.ResultHeader;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class ConnectionsCacheTest
+{
+	private static final long TTL = 1000;
+	private static final long MINUTE = 60000;
+
+	private static final Location FROM = new Location(LocationType.STATION, 100);
+	private static final Location TO = new Location(LocationType.ANY, 0, null, "Alexanderplatz");
+	private static final Date DATE = new Date(1350000000000L);
+
+	private final ManualClock clock = new ManualClock(0);
+	private final ConnectionsCache cache = new ConnectionsCache(10, TTL, MINUTE, clock);
+
+	@Test
+	public void keyedByParameters()
+	{
+		final QueryConnectionsResult result = result(context());
+		cache.put(key(DATE, null), result);
+
+		assertNotNull(cache.get(key(new Date(DATE.getTime() + 1), null)));
+		assertNotNull(cache.get(cache.key(NetworkId.BVG, FROM, null, new Location(LocationType.ANY, 0, null, "  alexanderPLATZ"), DATE, true, 4,
+				null, WalkSpeed.NORMAL, null, new HashSet<Option>())));
+		assertNull(cache.get(key(new Date(DATE.getTime() + MINUTE), null)));
+		assertNull(cache.get(key(DATE, EnumSet.of(Option.BIKE))));
+		assertEquals(2, cache.getHitCount());
+	}
+
+	@Test
+	public void keyNotAffectedByChangesToOptions()
+	{
+		final Set<Option> options = new HashSet<Option>();
+		options.add(Option.BIKE);
+		final Object key = key(DATE, options);
+		cache.put(key, result(context()));
+
+		options.clear();
+
+		assertNull(cache.get(key(DATE, options)));
+		assertNotNull(cache.get(key(DATE, EnumSet.of(Option.BIKE))));
+		assertFalse(key.equals(key(DATE, options)));
+	}
+
+	@Test
+	public void expiry()
+	{
+		final QueryConnectionsContext context = context();
+		cache.put(key(DATE, null), result(context));
+		cache.putMore(context, true, 4, result(context()), false);
+
+		clock.advance(TTL - 1);
+		assertNotNull(cache.get(key(DATE, null)));
+		assertNotNull(cache.getMore(context, true, 4));
+
+		clock.advance(1);
+		assertNull(cache.get(key(DATE, null)));
+		assertNull(cache.getMore(context, true, 4));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void pagesKeyedByContextIdentity()
+	{
+		final QueryConnectionsContext context = context();
+		final QueryConnectionsContext laterContext = context();
+		cache.put(key(DATE, null), result(context));
+		cache.putMore(context, true, 4, result(laterContext), false);
+
+		assertNotNull(cache.getMore(context, true, 4));
+		assertNull(cache.getMore(context, false, 4));
+		assertNull(cache.getMore(context, true, 6));
+		assertNull(cache.getMore(laterContext, true, 4));
+		assertNull(cache.getMore(context(), true, 4));
+
+		// pages reached from contexts the cache does not know about are not kept
+		cache.putMore(context(), true, 4, result(context()), false);
+		assertEquals(1, cache.getPageHitCount());
+	}
+
+	@Test
+	public void invalidateDropsWholeSession()
+	{
+		final QueryConnectionsContext context = context();
+		final QueryConnectionsContext laterContext = context();
+		cache.put(key(DATE, null), result(context));
+		cache.putMore(context, true, 4, result(laterContext), false);
+
+		cache.invalidate(laterContext);
+
+		assertNull(cache.get(key(DATE, null)));
+		assertNull(cache.getMore(context, true, 4));
+		assertEquals(1, cache.getInvalidationCount());
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void consumedContextHidesQuery()
+	{
+		final QueryConnectionsContext context = context();
+		cache.put(key(DATE, null), result(context));
+		cache.putMore(context, true, 4, result(context()), true);
+
+		assertNull(cache.get(key(DATE, null)));
+		assertNotNull(cache.getMore(context, true, 4));
+	}
+
+	@Test
+	public void failedResultsNotCached()
+	{
+		cache.put(key(DATE, null), new QueryConnectionsResult(new ResultHeader("test"), QueryConnectionsResult.Status.SERVICE_DOWN));
+
+		assertNull(cache.get(key(DATE, null)));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void evictsLeastRecentlyUsed()
+	{
+		final ConnectionsCache cache = new ConnectionsCache(2, TTL, MINUTE, clock);
+		final Date date2 = new Date(DATE.getTime() + MINUTE), date3 = new Date(DATE.getTime() + 2 * MINUTE);
+		cache.put(key(cache, DATE, null), result(context()));
+		cache.put(key(cache, date2, null), result(context()));
+		cache.get(key(cache, DATE, null));
+		cache.put(key(cache, date3, null), result(context()));
+
+		assertEquals(2, cache.size());
+		assertNotNull(cache.get(key(cache, DATE, null)));
+		assertNull(cache.get(key(cache, date2, null)));
+	}
+
+	private Object key(final Date date, final Set<Option> options)
+	{
+		return key(cache, date, options);
+	}
+
+	private static Object key(final ConnectionsCache cache, final Date date, final Set<Option> options)
+	{
+		return cache.key(NetworkId.BVG, FROM, null, TO, date, true, 4, null, WalkSpeed.NORMAL, null, options);
+	}
+
+	private static QueryConnectionsResult result(final QueryConnectionsContext context)
+	{
+		return new QueryConnectionsResult(new ResultHeader("test"), null, FROM, null, TO, context, new ArrayList<Connection>());
+	}
+
+	private static QueryConnectionsContext context()
+	{
+		return new QueryConnectionsContext()
+		{
+			private static final long serialVersionUID = 1L;
+
+			public boolean canQueryLater()
+			{
+				return true;
+			}
+
+			public boolean canQueryEarlier()
+			{
+				return true;
+			}
+		};
+	}
+}
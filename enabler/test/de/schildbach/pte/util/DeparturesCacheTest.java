@@ -0,0 +1,254 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.util;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import de.schildbach.pte.NetworkId;
+import de.schildbach.pte.dto.Departure;
+import de.schildbach.pte.dto.Location;
+import de.schildbach.pte.dto.LocationType;
+import de.schildbach.pte.dto.QueryDeparturesResult;
+import de.schildbach.pte.dto.ResultHeader;
+import de.schildbach.pte.dto.StationDepartures;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class DeparturesCacheTest
+{
+	private static final long TTL = 1000;
+
+	private final ManualClock clock = new ManualClock(0);
+
+	private static class CountingFetch implements Callable<QueryDeparturesResult>
+	{
+		final AtomicInteger count = new AtomicInteger();
+		final QueryDeparturesResult.Status status;
+
+		CountingFetch(final QueryDeparturesResult.Status status)
+		{
+			this.status = status;
+		}
+
+		public QueryDeparturesResult call() throws Exception
+		{
+			count.incrementAndGet();
+			return board(10, status);
+		}
+	}
+
+	@Test
+	public void servedUntilExpiry() throws Exception
+	{
+		final DeparturesCache cache = new DeparturesCache(10, TTL, clock);
+		final CountingFetch fetch = new CountingFetch(QueryDeparturesResult.Status.OK);
+
+		assertEquals(10, departures(cache.get(NetworkId.BVG, 1, 10, false, fetch)));
+		clock.advance(TTL - 1);
+		assertEquals(10, departures(cache.get(NetworkId.BVG, 1, 10, false, fetch)));
+		assertEquals(1, fetch.count.get());
+		assertEquals(1, cache.getHitCount());
+
+		clock.advance(1);
+		cache.get(NetworkId.BVG, 1, 10, false, fetch);
+		assertEquals(2, fetch.count.get());
+		assertEquals(2, cache.getMissCount());
+	}
+
+	@Test
+	public void largerBoardServesSmallerRequests() throws Exception
+	{
+		final DeparturesCache cache = new DeparturesCache(10, TTL, clock);
+		final CountingFetch fetch = new CountingFetch(QueryDeparturesResult.Status.OK);
+
+		cache.get(NetworkId.BVG, 1, 10, false, fetch);
+		assertEquals(5, departures(cache.get(NetworkId.BVG, 1, 5, false, fetch)));
+		assertEquals(1, fetch.count.get());
+
+		cache.get(NetworkId.BVG, 1, 20, false, fetch);
+		assertEquals(2, fetch.count.get());
+		cache.get(NetworkId.BVG, 1, 0, false, fetch);
+		assertEquals(3, fetch.count.get());
+
+		// a board without limit serves everything
+		cache.get(NetworkId.BVG, 1, 20, false, fetch);
+		cache.get(NetworkId.BVG, 1, 5, false, fetch);
+		assertEquals(3, fetch.count.get());
+	}
+
+	@Test
+	public void keyedByStationAndEquivs() throws Exception
+	{
+		final DeparturesCache cache = new DeparturesCache(10, TTL, clock);
+		final CountingFetch fetch = new CountingFetch(QueryDeparturesResult.Status.OK);
+
+		cache.get(NetworkId.BVG, 1, 10, false, fetch);
+		cache.get(NetworkId.BVG, 1, 10, true, fetch);
+		cache.get(NetworkId.BVG, 2, 10, false, fetch);
+		cache.get(NetworkId.VBB, 1, 10, false, fetch);
+		assertEquals(4, fetch.count.get());
+		assertEquals(4, cache.size());
+	}
+
+	@Test
+	public void evictsLeastRecentlyUsed() throws Exception
+	{
+		final DeparturesCache cache = new DeparturesCache(2, TTL, clock);
+		final CountingFetch fetch = new CountingFetch(QueryDeparturesResult.Status.OK);
+
+		cache.get(NetworkId.BVG, 1, 10, false, fetch);
+		cache.get(NetworkId.BVG, 2, 10, false, fetch);
+		cache.get(NetworkId.BVG, 1, 10, false, fetch);
+		cache.get(NetworkId.BVG, 3, 10, false, fetch);
+		assertEquals(3, fetch.count.get());
+		assertEquals(2, cache.size());
+
+		cache.get(NetworkId.BVG, 1, 10, false, fetch);
+		assertEquals(3, fetch.count.get());
+		cache.get(NetworkId.BVG, 2, 10, false, fetch);
+		assertEquals(4, fetch.count.get());
+	}
+
+	@Test
+	public void failedResultsNotCached() throws Exception
+	{
+		final DeparturesCache cache = new DeparturesCache(10, TTL, clock);
+		final CountingFetch fetch = new CountingFetch(QueryDeparturesResult.Status.SERVICE_DOWN);
+
+		assertEquals(QueryDeparturesResult.Status.SERVICE_DOWN, cache.get(NetworkId.BVG, 1, 10, false, fetch).status);
+		cache.get(NetworkId.BVG, 1, 10, false, fetch);
+		assertEquals(2, fetch.count.get());
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void exceptionRethrownAndNotCached() throws Exception
+	{
+		final DeparturesCache cache = new DeparturesCache(10, TTL, clock);
+		final Callable<QueryDeparturesResult> fetch = new Callable<QueryDeparturesResult>()
+		{
+			public QueryDeparturesResult call() throws Exception
+			{
+				throw new IOException("connection reset");
+			}
+		};
+
+		try
+		{
+			cache.get(NetworkId.BVG, 1, 10, false, fetch);
+			fail();
+		}
+		catch (final IOException x)
+		{
+			assertEquals("connection reset", x.getMessage());
+		}
+
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void concurrentMissesCoalesced() throws Exception
+	{
+		final DeparturesCache cache = new DeparturesCache(10, TTL, clock);
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger count = new AtomicInteger();
+		final Callable<QueryDeparturesResult> fetch = new Callable<QueryDeparturesResult>()
+		{
+			public QueryDeparturesResult call() throws Exception
+			{
+				count.incrementAndGet();
+				started.countDown();
+				release.await();
+				return board(10, QueryDeparturesResult.Status.OK);
+			}
+		};
+
+		final List<QueryDeparturesResult> results = new ArrayList<QueryDeparturesResult>();
+		final Runnable query = new Runnable()
+		{
+			public void run()
+			{
+				try
+				{
+					final QueryDeparturesResult result = cache.get(NetworkId.BVG, 1, 5, false, fetch);
+					synchronized (results)
+					{
+						results.add(result);
+					}
+				}
+				catch (final IOException x)
+				{
+					throw new RuntimeException(x);
+				}
+			}
+		};
+
+		final Thread owner = new Thread(query);
+		owner.start();
+		assertTrue(started.await(10, TimeUnit.SECONDS));
+
+		final Thread waiter = new Thread(query);
+		waiter.start();
+		while (cache.getCoalescedCount() == 0)
+			Thread.sleep(1);
+
+		release.countDown();
+		owner.join(10000);
+		waiter.join(10000);
+
+		assertEquals(1, count.get());
+		assertEquals(1, cache.getMissCount());
+		assertEquals(1, cache.getCoalescedCount());
+		assertEquals(2, results.size());
+		assertEquals(5, departures(results.get(0)));
+		assertEquals(5, departures(results.get(1)));
+	}
+
+	private static QueryDeparturesResult board(final int numDepartures, final QueryDeparturesResult.Status status)
+	{
+		final QueryDeparturesResult result = new QueryDeparturesResult(new ResultHeader("test"), status);
+		if (status == QueryDeparturesResult.Status.OK)
+		{
+			final List<Departure> departures = new ArrayList<Departure>();
+			for (int i = 0; i < numDepartures; i++)
+				departures.add(new Departure(new Date(i * 60000L), null, null, null, null, null, null));
+			result.stationDepartures.add(new StationDepartures(new Location(LocationType.STATION, 1), departures, null));
+		}
+		return result;
+	}
+
+	private static int departures(final QueryDeparturesResult result)
+	{
+		return result.stationDepartures.get(0).departures.size();
+	}
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.util;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+import de.schildbach.pte.util.HtmlTokenizer.Token;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class HtmlTokenizerTest
+{
+	@Test
+	public void tagsAndText() throws Exception
+	{
+		final HtmlTokenizer html = tokenizer("<TR Class=\"zebra1\">a &amp; b</tr>");
+
+		assertEquals(Token.START_TAG, html.next());
+		assertEquals("tr", html.getName());
+		assertEquals("zebra1", html.getAttribute("class"));
+		assertEquals(Token.TEXT, html.next());
+		assertEquals("a &amp; b", html.getText());
+		assertEquals(Token.END_TAG, html.next());
+		assertTrue(html.isEndTag("tr"));
+		assertEquals(Token.END_DOCUMENT, html.next());
+	}
+
+	@Test
+	public void attributeQuoting() throws Exception
+	{
+		final HtmlTokenizer html = tokenizer("<a href='x?a=1&b=2' title=\"it's\" id=plain checked>");
+
+		assertEquals(Token.START_TAG, html.next());
+		assertEquals(4, html.getAttributeCount());
+		assertEquals("x?a=1&b=2", html.getAttribute("href"));
+		assertEquals("it's", html.getAttribute("title"));
+		assertEquals("plain", html.getAttribute("id"));
+		assertEquals("", html.getAttribute("checked"));
+		assertNull(html.getAttribute("missing"));
+	}
+
+	@Test
+	public void emptyElementTag() throws Exception
+	{
+		final HtmlTokenizer html = tokenizer("<img src=\"/x_pic.gif\"/>Bus 10<br />");
+
+		assertEquals(Token.START_TAG, html.next());
+		assertTrue(html.isEmptyElementTag());
+		assertEquals("/x_pic.gif", html.getAttribute("src"));
+		assertEquals(Token.TEXT, html.next());
+		assertEquals("Bus 10", html.getText());
+		assertEquals(Token.START_TAG, html.next());
+		assertTrue(html.isStartTag("br"));
+		assertTrue(html.isEmptyElementTag());
+		assertEquals(Token.END_DOCUMENT, html.next());
+	}
+
+	@Test
+	public void skipsCommentsDoctypeAndScripts() throws Exception
+	{
+		final HtmlTokenizer html = tokenizer("<!DOCTYPE html><!-- <td>x</td> --><script>if (a < b) document.write('</td>');</script><td>y</td>");
+
+		assertEquals(Token.START_TAG, html.next());
+		assertTrue(html.isStartTag("script"));
+		assertEquals(Token.END_TAG, html.next());
+		assertTrue(html.isEndTag("script"));
+		assertEquals(Token.START_TAG, html.next());
+		assertTrue(html.isStartTag("td"));
+		assertEquals(Token.TEXT, html.next());
+		assertEquals("y", html.getText());
+	}
+
+	@Test
+	public void lenientLessThan() throws Exception
+	{
+		final HtmlTokenizer html = tokenizer("a < b <<c>");
+
+		assertEquals(Token.TEXT, html.next());
+		assertEquals("a < b <", html.getText());
+		assertEquals(Token.START_TAG, html.next());
+		assertTrue(html.isStartTag("c"));
+	}
+
+	@Test
+	public void nextText() throws Exception
+	{
+		final HtmlTokenizer html = tokenizer("<td>a<span>b<span>c</span></span>d</td><td/><tr>");
+
+		html.next();
+		assertEquals("abcd", html.nextText());
+		assertTrue(html.isEndTag("td"));
+
+		html.next();
+		assertTrue(html.isEmptyElementTag());
+		assertEquals("", html.nextText());
+
+		assertEquals(Token.START_TAG, html.next());
+		assertTrue(html.isStartTag("tr"));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void nextTextNotOnStartTag() throws Exception
+	{
+		final HtmlTokenizer html = tokenizer("text");
+
+		html.next();
+		html.nextText();
+	}
+
+	@Test
+	public void textAcrossBufferBoundary() throws Exception
+	{
+		final StringBuilder page = new StringBuilder();
+		for (int i = 0; i < 1000; i++)
+			page.append("<tr class=\"row").append(i).append("\">").append(i).append("</tr>");
+
+		final HtmlTokenizer html = tokenizer(page.toString());
+		int rows = 0;
+		while (html.next() != Token.END_DOCUMENT)
+		{
+			if (html.isStartTag("tr"))
+			{
+				assertEquals("row" + rows, html.getAttribute("class"));
+				assertEquals(Integer.toString(rows), html.nextText());
+				rows++;
+			}
+		}
+
+		assertEquals(1000, rows);
+	}
+
+	@Test
+	public void unterminated() throws Exception
+	{
+		final HtmlTokenizer html = tokenizer("<td class=\"x");
+
+		assertEquals(Token.START_TAG, html.next());
+		assertEquals("x", html.getAttribute("class"));
+		assertEquals(Token.END_DOCUMENT, html.next());
+		assertFalse(html.isStartTag("td"));
+	}
+
+	private static HtmlTokenizer tokenizer(final String page) throws IOException
+	{
+		return new HtmlTokenizer(new StringReader(page));
+	}
+}
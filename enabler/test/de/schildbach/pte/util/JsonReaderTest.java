@@ -0,0 +1,185 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.util;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+import java.io.StringReader;
+
+import org.json.JSONException;
+import org.junit.Test;
+
+import de.schildbach.pte.util.JsonReader.Token;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class JsonReaderTest
+{
+	@Test
+	public void objectsAndArrays() throws Exception
+	{
+		final JsonReader reader = reader("{\"error\":0, \"stops\": [ {\"extId\":\"8000\",\"name\":\"A\"}, {\"extId\":8001,\"name\":null} ] }");
+
+		reader.beginObject();
+		assertEquals("error", reader.nextName());
+		assertEquals(0, reader.nextInt());
+		assertEquals("stops", reader.nextName());
+		reader.beginArray();
+		reader.beginObject();
+		assertEquals("extId", reader.nextName());
+		assertEquals(8000, reader.nextInt());
+		assertEquals("name", reader.nextName());
+		assertEquals("A", reader.nextString());
+		assertFalse(reader.hasNext());
+		reader.endObject();
+		assertTrue(reader.hasNext());
+		reader.beginObject();
+		reader.nextName();
+		assertEquals(8001, reader.nextInt());
+		reader.nextName();
+		assertNull(reader.nextString());
+		reader.endObject();
+		reader.endArray();
+		reader.endObject();
+		assertEquals(Token.END_DOCUMENT, reader.peek());
+	}
+
+	@Test
+	public void escapes() throws Exception
+	{
+		final JsonReader reader = reader("[\"a\\\"b\\\\c\\/d\\n\\u00fc\", 'single']");
+
+		reader.beginArray();
+		assertEquals("a\"b\\c/d\nü", reader.nextString());
+		assertEquals("single", reader.nextString());
+		reader.endArray();
+	}
+
+	@Test
+	public void lenientScalars() throws Exception
+	{
+		final JsonReader reader = reader("[12.7, \"42\", 5, true, \"x\", null, \"false\"]");
+
+		reader.beginArray();
+		assertEquals(12, reader.nextInt());
+		assertEquals(42, reader.nextInt());
+		assertEquals("5", reader.nextString());
+		assertEquals("true", reader.nextString());
+		assertEquals(-1, reader.nextInt(-1));
+		assertEquals(-1, reader.nextInt(-1));
+		assertFalse(reader.nextBoolean());
+		reader.endArray();
+	}
+
+	@Test
+	public void skipValue() throws Exception
+	{
+		final JsonReader reader = reader("{\"a\":{\"b\":[1,[2,{\"c\":3}]],\"d\":\"}\"},\"e\":4}");
+
+		reader.beginObject();
+		assertEquals("a", reader.nextName());
+		reader.skipValue();
+		assertEquals("e", reader.nextName());
+		assertEquals(4, reader.nextInt());
+		reader.endObject();
+	}
+
+	@Test
+	public void deepNesting() throws Exception
+	{
+		final int depth = 100;
+		final StringBuilder json = new StringBuilder();
+		for (int i = 0; i < depth; i++)
+			json.append('[');
+		for (int i = 0; i < depth; i++)
+			json.append(']');
+
+		final JsonReader reader = reader(json.toString());
+		for (int i = 0; i < depth; i++)
+			reader.beginArray();
+		for (int i = 0; i < depth; i++)
+			reader.endArray();
+		assertEquals(Token.END_DOCUMENT, reader.peek());
+	}
+
+	@Test
+	public void jsonp() throws Exception
+	{
+		final JsonReader reader = reader("SLs.sls={\"suggestions\":[]};SLs.showSuggestion();");
+
+		reader.skipPast('=');
+		reader.beginObject();
+		assertEquals("suggestions", reader.nextName());
+		reader.beginArray();
+		reader.endArray();
+		reader.endObject();
+	}
+
+	@Test
+	public void longStringAcrossBuffer() throws Exception
+	{
+		final StringBuilder value = new StringBuilder();
+		for (int i = 0; i < 5000; i++)
+			value.append((char) ('a' + i % 26));
+
+		final JsonReader reader = reader("[\"" + value + "\"]");
+		reader.beginArray();
+		assertEquals(value.toString(), reader.nextString());
+		reader.endArray();
+	}
+
+	@Test(expected = JSONException.class)
+	public void missingComma() throws Exception
+	{
+		final JsonReader reader = reader("[1 2]");
+
+		reader.beginArray();
+		reader.nextInt();
+		reader.nextInt();
+	}
+
+	@Test(expected = JSONException.class)
+	public void unterminatedString() throws Exception
+	{
+		final JsonReader reader = reader("[\"abc");
+
+		reader.beginArray();
+		reader.nextString();
+	}
+
+	@Test(expected = JSONException.class)
+	public void wrongToken() throws Exception
+	{
+		reader("[1]").beginObject();
+	}
+
+	@Test(expected = JSONException.class)
+	public void skipPastMissing() throws Exception
+	{
+		reader("{}").skipPast('=');
+	}
+
+	private static JsonReader reader(final String json)
+	{
+		return new JsonReader(new StringReader(json));
+	}
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.util;
+
+/**
+ * {@link Clock} that only moves when told to.
+ *
+ * @author Andreas Schildbach
+ */
+public final class ManualClock implements Clock
+{
+	private long now;
+
+	public ManualClock(final long now)
+	{
+		this.now = now;
+	}
+
+	public synchronized long currentTimeMillis()
+	{
+		return now;
+	}
+
+	public synchronized void advance(final long millis)
+	{
+		now += millis;
+	}
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.util;
+
+import static junit.framework.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class MultiReplaceReaderTest
+{
+	@Test
+	public void singlePattern() throws Exception
+	{
+		assertEquals("a &amp; b &amp; c", drain(new MultiReplaceReader(new StringReader("a & b & c"), " & ", " &amp; ")));
+	}
+
+	@Test
+	public void patternAcrossBufferBoundary() throws Exception
+	{
+		final StringBuilder input = new StringBuilder();
+		final StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 1000; i++)
+		{
+			input.append("Ringbahn -> x");
+			expected.append("Ringbahn -&gt; x");
+		}
+
+		final MultiReplaceReader reader = new MultiReplaceReader(new StringReader(input.toString()));
+		reader.replace("Ringbahn ->", "Ringbahn -&gt;");
+		reader.replace("Ringbahn <-", "Ringbahn &lt;-");
+
+		assertEquals(expected.toString(), drainBulk(reader));
+	}
+
+	@Test
+	public void independentPatternsLikeChain() throws Exception
+	{
+		final String input = "<a x=\"Ringbahn -> S & U\"/><b x=\"Ringbahn <- & \"/> & ";
+
+		final MultiReplaceReader multi = new MultiReplaceReader(new StringReader(input), " & ", " &amp; ");
+		multi.replace("Ringbahn ->", "Ringbahn -&gt;");
+		multi.replace("Ringbahn <-", "Ringbahn &lt;-");
+
+		final StringReplaceReader chain = new StringReplaceReader(new StringReader(input), " & ", " &amp; ");
+		chain.replace("Ringbahn ->", "Ringbahn -&gt;");
+		chain.replace("Ringbahn <-", "Ringbahn &lt;-");
+
+		assertEquals(drain(chain), drain(multi));
+	}
+
+	@Test
+	public void overlappingPatterns() throws Exception
+	{
+		// a chain would first turn " & " into " &amp; " and then still find the second pattern
+		final MultiReplaceReader reader = new MultiReplaceReader(new StringReader("<j dir=\"Sp & Co\"/>"), " & ", " &amp; ");
+		reader.replace("dir=\"Sp ", " ");
+
+		assertEquals("<j  & Co\"/>", drain(reader));
+	}
+
+	@Test
+	public void overlappingMatchEndingFirstWins() throws Exception
+	{
+		final MultiReplaceReader reader = new MultiReplaceReader(new StringReader("abcd bc"), "abc", "X");
+		reader.replace("bcd", "Y");
+		reader.replace("bc", "Z");
+
+		assertEquals("Xd Z", drain(reader));
+	}
+
+	@Test
+	public void replacementIsNotSearchedAgain() throws Exception
+	{
+		final MultiReplaceReader reader = new MultiReplaceReader(new StringReader("cat dog"), "cat", "dog");
+		reader.replace("dog", "house");
+
+		assertEquals("dog house", drain(reader));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void replaceAfterRead() throws Exception
+	{
+		final MultiReplaceReader reader = new MultiReplaceReader(new StringReader("x"), "a", "b");
+		reader.read();
+		reader.replace("c", "d");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void emptyPattern() throws Exception
+	{
+		new MultiReplaceReader(new StringReader("x"), "", "b");
+	}
+
+	static String drain(final Reader reader) throws IOException
+	{
+		final StringBuilder builder = new StringBuilder();
+		int c;
+		while ((c = reader.read()) != -1)
+			builder.append((char) c);
+		return builder.toString();
+	}
+
+	static String drainBulk(final Reader reader) throws IOException
+	{
+		final StringBuilder builder = new StringBuilder();
+		final char[] buffer = new char[100];
+		int count;
+		while ((count = reader.read(buffer, 0, buffer.length)) != -1)
+			builder.append(buffer, 0, count);
+		return builder.toString();
+	}
+}
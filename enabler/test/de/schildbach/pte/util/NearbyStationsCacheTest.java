@@ -0,0 +1,128 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.util;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import de.schildbach.pte.NetworkId;
+import de.schildbach.pte.dto.Location;
+import de.schildbach.pte.dto.LocationType;
+import de.schildbach.pte.dto.NearbyStationsResult;
+import de.schildbach.pte.dto.ResultHeader;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class NearbyStationsCacheTest
+{
+	private static final long TTL = 1000;
+	private static final int CELL_SIZE = 100000;
+	private static final int LAT = 52500000, LON = 13400000;
+
+	// roughly 111m and 222m north of the center
+	private static final Location NEAR = new Location(LocationType.STATION, 1, LAT + 1000, LON);
+	private static final Location FAR = new Location(LocationType.STATION, 2, LAT + 2000, LON);
+
+	private final ManualClock clock = new ManualClock(0);
+	private final NearbyStationsCache cache = new NearbyStationsCache(10, CELL_SIZE, TTL, clock);
+
+	@Test
+	public void completeResultCoversMaxDistance()
+	{
+		cache.put(NetworkId.BVG, LAT, LON, 1000, 10, result(FAR, NEAR));
+
+		assertEquals(Arrays.asList(NEAR, FAR), cache.get(NetworkId.BVG, LAT, LON, 1000, 0).stations);
+		assertEquals(Arrays.asList(NEAR), cache.get(NetworkId.BVG, LAT, LON, 150, 0).stations);
+		assertEquals(Arrays.asList(NEAR), cache.get(NetworkId.BVG, LAT, LON, 1000, 1).stations);
+		assertNull(cache.get(NetworkId.BVG, LAT, LON, 2000, 0));
+	}
+
+	@Test
+	public void truncatedResultCoversFarthestStation()
+	{
+		cache.put(NetworkId.BVG, LAT, LON, 1000, 2, result(NEAR, FAR));
+
+		assertNull(cache.get(NetworkId.BVG, LAT, LON, 1000, 0));
+		assertEquals(Arrays.asList(NEAR, FAR), cache.get(NetworkId.BVG, LAT, LON, 0, 2).stations);
+		assertEquals(Arrays.asList(NEAR), cache.get(NetworkId.BVG, LAT, LON, 200, 0).stations);
+	}
+
+	@Test
+	public void unlimitedStationsCoversFarthestStation()
+	{
+		// the provider may have cut the result at its default number of stations
+		cache.put(NetworkId.BVG, LAT, LON, 1000, 0, result(NEAR, FAR));
+
+		assertNull(cache.get(NetworkId.BVG, LAT, LON, 1000, 0));
+		assertNull(cache.get(NetworkId.BVG, LAT, LON, 0, 3));
+		assertEquals(Arrays.asList(NEAR, FAR), cache.get(NetworkId.BVG, LAT, LON, 0, 2).stations);
+		assertEquals(Arrays.asList(NEAR), cache.get(NetworkId.BVG, LAT, LON, 200, 0).stations);
+	}
+
+	@Test
+	public void offsetReducesCoverage()
+	{
+		cache.put(NetworkId.BVG, LAT, LON, 1000, 10, result(NEAR, FAR));
+
+		// about 555m away from where the result was fetched, so only about 445m around it are known
+		assertEquals(Arrays.asList(FAR), cache.get(NetworkId.BVG, LAT + 5000, LON, 400, 0).stations);
+		assertNull(cache.get(NetworkId.BVG, LAT + 5000, LON, 500, 0));
+	}
+
+	@Test
+	public void expiry()
+	{
+		cache.put(NetworkId.BVG, LAT, LON, 1000, 10, result(NEAR, FAR));
+
+		clock.advance(TTL - 1);
+		assertEquals(2, cache.get(NetworkId.BVG, LAT, LON, 1000, 0).stations.size());
+
+		clock.advance(1);
+		assertNull(cache.get(NetworkId.BVG, LAT, LON, 1000, 0));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void neitherLimitGoesUpstream()
+	{
+		cache.put(NetworkId.BVG, LAT, LON, 1000, 10, result(NEAR, FAR));
+
+		assertNull(cache.get(NetworkId.BVG, LAT, LON, 0, 0));
+		assertNull(cache.get(NetworkId.VBB, LAT, LON, 1000, 0));
+		assertEquals(2, cache.getMissCount());
+	}
+
+	@Test
+	public void failedResultIgnored()
+	{
+		cache.put(NetworkId.BVG, LAT, LON, 1000, 10, new NearbyStationsResult(new ResultHeader("test"), NearbyStationsResult.Status.SERVICE_DOWN));
+		cache.put(NetworkId.BVG, LAT, LON, 1000, 10, result(new Location(LocationType.STATION, 3)));
+
+		assertEquals(0, cache.size());
+	}
+
+	private static NearbyStationsResult result(final Location... stations)
+	{
+		return new NearbyStationsResult(new ResultHeader("test"), Arrays.asList(stations));
+	}
+}
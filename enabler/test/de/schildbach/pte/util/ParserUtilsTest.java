@@ -0,0 +1,201 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.util;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class ParserUtilsTest
+{
+	@Test
+	public void scanIsoDate()
+	{
+		assertEquals(20121017, ParserUtils.scanIsoDate("2012-10-17"));
+		assertEquals(20121017, ParserUtils.scanIsoDate("17-10-2012"));
+		assertEquals(-1, ParserUtils.scanIsoDate("2012-10-1"));
+		assertEquals(-1, ParserUtils.scanIsoDate("2012/10/17"));
+		assertEquals(-1, ParserUtils.scanIsoDate("2012-1x-17"));
+	}
+
+	@Test
+	public void scanGermanDate()
+	{
+		assertEquals(20121017, ParserUtils.scanGermanDate("17.10.12"));
+		assertEquals(20121017, ParserUtils.scanGermanDate("17.10.2012"));
+		assertEquals(20121017, ParserUtils.scanGermanDate("17/10/2012"));
+		assertEquals(20121017, ParserUtils.scanGermanDate("17-10-12"));
+		assertEquals(-1, ParserUtils.scanGermanDate("7.10.12"));
+		assertEquals(-1, ParserUtils.scanGermanDate("17.10.12 "));
+		assertEquals(-1, ParserUtils.scanGermanDate("17:10:12"));
+		assertEquals(-1, ParserUtils.scanGermanDate("1a.10.12"));
+	}
+
+	@Test
+	public void scanAmericanDate()
+	{
+		assertEquals(20121017, ParserUtils.scanAmericanDate("10/17/12"));
+		assertEquals(20121017, ParserUtils.scanAmericanDate("10/17/2012"));
+		assertEquals(-1, ParserUtils.scanAmericanDate("10.17.2012"));
+		assertEquals(-1, ParserUtils.scanAmericanDate("10/17/"));
+	}
+
+	@Test
+	public void scanEuropeanTime()
+	{
+		assertEquals(93000, ParserUtils.scanEuropeanTime("9:30"));
+		assertEquals(193000, ParserUtils.scanEuropeanTime("19:30"));
+		assertEquals(193015, ParserUtils.scanEuropeanTime("19:30:15"));
+		assertEquals(-1, ParserUtils.scanEuropeanTime("1930"));
+		assertEquals(-1, ParserUtils.scanEuropeanTime("19:3"));
+		assertEquals(-1, ParserUtils.scanEuropeanTime("19:30:1"));
+		assertEquals(-1, ParserUtils.scanEuropeanTime("19:30 "));
+		assertEquals(-1, ParserUtils.scanEuropeanTime("ab:cd"));
+	}
+
+	@Test
+	public void scanAmericanTime()
+	{
+		assertEquals(93000, ParserUtils.scanAmericanTime("9:30 AM"));
+		assertEquals(213000, ParserUtils.scanAmericanTime("9:30 PM"));
+		assertEquals(3000, ParserUtils.scanAmericanTime("12:30 AM"));
+		assertEquals(123000, ParserUtils.scanAmericanTime("12:30 PM"));
+		assertEquals(213015, ParserUtils.scanAmericanTime("09:30:15 PM"));
+		assertEquals(-1, ParserUtils.scanAmericanTime("13:30 PM"));
+		assertEquals(-1, ParserUtils.scanAmericanTime("9:30 XM"));
+		assertEquals(-1, ParserUtils.scanAmericanTime("9:30PM"));
+	}
+
+	@Test
+	public void parseIntoCalendar()
+	{
+		final Calendar calendar = new GregorianCalendar(TimeZone.getTimeZone("Europe/Berlin"));
+		calendar.clear();
+		ParserUtils.parseGermanDate(calendar, "17.10.12");
+		ParserUtils.parseAmericanTime(calendar, "12:05 PM");
+
+		assertEquals(2012, calendar.get(Calendar.YEAR));
+		assertEquals(Calendar.OCTOBER, calendar.get(Calendar.MONTH));
+		assertEquals(17, calendar.get(Calendar.DAY_OF_MONTH));
+		assertEquals(12, calendar.get(Calendar.HOUR_OF_DAY));
+		assertEquals(5, calendar.get(Calendar.MINUTE));
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void parseUnparsable()
+	{
+		ParserUtils.parseEuropeanTime(new GregorianCalendar(), "25h");
+	}
+
+	@Test
+	public void digits()
+	{
+		assertEquals(123, ParserUtils.digits("x123y", 1, 4));
+		assertEquals(-1, ParserUtils.digits("x123y", 0, 4));
+		assertEquals(-1, ParserUtils.digits("123", 1, 1));
+	}
+
+	@Test
+	public void resolveNamedEntities()
+	{
+		assertEquals("a & b", ParserUtils.resolveEntities("a &amp; b"));
+		assertEquals("\"Müller\" 's", ParserUtils.resolveEntities("&quot;M&uuml;ller&quot; &apos;s"));
+		assertEquals("Straße – €", ParserUtils.resolveEntities("Stra&szlig;e &ndash; &euro;"));
+		assertEquals("ϑ", ParserUtils.resolveEntities("&thetasym;"));
+		assertEquals("a b", ParserUtils.resolveEntities("a&nbsp;b"));
+	}
+
+	@Test
+	public void resolveNumericEntities()
+	{
+		assertEquals("ü", ParserUtils.resolveEntities("&#252;"));
+		assertEquals("üü", ParserUtils.resolveEntities("&#xfc;&#XFC;"));
+		assertEquals("😀", ParserUtils.resolveEntities("&#x1f600;"));
+	}
+
+	@Test
+	public void leaveUnresolvableEntities()
+	{
+		assertEquals("&unknown; & x", ParserUtils.resolveEntities("&unknown; & x"));
+		assertEquals("&amp &; &#; &#x; &#12a;", ParserUtils.resolveEntities("&amp &; &#; &#x; &#12a;"));
+		assertEquals("&#x110000;", ParserUtils.resolveEntities("&#x110000;"));
+		assertEquals("&&", ParserUtils.resolveEntities("&&amp;"));
+		assertEquals("a &", ParserUtils.resolveEntities("a &"));
+	}
+
+	@Test
+	public void resolveWithoutEntities()
+	{
+		assertNull(ParserUtils.resolveEntities(null));
+		assertEquals("", ParserUtils.resolveEntities(""));
+		assertEquals("plain text", ParserUtils.resolveEntities(new StringBuilder("plain text")));
+	}
+
+	@Test
+	public void epochMillisAcrossTimeZones()
+	{
+		final TimeZone berlin = TimeZone.getTimeZone("Europe/Berlin");
+		final TimeZone newYork = TimeZone.getTimeZone("America/New_York");
+		final TimeZone utc = TimeZone.getTimeZone("UTC");
+
+		// alternating zones for the same day must not see each other's offset
+		for (int i = 0; i < 2; i++)
+		{
+			assertEpochMillis(berlin, 20121017, 93000);
+			assertEpochMillis(newYork, 20121017, 93000);
+			assertEpochMillis(utc, 20121017, 93000);
+		}
+
+		// days with a daylight saving transition, including the skipped and the repeated hour
+		assertEpochMillis(berlin, 20120325, 13000);
+		assertEpochMillis(berlin, 20120325, 23000);
+		assertEpochMillis(berlin, 20120325, 33000);
+		assertEpochMillis(berlin, 20121028, 23000);
+		assertEpochMillis(newYork, 20121104, 13000);
+
+		// leap day, turn of the year and dates before 1970
+		assertEpochMillis(berlin, 20120229, 235959);
+		assertEpochMillis(newYork, 20121231, 235959);
+		assertEpochMillis(utc, 19600301, 0);
+	}
+
+	private static void assertEpochMillis(final TimeZone timeZone, final int packedDate, final int packedTime)
+	{
+		final Calendar calendar = new GregorianCalendar(timeZone);
+		calendar.clear();
+		calendar.set(packedDate / 10000, packedDate / 100 % 100 - 1, packedDate % 100, packedTime / 10000, packedTime / 100 % 100, packedTime % 100);
+
+		assertEquals(calendar.getTimeInMillis(), ParserUtils.epochMillis(timeZone, packedDate, packedTime));
+	}
+
+	@Test
+	public void indexOf()
+	{
+		assertEquals(2, ParserUtils.indexOf("01d12:30:00", 'd', 0));
+		assertEquals(3, ParserUtils.indexOf("a:b:c", ':', 2));
+		assertEquals(-1, ParserUtils.indexOf("12:30:00", 'd', 0));
+	}
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.util;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.schildbach.pte.dto.Location;
+import de.schildbach.pte.dto.LocationType;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class StationDirectoryTest
+{
+	private static final Location ALEX = new Location(LocationType.STATION, 100, 52521918, 13413215, "Berlin", "Alexanderplatz");
+	private static final Location ZOO = new Location(LocationType.STATION, 200, 52506921, 13332707, "Berlin", "Zoologischer Garten");
+	private static final Location ALT_MARIENDORF = new Location(LocationType.STATION, 300, 52439787, 13388197, "Berlin", "Alt-Mariendorf");
+
+	private File dir;
+	private File file;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		dir = File.createTempFile("stations", "");
+		dir.delete();
+		dir.mkdir();
+		file = new File(dir, "stations.dat");
+	}
+
+	@After
+	public void tearDown()
+	{
+		delete(dir);
+	}
+
+	@Test
+	public void addAndGet() throws Exception
+	{
+		final StationDirectory directory = new StationDirectory(file);
+		directory.addAll(Arrays.asList(ALEX, ZOO));
+		directory.add(new Location(LocationType.ADDRESS, 0, null, "Alexanderstraße 1"));
+		directory.add(null);
+
+		assertEquals(2, directory.size());
+		assertEquals(ALEX.name, directory.get(ALEX.id).name);
+		assertNull(directory.get(1));
+		assertFalse(file.exists());
+	}
+
+	@Test
+	public void persistedByFlush() throws Exception
+	{
+		final StationDirectory directory = new StationDirectory(file);
+		directory.addAll(Arrays.asList(ALEX, ZOO));
+		directory.flush();
+
+		final StationDirectory reopened = new StationDirectory(file);
+		assertEquals(2, reopened.size());
+		final Location zoo = reopened.get(ZOO.id);
+		assertEquals(ZOO.lat, zoo.lat);
+		assertEquals(ZOO.lon, zoo.lon);
+		assertEquals(ZOO.place, zoo.place);
+		assertEquals(ZOO.name, zoo.name);
+	}
+
+	@Test
+	public void mergeKeepsKnownDetails() throws Exception
+	{
+		final StationDirectory directory = new StationDirectory(file);
+		directory.add(ALEX);
+		directory.flush();
+		directory.add(new Location(LocationType.STATION, ALEX.id, null, "S+U Alexanderplatz"));
+
+		final Location alex = directory.get(ALEX.id);
+		assertEquals("S+U Alexanderplatz", alex.name);
+		assertEquals("Berlin", alex.place);
+		assertEquals(ALEX.lat, alex.lat);
+		assertEquals(1, directory.size());
+	}
+
+	@Test
+	public void autocomplete() throws Exception
+	{
+		final StationDirectory directory = new StationDirectory(file);
+		directory.addAll(Arrays.asList(ALEX, ZOO));
+		directory.flush();
+		directory.add(ALT_MARIENDORF);
+
+		assertEquals(Arrays.asList(ALEX, ALT_MARIENDORF), directory.autocomplete("al", 0));
+		assertEquals(Arrays.asList(ALT_MARIENDORF), directory.autocomplete("mariendorf alt", 0));
+		assertEquals(Arrays.asList(ZOO), directory.autocomplete("berlin garten", 0));
+		assertEquals(1, directory.autocomplete("berlin", 1).size());
+		assertTrue(directory.autocomplete("  ", 0).isEmpty());
+	}
+
+	@Test
+	public void failedFlushKeepsDirectoryUsable() throws Exception
+	{
+		final StationDirectory directory = new StationDirectory(file);
+		directory.add(ALEX);
+		directory.flush();
+		directory.add(ZOO);
+
+		// the temporary file cannot be written while a directory is in its place
+		final File tempFile = new File(file.getPath() + ".tmp");
+		tempFile.mkdir();
+		try
+		{
+			directory.flush();
+			fail();
+		}
+		catch (final IOException x)
+		{
+			// expected
+		}
+
+		assertEquals(ALEX.name, directory.get(ALEX.id).name);
+		assertEquals(ZOO.name, directory.get(ZOO.id).name);
+		assertEquals(1, new StationDirectory(file).size());
+
+		tempFile.delete();
+		directory.flush();
+		assertEquals(2, new StationDirectory(file).size());
+	}
+
+	@Test
+	public void recoversFileMovedAside() throws Exception
+	{
+		final StationDirectory directory = new StationDirectory(file);
+		directory.add(ALEX);
+		directory.flush();
+
+		// as left behind by a crash between moving the old file aside and renaming the new one into place
+		assertTrue(file.renameTo(new File(file.getPath() + ".old")));
+
+		final StationDirectory reopened = new StationDirectory(file);
+		assertEquals(ALEX.name, reopened.get(ALEX.id).name);
+		assertTrue(file.exists());
+	}
+
+	@Test
+	public void flushesOnExecutor() throws Exception
+	{
+		final List<Runnable> tasks = new ArrayList<Runnable>();
+		final StationDirectory directory = new StationDirectory(file, new Executor()
+		{
+			public void execute(final Runnable task)
+			{
+				tasks.add(task);
+			}
+		});
+		for (int i = 1; i <= 300; i++)
+			directory.add(new Location(LocationType.STATION, i, null, "Station " + i));
+
+		// adding never writes the file itself, and schedules one flush only
+		assertFalse(file.exists());
+		assertEquals(1, tasks.size());
+
+		tasks.get(0).run();
+		assertEquals(300, new StationDirectory(file).size());
+		assertEquals(300, directory.size());
+	}
+
+	@Test
+	public void notFlushedWithoutExecutor() throws Exception
+	{
+		final StationDirectory directory = new StationDirectory(file);
+		for (int i = 1; i <= 300; i++)
+			directory.add(new Location(LocationType.STATION, i, null, "Station " + i));
+
+		assertFalse(file.exists());
+		assertEquals(300, directory.size());
+	}
+
+	private static void delete(final File file)
+	{
+		final File[] files = file.listFiles();
+		if (files != null)
+			for (final File f : files)
+				delete(f);
+		file.delete();
+	}
+}
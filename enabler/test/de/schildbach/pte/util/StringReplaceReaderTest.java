@@ -0,0 +1,73 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.util;
+
+import static junit.framework.Assert.assertEquals;
+
+import java.io.StringReader;
+
+import org.junit.Test;
+
+/**
+ * @author Andreas Schildbach
+ */
+public class StringReplaceReaderTest
+{
+	@Test
+	public void chainAppliesPairsInOrder() throws Exception
+	{
+		final StringReplaceReader reader = new StringReplaceReader(new StringReader("cat dog"), "cat", "dog");
+		reader.replace("dog", "house");
+
+		assertEquals("house house", MultiReplaceReaderTest.drain(reader));
+	}
+
+	@Test
+	public void inputShorterThanPattern() throws Exception
+	{
+		assertEquals("ab", MultiReplaceReaderTest.drain(new StringReplaceReader(new StringReader("ab"), "abc", "x")));
+	}
+
+	@Test
+	public void singleCharReads() throws Exception
+	{
+		final StringBuilder input = new StringBuilder();
+		final StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 500; i++)
+		{
+			input.append("a & b ");
+			expected.append("a &amp; b ");
+		}
+
+		final StringReplaceReader reader = new StringReplaceReader(new StringReader(input.toString()), " & ", " &amp; ");
+
+		assertEquals(expected.toString(), MultiReplaceReaderTest.drain(reader));
+	}
+
+	@Test
+	public void customReplacesSeeAmpersandFix() throws Exception
+	{
+		// as set up by AbstractHafasProvider.xmlQueryDepartures and PlProvider.addCustomReplaces
+		final StringReplaceReader reader = new StringReplaceReader(new StringReader("<j dir=\"Sp & Co\"/>"), " & ", " &amp; ");
+		reader.replace("Ringbahn ->", "Ringbahn -&gt;");
+		reader.replace("Ringbahn <-", "Ringbahn &lt;-");
+		reader.replace("dir=\"Sp ", " ");
+
+		assertEquals("<j  &amp; Co\"/>", MultiReplaceReaderTest.drainBulk(reader));
+	}
+}
@@ -17,14 +17,16 @@
 
 package de.schildbach.pte.service;
 
-import java.io.IOException;
 import java.util.Date;
+import java.util.concurrent.Callable;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import de.schildbach.pte.NetworkProvider.Accessibility;
 import de.schildbach.pte.NetworkProvider.WalkSpeed;
@@ -41,18 +43,28 @@ public class ConnectionController
 {
 	private final RtProvider provider = new RtProvider();
 
+	@Autowired
+	private ProviderExecutor executor;
+
 	@RequestMapping(value = "/connection", method = RequestMethod.GET)
 	@ResponseBody
-	public QueryConnectionsResult connection(@RequestParam(value = "fromType", required = false, defaultValue = "ANY") final LocationType fromType,
+	public DeferredResult<QueryConnectionsResult> connection(@RequestParam(value = "fromType", required = false, defaultValue = "ANY") final LocationType fromType,
 			@RequestParam(value = "from", required = false) final String from,
 			@RequestParam(value = "fromId", required = false, defaultValue = "0") final int fromId,
 			@RequestParam(value = "toType", required = false, defaultValue = "ANY") final LocationType toType,
 			@RequestParam(value = "to", required = false) final String to,
-			@RequestParam(value = "toId", required = false, defaultValue = "0") final int toId) throws IOException
+			@RequestParam(value = "toId", required = false, defaultValue = "0") final int toId)
 	{
 		final Location fromLocation = new Location(fromType, fromId, null, from);
 		final Location toLocation = new Location(toType, toId, null, to);
 		final String products = "IRSUTBFC";
-		return provider.queryConnections(fromLocation, null, toLocation, new Date(), true, 4, products, WalkSpeed.NORMAL, Accessibility.NEUTRAL, null);
+		final Date date = new Date();
+		return executor.execute(new Callable<QueryConnectionsResult>()
+		{
+			public QueryConnectionsResult call() throws Exception
+			{
+				return provider.queryConnections(fromLocation, null, toLocation, date, true, 4, products, WalkSpeed.NORMAL, Accessibility.NEUTRAL, null);
+			}
+		});
 	}
 }
@@ -17,14 +17,16 @@
 
 package de.schildbach.pte.service;
 
-import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.Callable;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import de.schildbach.pte.RtProvider;
 import de.schildbach.pte.dto.Location;
@@ -39,18 +41,33 @@ public class LocationController
 {
 	private final RtProvider provider = new RtProvider();
 
+	@Autowired
+	private ProviderExecutor executor;
+
 	@RequestMapping(value = "/location/suggest", method = RequestMethod.GET)
 	@ResponseBody
-	public List<Location> autocomplete(@RequestParam("q") final String query) throws IOException
+	public DeferredResult<List<Location>> autocomplete(@RequestParam("q") final String query)
 	{
-		return provider.autocompleteStations(query);
+		return executor.execute(new Callable<List<Location>>()
+		{
+			public List<Location> call() throws Exception
+			{
+				return provider.autocompleteStations(query);
+			}
+		});
 	}
 
 	@RequestMapping(value = "/location/nearby", method = RequestMethod.GET)
 	@ResponseBody
-	public NearbyStationsResult nearby(@RequestParam("lat") final int lat, @RequestParam("lon") final int lon) throws IOException
+	public DeferredResult<NearbyStationsResult> nearby(@RequestParam("lat") final int lat, @RequestParam("lon") final int lon)
 	{
 		final Location location = new Location(LocationType.ANY, lat, lon);
-		return provider.queryNearbyStations(location, 5000, 100);
+		return executor.execute(new Callable<NearbyStationsResult>()
+		{
+			public NearbyStationsResult call() throws Exception
+			{
+				return provider.queryNearbyStations(location, 5000, 100);
+			}
+		});
 	}
 }
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.service;
+
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.core.Ordered;
+import org.springframework.web.servlet.HandlerExceptionResolver;
+import org.springframework.web.servlet.ModelAndView;
+
+/**
+ * Answers calls rejected by a full {@link ProviderExecutor} with {@code 503 Service Unavailable} and a
+ * {@code Retry-After} header, so that clients can tell overload apart from a failure of the call itself.
+ *
+ * @author Andreas Schildbach
+ */
+public class OverloadExceptionResolver implements HandlerExceptionResolver, Ordered
+{
+	private final int retryAfter;
+
+	/**
+	 * @param retryAfter
+	 *            seconds after which clients should try again
+	 */
+	public OverloadExceptionResolver(final int retryAfter)
+	{
+		this.retryAfter = retryAfter;
+	}
+
+	public ModelAndView resolveException(final HttpServletRequest request, final HttpServletResponse response, final Object handler,
+			final Exception x)
+	{
+		if (!(x instanceof RejectedExecutionException))
+			return null;
+
+		response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+		response.setHeader("Retry-After", Integer.toString(retryAfter));
+
+		return new ModelAndView(); // handled, nothing to render
+	}
+
+	public int getOrder()
+	{
+		return Ordered.HIGHEST_PRECEDENCE;
+	}
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.web.context.request.async.DeferredResult;
+
+/**
+ * Runs the blocking provider calls of the controllers.
+ *
+ * In {@link Mode#SYNC} mode, calls run on the servlet container thread, as before. In {@link Mode#ASYNC} mode, they
+ * are handed to a bounded thread pool and the container thread is released until the result is ready. Calls that
+ * don't fit into the queue are rejected with {@link RejectedExecutionException}, which {@link OverloadExceptionResolver}
+ * turns into a 503 response.
+ *
+ * When a request times out, its call is cancelled: a call still waiting in the queue is removed and never runs, a
+ * running call is interrupted. Provider calls block in socket I/O, which does not react to interrupts, so a running call
+ * keeps occupying its pool thread until the upstream server responds or the connection times out.
+ *
+ * @author Andreas Schildbach
+ */
+public class ProviderExecutor implements DisposableBean
+{
+	public enum Mode
+	{
+		SYNC, ASYNC
+	}
+
+	private final Mode mode;
+	private final long timeout;
+	private final ThreadPoolExecutor executor;
+	private final AtomicLong rejectedCount = new AtomicLong();
+
+	/**
+	 * @param mode
+	 *            whether to run provider calls on the container thread or on the pool
+	 * @param poolSize
+	 *            number of pool threads, i.e. maximum number of concurrent upstream calls
+	 * @param queueCapacity
+	 *            maximum number of calls waiting for a pool thread
+	 * @param timeout
+	 *            time in milliseconds after which a waiting request is answered with a timeout, or {@code 0} for the
+	 *            container default
+	 */
+	public ProviderExecutor(final Mode mode, final int poolSize, final int queueCapacity, final long timeout)
+	{
+		this.mode = mode;
+		this.timeout = timeout;
+
+		if (mode == Mode.ASYNC)
+			this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(queueCapacity),
+					new ProviderThreadFactory());
+		else
+			this.executor = null;
+	}
+
+	public <T> DeferredResult<T> execute(final Callable<T> call)
+	{
+		final DeferredResult<T> result = timeout > 0 ? new DeferredResult<T>(timeout) : new DeferredResult<T>();
+
+		if (executor == null)
+		{
+			complete(result, call);
+		}
+		else
+		{
+			try
+			{
+				final Future<?> future = executor.submit(new Runnable()
+				{
+					public void run()
+					{
+						if (!result.isSetOrExpired())
+							complete(result, call);
+					}
+				});
+
+				result.onTimeout(new Runnable()
+				{
+					public void run()
+					{
+						future.cancel(true);
+						executor.remove((Runnable) future);
+					}
+				});
+			}
+			catch (final RejectedExecutionException x)
+			{
+				rejectedCount.incrementAndGet();
+				result.setErrorResult(x);
+			}
+		}
+
+		return result;
+	}
+
+	private static <T> void complete(final DeferredResult<T> result, final Callable<T> call)
+	{
+		try
+		{
+			result.setResult(call.call());
+		}
+		catch (final Exception x)
+		{
+			result.setErrorResult(x);
+		}
+	}
+
+	public Mode getMode()
+	{
+		return mode;
+	}
+
+	/**
+	 * @return number of calls waiting for a pool thread
+	 */
+	public int getQueueDepth()
+	{
+		return executor != null ? executor.getQueue().size() : 0;
+	}
+
+	/**
+	 * @return number of calls waiting for a pool thread at most
+	 */
+	public int getQueueCapacity()
+	{
+		return executor != null ? executor.getQueue().size() + executor.getQueue().remainingCapacity() : 0;
+	}
+
+	/**
+	 * @return number of calls currently running on the pool
+	 */
+	public int getActiveCount()
+	{
+		return executor != null ? executor.getActiveCount() : 0;
+	}
+
+	public int getPoolSize()
+	{
+		return executor != null ? executor.getMaximumPoolSize() : 0;
+	}
+
+	public long getCompletedCount()
+	{
+		return executor != null ? executor.getCompletedTaskCount() : 0;
+	}
+
+	public long getRejectedCount()
+	{
+		return rejectedCount.get();
+	}
+
+	public void destroy()
+	{
+		if (executor != null)
+			executor.shutdownNow();
+	}
+
+	private static class ProviderThreadFactory implements ThreadFactory
+	{
+		private final AtomicInteger threadNumber = new AtomicInteger();
+
+		public Thread newThread(final Runnable runnable)
+		{
+			final Thread thread = new Thread(runnable, "provider-" + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2012 the original author or authors.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.schildbach.pte.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+/**
+ * @author Andreas Schildbach
+ */
+@Controller
+public class StatusController
+{
+	@Autowired
+	private ProviderExecutor executor;
+
+	@RequestMapping(value = "/status/executor", method = RequestMethod.GET)
+	@ResponseBody
+	public Map<String, Object> executor()
+	{
+		final Map<String, Object> status = new LinkedHashMap<String, Object>();
+		status.put("mode", executor.getMode());
+		status.put("poolSize", executor.getPoolSize());
+		status.put("activeCount", executor.getActiveCount());
+		status.put("queueDepth", executor.getQueueDepth());
+		status.put("queueCapacity", executor.getQueueCapacity());
+		status.put("completedCount", executor.getCompletedCount());
+		status.put("rejectedCount", executor.getRejectedCount());
+		return status;
+	}
+}